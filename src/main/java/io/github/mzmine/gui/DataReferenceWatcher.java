@@ -0,0 +1,109 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.gui;
+
+import javax.annotation.Nonnull;
+
+import io.github.mzmine.main.MZmineCore;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.stage.Window;
+
+/**
+ * Watches a node that holds data references (see
+ * {@link io.github.mzmine.project.DataReferenceTracker}) and releases them as
+ * soon as the node is no longer shown, i.e. its window was closed or it was
+ * replaced in the main window. The check is postponed to the next pulse, so
+ * that moving the node to another window (detaching) does not release the
+ * references.
+ */
+class DataReferenceWatcher implements InvalidationListener {
+
+    private static final String WATCHER_KEY = "mzmine.dataReferenceWatcher";
+
+    private final Node node;
+    private Scene scene;
+    private Window window;
+    private boolean shown = false, checkPending = false;
+
+    private DataReferenceWatcher(Node node) {
+        this.node = node;
+    }
+
+    static void watch(@Nonnull Node node) {
+        if (node.getProperties().containsKey(WATCHER_KEY))
+            return;
+        DataReferenceWatcher watcher = new DataReferenceWatcher(node);
+        node.getProperties().put(WATCHER_KEY, watcher);
+        node.sceneProperty().addListener(watcher);
+        watcher.invalidated(null);
+    }
+
+    @Override
+    public void invalidated(Observable observable) {
+        if (checkPending)
+            return;
+        checkPending = true;
+        Platform.runLater(this::check);
+    }
+
+    private void check() {
+        checkPending = false;
+
+        final Scene newScene = node.getScene();
+        if (newScene != scene) {
+            if (scene != null)
+                scene.windowProperty().removeListener(this);
+            scene = newScene;
+            if (scene != null)
+                scene.windowProperty().addListener(this);
+        }
+
+        final Window newWindow = (scene == null) ? null : scene.getWindow();
+        if (newWindow != window) {
+            if (window != null)
+                window.showingProperty().removeListener(this);
+            window = newWindow;
+            if (window != null)
+                window.showingProperty().addListener(this);
+        }
+
+        if ((window != null) && window.isShowing()) {
+            shown = true;
+            return;
+        }
+
+        // Not shown yet, the node is still being set up
+        if (!shown)
+            return;
+
+        node.sceneProperty().removeListener(this);
+        if (scene != null)
+            scene.windowProperty().removeListener(this);
+        if (window != null)
+            window.showingProperty().removeListener(this);
+        node.getProperties().remove(WATCHER_KEY);
+        MZmineCore.getReferenceTracker().releaseAll(node);
+    }
+
+}
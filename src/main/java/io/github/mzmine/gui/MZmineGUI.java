@@ -148,6 +148,10 @@ public final class MZmineGUI extends Application {
     }
 
     public static void displayMessage(String msg) {
+        // Without the main window (server mode), the callers' log entries
+        // are all that is shown
+        if (mainWindowController == null)
+            return;
         Platform.runLater(() -> {
             Dialog<ButtonType> dialog = new Dialog<>();
             Stage stage = (Stage) dialog.getDialogPane().getScene().getWindow();
@@ -160,6 +164,8 @@ public final class MZmineGUI extends Application {
     }
 
     public static void setStatusBarMessage(String message) {
+        if (mainWindowController == null)
+            return;
         Platform.runLater(() -> {
             StatusBar statusBar = mainWindowController.getStatusBar();
             statusBar.setText(message);
@@ -196,6 +202,17 @@ public final class MZmineGUI extends Application {
         }
     }
 
+    /**
+     * Keeps the given raw data file or feature table from being disposed for
+     * as long as the node is shown. Data that is not tracked, e.g. because it
+     * was already removed from the project, is ignored.
+     */
+    public static void retainWhileShowing(@Nonnull Node node,
+            @Nonnull Object data) {
+        if (MZmineCore.getReferenceTracker().acquireIfTracked(data, node))
+            DataReferenceWatcher.watch(node);
+    }
+
     public static void activateProject(MZmineGUIProject project) {
         MZmineCore.setCurrentProject(project);
 
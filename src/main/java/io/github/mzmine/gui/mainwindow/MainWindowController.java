@@ -20,6 +20,7 @@
 package io.github.mzmine.gui.mainwindow;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.controlsfx.control.HiddenSidesPane;
 import org.controlsfx.control.StatusBar;
@@ -40,6 +41,8 @@ import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParamet
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelectionType;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelectionType;
+import io.github.mzmine.project.DataReferenceTracker;
+import io.github.mzmine.project.DataReferenceTracker.DataReferenceInfo;
 import io.github.mzmine.taskcontrol.MZmineTask;
 import javafx.animation.Animation;
 import javafx.animation.KeyFrame;
@@ -57,6 +60,7 @@ import javafx.scene.control.ProgressBar;
 import javafx.scene.control.SelectionMode;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
+import javafx.scene.control.Tooltip;
 import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
 import javafx.scene.image.Image;
@@ -180,6 +184,7 @@ public class MainWindowController {
                     memoryBar.setProgress(memory);
                     memoryBarLabel
                             .setText(freeMemMB + "/" + totalMemMB + " MB free");
+                    updateMemoryTooltip();
                 }));
         memoryUpdater.play();
 
@@ -201,6 +206,50 @@ public class MainWindowController {
         msdkTaskUpdater.play();
     }
 
+    /**
+     * Shows the estimated memory held by each raw data file and feature table
+     * in the tooltip of the memory indicator. The estimates are only updated
+     * while the tooltip is shown, as they can take a while for large tables.
+     */
+    private void updateMemoryTooltip() {
+        final Tooltip tooltip = memoryBarLabel.getTooltip();
+        if (tooltip == null)
+            return;
+        if (tooltip.getOnShowing() == null)
+            tooltip.setOnShowing(e -> setMemoryTooltipText(tooltip));
+        if (tooltip.isShowing())
+            setMemoryTooltipText(tooltip);
+    }
+
+    private void setMemoryTooltipText(Tooltip tooltip) {
+        final DataReferenceTracker tracker = MZmineCore.getReferenceTracker();
+        final StringBuilder text = new StringBuilder(
+                "Free/total memory available for the application");
+        final List<DataReferenceInfo> references = tracker.getReferences();
+        if (!references.isEmpty()) {
+            long totalBytes = 0;
+            for (DataReferenceInfo reference : references)
+                totalBytes += reference.getEstimatedBytes();
+            text.append("\n\nData held (estimated): ");
+            text.append(toMB(totalBytes));
+            for (DataReferenceInfo reference : references) {
+                text.append("\n");
+                text.append(reference.getName());
+                text.append(": ");
+                text.append(toMB(reference.getEstimatedBytes()));
+                text.append(" (");
+                text.append(reference.getReferenceCount());
+                text.append(reference.getReferenceCount() == 1 ? " reference)"
+                        : " references)");
+            }
+        }
+        tooltip.setText(text.toString());
+    }
+
+    private static String toMB(long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
     @FXML
     public void memoryBarClicked(MouseEvent e) {
         // Run garbage collector on a new thread, so it does not block the GUI
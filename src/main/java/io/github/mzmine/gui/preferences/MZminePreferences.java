@@ -30,7 +30,11 @@ import org.w3c.dom.Element;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.BooleanParameter;
+import io.github.mzmine.parameters.parametertypes.DoubleParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.OptionalParameter;
 import io.github.mzmine.parameters.parametertypes.OptionalModuleParameter;
+import io.github.mzmine.parameters.parametertypes.PercentParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
 import javafx.scene.control.ButtonType;
 
@@ -52,6 +56,36 @@ public class MZminePreferences extends ParameterSet {
 
     public static final NumOfThreadsParameter numOfThreads = new NumOfThreadsParameter();
 
+    public static final PercentParameter memoryBudget = new PercentParameter(
+            "Task memory budget",
+            "New tasks are only started while the estimated memory usage of all running tasks stays within this share of the maximum heap",
+            "Task scheduling", 0.7);
+
+    public static final PercentParameter tmpDiskBudget = new PercentParameter(
+            "Temporary disk budget",
+            "New tasks are only started while the estimated temporary file usage of all running tasks stays within this share of the free disk space",
+            "Task scheduling", 0.8);
+
+    public static final OptionalParameter<IntegerParameter> resultCache = new OptionalParameter<IntegerParameter>(
+            new IntegerParameter("Result cache size (MB)",
+                    "Store the feature tables produced by processing steps and reuse them when the same step is run again on the same data",
+                    "Task scheduling", 2048));
+
+    public static final BooleanParameter compressTmpFiles = new BooleanParameter(
+            "Compress temporary files",
+            "Compress the scans that are written to temporary files (e.g. by raw data import or centroiding). This takes a little CPU time but saves disk space and I/O.",
+            "Temporary files", true);
+
+    public static final OptionalParameter<DoubleParameter> tmpMzPrecision = new OptionalParameter<DoubleParameter>(
+            new DoubleParameter("Round m/z values (ppm)",
+                    "Round the m/z values in compressed temporary files to a grid with this spacing in ppm. The rounding error is at most half of the spacing. If disabled, m/z values are stored exactly.",
+                    "Temporary files", 0.1));
+
+    public static final IntegerParameter spectrumCacheSize = new IntegerParameter(
+            "Spectrum cache size (MB)",
+            "Keep recently used scans from temporary files in memory, so that they are not read from disk again when viewed or processed repeatedly. 0 disables the cache.",
+            "Temporary files", 256);
+
     public static final OptionalModuleParameter proxySettings = new OptionalModuleParameter(
             "Use proxy", "Use proxy for internet connection?", "Proxy",
             new ProxySettings());
@@ -83,8 +117,9 @@ public class MZminePreferences extends ParameterSet {
     // WindowSettingsParameter();
 
     public MZminePreferences() {
-        super(mzFormat, rtFormat, intensityFormat, numOfThreads, proxySettings,
-                rExecPath, sendStatistics);
+        super(mzFormat, rtFormat, intensityFormat, numOfThreads, memoryBudget,
+                tmpDiskBudget, resultCache, compressTmpFiles, tmpMzPrecision,
+                spectrumCacheSize, proxySettings, rExecPath, sendStatistics);
     }
 
     @Override
@@ -141,6 +176,8 @@ public class MZminePreferences extends ParameterSet {
             }
         }
 
+        MZmineCore.getMemoryGovernor().updateSpectrumCacheSize();
+
     }
 
 }
@@ -19,23 +19,39 @@
 
 package io.github.mzmine.main;
 
+import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.mzmine.gui.MZmineGUI;
 import io.github.mzmine.gui.mainwindow.MainWindowController;
 import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.modules.MZmineRunnableModule;
+import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNamesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import io.github.mzmine.project.DataReferenceTracker;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.project.auditlog.AuditLogEntry;
+import io.github.mzmine.taskcontrol.TaskCostEstimate;
+import io.github.mzmine.taskcontrol.TaskScheduler;
 import javafx.concurrent.Task;
+import javafx.concurrent.Worker.State;
 
 /**
  * MZmine core functions for modules
@@ -47,6 +63,17 @@ public final class MZmineCore {
     private static final @Nonnull ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
             2);
 
+    private static final @Nonnull MemoryGovernor memoryGovernor = new MemoryGovernor();
+
+    private static final @Nonnull TaskScheduler taskScheduler = new TaskScheduler(
+            executor, memoryGovernor);
+
+    private static final @Nonnull DataReferenceTracker referenceTracker = new DataReferenceTracker();
+
+    private static final @Nonnull ResultCache resultCache = new ResultCache(
+            new File(System.getProperty("user.home"),
+                    ".mzmine" + File.separator + "resultcache"));
+
     private static @Nonnull MZmineProject currentProject = new MZmineProject();
 
     public static @Nonnull MZmineConfiguration getConfiguration() {
@@ -73,6 +100,14 @@ public final class MZmineCore {
         }
     }
 
+    public static @Nonnull DataReferenceTracker getReferenceTracker() {
+        return referenceTracker;
+    }
+
+    public static @Nonnull ResultCache getResultCache() {
+        return resultCache;
+    }
+
     public static @Nonnull MZmineProject getCurrentProject() {
         return currentProject;
     }
@@ -82,13 +117,21 @@ public final class MZmineCore {
     }
 
     public static void submitTasks(@Nonnull Collection<Task<?>> tasks) {
+        submitTasks(tasks, Collections.emptyMap());
+    }
+
+    private static void submitTasks(@Nonnull Collection<Task<?>> tasks,
+            @Nonnull Map<Task<?>, TaskCostEstimate> estimates) {
 
         for (Task<?> task : tasks) {
             MainWindowController mwc = MZmineGUI.getMainWindowController();
             if (mwc != null) {
                 mwc.getTaskTable().getTasks().add(task);
             }
-            executor.execute(task);
+            TaskCostEstimate estimate = estimates.get(task);
+            if (estimate == null)
+                estimate = TaskCostEstimate.UNKNOWN;
+            taskScheduler.submit(task, estimate);
         }
     }
 
@@ -96,6 +139,14 @@ public final class MZmineCore {
         return executor;
     }
 
+    public static @Nonnull MemoryGovernor getMemoryGovernor() {
+        return memoryGovernor;
+    }
+
+    public static @Nonnull TaskScheduler getTaskScheduler() {
+        return taskScheduler;
+    }
+
     public static <ModuleType extends MZmineModule> ModuleType getModuleInstance(
             Class<ModuleType> moduleClass) {
         return MZmineStarter.getModuleInstance(moduleClass);
@@ -104,6 +155,20 @@ public final class MZmineCore {
     public static void runModule(
             @Nonnull Class<? extends MZmineRunnableModule> moduleClass,
             @Nonnull ParameterSet parameters) {
+        runModule(moduleClass, parameters, currentProject);
+    }
+
+    /**
+     * Runs the module and submits its tasks. The raw data files and feature
+     * tables created by the module are added to the given project, which is
+     * typically the current project or a {@link RecordingProject} wrapping
+     * it.
+     * 
+     * @return the submitted tasks
+     */
+    public static @Nonnull List<Task<?>> runModule(
+            @Nonnull Class<? extends MZmineRunnableModule> moduleClass,
+            @Nonnull ParameterSet parameters, @Nonnull MZmineProject project) {
 
         MZmineRunnableModule module = (MZmineRunnableModule) getModuleInstance(
                 moduleClass);
@@ -115,16 +180,140 @@ public final class MZmineCore {
         gatThread.setPriority(Thread.MIN_PRIORITY);
         gatThread.start();
 
-        // Run the module
+        // Keep the input data alive while the module is running, even if it
+        // is removed from the project in the meantime
+        final List<Object> inputData = getInputData(parameters);
+        final Object runReference = new Object();
+        for (Object data : inputData) {
+            if ((data instanceof RawDataFile) || (data instanceof FeatureTable))
+                referenceTracker.acquireIfTracked(data, runReference);
+        }
+
+        // Identify the processing step, so that its results can be reused
+        String cacheKey = null;
+        if (module instanceof MZmineProcessingModule)
+            cacheKey = resultCache.computeKey((MZmineProcessingModule) module,
+                    parameters, inputData);
+
+        // Run the module, unless its result is cached
         final List<Task<?>> newTasks = new ArrayList<>();
-        module.runModule(currentProject, parameters, newTasks);
-        submitTasks(newTasks);
+        final Map<Task<?>, TaskCostEstimate> estimates;
+        try {
+            if ((cacheKey != null) && resultCache.isEnabled() && resultCache
+                    .load(cacheKey, inputData, project, newTasks)) {
+                estimates = Collections.emptyMap();
+            } else {
+                final RecordingProject recordingProject = new RecordingProject(
+                        project);
+                module.runModule(recordingProject, parameters, newTasks);
+                // Steps which create no data may modify their inputs, so
+                // the steps queued after them must not reuse results
+                // computed from the unmodified inputs
+                if ((module instanceof MZmineProcessingModule)
+                        && !((MZmineProcessingModule) module).createsData())
+                    resultCache.modified(cacheKey, inputData);
+                if (cacheKey != null)
+                    resultCache.record(cacheKey, inputData, recordingProject,
+                            newTasks);
+                estimates = estimateTaskCosts(module, parameters, inputData,
+                        newTasks);
+            }
+        } catch (RuntimeException e) {
+            referenceTracker.releaseAll(runReference);
+            throw e;
+        }
+        releaseWhenFinished(newTasks, runReference);
+        submitTasks(newTasks, estimates);
 
         // Log module run in audit log
         AuditLogEntry auditLogEntry = new AuditLogEntry(module, parameters,
                 newTasks);
         currentProject.logProcessingStep(auditLogEntry);
 
+        return newTasks;
+    }
+
+    /**
+     * @return raw data files, feature tables and files selected in the
+     *         parameters as inputs of the module
+     */
+    private static @Nonnull List<Object> getInputData(
+            @Nonnull ParameterSet parameters) {
+        final List<Object> inputData = new ArrayList<>();
+        for (Parameter<?> parameter : parameters) {
+            if (parameter instanceof RawDataFilesParameter) {
+                RawDataFilesParameter filesParameter = (RawDataFilesParameter) parameter;
+                if (filesParameter.getValue() != null)
+                    inputData.addAll(filesParameter.getValue()
+                            .getMatchingRawDataFiles());
+            }
+            if (parameter instanceof FeatureTablesParameter) {
+                FeatureTablesParameter tablesParameter = (FeatureTablesParameter) parameter;
+                if (tablesParameter.getValue() != null)
+                    inputData.addAll(tablesParameter.getValue()
+                            .getMatchingFeatureTables());
+            }
+            if (parameter instanceof FileNamesParameter) {
+                FileNamesParameter fileNamesParameter = (FileNamesParameter) parameter;
+                if (fileNamesParameter.getValue() != null)
+                    inputData.addAll(fileNamesParameter.getValue());
+            }
+        }
+        return inputData;
+    }
+
+    /**
+     * Asks the module for the cost of each of its tasks. Modules typically
+     * create one task per input, in the order of the inputs. Otherwise, the
+     * cost of all inputs is split evenly among the tasks.
+     */
+    private static @Nonnull Map<Task<?>, TaskCostEstimate> estimateTaskCosts(
+            @Nonnull MZmineRunnableModule module,
+            @Nonnull ParameterSet parameters, @Nonnull List<Object> inputData,
+            @Nonnull List<Task<?>> tasks) {
+        final Map<Task<?>, TaskCostEstimate> estimates = new IdentityHashMap<>();
+        if (!(module instanceof MZmineProcessingModule) || tasks.isEmpty())
+            return estimates;
+        final MZmineProcessingModule processingModule = (MZmineProcessingModule) module;
+
+        if (tasks.size() == inputData.size()) {
+            for (int i = 0; i < tasks.size(); i++) {
+                estimates.put(tasks.get(i), processingModule
+                        .estimateTaskCost(inputData.get(i), parameters));
+            }
+            return estimates;
+        }
+
+        TaskCostEstimate total = TaskCostEstimate.UNKNOWN;
+        for (Object input : inputData)
+            total = total.plus(
+                    processingModule.estimateTaskCost(input, parameters));
+        final TaskCostEstimate perTask = total.dividedBy(tasks.size());
+        for (Task<?> task : tasks)
+            estimates.put(task, perTask);
+        return estimates;
+    }
+
+    /**
+     * Releases the references held by the owner once all the tasks have
+     * finished, successfully or not.
+     */
+    private static void releaseWhenFinished(@Nonnull List<Task<?>> tasks,
+            @Nonnull Object owner) {
+        if (tasks.isEmpty()) {
+            referenceTracker.releaseAll(owner);
+            return;
+        }
+        final AtomicInteger runningTasks = new AtomicInteger(tasks.size());
+        for (Task<?> task : tasks) {
+            task.stateProperty().addListener((prop, oldState, newState) -> {
+                if ((newState == State.SUCCEEDED) || (newState == State.FAILED)
+                        || (newState == State.CANCELLED)) {
+                    if (runningTasks.decrementAndGet() == 0)
+                        referenceTracker.releaseAll(owner);
+                }
+            });
+        }
     }
 
 }
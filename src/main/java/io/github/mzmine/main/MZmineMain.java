@@ -19,13 +19,22 @@
 
 package io.github.mzmine.main;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.Locale;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sun.javafx.application.PlatformImpl;
+
 import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.server.JobServer;
+import io.github.mzmine.server.ShardProtocol;
+import io.github.mzmine.server.ShardWorker;
 import javafx.application.Application;
+import javafx.application.Platform;
 
 /**
  * MZmine main class
@@ -37,6 +46,26 @@ public final class MZmineMain {
 
     public static void main(String args[]) {
 
+        // Server mode: --server [port] [--jobs n]
+        // Shard worker mode: --worker [[host:]port]
+        Integer serverPort = null;
+        int maxParallelJobs = 1;
+        InetSocketAddress workerAddress = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--server")) {
+                serverPort = JobServer.DEFAULT_PORT;
+                if ((i + 1 < args.length) && args[i + 1].matches("\\d+"))
+                    serverPort = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--jobs") && (i + 1 < args.length)) {
+                maxParallelJobs = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (args[i].equals("--worker")) {
+                String address = String.valueOf(ShardWorker.DEFAULT_PORT);
+                if ((i + 1 < args.length) && !args[i + 1].startsWith("--"))
+                    address = args[++i];
+                workerAddress = parseWorkerAddress(address);
+            }
+        }
+
         /*
          * In the beginning, set the default locale to English, to avoid
          * problems with conversion of numbers etc. (e.g. decimal separator may
@@ -64,6 +93,15 @@ public final class MZmineMain {
         Thread shutDownThread = new Thread(shutDownHook);
         Runtime.getRuntime().addShutdownHook(shutDownThread);
 
+        if (serverPort != null) {
+            startServer(serverPort, maxParallelJobs);
+            return;
+        }
+        if (workerAddress != null) {
+            startWorker(workerAddress);
+            return;
+        }
+
         /*
          * Load modules on a new thread after the GUI has started
          */
@@ -89,4 +127,84 @@ public final class MZmineMain {
 
     }
 
+    /**
+     * Starts MZmine without the GUI and accepts jobs through the job server.
+     * The JavaFX toolkit is still started, because the tasks report their
+     * state on the JavaFX thread; on machines without a display, run with
+     * -Dglass.platform=Monocle -Dmonocle.platform=Headless.
+     */
+    private static void startServer(int port, int maxParallelJobs) {
+
+        logger.info("Starting MZmine in server mode");
+        startHeadless();
+
+        JobServer server = new JobServer(port, maxParallelJobs);
+        try {
+            server.start();
+        } catch (IOException e) {
+            logger.error("Could not start the job server on port " + port,
+                    e);
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+
+    }
+
+    /**
+     * Starts MZmine without the GUI as a worker processing shards for a
+     * coordinator, see {@link ShardWorker}. The worker listens on the loopback
+     * interface unless a host is given, e.g. 0.0.0.0:8322 to accept
+     * coordinators from other machines. Only coordinators which know the
+     * secret set in the environment are accepted, see {@link ShardProtocol}.
+     */
+    private static void startWorker(InetSocketAddress address) {
+
+        logger.info("Starting MZmine in shard worker mode");
+        startHeadless();
+
+        // The secret is not taken from the command line, where other users
+        // of the machine could see it
+        final String secret = ShardProtocol.getSecret();
+        if (secret == null) {
+            logger.error("Set the " + ShardProtocol.SECRET_VARIABLE
+                    + " environment variable to the secret the coordinators"
+                    + " use to connect to this worker");
+            System.exit(1);
+        }
+
+        ShardWorker worker = new ShardWorker(address, secret);
+        try {
+            worker.start();
+        } catch (IOException e) {
+            logger.error("Could not start the shard worker on " + address, e);
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(worker::stop));
+
+    }
+
+    /**
+     * Loads the modules and configuration and starts the JavaFX toolkit
+     * without a window
+     */
+    private static void startHeadless() {
+
+        // Load modules and configuration before accepting jobs
+        new MZmineStarter().run();
+
+        PlatformImpl.startup(() -> {
+        });
+        Platform.setImplicitExit(false);
+
+    }
+
+    private static InetSocketAddress parseWorkerAddress(String address) {
+        final int colon = address.lastIndexOf(':');
+        if (colon < 0)
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(address));
+        return new InetSocketAddress(address.substring(0, colon),
+                Integer.parseInt(address.substring(colon + 1)));
+    }
+
 }
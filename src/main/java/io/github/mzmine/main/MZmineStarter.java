@@ -96,6 +96,10 @@ public final class MZmineStarter implements Runnable {
                     + MZmineConfiguration.CONFIG_FILE);
         }
 
+        // The spectrum cache is created with a default size before the
+        // preferences are known
+        MZmineCore.getMemoryGovernor().updateSpectrumCacheSize();
+
     }
 
     private void startModule(final String moduleClassName)
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.main;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.taskcontrol.TaskScheduler;
+import io.github.mzmine.util.datastore.CachingDataPointStore;
+import io.github.mzmine.util.datastore.CompressedDataPointStore;
+import io.github.mzmine.util.datastore.DecodedArrayCache;
+import io.github.mzmine.util.datastore.SpillableDataPointStore;
+
+/**
+ * Watches the heap usage and reacts before the JVM runs out of memory. When
+ * the usage of a heap memory pool crosses the high threshold, the largest
+ * in-memory data point stores are spilled to temporary files and the
+ * {@link TaskScheduler} does not start new tasks until the usage drops below
+ * the low threshold again.
+ */
+public class MemoryGovernor {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Fraction of the maximum heap above which memory is considered short
+     */
+    private static final double HIGH_USAGE_THRESHOLD = 0.75;
+
+    /**
+     * Fraction of the maximum heap the spilling aims for, and below which new
+     * tasks are admitted again
+     */
+    private static final double LOW_USAGE_THRESHOLD = 0.6;
+
+    private static final long CHECK_PERIOD = 1000; // ms
+
+    private static final long DEFAULT_SPECTRUM_CACHE_SIZE = 256 * 1024 * 1024;
+
+    private final ScheduledExecutorService governorThread;
+
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    private final DecodedArrayCache spectrumCache = new DecodedArrayCache(
+            DEFAULT_SPECTRUM_CACHE_SIZE, true);
+
+    private final List<WeakReference<SpillableDataPointStore>> stores = new ArrayList<>();
+    private boolean underPressure = false;
+
+    MemoryGovernor() {
+
+        for (MemoryPoolMXBean pool : ManagementFactory
+                .getMemoryPoolMXBeans()) {
+            if ((pool.getType() != MemoryType.HEAP)
+                    || !pool.isUsageThresholdSupported())
+                continue;
+            final long max = pool.getUsage().getMax();
+            if (max <= 0)
+                continue;
+            final long threshold = (long) (max * HIGH_USAGE_THRESHOLD);
+            pool.setUsageThreshold(threshold);
+            if (pool.isCollectionUsageThresholdSupported())
+                pool.setCollectionUsageThreshold(threshold);
+            heapPools.add(pool);
+        }
+
+        governorThread = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Memory governor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        NotificationEmitter emitter = (NotificationEmitter) ManagementFactory
+                .getMemoryMXBean();
+        emitter.addNotificationListener(this::handleNotification, null, null);
+
+        governorThread.scheduleWithFixedDelay(this::checkMemory, CHECK_PERIOD,
+                CHECK_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a new heap-backed data point store that is spilled to a
+     * temporary file when memory gets short. Stores created while memory is
+     * short start spilled.
+     */
+    public @Nonnull SpillableDataPointStore createMemoryDataStore() {
+        final SpillableDataPointStore store = new SpillableDataPointStore();
+        synchronized (this) {
+            stores.add(new WeakReference<>(store));
+            if (underPressure)
+                store.spillToDisk();
+        }
+        return store;
+    }
+
+    /**
+     * Creates a new data point store backed by a temporary file. Depending on
+     * the preferences, the data are compressed on the way to the file.
+     * Recently loaded arrays are kept in the spectrum cache.
+     */
+    public @Nonnull DataPointStore createTmpFileDataStore() {
+        final MZminePreferences preferences = MZmineCore.getConfiguration()
+                .getPreferences();
+        final Boolean compress = preferences
+                .getParameter(MZminePreferences.compressTmpFiles).getValue();
+        if ((compress == null) || !compress)
+            return new CachingDataPointStore(
+                    DataPointStoreFactory.getTmpFileDataStore(),
+                    spectrumCache);
+
+        final Boolean round = preferences
+                .getParameter(MZminePreferences.tmpMzPrecision).getValue();
+        final Double mzPrecision = preferences
+                .getParameter(MZminePreferences.tmpMzPrecision)
+                .getEmbeddedParameter().getValue();
+        if ((round != null) && round && (mzPrecision != null)
+                && (mzPrecision > 0))
+            return new CachingDataPointStore(
+                    new CompressedDataPointStore(mzPrecision), spectrumCache);
+        return new CachingDataPointStore(new CompressedDataPointStore(),
+                spectrumCache);
+    }
+
+    /**
+     * @return cache of decoded scan arrays shared by all temporary file data
+     *         point stores
+     */
+    public @Nonnull DecodedArrayCache getSpectrumCache() {
+        return spectrumCache;
+    }
+
+    /**
+     * Sets the size limit of the spectrum cache from the preferences
+     */
+    public void updateSpectrumCacheSize() {
+        final Integer cacheSize = MZmineCore.getConfiguration()
+                .getPreferences()
+                .getParameter(MZminePreferences.spectrumCacheSize).getValue();
+        if (cacheSize != null)
+            spectrumCache.setSizeLimit(Math.max(0, cacheSize) * 1024L * 1024L);
+    }
+
+    public synchronized boolean isUnderPressure() {
+        return underPressure;
+    }
+
+    private void handleNotification(Notification notification,
+            Object handback) {
+        final String type = notification.getType();
+        if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+                || MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED
+                        .equals(type)) {
+            // Do the actual work outside of the notification thread
+            governorThread.execute(this::checkMemory);
+        }
+    }
+
+    private void checkMemory() {
+        try {
+            final double usage = getHeapUsage();
+            final boolean pressure;
+            synchronized (this) {
+                if (underPressure)
+                    underPressure = usage > LOW_USAGE_THRESHOLD;
+                else
+                    underPressure = usage > HIGH_USAGE_THRESHOLD;
+                pressure = underPressure;
+            }
+            if (pressure) {
+                // Cached arrays can always be loaded again
+                logger.debug("Clearing " + spectrumCache.getStatistics());
+                spectrumCache.clear();
+                spillLargestStores();
+            } else {
+                // Tasks may have been held back while memory was short
+                TaskScheduler scheduler = MZmineCore.getTaskScheduler();
+                if (scheduler != null)
+                    scheduler.startTasks();
+            }
+        } catch (Exception e) {
+            logger.error("Error checking memory usage", e);
+        }
+    }
+
+    /**
+     * Spills the largest stores until the expected heap usage is below the
+     * low threshold.
+     */
+    private void spillLargestStores() {
+        final Runtime runtime = Runtime.getRuntime();
+        final long used = runtime.totalMemory() - runtime.freeMemory();
+        final long target = (long) (runtime.maxMemory() * LOW_USAGE_THRESHOLD);
+        long toRelease = used - target;
+
+        final List<SpillableDataPointStore> candidates = new ArrayList<>();
+        synchronized (this) {
+            Iterator<WeakReference<SpillableDataPointStore>> it = stores
+                    .iterator();
+            while (it.hasNext()) {
+                SpillableDataPointStore store = it.next().get();
+                if (store == null)
+                    it.remove();
+                else if (store.getHeapBytes() > 0)
+                    candidates.add(store);
+            }
+        }
+        if (candidates.isEmpty())
+            return;
+        Collections.sort(candidates, (a, b) -> Long.compare(b.getHeapBytes(),
+                a.getHeapBytes()));
+
+        long released = 0;
+        int spilledStores = 0;
+        for (SpillableDataPointStore store : candidates) {
+            if (released >= toRelease)
+                break;
+            released += store.spillToDisk();
+            spilledStores++;
+        }
+        if (released == 0)
+            return;
+
+        final String message = "Memory is short, moved "
+                + (released / (1024 * 1024)) + " MB of data from "
+                + spilledStores + " data store(s) to temporary files";
+        logger.info(message);
+        if (MZmineGUI.getMainWindowController() != null)
+            MZmineGUI.setStatusBarMessage(message);
+    }
+
+    /**
+     * @return highest usage of any heap pool, as fraction of its maximum. The
+     *         usage after the last garbage collection is used where
+     *         available, as the current usage includes garbage.
+     */
+    private double getHeapUsage() {
+        double maxUsage = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            MemoryUsage usage = null;
+            if (pool.isCollectionUsageThresholdSupported())
+                usage = pool.getCollectionUsage();
+            if ((usage == null) || (usage.getUsed() == 0))
+                usage = pool.getUsage();
+            if (usage.getMax() <= 0)
+                continue;
+            maxUsage = Math.max(maxUsage,
+                    (double) usage.getUsed() / usage.getMax());
+        }
+        return maxUsage;
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.main;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.project.auditlog.AuditLogEntry;
+
+/**
+ * Project passed to a module by {@link MZmineCore#runModule}. All calls are
+ * forwarded to the wrapped project, and the raw data files and feature tables
+ * added or removed by the module are recorded for the {@link ResultCache}.
+ * Callers of {@link MZmineCore#runModule} can wrap the current project in a
+ * RecordingProject of their own to find out what a module run created.
+ */
+public class RecordingProject extends MZmineProject {
+
+    private final MZmineProject project;
+    private final List<Object> addedData = new ArrayList<>();
+    private final List<Object> removedData = new ArrayList<>();
+
+    public RecordingProject(@Nonnull MZmineProject project) {
+        this.project = project;
+    }
+
+    /**
+     * @return raw data files and feature tables added by the module, in the
+     *         order they were added
+     */
+    public synchronized @Nonnull List<Object> getAddedData() {
+        return new ArrayList<>(addedData);
+    }
+
+    /**
+     * @return raw data files and feature tables removed by the module
+     */
+    public synchronized @Nonnull List<Object> getRemovedData() {
+        return new ArrayList<>(removedData);
+    }
+
+    @Override
+    @Nullable
+    public File getProjectFile() {
+        return project.getProjectFile();
+    }
+
+    @Override
+    public void setProjectFile(@Nullable File projectFile) {
+        project.setProjectFile(projectFile);
+    }
+
+    @Override
+    @Nonnull
+    public List<Sample> getSamples() {
+        return project.getSamples();
+    }
+
+    @Override
+    public void addFile(final RawDataFile rawDataFile) {
+        synchronized (this) {
+            addedData.add(rawDataFile);
+        }
+        project.addFile(rawDataFile);
+    }
+
+    @Override
+    public void removeFile(final RawDataFile rawDataFile) {
+        synchronized (this) {
+            removedData.add(rawDataFile);
+        }
+        project.removeFile(rawDataFile);
+    }
+
+    @Override
+    @Nonnull
+    public List<RawDataFile> getRawDataFiles() {
+        return project.getRawDataFiles();
+    }
+
+    @Override
+    public void addFeatureTable(final FeatureTable featureTable) {
+        synchronized (this) {
+            addedData.add(featureTable);
+        }
+        project.addFeatureTable(featureTable);
+    }
+
+    @Override
+    public void removeFeatureTable(final FeatureTable featureTable) {
+        synchronized (this) {
+            removedData.add(featureTable);
+        }
+        project.removeFeatureTable(featureTable);
+    }
+
+    @Override
+    @Nonnull
+    public List<FeatureTable> getFeatureTables() {
+        return project.getFeatureTables();
+    }
+
+    @Override
+    public void logProcessingStep(final AuditLogEntry auditLog) {
+        project.logProcessingStep(auditLog);
+    }
+
+    @Override
+    @Nonnull
+    public List<AuditLogEntry> getAuditLog() {
+        return project.getAuditLog();
+    }
+
+}
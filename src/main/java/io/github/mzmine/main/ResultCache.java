@@ -0,0 +1,540 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.main;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.featuretableimport.ColumnarFileImportMethod;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFileExportMethod;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFormat;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFormat.Codec;
+import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNamesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.taskcontrol.MSDKTask;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker.State;
+
+/**
+ * Content-addressed cache of processing results. A processing step is
+ * identified by a hash of the module class, its parameter values and the
+ * fingerprints of its inputs. The fingerprint of a raw data file or feature
+ * table produced by a processing step is derived from the hash of that step,
+ * so a whole pipeline is identified by the files it started from. Feature
+ * tables produced by a step are stored in the columnar format; when the same
+ * step is run again, they are loaded instead of running the module. The cache
+ * directory is limited in size, the least recently used entries are removed
+ * first.
+ */
+public class ResultCache {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final String ENTRY_FILE = "entry.properties";
+
+    /**
+     * Fingerprint of inputs whose content cannot be identified any more
+     */
+    private static final String UNKNOWN_CONTENT = "";
+
+    private final File cacheDir;
+    private final Map<Object, String> fingerprints = Collections
+            .synchronizedMap(new WeakHashMap<>());
+    private final ExecutorService storeThread;
+
+    private final AtomicLong hits = new AtomicLong(),
+            misses = new AtomicLong(), stores = new AtomicLong(),
+            evictions = new AtomicLong();
+
+    ResultCache(@Nonnull File cacheDir) {
+        this.cacheDir = cacheDir;
+        storeThread = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Result cache");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * @return whether the cache is enabled in the preferences
+     */
+    public boolean isEnabled() {
+        final Boolean enabled = MZmineCore.getConfiguration().getPreferences()
+                .getParameter(MZminePreferences.resultCache).getValue();
+        return (enabled != null) && enabled;
+    }
+
+    /**
+     * @return maximum size of the cache directory in bytes
+     */
+    public long getSizeLimit() {
+        final Integer sizeMB = MZmineCore.getConfiguration().getPreferences()
+                .getParameter(MZminePreferences.resultCache)
+                .getEmbeddedParameter().getValue();
+        return (sizeMB == null ? 0 : sizeMB) * 1024L * 1024L;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public @Nonnull String getStatistics() {
+        return "Result cache: " + hits + " hits, " + misses + " misses, "
+                + stores + " stored, " + evictions + " evicted";
+    }
+
+    /**
+     * Computes the key of a processing step.
+     * 
+     * @return the key, or null if one of the inputs has an unknown origin and
+     *         the step cannot be identified
+     */
+    @Nullable
+    String computeKey(@Nonnull MZmineProcessingModule module,
+            @Nonnull ParameterSet parameters, @Nonnull List<Object> inputs) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, module.getClass().getName());
+            update(digest, canonicalizeParameters(parameters));
+            for (Object input : inputs) {
+                final String fingerprint = getFingerprint(input);
+                if (fingerprint == null)
+                    return null;
+                update(digest, fingerprint);
+            }
+            final StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest())
+                key.append(String.format("%02x", b));
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            logger.error("Cannot compute result cache key", e);
+            return null;
+        }
+    }
+
+    /**
+     * Creates the tasks which load the cached result of the step, if there is
+     * one. The loaded feature tables are added to the project and the inputs
+     * which the module removed from the project are removed again.
+     * 
+     * @return true if the cached result is used
+     */
+    boolean load(@Nonnull String key, @Nonnull List<Object> inputs,
+            @Nonnull MZmineProject project,
+            @Nonnull Collection<Task<?>> tasks) {
+
+        final File entryDir = new File(cacheDir, key);
+        final File entryFile = new File(entryDir, ENTRY_FILE);
+        final Properties entry = new Properties();
+        try (InputStream in = new FileInputStream(entryFile)) {
+            entry.load(in);
+        } catch (IOException e) {
+            misses.incrementAndGet();
+            return false;
+        }
+
+        final int numOfOutputs = Integer
+                .parseInt(entry.getProperty("outputs", "0"));
+        final List<Object> removedInputs = new ArrayList<>();
+        for (String index : entry.getProperty("removedInputs", "")
+                .split(",")) {
+            if (index.isEmpty())
+                continue;
+            final int i = Integer.parseInt(index);
+            if (i >= inputs.size()) {
+                misses.incrementAndGet();
+                return false;
+            }
+            removedInputs.add(inputs.get(i));
+        }
+        for (int i = 0; i < numOfOutputs; i++) {
+            if (!new File(entryDir, entry.getProperty("output." + i + ".file"))
+                    .canRead()) {
+                misses.incrementAndGet();
+                return false;
+            }
+        }
+
+        // Mark the entry as recently used
+        entryFile.setLastModified(System.currentTimeMillis());
+        hits.incrementAndGet();
+        logger.info("Using cached result " + key + ". " + getStatistics());
+
+        final AtomicInteger remainingOutputs = new AtomicInteger(numOfOutputs);
+        for (int i = 0; i < numOfOutputs; i++) {
+            final String name = entry.getProperty("output." + i + ".name");
+            final File file = new File(entryDir,
+                    entry.getProperty("output." + i + ".file"));
+            final ColumnarFileImportMethod method = new ColumnarFileImportMethod(
+                    file,
+                    MZmineCore.getMemoryGovernor().createMemoryDataStore(),
+                    project.getRawDataFiles());
+            final MSDKTask newTask = new MSDKTask("Loading cached result",
+                    name, method);
+            newTask.setOnSucceeded(e -> {
+                final FeatureTable featureTable = method.getResult();
+                if (featureTable == null)
+                    return;
+                featureTable.setName(name);
+                fingerprints.put(featureTable, key + "/" + name);
+                project.addFeatureTable(featureTable);
+                if (remainingOutputs.decrementAndGet() > 0)
+                    return;
+                for (Object input : removedInputs) {
+                    if (input instanceof RawDataFile)
+                        project.removeFile((RawDataFile) input);
+                    else if (input instanceof FeatureTable)
+                        project.removeFeatureTable((FeatureTable) input);
+                }
+            });
+            tasks.add(newTask);
+        }
+
+        if (MZmineGUI.getMainWindowController() != null)
+            MZmineGUI.setStatusBarMessage(
+                    "Using cached result. " + getStatistics());
+        return true;
+    }
+
+    /**
+     * Once all tasks of the step have succeeded, assigns fingerprints to the
+     * results and, if the cache is enabled and all results are feature
+     * tables, stores them.
+     */
+    void record(@Nonnull String key, @Nonnull List<Object> inputs,
+            @Nonnull RecordingProject project, @Nonnull List<Task<?>> tasks) {
+        if (tasks.isEmpty()) {
+            completed(key, inputs, project);
+            return;
+        }
+        final AtomicInteger remainingTasks = new AtomicInteger(tasks.size());
+        for (Task<?> task : tasks) {
+            task.stateProperty().addListener((prop, oldState, newState) -> {
+                if (newState == State.SUCCEEDED) {
+                    // The state listeners run before the onSucceeded handler
+                    // of the module, which adds the results to the project,
+                    // so the results are collected in a later JavaFX event
+                    if (remainingTasks.decrementAndGet() == 0)
+                        Platform.runLater(
+                                () -> completed(key, inputs, project));
+                } else if ((newState == State.FAILED)
+                        || (newState == State.CANCELLED)) {
+                    // Incomplete results are neither fingerprinted nor
+                    // stored
+                    remainingTasks.set(-1);
+                }
+            });
+        }
+    }
+
+    /**
+     * Called when a step which does not create data is run. Such a step may
+     * modify its inputs in place, e.g. by adding annotations to a feature
+     * table, so the fingerprints of the inputs no longer identify their
+     * content. The modified inputs get a fingerprint derived from the step,
+     * so that the steps run on them afterwards are identified again. If the
+     * step itself cannot be identified, the inputs lose their fingerprint.
+     */
+    void modified(@Nullable String key, @Nonnull List<Object> inputs) {
+        for (int i = 0; i < inputs.size(); i++) {
+            final Object input = inputs.get(i);
+            if (!(input instanceof RawDataFile)
+                    && !(input instanceof FeatureTable))
+                continue;
+            fingerprints.put(input,
+                    key == null ? UNKNOWN_CONTENT : key + "/input." + i);
+        }
+    }
+
+    private void completed(String key, List<Object> inputs,
+            RecordingProject project) {
+
+        final List<Object> outputs = project.getAddedData();
+        final List<String> names = new ArrayList<>();
+        for (Object output : outputs) {
+            String name = (output instanceof RawDataFile)
+                    ? ((RawDataFile) output).getName()
+                    : ((FeatureTable) output).getName();
+            // Outputs are identified by name, as the tasks can finish in any
+            // order
+            while (names.contains(name))
+                name = name + "'";
+            names.add(name);
+            fingerprints.put(output, key + "/" + name);
+        }
+
+        if (!isEnabled() || outputs.isEmpty())
+            return;
+
+        final List<FeatureTable> tables = new ArrayList<>();
+        for (Object output : outputs) {
+            if (!(output instanceof FeatureTable))
+                return;
+            tables.add((FeatureTable) output);
+        }
+        final List<Integer> removedInputs = new ArrayList<>();
+        for (Object removed : project.getRemovedData()) {
+            final int index = indexOfIdentical(inputs, removed);
+            if (index < 0)
+                return;
+            removedInputs.add(index);
+        }
+
+        // Keep the tables until they are written
+        final Object storeReference = new Object();
+        for (FeatureTable table : tables)
+            MZmineCore.getReferenceTracker().acquireIfTracked(table,
+                    storeReference);
+        storeThread.execute(() -> {
+            try {
+                store(key, tables, names, removedInputs);
+            } catch (Exception e) {
+                logger.warn("Could not store result " + key + " in cache", e);
+            } finally {
+                MZmineCore.getReferenceTracker().releaseAll(storeReference);
+            }
+        });
+    }
+
+    private void store(String key, List<FeatureTable> tables,
+            List<String> names, List<Integer> removedInputs)
+            throws Exception {
+
+        final File entryDir = new File(cacheDir, key);
+        if (new File(entryDir, ENTRY_FILE).exists())
+            return;
+
+        // Write into a temporary directory, so that incomplete entries are
+        // never found
+        final File tmpDir = new File(cacheDir, key + ".tmp");
+        FileUtils.deleteDirectory(tmpDir);
+        if (!tmpDir.mkdirs())
+            throw new IOException("Cannot create " + tmpDir);
+
+        final Properties entry = new Properties();
+        entry.setProperty("outputs", String.valueOf(tables.size()));
+        final StringBuilder removed = new StringBuilder();
+        for (Integer index : removedInputs) {
+            if (removed.length() > 0)
+                removed.append(',');
+            removed.append(index);
+        }
+        entry.setProperty("removedInputs", removed.toString());
+
+        for (int i = 0; i < tables.size(); i++) {
+            final FeatureTable table = tables.get(i);
+            final String fileName = "table" + i + "."
+                    + ColumnarFormat.EXTENSION;
+            try {
+                new ColumnarFileExportMethod(table, new File(tmpDir, fileName),
+                        table.getColumns(), Codec.NONE, true, true).execute();
+            } catch (MSDKException e) {
+                // A cache hit must give the same table as a recomputation
+                logger.info("Not storing result " + key
+                        + " in cache, as it cannot be written exactly: "
+                        + e.getMessage());
+                FileUtils.deleteDirectory(tmpDir);
+                return;
+            }
+            entry.setProperty("output." + i + ".name", names.get(i));
+            entry.setProperty("output." + i + ".file", fileName);
+        }
+
+        try (OutputStream out = new FileOutputStream(
+                new File(tmpDir, ENTRY_FILE))) {
+            entry.store(out, "MZmine result cache entry");
+        }
+        if (!tmpDir.renameTo(entryDir)) {
+            FileUtils.deleteDirectory(tmpDir);
+            return;
+        }
+        stores.incrementAndGet();
+        logger.info("Stored result " + key + " in cache. " + getStatistics());
+
+        evict();
+    }
+
+    /**
+     * Removes the least recently used entries until the cache fits into the
+     * size limit.
+     */
+    private void evict() throws IOException {
+        final File entryDirs[] = cacheDir.listFiles(
+                file -> file.isDirectory() && !file.getName().endsWith(".tmp"));
+        if (entryDirs == null)
+            return;
+
+        final Map<File, Long> sizes = new HashMap<>();
+        long totalSize = 0;
+        for (File entryDir : entryDirs) {
+            final long size = FileUtils.sizeOfDirectory(entryDir);
+            sizes.put(entryDir, size);
+            totalSize += size;
+        }
+
+        final long sizeLimit = getSizeLimit();
+        if (totalSize <= sizeLimit)
+            return;
+
+        final List<File> sortedDirs = new ArrayList<>(Arrays.asList(entryDirs));
+        Collections.sort(sortedDirs, Comparator.comparingLong(
+                entryDir -> new File(entryDir, ENTRY_FILE).lastModified()));
+        for (File entryDir : sortedDirs) {
+            if (totalSize <= sizeLimit)
+                break;
+            FileUtils.deleteDirectory(entryDir);
+            totalSize -= sizes.get(entryDir);
+            evictions.incrementAndGet();
+            logger.info("Evicted result " + entryDir.getName() + " from cache");
+        }
+    }
+
+    /**
+     * Fingerprints identify the content of an input. Results of processing
+     * steps have a fingerprint derived from the step; imported raw data files
+     * and files on disk are identified by their path, size and modification
+     * time. Feature tables of unknown origin and inputs which were modified
+     * by a step of unknown origin have no fingerprint.
+     */
+    @Nullable
+    private String getFingerprint(@Nonnull Object input) {
+        final String fingerprint = fingerprints.get(input);
+        if (fingerprint != null)
+            return fingerprint.equals(UNKNOWN_CONTENT) ? null : fingerprint;
+        if (input instanceof File)
+            return getFileFingerprint((File) input);
+        if (input instanceof RawDataFile) {
+            final File originalFile = ((RawDataFile) input).getOriginalFile();
+            if (originalFile == null)
+                return null;
+            return ((RawDataFile) input).getName() + "@"
+                    + getFileFingerprint(originalFile);
+        }
+        return null;
+    }
+
+    private static String getFileFingerprint(File file) {
+        return file.getAbsolutePath() + ":" + file.length() + ":"
+                + file.lastModified();
+    }
+
+    /**
+     * Serializes the parameter values the same way as the configuration file.
+     * The data selections are left out, because the selected inputs are
+     * fingerprinted separately.
+     */
+    private static String canonicalizeParameters(ParameterSet parameters) {
+        try {
+            final Document document = DocumentBuilderFactory.newInstance()
+                    .newDocumentBuilder().newDocument();
+            final Element root = document.createElement("parameters");
+            document.appendChild(root);
+            for (Parameter<?> parameter : parameters) {
+                if ((parameter instanceof RawDataFilesParameter)
+                        || (parameter instanceof FeatureTablesParameter)
+                        || (parameter instanceof FileNamesParameter))
+                    continue;
+                final Element element = document.createElement("parameter");
+                element.setAttribute("name", parameter.getName());
+                root.appendChild(element);
+                parameter.saveValueToXML(element);
+            }
+
+            final Transformer transformer = TransformerFactory.newInstance()
+                    .newTransformer();
+            transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+            transformer.setOutputProperty(OutputKeys.INDENT, "no");
+            final StringWriter writer = new StringWriter();
+            transformer.transform(new DOMSource(document),
+                    new StreamResult(writer));
+            return writer.toString();
+        } catch (Exception e) {
+            // Fall back to the textual representation
+            return parameters.toString();
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static int indexOfIdentical(List<Object> list, Object item) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == item)
+                return i;
+        }
+        return -1;
+    }
+
+}
@@ -19,10 +19,46 @@
 
 package io.github.mzmine.modules;
 
+import javax.annotation.Nonnull;
+
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.taskcontrol.TaskCostEstimate;
+
 /**
  * Interface representing a data processing method that produces new data.
  * Modules implementing this interface can be executed in a batch.
  */
 public interface MZmineProcessingModule extends MZmineRunnableModule {
 
+    /**
+     * Estimates the resources needed by the task that processes the given
+     * input. The task scheduler uses the estimates to decide how many tasks
+     * can run at the same time and which task to start first.
+     * 
+     * @param input
+     *            raw data file, feature table or file on disk selected in the
+     *            parameters
+     * @param parameters
+     *            parameters the module is invoked with
+     * @return cost estimate of the task
+     */
+    @Nonnull
+    default TaskCostEstimate estimateTaskCost(@Nonnull Object input,
+            @Nonnull ParameterSet parameters) {
+        return TaskCostEstimate.forInput(input);
+    }
+
+    /**
+     * Tells whether each task of the module adds a raw data file or feature
+     * table to the project. Modules which only write files or modify their
+     * input return false. Processing pipelines treat a step which created
+     * less data than it had tasks as failed, because a task does not fail
+     * when its method throws an error.
+     * 
+     * @return whether each task creates new data
+     */
+    default boolean createsData() {
+        return true;
+    }
+
 }
@@ -27,11 +27,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.features.joinaligner.JoinAlignerMethod;
 import io.github.msdk.util.MZTolerance;
 import io.github.msdk.util.RTTolerance;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
@@ -110,7 +110,7 @@ public class JoinAlignerModule implements MZmineProcessingModule {
         }
 
         // Create the data structures
-        DataPointStore dataStore = DataPointStoreFactory.getMemoryDataStore();
+        DataPointStore dataStore = MZmineCore.getMemoryGovernor().createMemoryDataStore();
 
         // New row filter method
         JoinAlignerMethod method = new JoinAlignerMethod(
@@ -124,6 +124,13 @@ public class JoinAlignerModule implements MZmineProcessingModule {
         // Add the feature table to the project
         newTask.setOnSucceeded(e -> {
             FeatureTable newFeatureTable = method.getResult();
+
+            // The aligned table shares the values of the original tables
+            for (FeatureTable featureTable : featureTables
+                    .getMatchingFeatureTables()) {
+                MZmineCore.getReferenceTracker().acquire(featureTable,
+                        newFeatureTable);
+            }
             project.addFeatureTable(newFeatureTable);
 
             // If selected, remove old feature table
@@ -25,6 +25,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.ParameterValidator;
 import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.RemoveOriginalParameter;
 import io.github.mzmine.parameters.parametertypes.StringParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParameter;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZToleranceParameter;
@@ -75,7 +76,7 @@ public class JoinAlignerParameters extends ParameterSet {
             "Feature table name", "Name of the aligned feature table.",
             "Output", "Aligned Feature Table");
 
-    public static final BooleanParameter removeOldTable = new BooleanParameter(
+    public static final RemoveOriginalParameter removeOldTable = new RemoveOriginalParameter(
             "Remove original tables?",
             "If checked, the original feature tables will be removed.",
             "Output", false);
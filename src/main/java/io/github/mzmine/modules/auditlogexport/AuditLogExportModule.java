@@ -23,6 +23,7 @@ package io.github.mzmine.modules.auditlogexport;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 
@@ -33,7 +34,6 @@ import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.modules.io.csvexport.CsvExportModule;
-import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.project.auditlog.AuditLogEntry;
@@ -87,9 +87,10 @@ public class AuditLogExportModule implements MZmineProcessingModule {
                 /*
                  * TODO
                  */
-                for (Parameter<?> pramaeter : logEntry.getParameterSet()) {
+                for (Map.Entry<String, String> parameter : logEntry
+                        .getParameterValues().entrySet()) {
                     logger.debug(
-                            pramaeter.getName() + ": " + pramaeter.getValue());
+                            parameter.getKey() + ": " + parameter.getValue());
                 }
             }
 
@@ -97,6 +98,11 @@ public class AuditLogExportModule implements MZmineProcessingModule {
 
     }
 
+    @Override
+    public boolean createsData() {
+        return false;
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
         return AuditLogExportParameters.class;
@@ -21,6 +21,7 @@ package io.github.mzmine.modules.featuredetection.chromatogrambuilder;
 
 import io.github.msdk.util.MZTolerance;
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.parameters.ParameterPreview;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.ParameterValidator;
 import io.github.mzmine.parameters.parametertypes.DoubleParameter;
@@ -73,4 +74,9 @@ public class ChromatogramBuilderParameters extends ParameterSet {
                 nameSuffix);
     }
 
+    @Override
+    public ParameterPreview<?> createPreview() {
+        return new ChromatogramBuilderPreview();
+    }
+
 }
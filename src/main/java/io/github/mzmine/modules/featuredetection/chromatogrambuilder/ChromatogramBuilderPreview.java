@@ -0,0 +1,273 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package io.github.mzmine.modules.featuredetection.chromatogrambuilder;
+
+import java.text.DecimalFormat;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.featdet.chromatogrambuilder.ChromatogramBuilderMethod;
+import io.github.msdk.util.MZTolerance;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.plots.chromatogram.datasets.ChromatogramDataSet;
+import io.github.mzmine.parameters.ParameterPreview;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.util.jfreechart.ChartNodeJFreeChart;
+import io.github.mzmine.util.rawdata.ScanSubsetMethod;
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.util.StringConverter;
+
+/**
+ * Preview of the chromatogram builder: builds the chromatograms of the MS1
+ * scans in a retention time window of one file and shows the most intense
+ * ones.
+ */
+class ChromatogramBuilderPreview extends ParameterPreview<List<Chromatogram>> {
+
+    // Width of the initial retention time window (min)
+    private static final double DEFAULT_RT_WINDOW = 1.0;
+
+    // Number of chromatograms shown in the plot
+    private static final int SHOWN_CHROMATOGRAMS = 10;
+
+    private final ComboBox<RawDataFile> fileComboBox = new ComboBox<>();
+    private final TextField rtStartField = new TextField(),
+            rtEndField = new TextField();
+    private final ChartNodeJFreeChart chartNode = new ChartNodeJFreeChart();
+    private final DecimalFormat rtFormat = MZmineCore.getConfiguration()
+            .getRTFormat();
+
+    private volatile RawDataFile selectedFile;
+    private volatile Range<Double> selectedRtRange;
+    private int shownDatasets = 0;
+
+    // Copy of the scans in the selected window, which the chromatograms are
+    // built from
+    private RawDataFile subsetFile;
+    private Range<Double> subsetRtRange;
+    private RawDataFile subset;
+
+    ChromatogramBuilderPreview() {
+
+        fileComboBox.setConverter(new StringConverter<RawDataFile>() {
+            @Override
+            public String toString(RawDataFile file) {
+                return file == null ? "" : file.getName();
+            }
+
+            @Override
+            public RawDataFile fromString(String string) {
+                return null;
+            }
+        });
+        fileComboBox.valueProperty().addListener((prop, oldFile, newFile) -> {
+            selectedFile = newFile;
+            if (newFile != null)
+                setDefaultRtRange(newFile);
+        });
+        rtStartField.setPrefColumnCount(6);
+        rtEndField.setPrefColumnCount(6);
+        rtStartField.textProperty().addListener(e -> readRtRange());
+        rtEndField.textProperty().addListener(e -> readRtRange());
+
+        final HBox dataSelection = new HBox(5.0, new Label("Raw data file"),
+                fileComboBox, new Label("RT window (min)"), rtStartField,
+                new Label("-"), rtEndField);
+        dataSelection.setPadding(new Insets(5.0));
+        setTop(dataSelection);
+
+        final XYPlot plot = chartNode.getChart().getXYPlot();
+        final NumberAxis xAxis = (NumberAxis) plot.getDomainAxis();
+        xAxis.setLabel("Retention time (min)");
+        xAxis.setNumberFormatOverride(rtFormat);
+        final NumberAxis yAxis = (NumberAxis) plot.getRangeAxis();
+        yAxis.setLabel("Intensity");
+        yAxis.setNumberFormatOverride(
+                MZmineCore.getConfiguration().getIntensityFormat());
+        for (int i = 0; i < SHOWN_CHROMATOGRAMS; i++)
+            plot.setRenderer(i, new XYLineAndShapeRenderer(true, false));
+        setCenter(chartNode);
+
+        final List<RawDataFile> files = MZmineCore.getCurrentProject()
+                .getRawDataFiles();
+        fileComboBox.setItems(FXCollections.observableArrayList(files));
+        if (files.isEmpty())
+            setStatus("There are no raw data files to preview");
+        else
+            fileComboBox.setValue(files.get(0));
+    }
+
+    /**
+     * Selects a window in the middle of the file
+     */
+    private void setDefaultRtRange(@Nonnull RawDataFile file) {
+        final List<MsScan> scans = file.getScans();
+        if (scans.isEmpty())
+            return;
+        final MsScan middleScan = scans.get(scans.size() / 2);
+        if ((middleScan.getChromatographyInfo() == null) || (middleScan
+                .getChromatographyInfo().getRetentionTime() == null))
+            return;
+        final double middleRt = middleScan.getChromatographyInfo()
+                .getRetentionTime() / 60.0;
+        rtStartField.setText(rtFormat.format(middleRt));
+        rtEndField.setText(rtFormat.format(middleRt + DEFAULT_RT_WINDOW));
+    }
+
+    private void readRtRange() {
+        try {
+            final double start = rtFormat.parse(rtStartField.getText())
+                    .doubleValue();
+            final double end = rtFormat.parse(rtEndField.getText())
+                    .doubleValue();
+            if (start > end) {
+                setStatus("The RT window must not end before it starts");
+                return;
+            }
+            // Retention times of the scans are in seconds
+            selectedRtRange = Range.closed(start * 60.0, end * 60.0);
+            update();
+        } catch (ParseException e) {
+            setStatus("Please enter the RT window");
+        }
+    }
+
+    @Override
+    protected @Nullable List<Chromatogram> computePreview(
+            @Nonnull ParameterSet parameters, @Nonnull PreviewTask task)
+            throws Exception {
+        final RawDataFile file = selectedFile;
+        final Range<Double> rtRange = selectedRtRange;
+        if ((file == null) || (rtRange == null))
+            return null;
+
+        final RawDataFile scans = getSubset(file, rtRange, task);
+        if (scans == null)
+            return null;
+
+        final MZTolerance mzTolerance = parameters
+                .getParameter(ChromatogramBuilderParameters.mzTolerance)
+                .getValue();
+        final Double noiseLevel = parameters
+                .getParameter(ChromatogramBuilderParameters.noiseLevel)
+                .getValue();
+        final Double minDuration = parameters
+                .getParameter(ChromatogramBuilderParameters.minDuration)
+                .getValue();
+        final Double minHeight = parameters
+                .getParameter(ChromatogramBuilderParameters.minHeight)
+                .getValue();
+        final DataPointStore dataStore = DataPointStoreFactory
+                .getMemoryDataStore();
+        final MSDKMethod<List<Chromatogram>> method = new ChromatogramBuilderMethod(
+                dataStore, scans, noiseLevel, minDuration, minHeight,
+                mzTolerance);
+        return task.execute(method);
+    }
+
+    /**
+     * @return a raw data file with copies of the MS1 scans in the window, or
+     *         null if the computation was cancelled
+     */
+    private synchronized @Nullable RawDataFile getSubset(
+            @Nonnull RawDataFile file, @Nonnull Range<Double> rtRange,
+            @Nonnull PreviewTask task) throws Exception {
+        if ((file == subsetFile) && rtRange.equals(subsetRtRange))
+            return subset;
+        final List<MsScan> scans = new ScanSelection(rtRange, 1)
+                .getMatchingScans(file);
+        final RawDataFile newSubset = task.execute(new ScanSubsetMethod(file,
+                scans, DataPointStoreFactory.getMemoryDataStore()));
+        if (newSubset == null)
+            return null;
+        if (subset != null)
+            subset.dispose();
+        subset = newSubset;
+        subsetFile = file;
+        subsetRtRange = rtRange;
+        return subset;
+    }
+
+    @Override
+    protected void showPreview(@Nonnull List<Chromatogram> result) {
+        final List<Chromatogram> sorted = new ArrayList<>(result);
+        sorted.sort(Comparator.comparingDouble(
+                ChromatogramBuilderPreview::getMaxIntensity).reversed());
+
+        final XYPlot plot = chartNode.getChart().getXYPlot();
+        for (int i = 0; i < shownDatasets; i++)
+            plot.setDataset(i, null);
+        shownDatasets = Math.min(sorted.size(), SHOWN_CHROMATOGRAMS);
+        final DecimalFormat mzFormat = MZmineCore.getConfiguration()
+                .getMZFormat();
+        for (int i = 0; i < shownDatasets; i++) {
+            final Chromatogram chromatogram = sorted.get(i);
+            final String name = chromatogram.getMz() == null ? "Chromatogram"
+                    : "m/z " + mzFormat.format(chromatogram.getMz());
+            plot.setDataset(i, new ChromatogramDataSet(chromatogram, name));
+        }
+        chartNode.getChart().setTitle(result.size()
+                + " chromatograms in the window, " + shownDatasets
+                + " most intense shown");
+    }
+
+    private static double getMaxIntensity(@Nonnull Chromatogram chromatogram) {
+        final float intensities[] = chromatogram.getIntensityValues();
+        float max = 0f;
+        for (int i = 0; i < chromatogram.getNumberOfDataPoints(); i++)
+            max = Math.max(max, intensities[i]);
+        return max;
+    }
+
+    @Override
+    protected synchronized void dispose() {
+        if (subset != null) {
+            subset.dispose();
+            subset = null;
+            subsetFile = null;
+            subsetRtRange = null;
+        }
+    }
+
+}
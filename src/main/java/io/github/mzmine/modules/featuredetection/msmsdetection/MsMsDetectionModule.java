@@ -27,11 +27,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.msdk.util.MZTolerance;
 import io.github.msdk.util.RTTolerance;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
@@ -100,12 +100,12 @@ public class MsMsDetectionModule implements MZmineProcessingModule {
         for (RawDataFile rawDataFile : rawDataFiles.getMatchingRawDataFiles()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getMemoryDataStore();
+            DataPointStore dataStore = MZmineCore.getMemoryGovernor()
+                    .createMemoryDataStore();
 
             // New MS/MS detection task which runs the following three methods:
-            // 1. MsMsDetectionMethod
-            // 2. TargetedDetectionMethod
+            // 1. MsMsPrecursorDetectionMethod
+            // 2. TargetedSweepDetectionMethod
             // 3. ChromatogramToFeatureTableMethod
             MsMsDetectionTask newTask = new MsMsDetectionTask(
                     "MS/MS feature detection", rawDataFile.getName(),
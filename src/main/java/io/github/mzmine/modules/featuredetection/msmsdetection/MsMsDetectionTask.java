@@ -37,11 +37,10 @@ import io.github.msdk.datamodel.ionannotations.IonAnnotation;
 import io.github.msdk.datamodel.rawdata.MsScan;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.msdk.featdet.chromatogramtofeaturetable.ChromatogramToFeatureTableMethod;
-import io.github.msdk.featdet.msmsdetection.MsMsDetectionMethod;
-import io.github.msdk.featdet.targeteddetection.TargetedDetectionMethod;
 import io.github.msdk.util.MZTolerance;
 import io.github.msdk.util.RTTolerance;
 import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.modules.featuredetection.targeteddetection.TargetedSweepDetectionMethod;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.taskcontrol.MZmineTask;
 import javafx.concurrent.Task;
@@ -83,9 +82,9 @@ public class MsMsDetectionTask extends Task<Object> implements MZmineTask {
 
         List<MsScan> msScans = scanSelection.getMatchingScans(rawDataFile);
 
-        // New feature filter task
-        msMsDetectionMethod = new MsMsDetectionMethod(rawDataFile, msScans,
-                dataStore, mzTolerance, rtTolerance, intensityTolerance);
+        // Find the distinct precursors of the MS/MS scans
+        msMsDetectionMethod = new MsMsPrecursorDetectionMethod(rawDataFile,
+                msScans, mzTolerance, rtTolerance);
 
         refreshStatus();
 
@@ -93,8 +92,10 @@ public class MsMsDetectionTask extends Task<Object> implements MZmineTask {
             @Override
             public void handle(WorkerStateEvent workerEvent) {
                 msMsDetectionMethod.cancel();
-                targetedDetectionMethod.cancel();
-                chromatogramToFeatureTableMethod.cancel();
+                if (targetedDetectionMethod != null)
+                    targetedDetectionMethod.cancel();
+                if (chromatogramToFeatureTableMethod != null)
+                    chromatogramToFeatureTableMethod.cancel();
             }
         };
 
@@ -139,7 +140,7 @@ public class MsMsDetectionTask extends Task<Object> implements MZmineTask {
             List<IonAnnotation> ionAnnotations = msMsDetectionMethod.execute();
 
             // Run the targeted feature detection module
-            this.targetedDetectionMethod = new TargetedDetectionMethod(
+            this.targetedDetectionMethod = new TargetedSweepDetectionMethod(
                     ionAnnotations, rawDataFile, dataStore, mzTolerance,
                     rtTolerance, intensityTolerance, minHeight);
 
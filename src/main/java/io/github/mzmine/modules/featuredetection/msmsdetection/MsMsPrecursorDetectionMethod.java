@@ -0,0 +1,160 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.featuredetection.msmsdetection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.util.MZTolerance;
+import io.github.msdk.util.RTTolerance;
+import io.github.mzmine.util.rawdata.PrecursorIndex;
+
+/**
+ * Creates one ion annotation per distinct precursor of the given MS/MS scans.
+ * The precursors are visited in the order of the scans; a precursor that is
+ * within the m/z and RT tolerance of an earlier annotation is skipped. The
+ * precursors covered by a new annotation are looked up in the
+ * {@link PrecursorIndex} of the file, so the cost per annotation does not grow
+ * with the number of annotations found before.
+ */
+public class MsMsPrecursorDetectionMethod
+        implements MSDKMethod<List<IonAnnotation>> {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull RawDataFile rawDataFile;
+    private final @Nonnull List<MsScan> msScans;
+    private final @Nonnull MZTolerance mzTolerance;
+    private final @Nonnull RTTolerance rtTolerance;
+
+    private List<IonAnnotation> result;
+    private int processedEntries = 0, totalEntries = 0;
+    private volatile boolean canceled = false;
+
+    /**
+     * @param msScans
+     *            the MS/MS scans of the raw data file to use
+     */
+    public MsMsPrecursorDetectionMethod(@Nonnull RawDataFile rawDataFile,
+            @Nonnull List<MsScan> msScans, @Nonnull MZTolerance mzTolerance,
+            @Nonnull RTTolerance rtTolerance) {
+        this.rawDataFile = rawDataFile;
+        this.msScans = msScans;
+        this.mzTolerance = mzTolerance;
+        this.rtTolerance = rtTolerance;
+    }
+
+    @Override
+    public List<IonAnnotation> execute() throws MSDKException {
+
+        logger.info("Starting MS/MS precursor detection on "
+                + rawDataFile.getName());
+
+        final PrecursorIndex index = PrecursorIndex.get(rawDataFile);
+        final List<MsScan> scans = rawDataFile.getScans();
+
+        // The entries of the selected scans, in the order of the scans
+        final Set<MsScan> selectedScans = Collections
+                .newSetFromMap(new IdentityHashMap<>());
+        selectedScans.addAll(msScans);
+        final List<Integer> entries = new ArrayList<>();
+        for (int entry = 0; entry < index.getNumberOfEntries(); entry++) {
+            if (selectedScans.contains(scans.get(index.getScanIndex(entry))))
+                entries.add(entry);
+        }
+        entries.sort(Comparator.comparingInt(index::getScanIndex)
+                .thenComparingInt(entry -> entry));
+        totalEntries = entries.size();
+
+        final boolean covered[] = new boolean[index.getNumberOfEntries()];
+        final List<IonAnnotation> ionAnnotations = new ArrayList<>();
+        for (int entry : entries) {
+            if (canceled)
+                return null;
+            processedEntries++;
+            if (covered[entry])
+                continue;
+
+            final double precursorMz = index.getPrecursorMz(entry);
+            final float rt = index.getRetentionTime(entry);
+            final MsScan scan = scans.get(index.getScanIndex(entry));
+
+            final IonAnnotation ion = MSDKObjectBuilder
+                    .getSimpleIonAnnotation();
+            ion.setExpectedMz(precursorMz);
+            ion.setChromatographyInfo(scan.getChromatographyInfo());
+            ion.setAnnotationId(String.valueOf(scan.getScanNumber()));
+            ion.setDescription("MS/MS scan #" + scan.getScanNumber());
+            ionAnnotations.add(ion);
+
+            // Skip the later precursors that this annotation covers
+            if (Float.isNaN(rt))
+                continue;
+            final Range<Float> rtRange = rtTolerance.getToleranceRange(rt);
+            for (int coveredEntry : index.findByPrecursorMz(
+                    mzTolerance.getToleranceRange(precursorMz), rtRange))
+                covered[coveredEntry] = true;
+        }
+
+        logger.info("Finished MS/MS precursor detection on "
+                + rawDataFile.getName() + ", " + ionAnnotations.size()
+                + " precursors found in " + msScans.size() + " scans");
+
+        result = ionAnnotations;
+        return result;
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        return totalEntries == 0 ? null
+                : (float) processedEntries / totalEntries;
+    }
+
+    @Override
+    @Nullable
+    public List<IonAnnotation> getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        this.canceled = true;
+    }
+
+}
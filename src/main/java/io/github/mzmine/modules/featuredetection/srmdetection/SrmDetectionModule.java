@@ -20,6 +20,7 @@
 package io.github.mzmine.modules.featuredetection.srmdetection;
 
 import java.util.Collection;
+import java.util.List;
 
 import javax.annotation.Nonnull;
 
@@ -27,9 +28,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.util.MZTolerance;
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
@@ -64,6 +67,19 @@ public class SrmDetectionModule implements MZmineProcessingModule {
         final RawDataFilesSelection rawDataFiles = parameters
                 .getParameter(SrmDetectionParameters.rawDataFiles).getValue();
 
+        final Boolean useTransitionList = parameters
+                .getParameter(SrmDetectionParameters.transitions).getValue();
+
+        final String transitionList = parameters
+                .getParameter(SrmDetectionParameters.transitions)
+                .getEmbeddedParameter().getValue();
+
+        final String separator = parameters
+                .getParameter(SrmDetectionParameters.separator).getValue();
+
+        final MZTolerance mzTolerance = parameters
+                .getParameter(SrmDetectionParameters.mzTolerance).getValue();
+
         final String nameSuffix = parameters
                 .getParameter(SrmDetectionParameters.nameSuffix).getValue();
 
@@ -74,19 +90,41 @@ public class SrmDetectionModule implements MZmineProcessingModule {
             return;
         }
 
+        // Parse the transition list once for all files
+        List<SrmTransition> transitions = null;
+        if ((useTransitionList != null) && useTransitionList) {
+            try {
+                transitions = SrmTransition.parseList(
+                        transitionList == null ? "" : transitionList,
+                        separator);
+            } catch (NumberFormatException
+                    | ArrayIndexOutOfBoundsException e) {
+                final String msg = "Could not parse the transition list: "
+                        + e.getMessage();
+                logger.error(msg, e);
+                MZmineGUI.displayMessage(msg);
+                return;
+            }
+            if (transitions.isEmpty()) {
+                logger.warn(
+                        "SRM feature detection module started with an empty transition list");
+                return;
+            }
+        }
+
         for (RawDataFile rawDataFile : rawDataFiles.getMatchingRawDataFiles()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getMemoryDataStore();
+            DataPointStore dataStore = MZmineCore.getMemoryGovernor()
+                    .createMemoryDataStore();
 
             // New SRM builder task which runs the following two
             // methods:
-            // 1. SrmDetectionMethod
+            // 1. SrmTransitionDetectionMethod
             // 2. ChromatogramToFeatureTableMethod
             SrmDetectionTask newTask = new SrmDetectionTask(
                     "SRM feature detection", rawDataFile.getName(), rawDataFile,
-                    dataStore, nameSuffix);
+                    dataStore, transitions, mzTolerance, nameSuffix);
 
             // Add the feature table to the project
             newTask.setOnSucceeded(e -> {
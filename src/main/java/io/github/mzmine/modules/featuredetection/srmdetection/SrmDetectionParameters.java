@@ -19,14 +19,48 @@
 
 package io.github.mzmine.modules.featuredetection.srmdetection;
 
+import java.util.Arrays;
+
+import io.github.msdk.util.MZTolerance;
 import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.ParameterValidator;
+import io.github.mzmine.parameters.parametertypes.OptionalParameter;
 import io.github.mzmine.parameters.parametertypes.StringParameter;
+import io.github.mzmine.parameters.parametertypes.TextAreaParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZToleranceParameter;
+import javafx.stage.FileChooser.ExtensionFilter;
 
 public class SrmDetectionParameters extends ParameterSet {
 
     public static final RawDataFilesParameter rawDataFiles = new RawDataFilesParameter();
 
+    private static final ExtensionFilter filters[] = new ExtensionFilter[] {
+            new ExtensionFilter("All supported files", "*.csv", "*.txt"),
+            new ExtensionFilter("CSV files", "*.csv"),
+            new ExtensionFilter("TXT files", "*.txt") };
+
+    public static final OptionalParameter<TextAreaParameter> transitions = new OptionalParameter<TextAreaParameter>(
+            new TextAreaParameter("Transition list",
+                    "Only detect the listed transitions. Any line not starting with a number will be ignored.\n"
+                            + "The following input formats are accepted:\n"
+                            + "Q1, Q3\n" + "Q1, Q3, compound name\n"
+                            + "Q1, Q3, compound name, polarity (+ or -)\n\n",
+                    "Transitions", null, Arrays.asList(filters)));
+
+    public static final StringParameter separator = new StringParameter(
+            "Field separator",
+            "Character(s) used to separate fields in the transition list",
+            "Transitions", ParameterValidator.createNonEmptyValidator(), ",");
+
+    public static final MZToleranceParameter mzTolerance = new MZToleranceParameter(
+            "Q1/Q3 tolerance",
+            "Maximum allowed difference between the measured Q1 and Q3 values and those in the transition list.\n"
+                    + "The value is specified both as absolute tolerance (in m/z) and relative tolerance (in ppm).\n"
+                    + "The tolerance range is calculated using maximum of the absolute and relative tolerances.",
+            "Transitions", ParameterValidator.createNonEmptyValidator(),
+            new MZTolerance(0.1, 0.0));
+
     public static final StringParameter nameSuffix = new StringParameter(
             "Name suffix",
             "Suffix to be added to the raw data file(s) when creating the feature table(s)",
@@ -36,7 +70,7 @@ public class SrmDetectionParameters extends ParameterSet {
      * Create the parameter set.
      */
     public SrmDetectionParameters() {
-        super(rawDataFiles, nameSuffix);
+        super(rawDataFiles, transitions, separator, mzTolerance, nameSuffix);
     }
 
 }
@@ -35,7 +35,7 @@ import io.github.msdk.datamodel.featuretables.Sample;
 import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.msdk.featdet.chromatogramtofeaturetable.ChromatogramToFeatureTableMethod;
-import io.github.msdk.featdet.srmdetection.SrmDetectionMethod;
+import io.github.msdk.util.MZTolerance;
 import io.github.mzmine.gui.MZmineGUI;
 import io.github.mzmine.taskcontrol.MZmineTask;
 import javafx.concurrent.Task;
@@ -57,7 +57,8 @@ public class SrmDetectionTask extends Task<Object> implements MZmineTask {
 
     public SrmDetectionTask(String title, @Nullable String message,
             @Nonnull RawDataFile rawDataFile, @Nonnull DataPointStore dataStore,
-            @Nullable String nameSuffix) {
+            @Nullable List<SrmTransition> transitions,
+            @Nonnull MZTolerance mzTolerance, @Nullable String nameSuffix) {
         this.rawDataFile = rawDataFile;
         this.dataStore = dataStore;
         this.nameSuffix = nameSuffix;
@@ -65,7 +66,8 @@ public class SrmDetectionTask extends Task<Object> implements MZmineTask {
         this.message = message;
 
         // SRM detection method
-        srmDetectionMethod = new SrmDetectionMethod(rawDataFile, dataStore);
+        srmDetectionMethod = new SrmTransitionDetectionMethod(rawDataFile,
+                dataStore, transitions, mzTolerance);
 
         refreshStatus();
 
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.featuredetection.srmdetection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import io.github.msdk.datamodel.rawdata.PolarityType;
+
+/**
+ * An SRM transition: precursor m/z (Q1), product m/z (Q3) and polarity, with
+ * an optional compound name.
+ */
+@Immutable
+public class SrmTransition {
+
+    private final double q1, q3;
+    private final @Nonnull PolarityType polarity;
+    private final @Nullable String name;
+
+    public SrmTransition(double q1, double q3, @Nonnull PolarityType polarity,
+            @Nullable String name) {
+        this.q1 = q1;
+        this.q3 = q3;
+        this.polarity = polarity;
+        this.name = name;
+    }
+
+    public double getQ1() {
+        return q1;
+    }
+
+    public double getQ3() {
+        return q3;
+    }
+
+    /**
+     * @return the polarity, or {@link PolarityType#UNKNOWN} if the transition
+     *         applies to both
+     */
+    public @Nonnull PolarityType getPolarity() {
+        return polarity;
+    }
+
+    public @Nullable String getName() {
+        return name;
+    }
+
+    /**
+     * Parses a transition list. Any line not starting with a number is
+     * ignored. The following formats are accepted:
+     *
+     * Q1, Q3
+     *
+     * Q1, Q3, compound name
+     *
+     * Q1, Q3, compound name, polarity (+ or -)
+     *
+     * @throws NumberFormatException
+     *             if Q1 or Q3 of a line is not a number
+     */
+    public static @Nonnull List<SrmTransition> parseList(@Nonnull String text,
+            @Nonnull String separator) {
+        final List<SrmTransition> transitions = new ArrayList<>();
+        try (Scanner scanner = new Scanner(text)) {
+            while (scanner.hasNextLine()) {
+                final String line = scanner.nextLine().trim();
+
+                // Only process lines which start with a number
+                if (line.isEmpty() || (Character.digit(line.charAt(0), 10) < 0))
+                    continue;
+
+                final String lineArray[] = line.split(separator);
+                final double q1 = Double.parseDouble(lineArray[0].trim());
+                final double q3 = Double.parseDouble(lineArray[1].trim());
+                final String name = lineArray.length > 2
+                        ? lineArray[2].trim() : null;
+                PolarityType polarity = PolarityType.UNKNOWN;
+                if (lineArray.length > 3) {
+                    final String polarityString = lineArray[3].trim();
+                    if (polarityString.startsWith("+"))
+                        polarity = PolarityType.POSITIVE;
+                    else if (polarityString.startsWith("-"))
+                        polarity = PolarityType.NEGATIVE;
+                }
+                transitions.add(new SrmTransition(q1, q3, polarity,
+                        (name == null) || name.isEmpty() ? null : name));
+            }
+        }
+        return transitions;
+    }
+
+    @Override
+    public String toString() {
+        return q1 + " > " + q3 + (polarity == PolarityType.UNKNOWN ? ""
+                : " (" + polarity + ")");
+    }
+
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.featuredetection.srmdetection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.chromatograms.ChromatogramType;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.IsolationInfo;
+import io.github.msdk.datamodel.rawdata.MsFunction;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.PolarityType;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+import io.github.msdk.util.MZTolerance;
+
+/**
+ * Builds one chromatogram per SRM transition of a raw data file. Transitions
+ * are identified by their precursor m/z (Q1), product m/z (Q3) and polarity.
+ * They are taken from the SRM chromatograms of the file and from the MS/MS
+ * scans, where each data point of a scan is the product of one transition of
+ * the scan's precursor.
+ *
+ * All transitions are collected in a single pass. The scans are split into
+ * consecutive chunks that are processed in parallel, each collecting its
+ * transitions in a hash index, and the chunks are joined in order. If a list
+ * of target transitions is given, only the transitions matching a target are
+ * kept; each transition is looked up once per chunk.
+ */
+public class SrmTransitionDetectionMethod
+        implements MSDKMethod<List<Chromatogram>> {
+
+    /**
+     * Q1 and Q3 values are identified with this resolution (in m/z)
+     */
+    private static final double KEY_RESOLUTION = 0.0001;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull RawDataFile rawDataFile;
+    private final @Nonnull DataPointStore dataStore;
+    private final @Nullable TargetIndex targets;
+
+    private List<Chromatogram> result;
+    private final AtomicInteger processedItems = new AtomicInteger();
+    private int totalItems = 0;
+    private volatile boolean canceled = false;
+
+    /**
+     * @param targetTransitions
+     *            transitions to keep, or null to keep all
+     * @param mzTolerance
+     *            tolerance for matching Q1 and Q3 to the target transitions
+     */
+    public SrmTransitionDetectionMethod(@Nonnull RawDataFile rawDataFile,
+            @Nonnull DataPointStore dataStore,
+            @Nullable List<SrmTransition> targetTransitions,
+            @Nonnull MZTolerance mzTolerance) {
+        this.rawDataFile = rawDataFile;
+        this.dataStore = dataStore;
+        this.targets = targetTransitions == null ? null
+                : new TargetIndex(targetTransitions, mzTolerance);
+    }
+
+    @Override
+    public List<Chromatogram> execute() throws MSDKException {
+
+        logger.info("Starting SRM detection on file " + rawDataFile.getName()
+                + (targets == null ? ""
+                        : " with " + targets.transitions.length
+                                + " target transitions"));
+
+        final List<Chromatogram> fileChromatograms = rawDataFile
+                .getChromatograms();
+        final List<MsScan> scans = rawDataFile.getScans();
+        totalItems = fileChromatograms.size() + scans.size();
+
+        // Transitions recorded as chromatograms
+        final Map<TransitionKey, Trace> traces = new LinkedHashMap<>();
+        for (Chromatogram chromatogram : fileChromatograms) {
+            if (canceled)
+                return null;
+            processedItems.incrementAndGet();
+            if (chromatogram.getChromatogramType() != ChromatogramType.MRM_SRM)
+                continue;
+            final List<IsolationInfo> isolations = chromatogram
+                    .getIsolations();
+            final Double q1 = isolations.isEmpty() ? null
+                    : isolations.get(0).getPrecursorMz();
+            final Double q3 = isolations.size() > 1
+                    ? isolations.get(1).getPrecursorMz()
+                    : chromatogram.getMz();
+            if ((q1 == null) || (q3 == null))
+                continue;
+            final SrmTransition target = targets == null ? null
+                    : targets.find(q1, q3, PolarityType.UNKNOWN);
+            if ((targets != null) && (target == null))
+                continue;
+
+            final TransitionKey key = new TransitionKey(q1, q3,
+                    PolarityType.UNKNOWN);
+            final Trace trace = traces.computeIfAbsent(key,
+                    k -> new Trace(q1, q3, PolarityType.UNKNOWN, target));
+            final ChromatographyInfo rts[] = chromatogram.getRetentionTimes();
+            final float intensities[] = chromatogram.getIntensityValues();
+            final int size = chromatogram.getNumberOfDataPoints();
+            for (int i = 0; i < size; i++)
+                trace.add(-1, rts[i], intensities[i]);
+        }
+        final Set<TransitionKey> chromatogramKeys = new HashSet<>(
+                traces.keySet());
+
+        // Transitions recorded in scans, in parallel chunks
+        final int numberOfChunks = Math.max(1, Math.min(scans.size() / 100,
+                4 * Runtime.getRuntime().availableProcessors()));
+        final List<Map<TransitionKey, Trace>> chunkTraces = IntStream
+                .range(0, numberOfChunks).parallel()
+                .mapToObj(chunk -> collectScanTransitions(scans,
+                        (int) ((long) scans.size() * chunk / numberOfChunks),
+                        (int) ((long) scans.size() * (chunk + 1)
+                                / numberOfChunks)))
+                .collect(Collectors.toList());
+
+        if (canceled)
+            return null;
+
+        // Join the chunks in the order of the scans. Transitions that are
+        // also recorded as chromatograms are taken from the chromatograms.
+        for (Map<TransitionKey, Trace> chunk : chunkTraces) {
+            for (Map.Entry<TransitionKey, Trace> entry : chunk.entrySet()) {
+                if (chromatogramKeys
+                        .contains(entry.getKey().withoutPolarity()))
+                    continue;
+                final Trace trace = traces.get(entry.getKey());
+                if (trace == null)
+                    traces.put(entry.getKey(), entry.getValue());
+                else
+                    trace.append(entry.getValue());
+            }
+        }
+
+        result = new ArrayList<>(traces.size());
+        int chromatogramNumber = 1;
+        for (Trace trace : traces.values()) {
+            if (trace.size > 0)
+                result.add(trace.createChromatogram(chromatogramNumber++));
+        }
+
+        logger.info("Finished SRM detection on file " + rawDataFile.getName()
+                + ", " + result.size() + " transitions found");
+
+        return result;
+    }
+
+    /**
+     * Collects the transitions of the scans from index first (inclusive) to
+     * last (exclusive).
+     */
+    private Map<TransitionKey, Trace> collectScanTransitions(
+            List<MsScan> scans, int first, int last) {
+        final Map<TransitionKey, Trace> traces = new LinkedHashMap<>();
+        final Set<TransitionKey> rejected = new HashSet<>();
+        double mzBuffer[] = new double[0];
+        float intensityBuffer[] = new float[0];
+
+        for (int s = first; s < last; s++) {
+            if (canceled)
+                return traces;
+            processedItems.incrementAndGet();
+
+            final MsScan scan = scans.get(s);
+            final MsFunction msFunction = scan.getMsFunction();
+            if ((msFunction == null) || (msFunction.getMsLevel() == null)
+                    || (msFunction.getMsLevel() < 2))
+                continue;
+            final List<IsolationInfo> isolations = scan.getIsolations();
+            if ((isolations == null) || isolations.isEmpty()
+                    || (isolations.get(0).getPrecursorMz() == null))
+                continue;
+            final ChromatographyInfo rt = scan.getChromatographyInfo();
+            if ((rt == null) || (rt.getRetentionTime() == null))
+                continue;
+
+            final double q1 = isolations.get(0).getPrecursorMz();
+            final PolarityType polarity = scan.getPolarity() == null
+                    ? PolarityType.UNKNOWN : scan.getPolarity();
+            mzBuffer = scan.getMzValues(mzBuffer);
+            intensityBuffer = scan.getIntensityValues(intensityBuffer);
+            final int size = scan.getNumberOfDataPoints();
+
+            for (int i = 0; i < size; i++) {
+                final double q3 = mzBuffer[i];
+                final TransitionKey key = new TransitionKey(q1, q3, polarity);
+                Trace trace = traces.get(key);
+                if (trace == null) {
+                    if (rejected.contains(key))
+                        continue;
+                    final SrmTransition target = targets == null ? null
+                            : targets.find(q1, q3, polarity);
+                    if ((targets != null) && (target == null)) {
+                        rejected.add(key);
+                        continue;
+                    }
+                    trace = new Trace(q1, q3, polarity, target);
+                    traces.put(key, trace);
+                }
+                trace.add(s, rt, intensityBuffer[i]);
+            }
+        }
+        return traces;
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (totalItems == 0)
+            return null;
+        return (float) processedItems.get() / totalItems;
+    }
+
+    @Override
+    @Nullable
+    public List<Chromatogram> getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        this.canceled = true;
+    }
+
+    /**
+     * Identifies a transition by its rounded Q1 and Q3 values and polarity.
+     */
+    private static class TransitionKey {
+        private final long q1, q3;
+        private final PolarityType polarity;
+
+        TransitionKey(double q1, double q3, PolarityType polarity) {
+            this(Math.round(q1 / KEY_RESOLUTION),
+                    Math.round(q3 / KEY_RESOLUTION), polarity);
+        }
+
+        private TransitionKey(long q1, long q3, PolarityType polarity) {
+            this.q1 = q1;
+            this.q3 = q3;
+            this.polarity = polarity;
+        }
+
+        /**
+         * @return the key of the same Q1 and Q3 for an unknown polarity, as
+         *         used for the transitions of chromatograms
+         */
+        TransitionKey withoutPolarity() {
+            return new TransitionKey(q1, q3, PolarityType.UNKNOWN);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TransitionKey))
+                return false;
+            final TransitionKey other = (TransitionKey) o;
+            return (q1 == other.q1) && (q3 == other.q3)
+                    && (polarity == other.polarity);
+        }
+
+        @Override
+        public int hashCode() {
+            return (Long.hashCode(q1) * 31 + Long.hashCode(q3)) * 31
+                    + polarity.hashCode();
+        }
+    }
+
+    /**
+     * Data points of one transition, in the order of the scans.
+     */
+    private class Trace {
+        private final double q1, q3;
+        private final PolarityType polarity;
+        private final @Nullable SrmTransition target;
+        private ChromatographyInfo rts[] = new ChromatographyInfo[16];
+        private float intensities[] = new float[16];
+        private int size = 0, lastScan = -1;
+
+        Trace(double q1, double q3, PolarityType polarity,
+                @Nullable SrmTransition target) {
+            this.q1 = q1;
+            this.q3 = q3;
+            this.polarity = polarity;
+            this.target = target;
+        }
+
+        /**
+         * Adds a data point. Several data points of the same scan are
+         * combined into their maximum.
+         *
+         * @param scan
+         *            index of the scan, or -1 for data points of chromatograms
+         */
+        void add(int scan, ChromatographyInfo rt, float intensity) {
+            if ((scan >= 0) && (scan == lastScan)) {
+                intensities[size - 1] = Math.max(intensities[size - 1],
+                        intensity);
+                return;
+            }
+            ensureCapacity(size + 1);
+            rts[size] = rt;
+            intensities[size] = intensity;
+            size++;
+            lastScan = scan;
+        }
+
+        void append(Trace other) {
+            ensureCapacity(size + other.size);
+            System.arraycopy(other.rts, 0, rts, size, other.size);
+            System.arraycopy(other.intensities, 0, intensities, size,
+                    other.size);
+            size += other.size;
+            lastScan = other.lastScan;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= rts.length)
+                return;
+            final int n = Math.max(capacity, rts.length * 2);
+            rts = Arrays.copyOf(rts, n);
+            intensities = Arrays.copyOf(intensities, n);
+        }
+
+        Chromatogram createChromatogram(int chromatogramNumber) {
+            final Chromatogram chromatogram = MSDKObjectBuilder.getChromatogram(
+                    dataStore, chromatogramNumber, ChromatogramType.MRM_SRM,
+                    SeparationType.UNKNOWN);
+            final double mzValues[] = new double[size];
+            Arrays.fill(mzValues, q3);
+            chromatogram.setDataPoints(Arrays.copyOf(rts, size), mzValues,
+                    Arrays.copyOf(intensities, size), size);
+            chromatogram.setMz(q3);
+            chromatogram.getIsolations().add(
+                    MSDKObjectBuilder.getIsolationInfo(null, null, q1, null));
+            chromatogram.getIsolations().add(
+                    MSDKObjectBuilder.getIsolationInfo(null, null, q3, null));
+
+            final IonAnnotation ion = MSDKObjectBuilder
+                    .getSimpleIonAnnotation();
+            ion.setExpectedMz(q1);
+            ion.setAnnotationId(q1 + " > " + q3
+                    + (polarity == PolarityType.UNKNOWN ? ""
+                            : " (" + polarity + ")"));
+            if ((target != null) && (target.getName() != null))
+                ion.setDescription(target.getName());
+            chromatogram.setIonAnnotation(ion);
+            return chromatogram;
+        }
+    }
+
+    /**
+     * Target transitions sorted by Q1, for looking up the target of a
+     * measured transition.
+     */
+    private static class TargetIndex {
+        private final SrmTransition transitions[];
+        private final double q1Values[];
+        private final MZTolerance mzTolerance;
+
+        TargetIndex(List<SrmTransition> targetTransitions,
+                MZTolerance mzTolerance) {
+            this.transitions = targetTransitions
+                    .toArray(new SrmTransition[targetTransitions.size()]);
+            Arrays.sort(transitions,
+                    Comparator.comparingDouble(SrmTransition::getQ1));
+            this.q1Values = new double[transitions.length];
+            for (int i = 0; i < transitions.length; i++)
+                q1Values[i] = transitions[i].getQ1();
+            this.mzTolerance = mzTolerance;
+        }
+
+        /**
+         * @return the closest target within the m/z tolerance of both Q1 and
+         *         Q3 and of a matching polarity, or null if there is none
+         */
+        @Nullable
+        SrmTransition find(double q1, double q3, PolarityType polarity) {
+            final Range<Double> q1Range = mzTolerance.getToleranceRange(q1);
+            final Range<Double> q3Range = mzTolerance.getToleranceRange(q3);
+            int i = Arrays.binarySearch(q1Values, q1Range.lowerEndpoint());
+            if (i < 0)
+                i = -i - 1;
+            while ((i > 0) && (q1Values[i - 1] >= q1Range.lowerEndpoint()))
+                i--;
+            SrmTransition best = null;
+            double bestDistance = Double.MAX_VALUE;
+            for (; (i < transitions.length)
+                    && (q1Values[i] <= q1Range.upperEndpoint()); i++) {
+                final SrmTransition target = transitions[i];
+                if (!q3Range.contains(target.getQ3()))
+                    continue;
+                if ((polarity != PolarityType.UNKNOWN)
+                        && (target.getPolarity() != PolarityType.UNKNOWN)
+                        && (polarity != target.getPolarity()))
+                    continue;
+                final double distance = Math.abs(target.getQ1() - q1)
+                        + Math.abs(target.getQ3() - q3);
+                if (distance < bestDistance) {
+                    best = target;
+                    bestDistance = distance;
+                }
+            }
+            return best;
+        }
+    }
+
+}
@@ -33,7 +33,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
 import io.github.msdk.datamodel.ionannotations.IonAnnotation;
@@ -43,6 +42,7 @@ import io.github.msdk.datamodel.rawdata.SeparationType;
 import io.github.msdk.util.IonTypeUtil;
 import io.github.msdk.util.MZTolerance;
 import io.github.msdk.util.RTTolerance;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
@@ -171,11 +171,11 @@ public class TargetedDetectionModule implements MZmineProcessingModule {
         for (RawDataFile rawDataFile : rawDataFiles.getMatchingRawDataFiles()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getMemoryDataStore();
+            DataPointStore dataStore = MZmineCore.getMemoryGovernor()
+                    .createMemoryDataStore();
 
             // New targeted detection task which runs the following two methods:
-            // 1. TargetedDetectionMethod
+            // 1. TargetedSweepDetectionMethod
             // 2. ChromatogramToFeatureTableMethod
             TargetedDetectionTask newTask = new TargetedDetectionTask(
                     "Targeted feature detection", rawDataFile.getName(),
@@ -36,7 +36,6 @@ import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
 import io.github.msdk.datamodel.ionannotations.IonAnnotation;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.msdk.featdet.chromatogramtofeaturetable.ChromatogramToFeatureTableMethod;
-import io.github.msdk.featdet.targeteddetection.TargetedDetectionMethod;
 import io.github.msdk.util.MZTolerance;
 import io.github.msdk.util.RTTolerance;
 import io.github.mzmine.gui.MZmineGUI;
@@ -80,8 +79,10 @@ public class TargetedDetectionTask extends Task<Object> implements MZmineTask {
         this.title = title;
         this.message = message;
 
-        // Targeted detection method
-        targetedDetectionMethod = new TargetedDetectionMethod(ionAnnotations,
+        // Targeted detection method, sweeping the scans only once for all
+        // annotations
+        targetedDetectionMethod = new TargetedSweepDetectionMethod(
+                ionAnnotations,
                 rawDataFile, dataStore, mzTolerance, rtTolerance,
                 intensityTolerance, minHeight);
 
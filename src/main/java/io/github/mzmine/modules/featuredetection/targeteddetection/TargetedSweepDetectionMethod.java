@@ -0,0 +1,346 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.featuredetection.targeteddetection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.chromatograms.ChromatogramType;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+import io.github.msdk.util.MZTolerance;
+import io.github.msdk.util.RTTolerance;
+
+/**
+ * Targeted detection which sweeps the scans of a raw data file only once. The
+ * targets are sorted by the start of their RT window and kept in an active set
+ * while the sweep passes through their window. Each scan is decoded once and
+ * every active target takes its m/z window from the sorted m/z array using a
+ * binary search, so the cost per scan does not grow with the size of the whole
+ * target list.
+ */
+public class TargetedSweepDetectionMethod
+        implements MSDKMethod<List<Chromatogram>> {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull List<IonAnnotation> ionAnnotations;
+    private final @Nonnull RawDataFile rawDataFile;
+    private final @Nonnull DataPointStore dataStore;
+    private final @Nonnull MZTolerance mzTolerance;
+    private final @Nonnull RTTolerance rtTolerance;
+    private final @Nonnull Double intensityTolerance;
+    private final @Nonnull Double minHeight;
+
+    private List<Chromatogram> result;
+    private int processedScans = 0, totalScans = 0;
+    private volatile boolean canceled = false;
+
+    public TargetedSweepDetectionMethod(
+            @Nonnull List<IonAnnotation> ionAnnotations,
+            @Nonnull RawDataFile rawDataFile, @Nonnull DataPointStore dataStore,
+            @Nonnull MZTolerance mzTolerance, @Nonnull RTTolerance rtTolerance,
+            @Nonnull Double intensityTolerance, @Nonnull Double minHeight) {
+        this.ionAnnotations = ionAnnotations;
+        this.rawDataFile = rawDataFile;
+        this.dataStore = dataStore;
+        this.mzTolerance = mzTolerance;
+        this.rtTolerance = rtTolerance;
+        this.intensityTolerance = intensityTolerance;
+        this.minHeight = minHeight;
+    }
+
+    @Override
+    public List<Chromatogram> execute() throws MSDKException {
+
+        logger.info("Starting targeted detection sweep on file "
+                + rawDataFile.getName() + " with " + ionAnnotations.size()
+                + " targets");
+
+        // Prepare the targets, sorted by the start of their RT window
+        final Target targets[] = new Target[ionAnnotations.size()];
+        int numOfTargets = 0;
+        for (IonAnnotation ionAnnotation : ionAnnotations) {
+            final Double expectedMz = ionAnnotation.getExpectedMz();
+            final ChromatographyInfo expectedRt = ionAnnotation
+                    .getChromatographyInfo();
+            if (expectedMz == null || expectedRt == null
+                    || expectedRt.getRetentionTime() == null)
+                continue;
+            targets[numOfTargets] = new Target(numOfTargets, ionAnnotation,
+                    mzTolerance.getToleranceRange(expectedMz),
+                    rtTolerance.getToleranceRange(
+                            expectedRt.getRetentionTime()));
+            numOfTargets++;
+        }
+        Arrays.sort(targets, 0, numOfTargets,
+                Comparator.comparingDouble(t -> t.rtStart));
+
+        final List<MsScan> scans = rawDataFile.getScans();
+        totalScans = scans.size();
+
+        // Targets whose RT window covers the current scan, sorted by m/z
+        final List<Target> activeTargets = new ArrayList<>();
+        final Comparator<Target> mzComparator = Comparator
+                .comparingDouble(t -> t.mzStart);
+        int nextTarget = 0;
+        double mzBuffer[] = new double[10000];
+        float intensityBuffer[] = new float[10000];
+
+        for (MsScan scan : scans) {
+
+            if (canceled)
+                return null;
+
+            processedScans++;
+
+            final Integer msLevel = scan.getMsFunction().getMsLevel();
+            if (msLevel != null && msLevel != 1)
+                continue;
+
+            final ChromatographyInfo rt = scan.getChromatographyInfo();
+            if (rt == null || rt.getRetentionTime() == null)
+                continue;
+            final float rtValue = rt.getRetentionTime();
+
+            // Close the targets whose RT window has passed
+            activeTargets.removeIf(t -> t.rtEnd < rtValue);
+
+            // Open the targets whose RT window has started
+            boolean added = false;
+            while (nextTarget < numOfTargets
+                    && targets[nextTarget].rtStart <= rtValue) {
+                final Target target = targets[nextTarget++];
+                if (target.rtEnd >= rtValue) {
+                    activeTargets.add(target);
+                    added = true;
+                }
+            }
+            if (added)
+                activeTargets.sort(mzComparator);
+
+            if (activeTargets.isEmpty())
+                continue;
+
+            // Decode the scan only once for all active targets
+            mzBuffer = scan.getMzValues(mzBuffer);
+            intensityBuffer = scan.getIntensityValues(intensityBuffer);
+            final int numOfDataPoints = scan.getNumberOfDataPoints();
+
+            int searchFrom = 0;
+            for (Target target : activeTargets) {
+
+                // The active targets are sorted by m/z, so the binary search
+                // can always continue from the previous insertion point
+                int index = Arrays.binarySearch(mzBuffer, searchFrom,
+                        numOfDataPoints, target.mzStart);
+                if (index < 0)
+                    index = -index - 1;
+                while (index > searchFrom
+                        && mzBuffer[index - 1] >= target.mzStart)
+                    index--;
+                searchFrom = index;
+
+                int bestIndex = -1;
+                while (index < numOfDataPoints
+                        && mzBuffer[index] <= target.mzEnd) {
+                    if (bestIndex < 0
+                            || intensityBuffer[index] > intensityBuffer[bestIndex])
+                        bestIndex = index;
+                    index++;
+                }
+
+                if (bestIndex >= 0)
+                    target.addDataPoint(rt, mzBuffer[bestIndex],
+                            intensityBuffer[bestIndex]);
+                else
+                    target.addDataPoint(rt, target.expectedMz, 0f);
+            }
+
+        }
+
+        // Build the chromatograms, keeping the order of the input annotations
+        result = new ArrayList<>();
+        Arrays.sort(targets, 0, numOfTargets,
+                Comparator.comparingInt(t -> t.order));
+        int chromatogramNumber = 1;
+        for (int i = 0; i < numOfTargets; i++) {
+            if (canceled)
+                return null;
+            final Chromatogram chromatogram = targets[i]
+                    .buildChromatogram(chromatogramNumber);
+            if (chromatogram == null)
+                continue;
+            result.add(chromatogram);
+            chromatogramNumber++;
+        }
+
+        logger.info("Finished targeted detection sweep on file "
+                + rawDataFile.getName() + ", " + result.size()
+                + " features found");
+
+        return result;
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (totalScans == 0)
+            return null;
+        return (float) processedScans / totalScans;
+    }
+
+    @Override
+    @Nullable
+    public List<Chromatogram> getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        this.canceled = true;
+    }
+
+    /**
+     * The open chromatogram of a single target.
+     */
+    private class Target {
+
+        private final int order;
+        private final IonAnnotation ion;
+        private final double expectedMz, mzStart, mzEnd;
+        private final float expectedRt, rtStart, rtEnd;
+
+        private ChromatographyInfo rtValues[] = new ChromatographyInfo[64];
+        private double mzValues[] = new double[64];
+        private float intensityValues[] = new float[64];
+        private int size = 0;
+
+        Target(int order, IonAnnotation ion, Range<Double> mzRange,
+                Range<Float> rtRange) {
+            this.order = order;
+            this.ion = ion;
+            this.expectedMz = ion.getExpectedMz();
+            this.expectedRt = ion.getChromatographyInfo().getRetentionTime();
+            this.mzStart = mzRange.lowerEndpoint();
+            this.mzEnd = mzRange.upperEndpoint();
+            this.rtStart = rtRange.lowerEndpoint();
+            this.rtEnd = rtRange.upperEndpoint();
+        }
+
+        void addDataPoint(ChromatographyInfo rt, double mz, float intensity) {
+            if (size == rtValues.length) {
+                rtValues = Arrays.copyOf(rtValues, size * 2);
+                mzValues = Arrays.copyOf(mzValues, size * 2);
+                intensityValues = Arrays.copyOf(intensityValues, size * 2);
+            }
+            rtValues[size] = rt;
+            mzValues[size] = mz;
+            intensityValues[size] = intensity;
+            size++;
+        }
+
+        /**
+         * Crops the collected data points to the /\ shaped peak around the
+         * highest point, and creates the chromatogram. Returns null if no peak
+         * above the minimum height was found.
+         */
+        @Nullable
+        Chromatogram buildChromatogram(int chromatogramNumber) {
+
+            if (size == 0)
+                return null;
+
+            // Find the apex, preferring the point closest to the expected RT
+            int apex = 0;
+            for (int i = 1; i < size; i++) {
+                if (intensityValues[i] > intensityValues[apex]
+                        || (intensityValues[i] == intensityValues[apex]
+                                && Math.abs(rtValues[i].getRetentionTime()
+                                        - expectedRt) < Math
+                                                .abs(rtValues[apex]
+                                                        .getRetentionTime()
+                                                        - expectedRt)))
+                    apex = i;
+            }
+            if (intensityValues[apex] < minHeight)
+                return null;
+
+            // Allow the intensity to rise by the given tolerance while walking
+            // down the peak on either side
+            final double tolerance = 1.0 + intensityTolerance;
+            int start = apex;
+            while (start > 0 && intensityValues[start - 1] > 0
+                    && intensityValues[start - 1] <= intensityValues[start]
+                            * tolerance)
+                start--;
+            int end = apex;
+            while (end < size - 1 && intensityValues[end + 1] > 0
+                    && intensityValues[end + 1] <= intensityValues[end]
+                            * tolerance)
+                end++;
+
+            final int newSize = end - start + 1;
+            final ChromatographyInfo newRtValues[] = Arrays
+                    .copyOfRange(rtValues, start, end + 1);
+            final double newMzValues[] = Arrays.copyOfRange(mzValues, start,
+                    end + 1);
+            final float newIntensityValues[] = Arrays
+                    .copyOfRange(intensityValues, start, end + 1);
+
+            // Intensity weighted m/z of the peak
+            double mzSum = 0, intensitySum = 0;
+            for (int i = 0; i < newSize; i++) {
+                mzSum += newMzValues[i] * newIntensityValues[i];
+                intensitySum += newIntensityValues[i];
+            }
+            final double peakMz = intensitySum > 0 ? mzSum / intensitySum
+                    : expectedMz;
+
+            final Chromatogram chromatogram = MSDKObjectBuilder.getChromatogram(
+                    dataStore, chromatogramNumber, ChromatogramType.XIC,
+                    SeparationType.UNKNOWN);
+            chromatogram.setDataPoints(newRtValues, newMzValues,
+                    newIntensityValues, newSize);
+            chromatogram.setMz(peakMz);
+            chromatogram.setIonAnnotation(ion);
+            return chromatogram;
+        }
+    }
+
+}
@@ -310,8 +310,9 @@ public class FeatureTableModule implements MZmineRunnableModule {
         // Enable copy to clipboard
         TableUtils.addCopyHandler(treeTable, columnMap);
 
-        // Add new window with table
+        // Add new window with table and keep the table while it is shown
         MZmineGUI.addWindow(treeTable, featureTable.getName(), false);
+        MZmineGUI.retainWhileShowing(treeTable, featureTable);
 
         // Add custom table menu
         FeatureTableMenu.addCustomTableMenu(treeTable);
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.featuretableimport;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.mzmine.modules.io.columnarexport.ColumnarFormat.ColumnType;
+
+/**
+ * Growable column of parsed values. Numeric columns are kept in primitive
+ * arrays; a bitmap marks the rows which have a value.
+ */
+class ColumnBuffer {
+
+    private final @Nonnull ColumnType type;
+    private int size = 0;
+    private long notNull[];
+    private int ints[];
+    private float floats[];
+    private double doubles[];
+    private Object objects[];
+
+    ColumnBuffer(@Nonnull ColumnType type, int initialCapacity) {
+        this.type = type;
+        // The capacity is always a multiple of the bitmap word size
+        initialCapacity = Math.max(initialCapacity + 63, 64) / 64 * 64;
+        notNull = new long[initialCapacity / 64];
+        switch (type) {
+        case INT32:
+            ints = new int[initialCapacity];
+            break;
+        case FLOAT32:
+        case CHROMATOGRAPHY_INFO:
+            floats = new float[initialCapacity];
+            break;
+        case FLOAT64:
+            doubles = new double[initialCapacity];
+            break;
+        default:
+            objects = new Object[initialCapacity];
+            break;
+        }
+    }
+
+    @Nonnull
+    ColumnType getType() {
+        return type;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        final int capacity = notNull.length * 64;
+        if (size < capacity)
+            return;
+        final int newCapacity = capacity * 2;
+        notNull = Arrays.copyOf(notNull, newCapacity / 64);
+        if (ints != null)
+            ints = Arrays.copyOf(ints, newCapacity);
+        if (floats != null)
+            floats = Arrays.copyOf(floats, newCapacity);
+        if (doubles != null)
+            doubles = Arrays.copyOf(doubles, newCapacity);
+        if (objects != null)
+            objects = Arrays.copyOf(objects, newCapacity);
+    }
+
+    void addNull() {
+        grow();
+        size++;
+    }
+
+    void addInt(int value) {
+        grow();
+        ints[size] = value;
+        setNotNull();
+    }
+
+    void addFloat(float value) {
+        grow();
+        floats[size] = value;
+        setNotNull();
+    }
+
+    void addDouble(double value) {
+        grow();
+        doubles[size] = value;
+        setNotNull();
+    }
+
+    void addObject(@Nullable Object value) {
+        grow();
+        if (value == null) {
+            size++;
+            return;
+        }
+        objects[size] = value;
+        setNotNull();
+    }
+
+    private void setNotNull() {
+        notNull[size >> 6] |= 1L << (size & 63);
+        size++;
+    }
+
+    boolean isNull(int row) {
+        return (notNull[row >> 6] & (1L << (row & 63))) == 0;
+    }
+
+    int getInt(int row) {
+        return ints[row];
+    }
+
+    float getFloat(int row) {
+        return floats[row];
+    }
+
+    double getDouble(int row) {
+        return doubles[row];
+    }
+
+    Object getObject(int row) {
+        return objects[row];
+    }
+
+}
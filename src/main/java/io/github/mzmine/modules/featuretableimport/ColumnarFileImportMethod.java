@@ -0,0 +1,311 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.featuretableimport;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.chromatograms.ChromatogramType;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFeatureTableReader;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFeatureTableReader.ColumnChunk;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFeatureTableReader.ColumnInfo;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFeatureTableReader.IonAnnotationEntry;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFeatureTableReader.SampleInfo;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFormat.ColumnType;
+import io.github.mzmine.util.featuretable.ColumnValues;
+import io.github.mzmine.util.featuretable.ColumnValues.ValueType;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTable;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTableRow;
+
+/**
+ * Imports a feature table from the columnar binary format written by the
+ * columnar export module. The column chunks are mapped and decoded in
+ * parallel; the rows are then filled column by column into a
+ * {@link ColumnarFeatureTable}.
+ */
+public class ColumnarFileImportMethod implements MSDKMethod<FeatureTable> {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull File sourceFile;
+    private final @Nonnull DataPointStore dataStore;
+    private final @Nonnull List<RawDataFile> rawDataFiles;
+
+    private int processedColumns = 0, totalColumns = 0;
+    private volatile boolean canceled = false;
+    private FeatureTable result;
+
+    public ColumnarFileImportMethod(@Nonnull File sourceFile,
+            @Nonnull DataPointStore dataStore) {
+        this(sourceFile, dataStore, Collections.emptyList());
+    }
+
+    /**
+     * @param rawDataFiles
+     *            raw data files to link the samples to, matched by the raw
+     *            data file name stored with each sample
+     */
+    public ColumnarFileImportMethod(@Nonnull File sourceFile,
+            @Nonnull DataPointStore dataStore,
+            @Nonnull List<RawDataFile> rawDataFiles) {
+        this.sourceFile = sourceFile;
+        this.dataStore = dataStore;
+        this.rawDataFiles = rawDataFiles;
+    }
+
+    @Override
+    public FeatureTable execute() throws MSDKException {
+
+        logger.info("Importing columnar feature table " + sourceFile);
+
+        final ColumnarFeatureTableReader reader;
+        final List<ColumnChunk> chunks;
+        try {
+            reader = new ColumnarFeatureTableReader(sourceFile);
+            final List<ColumnInfo> columnInfos = reader.getColumns();
+            totalColumns = columnInfos.size() * 2;
+            chunks = new ArrayList<>(columnInfos.size());
+            columnInfos.parallelStream().map(info -> {
+                try {
+                    return reader.readColumn(info);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }).forEachOrdered(chunk -> {
+                chunks.add(chunk);
+                processedColumns++;
+            });
+        } catch (IOException | RuntimeException e) {
+            throw new MSDKException(
+                    e.getCause() instanceof IOException ? e.getCause() : e);
+        }
+
+        if (canceled)
+            return null;
+
+        final ColumnarFeatureTable featureTable = new ColumnarFeatureTable(
+                reader.getName(), dataStore);
+
+        // Samples are matched to raw data files by the user, like for CSV,
+        // unless the raw data files were given
+        final List<Sample> samples = new ArrayList<>();
+        for (SampleInfo sampleInfo : reader.getSamples()) {
+            Sample sample = MSDKObjectBuilder
+                    .getSimpleSample(sampleInfo.getName());
+            for (RawDataFile rawDataFile : rawDataFiles) {
+                if (rawDataFile.getName()
+                        .equals(sampleInfo.getRawDataFileName())) {
+                    sample.setRawDataFile(rawDataFile);
+                    break;
+                }
+            }
+            samples.add(sample);
+        }
+
+        final int numOfRows = reader.getNumberOfRows();
+        final ColumnChunk idChunk = findIdChunk(chunks);
+        featureTable.ensureCapacity(numOfRows);
+        final List<ColumnarFeatureTableRow> rows = new ArrayList<>(numOfRows);
+        for (int i = 0; i < numOfRows; i++) {
+            int id = (idChunk != null && !idChunk.isNull(i))
+                    ? idChunk.getInt(i) : i + 1;
+            rows.add(featureTable.createRow(id));
+        }
+
+        for (ColumnChunk chunk : chunks) {
+
+            if (canceled)
+                return null;
+
+            final ColumnInfo info = chunk.getColumn();
+            final Sample sample = info.getSampleIndex() < 0 ? null
+                    : samples.get(info.getSampleIndex());
+            final FeatureTableColumn<Object> column = FeatureTableImportUtils
+                    .createColumn(info.getName(), info.getType(), sample);
+            featureTable.addColumn(column);
+
+            // Numeric values are copied without boxing; the row indexes are
+            // the chunk positions
+            final ColumnValues values = featureTable.getValues(column);
+            for (int i = 0; i < numOfRows; i++) {
+                if (chunk.isNull(i))
+                    continue;
+                if (!setPrimitiveValue(values, chunk, i))
+                    rows.get(i).setData(column, getValue(chunk, i));
+            }
+            processedColumns++;
+        }
+
+        for (ColumnarFeatureTableRow row : rows)
+            featureTable.addRow(row);
+
+        result = featureTable;
+        return result;
+    }
+
+    private static @Nullable ColumnChunk findIdChunk(List<ColumnChunk> chunks) {
+        for (ColumnChunk chunk : chunks) {
+            ColumnInfo info = chunk.getColumn();
+            if (info.getSampleIndex() < 0
+                    && info.getName().equals(ColumnName.ID.getName())
+                    && info.getType() == ColumnType.INT32)
+                return chunk;
+        }
+        return null;
+    }
+
+    /**
+     * @return false if the value of the chunk does not match the primitive
+     *         type of the column values
+     */
+    private static boolean setPrimitiveValue(ColumnValues values,
+            ColumnChunk chunk, int row) {
+        switch (chunk.getColumn().getType()) {
+        case INT32:
+            if (values.getValueType() != ValueType.INT32)
+                return false;
+            values.setInt(row, chunk.getInt(row));
+            return true;
+        case FLOAT32:
+            if (values.getValueType() != ValueType.FLOAT32)
+                return false;
+            values.setFloat(row, chunk.getFloat(row));
+            return true;
+        case FLOAT64:
+            if (values.getValueType() != ValueType.FLOAT64)
+                return false;
+            values.setDouble(row, chunk.getDouble(row));
+            return true;
+        case CHROMATOGRAPHY_INFO:
+            if (values.getValueType() != ValueType.RETENTION_TIME)
+                return false;
+            values.setFloat(row, chunk.getFloat(row));
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private Object getValue(ColumnChunk chunk, int row) {
+        switch (chunk.getColumn().getType()) {
+        case INT32:
+            return chunk.getInt(row);
+        case FLOAT32:
+            return chunk.getFloat(row);
+        case FLOAT64:
+            return chunk.getDouble(row);
+        case CHROMATOGRAPHY_INFO:
+            return MSDKObjectBuilder.getChromatographyInfo1D(
+                    SeparationType.UNKNOWN, chunk.getFloat(row));
+        case ION_ANNOTATIONS:
+            final List<IonAnnotation> ions = new ArrayList<>();
+            for (IonAnnotationEntry entry : chunk.getIonAnnotations(row)) {
+                IonAnnotation ion = MSDKObjectBuilder.getSimpleIonAnnotation();
+                ion.setAnnotationId(entry.getAnnotationId());
+                ion.setDescription(entry.getDescription());
+                if (!Double.isNaN(entry.getExpectedMz()))
+                    ion.setExpectedMz(entry.getExpectedMz());
+                if (entry.getFormula() != null)
+                    ion.setFormula(MolecularFormulaManipulator
+                            .getMolecularFormula(entry.getFormula(),
+                                    DefaultChemObjectBuilder.getInstance()));
+                ions.add(ion);
+            }
+            return ions;
+        case CHROMATOGRAM:
+            return getChromatogram(chunk, row);
+        default:
+            return chunk.getString(row);
+        }
+    }
+
+    private Chromatogram getChromatogram(ColumnChunk chunk, int row) {
+        final int typeOrdinal = chunk.getChromatogramTypeOrdinal(row);
+        final int separationOrdinal = chunk.getSeparationTypeOrdinal(row);
+        final ChromatogramType chromatogramType = typeOrdinal < 0 ? null
+                : ChromatogramType.values()[typeOrdinal];
+        final SeparationType separationType = separationOrdinal < 0
+                ? SeparationType.UNKNOWN
+                : SeparationType.values()[separationOrdinal];
+        final Chromatogram chromatogram = MSDKObjectBuilder.getChromatogram(
+                dataStore, chunk.getChromatogramNumber(row), chromatogramType,
+                separationType);
+
+        final int size = chunk.getNumberOfDataPoints(row);
+        final float rtValues[] = new float[size];
+        final double mzValues[] = new double[size];
+        final float intensityValues[] = new float[size];
+        chunk.getDataPoints(row, rtValues, mzValues, intensityValues);
+        final ChromatographyInfo rtInfos[] = new ChromatographyInfo[size];
+        for (int i = 0; i < size; i++)
+            rtInfos[i] = MSDKObjectBuilder
+                    .getChromatographyInfo1D(separationType, rtValues[i]);
+        chromatogram.setDataPoints(rtInfos, mzValues, intensityValues, size);
+
+        final double mz = chunk.getDouble(row);
+        if (!Double.isNaN(mz))
+            chromatogram.setMz(mz);
+        return chromatogram;
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (totalColumns == 0)
+            return null;
+        return (float) processedColumns / totalColumns;
+    }
+
+    @Override
+    @Nullable
+    public FeatureTable getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        this.canceled = true;
+    }
+
+}
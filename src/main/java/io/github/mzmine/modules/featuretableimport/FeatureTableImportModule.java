@@ -20,6 +20,7 @@
 package io.github.mzmine.modules.featuretableimport;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -33,11 +34,9 @@ import com.google.common.base.Strings;
 
 import io.github.msdk.MSDKMethod;
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
-import io.github.msdk.io.csv.CsvFileImportMethod;
-import io.github.msdk.io.mztab.MzTabFileImportMethod;
 import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.modules.rawdata.rawdataimport.RawDataImportParameters;
 import io.github.mzmine.parameters.ParameterSet;
@@ -94,8 +93,8 @@ public class FeatureTableImportModule implements MZmineProcessingModule {
                 continue;
             }
 
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getTmpFileDataStore();
+            DataPointStore dataStore = MZmineCore.getMemoryGovernor()
+                    .createTmpFileDataStore();
 
             // Find file extension and initiate corresponding import method
             String fileExtension = FilenameUtils
@@ -104,10 +103,15 @@ public class FeatureTableImportModule implements MZmineProcessingModule {
             switch (fileExtension.toUpperCase()) {
             default:
             case "CSV":
-                method = new CsvFileImportMethod(fileName, dataStore);
+                method = new ParallelCsvImportMethod(fileName, dataStore);
                 break;
             case "MZTAB":
-                method = new MzTabFileImportMethod(fileName, dataStore);
+                method = new ParallelMzTabImportMethod(fileName, dataStore);
+                break;
+            case "MZFT":
+                // Link the samples to the raw data files open in the project
+                method = new ColumnarFileImportMethod(fileName, dataStore,
+                        new ArrayList<>(project.getRawDataFiles()));
                 break;
             }
             final MSDKMethod<?> finalMethod = method;
@@ -39,9 +39,11 @@ import javafx.stage.FileChooser.ExtensionFilter;
 public class FeatureTableImportParameters extends ParameterSet {
 
     private static final ExtensionFilter filters[] = new ExtensionFilter[] {
-            new ExtensionFilter("All feature table files", "*.csv", "*.mzTab"),
+            new ExtensionFilter("All feature table files", "*.csv", "*.mzTab",
+                    "*.mzft"),
             new ExtensionFilter("CSV files", "*.csv"),
             new ExtensionFilter("mzTab files", "*.mzTab"),
+            new ExtensionFilter("Columnar feature tables", "*.mzft"),
             new ExtensionFilter("All files", "*.*") };
 
     public static final FileNamesParameter fileNames = new FileNamesParameter(
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.featuretableimport;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFormat.ColumnType;
+
+/**
+ * Helpers shared by the feature table import methods.
+ */
+class FeatureTableImportUtils {
+
+    /**
+     * Creates the feature table column for the given name. Standard columns
+     * are created from their {@link ColumnName}, other columns get the data
+     * type matching the stored values.
+     */
+    @SuppressWarnings("unchecked")
+    static @Nonnull FeatureTableColumn<Object> createColumn(
+            @Nonnull String name, @Nonnull ColumnType type,
+            @Nullable Sample sample) {
+        final ColumnName columnName = findColumnName(name);
+        if (columnName != null)
+            return (FeatureTableColumn<Object>) MSDKObjectBuilder
+                    .getFeatureTableColumn(columnName, sample);
+        final Class<?> dataTypeClass;
+        switch (type) {
+        case INT32:
+            dataTypeClass = Integer.class;
+            break;
+        case FLOAT32:
+            dataTypeClass = Float.class;
+            break;
+        case FLOAT64:
+            dataTypeClass = Double.class;
+            break;
+        case CHROMATOGRAPHY_INFO:
+            dataTypeClass = ChromatographyInfo.class;
+            break;
+        case ION_ANNOTATIONS:
+            dataTypeClass = List.class;
+            break;
+        case CHROMATOGRAM:
+            dataTypeClass = Chromatogram.class;
+            break;
+        default:
+            dataTypeClass = String.class;
+            break;
+        }
+        return (FeatureTableColumn<Object>) MSDKObjectBuilder
+                .getFeatureTableColumn(name, dataTypeClass, sample);
+    }
+
+    static @Nullable ColumnName findColumnName(@Nonnull String name) {
+        for (ColumnName columnName : ColumnName.values()) {
+            if (columnName.getName().equals(name))
+                return columnName;
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.featuretableimport;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFormat.ColumnType;
+
+/**
+ * Imports a feature table from a CSV file, as written by the CSV export
+ * module. Columns of a sample are named "SampleName ColumnName". The field
+ * separator is detected from the header line.
+ */
+public class ParallelCsvImportMethod extends ParallelTextImportMethod {
+
+    private static final byte QUOTE = '"';
+    private static final String ITEM_SEPARATOR = ";";
+    private static final char SEPARATORS[] = { ',', '\t', ';' };
+
+    private byte separator = ',';
+
+    public ParallelCsvImportMethod(@Nonnull File sourceFile,
+            @Nonnull DataPointStore dataStore) {
+        super(sourceFile, dataStore);
+    }
+
+    @Override
+    protected byte getQuoteCharacter() {
+        return QUOTE;
+    }
+
+    @Override
+    protected int readHeader(@Nonnull ByteBuffer header)
+            throws MSDKException {
+
+        final String headerLine = readLine(header, 0);
+        if (headerLine.isEmpty())
+            throw new MSDKException("No header found in " + sourceFile);
+
+        // Use the separator which occurs most often in the header
+        int maxCount = 0;
+        for (char candidate : SEPARATORS) {
+            int count = 0;
+            for (int i = 0; i < headerLine.length(); i++) {
+                if (headerLine.charAt(i) == candidate)
+                    count++;
+            }
+            if (count > maxCount) {
+                maxCount = count;
+                separator = (byte) candidate;
+            }
+        }
+
+        for (String name : splitHeader(headerLine)) {
+            final ColumnName columnName = FeatureTableImportUtils
+                    .findColumnName(name);
+            if (columnName != null) {
+                columns.add(new ColumnSpec(name, -1, getColumnType(columnName)));
+                continue;
+            }
+
+            // Sample column: "SampleName ColumnName"
+            ColumnName sampleColumnName = null;
+            for (ColumnName candidate : ColumnName.values()) {
+                final String suffix = " " + candidate.getName();
+                if (name.endsWith(suffix) && name.length() > suffix.length()
+                        && (sampleColumnName == null || candidate.getName()
+                                .length() > sampleColumnName.getName()
+                                        .length()))
+                    sampleColumnName = candidate;
+            }
+            if (sampleColumnName == null) {
+                columns.add(new ColumnSpec(name, -1, ColumnType.STRING));
+                continue;
+            }
+            final String sampleName = name.substring(0, name.length()
+                    - sampleColumnName.getName().length() - 1);
+            int sampleIndex = sampleNames.indexOf(sampleName);
+            if (sampleIndex < 0) {
+                sampleIndex = sampleNames.size();
+                sampleNames.add(sampleName);
+            }
+            columns.add(new ColumnSpec(sampleColumnName.getName(), sampleIndex,
+                    getColumnType(sampleColumnName)));
+        }
+
+        return nextLine(header, 0);
+    }
+
+    private @Nonnull List<String> splitHeader(@Nonnull String line) {
+        final List<String> names = new ArrayList<>();
+        final StringBuilder name = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == QUOTE) {
+                if (quoted && i + 1 < line.length()
+                        && line.charAt(i + 1) == QUOTE) {
+                    name.append(c);
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == separator && !quoted) {
+                names.add(name.toString());
+                name.setLength(0);
+            } else {
+                name.append(c);
+            }
+        }
+        names.add(name.toString());
+        return names;
+    }
+
+    private static @Nonnull ColumnType getColumnType(
+            @Nonnull ColumnName columnName) {
+        switch (columnName) {
+        case ID:
+        case GROUPID:
+        case CHARGE:
+        case NUMBEROFDATAPOINTS:
+            return ColumnType.INT32;
+        case RT:
+            return ColumnType.CHROMATOGRAPHY_INFO;
+        case RTSTART:
+        case RTEND:
+        case DURATION:
+        case HEIGHT:
+            return ColumnType.FLOAT32;
+        case MZ:
+        case AREA:
+        case FWHM:
+        case TAILINGFACTOR:
+        case ASYMMETRYFACTOR:
+            return ColumnType.FLOAT64;
+        case IONANNOTATION:
+            return ColumnType.ION_ANNOTATIONS;
+        default:
+            return ColumnType.STRING;
+        }
+    }
+
+    @Override
+    protected void parseLine(@Nonnull ByteBuffer buffer, int start, int end,
+            @Nonnull ColumnBuffer buffers[]) {
+        int position = start;
+        for (ColumnBuffer column : buffers) {
+            if (position > end) {
+                // Missing trailing fields
+                column.addNull();
+                continue;
+            }
+            int fieldEnd;
+            if (position < end && buffer.get(position) == QUOTE) {
+                int i = position + 1;
+                while (i < end) {
+                    if (buffer.get(i) == QUOTE) {
+                        if (i + 1 < end && buffer.get(i + 1) == QUOTE) {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                final String text = decode(buffer, position + 1, i)
+                        .replace("\"\"", "\"");
+                fieldEnd = nextSeparator(buffer, i, end);
+                addText(column, text);
+            } else {
+                fieldEnd = nextSeparator(buffer, position, end);
+                if (column.getType() == ColumnType.ION_ANNOTATIONS)
+                    addText(column, isNull(buffer, position, fieldEnd) ? null
+                            : decode(buffer, position, fieldEnd));
+                else
+                    addValue(column, buffer, position, fieldEnd);
+            }
+            position = fieldEnd + 1;
+        }
+    }
+
+    private int nextSeparator(ByteBuffer buffer, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (buffer.get(i) == separator)
+                return i;
+        }
+        return end;
+    }
+
+    /**
+     * Adds a value from a quoted field, or an ion annotation cell.
+     */
+    private static void addText(@Nonnull ColumnBuffer column,
+            @Nullable String text) {
+        if (text == null || text.isEmpty()) {
+            column.addNull();
+            return;
+        }
+        try {
+            switch (column.getType()) {
+            case INT32:
+                column.addInt(Integer.parseInt(text.trim()));
+                break;
+            case FLOAT32:
+            case CHROMATOGRAPHY_INFO:
+                column.addFloat(Float.parseFloat(text.trim()));
+                break;
+            case FLOAT64:
+                column.addDouble(Double.parseDouble(text.trim()));
+                break;
+            case ION_ANNOTATIONS:
+                final List<IonAnnotation> ionAnnotations = new ArrayList<>();
+                for (String item : text.split(ITEM_SEPARATOR)) {
+                    if (item.trim().isEmpty())
+                        continue;
+                    IonAnnotation ionAnnotation = MSDKObjectBuilder
+                            .getSimpleIonAnnotation();
+                    ionAnnotation.setDescription(item.trim());
+                    ionAnnotations.add(ionAnnotation);
+                }
+                column.addObject(
+                        ionAnnotations.isEmpty() ? null : ionAnnotations);
+                break;
+            default:
+                column.addObject(text);
+                break;
+            }
+        } catch (NumberFormatException e) {
+            column.addNull();
+        }
+    }
+
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.featuretableimport;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+
+import org.apache.commons.io.FilenameUtils;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFormat.ColumnType;
+import io.github.mzmine.util.io.FastNumberParser;
+
+/**
+ * Imports the small molecule section of an mzTab 1.0 file. Every SML line
+ * becomes one feature table row; the abundances of the assays are imported as
+ * the areas of the corresponding samples.
+ */
+public class ParallelMzTabImportMethod extends ParallelTextImportMethod {
+
+    private static final Pattern ASSAY_ABUNDANCE = Pattern
+            .compile("smallmolecule_abundance_assay\\[(\\d+)\\]");
+    private static final Pattern MS_RUN_LOCATION = Pattern
+            .compile("ms_run\\[(\\d+)\\]-location");
+    private static final Pattern ASSAY_MS_RUN = Pattern
+            .compile("assay\\[(\\d+)\\]-ms_run_ref");
+    private static final Pattern MS_RUN_REF = Pattern
+            .compile("ms_run\\[(\\d+)\\]");
+    private static final Pattern STUDY_VARIABLE = Pattern
+            .compile("study_variable\\[(\\d+)\\]-(assay_refs|description)");
+
+    // Targets of the SML fields, indexes into the columns
+    private static final int SKIP = -1, IDENTIFIER = -2, FORMULA = -3,
+            DESCRIPTION = -4, CALC_MZ = -5;
+    private int fieldTargets[];
+    private int ionColumn = -1, rtColumn = -1;
+
+    public ParallelMzTabImportMethod(@Nonnull File sourceFile,
+            @Nonnull DataPointStore dataStore) {
+        super(sourceFile, dataStore);
+    }
+
+    @Override
+    protected int readHeader(@Nonnull ByteBuffer header)
+            throws MSDKException {
+
+        final Map<Integer, String> msRunLocations = new HashMap<>();
+        final Map<Integer, Integer> assayMsRuns = new HashMap<>();
+        final Map<Integer, String> studyVariableAssays = new HashMap<>();
+        final Map<Integer, String> studyVariableNames = new HashMap<>();
+        String smallMoleculeHeader = null;
+
+        int position = 0;
+        while (position < header.limit()) {
+            final String line = readLine(header, position);
+            if (line.startsWith("SML\t"))
+                break;
+            position = nextLine(header, position);
+
+            final String fields[] = line.split("\t", -1);
+            if (fields[0].equals("SMH")) {
+                smallMoleculeHeader = line;
+                continue;
+            }
+            if (!fields[0].equals("MTD") || fields.length < 3)
+                continue;
+
+            Matcher m = MS_RUN_LOCATION.matcher(fields[1]);
+            if (m.matches()) {
+                msRunLocations.put(Integer.valueOf(m.group(1)), fields[2]);
+                continue;
+            }
+            m = ASSAY_MS_RUN.matcher(fields[1]);
+            if (m.matches()) {
+                Matcher run = MS_RUN_REF.matcher(fields[2]);
+                if (run.find())
+                    assayMsRuns.put(Integer.valueOf(m.group(1)),
+                            Integer.valueOf(run.group(1)));
+                continue;
+            }
+            m = STUDY_VARIABLE.matcher(fields[1]);
+            if (m.matches()) {
+                if (m.group(2).equals("assay_refs"))
+                    studyVariableAssays.put(Integer.valueOf(m.group(1)),
+                            fields[2].trim());
+                else
+                    studyVariableNames.put(Integer.valueOf(m.group(1)),
+                            fields[2].trim());
+            }
+        }
+
+        if (smallMoleculeHeader == null)
+            throw new MSDKException(
+                    "No small molecule section found in " + sourceFile);
+
+        final String fieldNames[] = smallMoleculeHeader.split("\t", -1);
+        fieldTargets = new int[fieldNames.length];
+        final Map<Integer, Integer> assaySamples = new HashMap<>();
+
+        for (int f = 0; f < fieldNames.length; f++) {
+            final String fieldName = fieldNames[f].trim();
+            fieldTargets[f] = SKIP;
+            switch (fieldName) {
+            case "identifier":
+                fieldTargets[f] = IDENTIFIER;
+                continue;
+            case "chemical_formula":
+                fieldTargets[f] = FORMULA;
+                continue;
+            case "description":
+                fieldTargets[f] = DESCRIPTION;
+                continue;
+            case "calc_mass_to_charge":
+                fieldTargets[f] = CALC_MZ;
+                continue;
+            case "exp_mass_to_charge":
+                fieldTargets[f] = addColumn(ColumnName.MZ, -1,
+                        ColumnType.FLOAT64);
+                continue;
+            case "charge":
+                fieldTargets[f] = addColumn(ColumnName.CHARGE, -1,
+                        ColumnType.INT32);
+                continue;
+            case "retention_time":
+                rtColumn = addColumn(ColumnName.RT, -1,
+                        ColumnType.CHROMATOGRAPHY_INFO);
+                fieldTargets[f] = rtColumn;
+                continue;
+            }
+
+            final Matcher m = ASSAY_ABUNDANCE.matcher(fieldName);
+            if (!m.matches())
+                continue;
+            final int assay = Integer.parseInt(m.group(1));
+            final String sampleName = getSampleName(assay, msRunLocations,
+                    assayMsRuns, studyVariableAssays, studyVariableNames);
+            assaySamples.put(assay, sampleNames.size());
+            sampleNames.add(sampleName);
+            fieldTargets[f] = addColumn(ColumnName.AREA,
+                    assaySamples.get(assay), ColumnType.FLOAT64);
+        }
+
+        ionColumn = addColumn(ColumnName.IONANNOTATION, -1,
+                ColumnType.ION_ANNOTATIONS);
+
+        return position;
+    }
+
+    private int addColumn(ColumnName columnName, int sampleIndex,
+            ColumnType type) {
+        columns.add(new ColumnSpec(columnName.getName(), sampleIndex, type));
+        return columns.size() - 1;
+    }
+
+    /**
+     * The sample of an assay is named after the study variable which
+     * references only that assay, otherwise after the file of its MS run.
+     */
+    private static String getSampleName(int assay,
+            Map<Integer, String> msRunLocations,
+            Map<Integer, Integer> assayMsRuns,
+            Map<Integer, String> studyVariableAssays,
+            Map<Integer, String> studyVariableNames) {
+        final String assayRef = "assay[" + assay + "]";
+        for (Map.Entry<Integer, String> e : studyVariableAssays.entrySet()) {
+            if (e.getValue().equals(assayRef)
+                    && studyVariableNames.containsKey(e.getKey()))
+                return studyVariableNames.get(e.getKey());
+        }
+        final Integer msRun = assayMsRuns.getOrDefault(assay, assay);
+        final String location = msRunLocations.get(msRun);
+        if (location != null)
+            return FilenameUtils.getBaseName(location);
+        return assayRef;
+    }
+
+    @Override
+    protected void parseLine(@Nonnull ByteBuffer buffer, int start, int end,
+            @Nonnull ColumnBuffer buffers[]) {
+
+        // Only the small molecule lines hold data
+        if (end - start < 4 || buffer.get(start) != 'S'
+                || buffer.get(start + 1) != 'M'
+                || buffer.get(start + 2) != 'L'
+                || buffer.get(start + 3) != '\t')
+            return;
+
+        final boolean filled[] = new boolean[buffers.length];
+        String identifier = null, formula = null, description = null;
+        double calcMz = Double.NaN;
+
+        int position = start, field = 0;
+        while (position <= end && field < fieldTargets.length) {
+            int fieldEnd = position;
+            while (fieldEnd < end && buffer.get(fieldEnd) != '\t')
+                fieldEnd++;
+
+            final int target = fieldTargets[field];
+            final boolean empty = isNull(buffer, position, fieldEnd);
+            switch (target) {
+            case SKIP:
+                break;
+            case IDENTIFIER:
+                identifier = empty ? null : decode(buffer, position, fieldEnd);
+                break;
+            case FORMULA:
+                formula = empty ? null : decode(buffer, position, fieldEnd);
+                break;
+            case DESCRIPTION:
+                description = empty ? null
+                        : decode(buffer, position, fieldEnd);
+                break;
+            case CALC_MZ:
+                if (!empty) {
+                    try {
+                        calcMz = FastNumberParser.parseDouble(buffer,
+                                position, fieldEnd);
+                    } catch (NumberFormatException e) {
+                        // Leave the expected m/z unset
+                    }
+                }
+                break;
+            default:
+                int valueEnd = fieldEnd;
+                // Retention times may list several values separated by '|'
+                if (target == rtColumn) {
+                    for (int i = position; i < fieldEnd; i++) {
+                        if (buffer.get(i) == '|') {
+                            valueEnd = i;
+                            break;
+                        }
+                    }
+                }
+                addValue(buffers[target], buffer, position, valueEnd);
+                filled[target] = true;
+                break;
+            }
+            position = fieldEnd + 1;
+            field++;
+        }
+
+        // Ion annotation
+        if (identifier != null || description != null || formula != null) {
+            final IonAnnotation ionAnnotation = MSDKObjectBuilder
+                    .getSimpleIonAnnotation();
+            ionAnnotation.setAnnotationId(identifier);
+            ionAnnotation.setDescription(description);
+            if (!Double.isNaN(calcMz))
+                ionAnnotation.setExpectedMz(calcMz);
+            if (formula != null)
+                ionAnnotation.setFormula(MolecularFormulaManipulator
+                        .getMolecularFormula(formula,
+                                DefaultChemObjectBuilder.getInstance()));
+            buffers[ionColumn].addObject(
+                    new ArrayList<>(Collections.singletonList(ionAnnotation)));
+        } else {
+            buffers[ionColumn].addNull();
+        }
+        filled[ionColumn] = true;
+
+        // Missing trailing fields
+        for (int i = 0; i < buffers.length; i++) {
+            if (!filled[i])
+                buffers[i].addNull();
+        }
+    }
+
+}
@@ -0,0 +1,504 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.featuretableimport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFormat.ColumnType;
+import io.github.mzmine.util.featuretable.ColumnValues;
+import io.github.mzmine.util.featuretable.ColumnValues.ValueType;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTable;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTableRow;
+import io.github.mzmine.util.io.FastNumberParser;
+
+/**
+ * Base class of the text feature table import methods. The file is memory
+ * mapped and split into chunks at line boundaries; the chunks are parsed in
+ * parallel into primitive column buffers and a {@link ColumnarFeatureTable}
+ * is assembled from the chunks in file order.
+ * 
+ * Subclasses read the header, which defines the columns, and parse single
+ * data lines.
+ */
+public abstract class ParallelTextImportMethod
+        implements MSDKMethod<FeatureTable> {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final int MAX_HEADER_LENGTH = 64 << 20;
+    private static final long MIN_CHUNK_LENGTH = 1 << 20;
+    private static final long MAX_CHUNK_LENGTH = 32 << 20;
+    private static final long PROGRESS_STEP = 1 << 20;
+
+    protected final @Nonnull File sourceFile;
+    private final @Nonnull DataPointStore dataStore;
+
+    /**
+     * Sample names and columns, defined by {@link #readHeader(ByteBuffer)}.
+     */
+    protected final @Nonnull List<String> sampleNames = new ArrayList<>();
+    protected final @Nonnull List<ColumnSpec> columns = new ArrayList<>();
+
+    private final AtomicLong consumedBytes = new AtomicLong();
+    private long totalBytes = 0;
+    private volatile boolean canceled = false;
+    private FeatureTable result;
+
+    public ParallelTextImportMethod(@Nonnull File sourceFile,
+            @Nonnull DataPointStore dataStore) {
+        this.sourceFile = sourceFile;
+        this.dataStore = dataStore;
+    }
+
+    /**
+     * Reads the header from the beginning of the file and fills the sample
+     * names and columns.
+     * 
+     * @return offset of the first data line
+     */
+    protected abstract int readHeader(@Nonnull ByteBuffer header)
+            throws MSDKException;
+
+    /**
+     * Parses a single line, not including the line break. Either one value is
+     * added to each of the buffers, or none if the line holds no data.
+     */
+    protected abstract void parseLine(@Nonnull ByteBuffer buffer, int start,
+            int end, @Nonnull ColumnBuffer buffers[]);
+
+    /**
+     * @return the character used to quote fields which may contain line
+     *         breaks, or 0 if the format has no quoting
+     */
+    protected byte getQuoteCharacter() {
+        return 0;
+    }
+
+    @Override
+    public FeatureTable execute() throws MSDKException {
+
+        logger.info("Started parsing file " + sourceFile);
+
+        final List<ParsedChunk> chunks;
+        try (FileChannel channel = FileChannel.open(sourceFile.toPath(),
+                StandardOpenOption.READ)) {
+
+            totalBytes = channel.size();
+            final ByteBuffer header = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(totalBytes, MAX_HEADER_LENGTH));
+            final long dataStart = readHeader(header);
+            consumedBytes.set(dataStart);
+
+            // Split the data at line breaks
+            final List<Long> boundaries = findChunkBoundaries(channel,
+                    dataStart, totalBytes);
+            chunks = new ArrayList<>(IntStream
+                    .range(0, boundaries.size() - 1).parallel()
+                    .mapToObj(i -> parseChunk(channel, boundaries.get(i),
+                            boundaries.get(i + 1),
+                            i == boundaries.size() - 2))
+                    .collect(Collectors.toList()));
+
+            if (canceled)
+                return null;
+
+            // A chunk which ends inside a quoted field was split at a line
+            // break within that field. The following chunk was parsed from a
+            // wrong starting point, so both are parsed again as one.
+            for (int i = 0; i < chunks.size() - 1; i++) {
+                final ParsedChunk chunk = chunks.get(i);
+                if (!chunk.incomplete)
+                    continue;
+                final ParsedChunk next = chunks.remove(i + 1);
+                chunks.set(i, parseChunk(channel, chunk.start, next.end,
+                        i == chunks.size() - 1));
+                i--;
+            }
+
+        } catch (IOException | UncheckedIOException e) {
+            throw new MSDKException(e);
+        }
+
+        if (canceled)
+            return null;
+
+        result = assembleFeatureTable(chunks);
+        logger.info("Finished parsing " + sourceFile + ", parsed "
+                + result.getRows().size() + " rows");
+        return result;
+    }
+
+    private @Nonnull List<Long> findChunkBoundaries(
+            @Nonnull FileChannel channel, long dataStart, long dataEnd)
+            throws IOException {
+        final int parallelism = Runtime.getRuntime().availableProcessors();
+        final long chunkLength = Math.max(MIN_CHUNK_LENGTH, Math.min(
+                MAX_CHUNK_LENGTH, (dataEnd - dataStart) / (4 * parallelism)));
+
+        final List<Long> boundaries = new ArrayList<>();
+        boundaries.add(dataStart);
+        long position = dataStart + chunkLength;
+        final ByteBuffer window = ByteBuffer.allocate(64 << 10);
+        while (position < dataEnd) {
+            // Move the boundary just behind the next line break
+            long lineEnd = -1;
+            for (long p = position; p < dataEnd && lineEnd < 0;) {
+                window.clear();
+                final int read = channel.read(window, p);
+                if (read <= 0)
+                    break;
+                for (int i = 0; i < read; i++) {
+                    if (window.get(i) == '\n') {
+                        lineEnd = p + i + 1;
+                        break;
+                    }
+                }
+                p += read;
+            }
+            if (lineEnd < 0 || lineEnd >= dataEnd)
+                break;
+            boundaries.add(lineEnd);
+            position = lineEnd + chunkLength;
+        }
+        boundaries.add(dataEnd);
+        return boundaries;
+    }
+
+    private @Nonnull ParsedChunk parseChunk(@Nonnull FileChannel channel,
+            long start, long end, boolean lastChunk) {
+
+        final ColumnBuffer buffers[] = new ColumnBuffer[columns.size()];
+        // Assume about 8 bytes per cell; the buffers grow if needed
+        final int estimatedRows = (int) Math.min(1 << 20,
+                (end - start) / (8 * Math.max(1, columns.size())));
+        for (int i = 0; i < buffers.length; i++)
+            buffers[i] = new ColumnBuffer(columns.get(i).type, estimatedRows);
+        final ParsedChunk chunk = new ParsedChunk(start, end, buffers);
+        if (canceled || end <= start)
+            return chunk;
+
+        final ByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        final byte quote = getQuoteCharacter();
+        final int length = buffer.limit();
+        boolean quoted = false;
+        int lineStart = 0, reported = 0;
+        for (int i = 0; i < length; i++) {
+            final byte b = buffer.get(i);
+            if (quote != 0 && b == quote) {
+                quoted = !quoted;
+            } else if (b == '\n' && !quoted) {
+                int lineEnd = i;
+                if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r')
+                    lineEnd--;
+                if (lineEnd > lineStart)
+                    parseLine(buffer, lineStart, lineEnd, buffers);
+                lineStart = i + 1;
+
+                if (lineStart - reported >= PROGRESS_STEP) {
+                    if (canceled)
+                        return chunk;
+                    consumedBytes.addAndGet(lineStart - reported);
+                    reported = lineStart;
+                }
+            }
+        }
+
+        if (lineStart < length) {
+            if (quoted && !lastChunk)
+                chunk.incomplete = true;
+            else
+                parseLine(buffer, lineStart, length, buffers);
+        }
+        consumedBytes.addAndGet(length - reported);
+        return chunk;
+    }
+
+    private @Nonnull FeatureTable assembleFeatureTable(
+            @Nonnull List<ParsedChunk> chunks) {
+
+        final ColumnarFeatureTable featureTable = new ColumnarFeatureTable(
+                sourceFile.getName(), dataStore);
+
+        final List<Sample> samples = new ArrayList<>();
+        for (String sampleName : sampleNames)
+            samples.add(MSDKObjectBuilder.getSimpleSample(sampleName));
+
+        final List<FeatureTableColumn<Object>> tableColumns = new ArrayList<>();
+        final List<ColumnValues> columnValues = new ArrayList<>();
+        int idColumn = -1;
+        for (int c = 0; c < columns.size(); c++) {
+            final ColumnSpec spec = columns.get(c);
+            final Sample sample = spec.sampleIndex < 0 ? null
+                    : samples.get(spec.sampleIndex);
+            final FeatureTableColumn<Object> column = FeatureTableImportUtils
+                    .createColumn(spec.name, spec.type, sample);
+            tableColumns.add(column);
+            featureTable.addColumn(column);
+            columnValues.add(featureTable.getValues(column));
+            if (sample == null && spec.type == ColumnType.INT32
+                    && spec.name.equals(ColumnName.ID.getName()))
+                idColumn = c;
+        }
+
+        int totalRows = 0;
+        for (ParsedChunk chunk : chunks)
+            totalRows += chunk.buffers.length == 0 ? 0
+                    : chunk.buffers[0].size();
+        featureTable.ensureCapacity(totalRows);
+
+        // Numeric values are copied from the buffers without boxing
+        int rowNumber = 0;
+        for (ParsedChunk chunk : chunks) {
+            final ColumnBuffer buffers[] = chunk.buffers;
+            final int numOfRows = buffers.length == 0 ? 0 : buffers[0].size();
+            for (int r = 0; r < numOfRows; r++) {
+                rowNumber++;
+                final int id = (idColumn >= 0 && !buffers[idColumn].isNull(r))
+                        ? buffers[idColumn].getInt(r) : rowNumber;
+                final ColumnarFeatureTableRow row = featureTable.createRow(id);
+                for (int c = 0; c < buffers.length; c++) {
+                    if (buffers[c].isNull(r))
+                        continue;
+                    if (!setPrimitiveValue(columnValues.get(c),
+                            row.getIndex(), buffers[c], r))
+                        row.setData(tableColumns.get(c),
+                                getValue(buffers[c], r));
+                }
+                featureTable.addRow(row);
+            }
+        }
+
+        return featureTable;
+    }
+
+    /**
+     * @return false if the value of the buffer does not match the primitive
+     *         type of the column values
+     */
+    private static boolean setPrimitiveValue(ColumnValues values, int index,
+            ColumnBuffer buffer, int row) {
+        switch (buffer.getType()) {
+        case INT32:
+            if (values.getValueType() != ValueType.INT32)
+                return false;
+            values.setInt(index, buffer.getInt(row));
+            return true;
+        case FLOAT32:
+            if (values.getValueType() != ValueType.FLOAT32)
+                return false;
+            values.setFloat(index, buffer.getFloat(row));
+            return true;
+        case FLOAT64:
+            if (values.getValueType() != ValueType.FLOAT64)
+                return false;
+            values.setDouble(index, buffer.getDouble(row));
+            return true;
+        case CHROMATOGRAPHY_INFO:
+            if (values.getValueType() != ValueType.RETENTION_TIME)
+                return false;
+            values.setFloat(index, buffer.getFloat(row));
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static Object getValue(ColumnBuffer buffer, int row) {
+        switch (buffer.getType()) {
+        case INT32:
+            return buffer.getInt(row);
+        case FLOAT32:
+            return buffer.getFloat(row);
+        case FLOAT64:
+            return buffer.getDouble(row);
+        case CHROMATOGRAPHY_INFO:
+            return MSDKObjectBuilder.getChromatographyInfo1D(
+                    SeparationType.UNKNOWN, buffer.getFloat(row));
+        default:
+            return buffer.getObject(row);
+        }
+    }
+
+    /**
+     * Parses the bytes between start and end into the buffer according to its
+     * type. Empty cells, "null" and values which cannot be parsed are added
+     * as null. Ion annotation columns must be filled by the subclass.
+     */
+    protected static void addValue(@Nonnull ColumnBuffer column,
+            @Nonnull ByteBuffer buffer, int start, int end) {
+        if (isNull(buffer, start, end)) {
+            column.addNull();
+            return;
+        }
+        try {
+            switch (column.getType()) {
+            case INT32:
+                column.addInt(FastNumberParser.parseInt(buffer, start, end));
+                break;
+            case FLOAT32:
+            case CHROMATOGRAPHY_INFO:
+                column.addFloat((float) FastNumberParser.parseDouble(buffer,
+                        start, end));
+                break;
+            case FLOAT64:
+                column.addDouble(
+                        FastNumberParser.parseDouble(buffer, start, end));
+                break;
+            default:
+                column.addObject(decode(buffer, start, end));
+                break;
+            }
+        } catch (NumberFormatException e) {
+            column.addNull();
+        }
+    }
+
+    protected static boolean isNull(@Nonnull ByteBuffer buffer, int start,
+            int end) {
+        if (start >= end)
+            return true;
+        return end - start == 4 && buffer.get(start) == 'n'
+                && buffer.get(start + 1) == 'u'
+                && buffer.get(start + 2) == 'l'
+                && buffer.get(start + 3) == 'l';
+    }
+
+    protected static @Nonnull String decode(@Nonnull ByteBuffer buffer,
+            int start, int end) {
+        final byte bytes[] = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = buffer.get(start + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the offset just behind the next line break at or after from, or
+     *         the limit of the buffer
+     */
+    protected static int nextLine(@Nonnull ByteBuffer buffer, int from) {
+        final int limit = buffer.limit();
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == '\n')
+                return i + 1;
+        }
+        return limit;
+    }
+
+    /**
+     * @return the line starting at the given offset, without the line break
+     */
+    protected static @Nonnull String readLine(@Nonnull ByteBuffer buffer,
+            int from) {
+        int end = nextLine(buffer, from);
+        if (end > from && buffer.get(end - 1) == '\n')
+            end--;
+        if (end > from && buffer.get(end - 1) == '\r')
+            end--;
+        return decode(buffer, from, end);
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (totalBytes == 0)
+            return null;
+        // Chunks which are parsed twice are counted twice
+        return Math.min(1f, (float) consumedBytes.get() / totalBytes);
+    }
+
+    @Override
+    @Nullable
+    public FeatureTable getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        this.canceled = true;
+    }
+
+    /**
+     * Column of the imported feature table.
+     */
+    protected static class ColumnSpec {
+        private final @Nonnull String name;
+        private final int sampleIndex;
+        private final @Nonnull ColumnType type;
+
+        /**
+         * @param sampleIndex
+         *            index into the sample names, or -1 for columns without
+         *            a sample
+         */
+        protected ColumnSpec(@Nonnull String name, int sampleIndex,
+                @Nonnull ColumnType type) {
+            this.name = name;
+            this.sampleIndex = sampleIndex;
+            this.type = type;
+        }
+    }
+
+    private static class ParsedChunk {
+        private final long start, end;
+        private final ColumnBuffer buffers[];
+        private boolean incomplete = false;
+
+        ParsedChunk(long start, long end, ColumnBuffer buffers[]) {
+            this.start = start;
+            this.end = end;
+            this.buffers = buffers;
+        }
+    }
+
+}
@@ -0,0 +1,700 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package io.github.mzmine.modules.filtering.combinedfilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.util.MZTolerance;
+import io.github.msdk.util.RTTolerance;
+import io.github.mzmine.util.featuretable.ColumnValues;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTable;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTableRow;
+
+/**
+ * Applies the feature filters and the row filters to a feature table in one
+ * pass. The rows are evaluated in parallel chunks; for each row, the features
+ * of all samples are checked first, and the row filters are then checked on
+ * the features which passed. A feature which fails is removed from its row,
+ * and a row without any remaining feature is removed. Duplicate rows are
+ * removed after the pass, keeping the row with the largest total area.
+ * 
+ * The new table is either a {@link ColumnarFeatureTable} with copies of the
+ * rows which pass, or, in move mode, has the row objects of the original
+ * table itself; only rows which lost a feature are copied then. The feature
+ * values of a columnar table are read and copied without creating objects. In
+ * both cases the object values, including the chromatograms, are shared with
+ * the original table, so the original table must stay alive as long as the
+ * new one.
+ */
+public class CombinedFilterMethod implements MSDKMethod<FeatureTable> {
+
+    /**
+     * Range filters of the features, each set to null if not enabled
+     */
+    public static class FeatureFilters {
+        public Range<Double> duration, area, height, fwhm, tailingFactor,
+                asymmetryFactor;
+        public Range<Integer> dataPoints;
+
+        boolean isEnabled() {
+            return (duration != null) || (area != null) || (height != null)
+                    || (fwhm != null) || (tailingFactor != null)
+                    || (asymmetryFactor != null) || (dataPoints != null);
+        }
+    }
+
+    /**
+     * Filters of the rows, each set to null if not enabled
+     */
+    public static class RowFilters {
+        public Range<Double> mz, rtMinutes, durationSeconds;
+        /**
+         * Values below 1 are a fraction of the number of samples, the count
+         * is rounded down
+         */
+        public Double minCount;
+        public Integer minIsotopes;
+        public String ionAnnotation;
+        public boolean requireAnnotation;
+        public MZTolerance duplicateMzTolerance;
+        public RTTolerance duplicateRtTolerance;
+        public boolean duplicateRequireSameId;
+
+        boolean isEnabled() {
+            return (mz != null) || (rtMinutes != null)
+                    || (durationSeconds != null) || (minCount != null)
+                    || (minIsotopes != null) || (ionAnnotation != null)
+                    || requireAnnotation || (duplicateMzTolerance != null);
+        }
+    }
+
+    // Number of rows evaluated as one unit of work
+    private static final int CHUNK_SIZE = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull FeatureTable featureTable;
+    private final @Nonnull DataPointStore dataStore;
+    private final @Nonnull FeatureFilters featureFilters;
+    private final @Nonnull RowFilters rowFilters;
+    private final @Nonnull String nameSuffix;
+    private final boolean moveRows;
+
+    private FeatureTableColumn<Integer> groupIdColumn;
+    private int minCount;
+
+    private FeatureTable result;
+    private final AtomicInteger processedRows = new AtomicInteger();
+    private int totalRows = 0;
+    private volatile boolean canceled = false;
+
+    /**
+     * @param moveRows
+     *            if true, the new table takes the columns and the row objects
+     *            of the original table instead of copies
+     */
+    public CombinedFilterMethod(@Nonnull FeatureTable featureTable,
+            @Nonnull DataPointStore dataStore,
+            @Nonnull FeatureFilters featureFilters,
+            @Nonnull RowFilters rowFilters, @Nonnull String nameSuffix,
+            boolean moveRows) {
+        this.featureTable = featureTable;
+        this.dataStore = dataStore;
+        this.featureFilters = featureFilters;
+        this.rowFilters = rowFilters;
+        this.nameSuffix = nameSuffix;
+        this.moveRows = moveRows;
+    }
+
+    @Override
+    public FeatureTable execute() throws MSDKException {
+
+        logger.info("Started combined filter on " + featureTable.getName());
+
+        final List<FeatureTableRow> rows = featureTable.getRows();
+        final List<Sample> samples = featureTable.getSamples();
+        totalRows = rows.size();
+
+        // Columns of the features in each sample
+        final int numOfSamples = samples.size();
+        final FeatureColumns featureColumns[] = new FeatureColumns[numOfSamples];
+        for (int s = 0; s < numOfSamples; s++)
+            featureColumns[s] = new FeatureColumns(featureTable,
+                    samples.get(s));
+        final FeatureTableColumn<List<IonAnnotation>> ionAnnotationColumn = featureTable
+                .getColumn(ColumnName.IONANNOTATION, null);
+        groupIdColumn = featureTable.getColumn(ColumnName.GROUPID, null);
+        if (rowFilters.minCount != null) {
+            minCount = (int) ((rowFilters.minCount < 1)
+                    ? numOfSamples * rowFilters.minCount
+                    : rowFilters.minCount);
+        }
+        final Map<Integer, Integer> isotopePatternSizes = getIsotopePatternSizes(
+                rows);
+
+        // The evaluation pass: which rows are kept, and which of their
+        // features; a feature which is not present is not removed
+        final boolean keptRows[] = new boolean[rows.size()];
+        final boolean keptFeatures[] = new boolean[rows.size()
+                * numOfSamples];
+        final int numOfChunks = (rows.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, numOfChunks).parallel().forEach(chunk -> {
+            final int end = Math.min(rows.size(), (chunk + 1) * CHUNK_SIZE);
+            for (int r = chunk * CHUNK_SIZE; r < end; r++) {
+                if (canceled)
+                    return;
+                keptRows[r] = evaluateRow(rows.get(r), r, featureColumns,
+                        ionAnnotationColumn, isotopePatternSizes,
+                        keptFeatures);
+            }
+            processedRows.addAndGet(end - chunk * CHUNK_SIZE);
+        });
+
+        if (canceled)
+            return null;
+
+        if ((rowFilters.duplicateMzTolerance != null)
+                && (rowFilters.duplicateRtTolerance != null))
+            removeDuplicates(rows, keptRows, keptFeatures, featureColumns,
+                    ionAnnotationColumn);
+
+        result = createFeatureTable(rows, keptRows, keptFeatures,
+                featureColumns);
+
+        logger.info("Finished combined filter on " + featureTable.getName()
+                + ", " + result.getRows().size() + " of " + rows.size()
+                + " rows kept");
+        return result;
+    }
+
+    /**
+     * @return true if the row passes all filters; the features which pass
+     *         are marked in keptFeatures
+     */
+    private boolean evaluateRow(@Nonnull FeatureTableRow row, int rowIndex,
+            @Nonnull FeatureColumns featureColumns[],
+            @Nullable FeatureTableColumn<List<IonAnnotation>> ionAnnotationColumn,
+            @Nonnull Map<Integer, Integer> isotopePatternSizes,
+            @Nonnull boolean keptFeatures[]) {
+
+        // Feature filters
+        int count = 0;
+        double durationSum = 0;
+        int durationCount = 0;
+        for (int s = 0; s < featureColumns.length; s++) {
+            if (!featureColumns[s].isPresent(row)) {
+                keptFeatures[rowIndex * featureColumns.length + s] = true;
+                continue;
+            }
+            if (!featureColumns[s].passes(row, featureFilters))
+                continue;
+            keptFeatures[rowIndex * featureColumns.length + s] = true;
+            count++;
+            final double duration = featureColumns[s].getDouble(row,
+                    featureColumns[s].duration);
+            if (!Double.isNaN(duration)) {
+                durationSum += duration;
+                durationCount++;
+            }
+        }
+        if (featureFilters.isEnabled() && (count == 0))
+            return false;
+
+        // Row filters, on the remaining features
+        if (rowFilters.mz != null) {
+            final Double mz = row.getMz();
+            if ((mz == null) || !rowFilters.mz.contains(mz))
+                return false;
+        }
+        if (rowFilters.rtMinutes != null) {
+            final ChromatographyInfo rt = row.getChromatographyInfo();
+            if ((rt == null) || (rt.getRetentionTime() == null)
+                    || !rowFilters.rtMinutes
+                            .contains(rt.getRetentionTime() / 60.0))
+                return false;
+        }
+        if (rowFilters.durationSeconds != null) {
+            if ((durationCount == 0) || !rowFilters.durationSeconds
+                    .contains(durationSum / durationCount))
+                return false;
+        }
+        if ((rowFilters.minCount != null) && (count < minCount))
+            return false;
+        if (rowFilters.minIsotopes != null) {
+            final Integer groupId = (groupIdColumn == null) ? null
+                    : row.getData(groupIdColumn);
+            final int size = (groupId == null) ? 1
+                    : isotopePatternSizes.getOrDefault(groupId, 1);
+            if (size < rowFilters.minIsotopes)
+                return false;
+        }
+        if ((rowFilters.ionAnnotation != null)
+                || rowFilters.requireAnnotation) {
+            final List<IonAnnotation> annotations = (ionAnnotationColumn == null)
+                    ? null : row.getData(ionAnnotationColumn);
+            if (!passesAnnotationFilters(annotations))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean passesAnnotationFilters(
+            @Nullable List<IonAnnotation> annotations) {
+        boolean identified = false, textFound = false;
+        if (annotations != null) {
+            for (IonAnnotation annotation : annotations) {
+                if (annotation.isNA())
+                    continue;
+                identified = true;
+                final String description = annotation.getDescription();
+                if ((rowFilters.ionAnnotation != null) && (description != null)
+                        && description.toLowerCase().contains(
+                                rowFilters.ionAnnotation.toLowerCase()))
+                    textFound = true;
+            }
+        }
+        if (rowFilters.requireAnnotation && !identified)
+            return false;
+        if ((rowFilters.ionAnnotation != null) && !textFound)
+            return false;
+        return true;
+    }
+
+    /**
+     * @return the number of rows per group ID, i.e. the number of peaks in
+     *         each isotope pattern found by the isotope grouper
+     */
+    private @Nonnull Map<Integer, Integer> getIsotopePatternSizes(
+            @Nonnull List<FeatureTableRow> rows) {
+        final Map<Integer, Integer> sizes = new HashMap<>();
+        if ((rowFilters.minIsotopes == null) || (groupIdColumn == null))
+            return sizes;
+        for (FeatureTableRow row : rows) {
+            final Integer groupId = row.getData(groupIdColumn);
+            if (groupId != null)
+                sizes.merge(groupId, 1, Integer::sum);
+        }
+        return sizes;
+    }
+
+    /**
+     * Removes the kept rows which are duplicates of another kept row with a
+     * larger total area. The candidates of each row are looked up in the rows
+     * sorted by m/z.
+     */
+    private void removeDuplicates(@Nonnull List<FeatureTableRow> rows,
+            @Nonnull boolean keptRows[], @Nonnull boolean keptFeatures[],
+            @Nonnull FeatureColumns featureColumns[],
+            @Nullable FeatureTableColumn<List<IonAnnotation>> ionAnnotationColumn) {
+
+        final List<Integer> candidates = new ArrayList<>();
+        for (int r = 0; r < rows.size(); r++) {
+            if (keptRows[r] && (rows.get(r).getMz() != null))
+                candidates.add(r);
+        }
+        final double totalAreas[] = new double[rows.size()];
+        for (int r : candidates) {
+            for (int s = 0; s < featureColumns.length; s++) {
+                if (!keptFeatures[r * featureColumns.length + s])
+                    continue;
+                final double area = featureColumns[s].getDouble(rows.get(r),
+                        featureColumns[s].area);
+                if (!Double.isNaN(area))
+                    totalAreas[r] += area;
+            }
+        }
+
+        final Integer byMz[] = candidates.toArray(new Integer[0]);
+        Arrays.sort(byMz, Comparator.comparingDouble(r -> rows.get(r).getMz()));
+        final double sortedMz[] = new double[byMz.length];
+        for (int i = 0; i < byMz.length; i++)
+            sortedMz[i] = rows.get(byMz[i]).getMz();
+
+        candidates.sort(Comparator
+                .comparingDouble((Integer r) -> -totalAreas[r])
+                .thenComparingInt(r -> r));
+        for (int r : candidates) {
+            if (canceled)
+                return;
+            if (!keptRows[r])
+                continue;
+            final FeatureTableRow row = rows.get(r);
+            final Range<Double> mzRange = rowFilters.duplicateMzTolerance
+                    .getToleranceRange(row.getMz());
+            int i = Arrays.binarySearch(sortedMz, mzRange.lowerEndpoint());
+            if (i < 0)
+                i = -i - 1;
+            while ((i > 0) && (sortedMz[i - 1] >= mzRange.lowerEndpoint()))
+                i--;
+            for (; (i < byMz.length)
+                    && (sortedMz[i] <= mzRange.upperEndpoint()); i++) {
+                final int other = byMz[i];
+                if ((other == r) || !keptRows[other])
+                    continue;
+                if (isDuplicate(row, rows.get(other), ionAnnotationColumn))
+                    keptRows[other] = false;
+            }
+        }
+    }
+
+    private boolean isDuplicate(@Nonnull FeatureTableRow row,
+            @Nonnull FeatureTableRow other,
+            @Nullable FeatureTableColumn<List<IonAnnotation>> ionAnnotationColumn) {
+        final ChromatographyInfo rt = row.getChromatographyInfo(),
+                otherRt = other.getChromatographyInfo();
+        if ((rt == null) || (otherRt == null)
+                || (rt.getRetentionTime() == null)
+                || (otherRt.getRetentionTime() == null)
+                || !rowFilters.duplicateRtTolerance.checkWithinTolerance(
+                        rt.getRetentionTime(), otherRt.getRetentionTime()))
+            return false;
+        if (!rowFilters.duplicateRequireSameId)
+            return true;
+        if (ionAnnotationColumn == null)
+            return false;
+        final Set<String> ids = getAnnotationIds(
+                row.getData(ionAnnotationColumn));
+        return !ids.isEmpty() && ids
+                .equals(getAnnotationIds(other.getData(ionAnnotationColumn)));
+    }
+
+    private static @Nonnull Set<String> getAnnotationIds(
+            @Nullable List<IonAnnotation> annotations) {
+        final Set<String> ids = new HashSet<>();
+        if (annotations == null)
+            return ids;
+        for (IonAnnotation annotation : annotations) {
+            if (annotation.isNA())
+                continue;
+            ids.add(annotation.getAnnotationId() != null
+                    ? annotation.getAnnotationId()
+                    : annotation.getDescription());
+        }
+        return ids;
+    }
+
+    /**
+     * Creates the new table from the kept rows in move mode. It has the same
+     * columns as the original table and the row objects of the original table,
+     * except for rows which lost a feature; these are copied.
+     */
+    @SuppressWarnings("unchecked")
+    private @Nonnull FeatureTable createFeatureTable(
+            @Nonnull List<FeatureTableRow> rows, @Nonnull boolean keptRows[],
+            @Nonnull boolean keptFeatures[],
+            @Nonnull FeatureColumns featureColumns[]) {
+
+        final String name = featureTable.getName() + nameSuffix;
+        if (!moveRows)
+            return copyFeatureTable(name, rows, keptRows, keptFeatures,
+                    featureColumns);
+
+        final FeatureTable newTable = MSDKObjectBuilder.getFeatureTable(name,
+                dataStore);
+        for (FeatureTableColumn<?> column : featureTable.getColumns())
+            newTable.addColumn(column);
+
+        // Columns of the features which are removed from each row
+        final Set<FeatureTableColumn<?>> removedColumns = Collections
+                .newSetFromMap(new IdentityHashMap<>());
+        final int numOfSamples = featureColumns.length;
+        for (int r = 0; r < rows.size(); r++) {
+            if (!keptRows[r])
+                continue;
+            final FeatureTableRow row = rows.get(r);
+
+            removedColumns.clear();
+            for (int s = 0; s < numOfSamples; s++) {
+                if (!keptFeatures[r * numOfSamples + s])
+                    removedColumns.addAll(featureColumns[s].columns);
+            }
+
+            if (removedColumns.isEmpty()) {
+                newTable.addRow(row);
+                continue;
+            }
+
+            final FeatureTableRow newRow = MSDKObjectBuilder
+                    .getFeatureTableRow(newTable, row.getId());
+            for (FeatureTableColumn<?> column : featureTable.getColumns()) {
+                if (removedColumns.contains(column))
+                    continue;
+                final Object value = row.getData(column);
+                if (value != null)
+                    newRow.setData((FeatureTableColumn<Object>) column,
+                            value);
+            }
+            newTable.addRow(newRow);
+        }
+
+        return newTable;
+    }
+
+    /**
+     * Creates a new columnar table with new columns and copies of the kept
+     * rows. Values of a columnar original table are copied column by column
+     * without creating objects.
+     */
+    @SuppressWarnings("unchecked")
+    private @Nonnull FeatureTable copyFeatureTable(@Nonnull String name,
+            @Nonnull List<FeatureTableRow> rows, @Nonnull boolean keptRows[],
+            @Nonnull boolean keptFeatures[],
+            @Nonnull FeatureColumns featureColumns[]) {
+
+        final ColumnarFeatureTable newTable = new ColumnarFeatureTable(name,
+                dataStore);
+        final List<FeatureTableColumn<?>> columns = featureTable.getColumns();
+        final List<FeatureTableColumn<?>> newColumns = new ArrayList<>();
+        final Map<Sample, Sample> newSamples = new IdentityHashMap<>();
+        for (FeatureTableColumn<?> column : columns) {
+            final Sample sample = (column.getSample() == null) ? null
+                    : newSamples.computeIfAbsent(column.getSample(),
+                            CombinedFilterMethod::copySample);
+            final FeatureTableColumn<?> newColumn = createColumn(column,
+                    sample);
+            newColumns.add(newColumn);
+            newTable.addColumn(newColumn);
+        }
+
+        int numOfKeptRows = 0;
+        for (boolean kept : keptRows) {
+            if (kept)
+                numOfKeptRows++;
+        }
+        newTable.ensureCapacity(numOfKeptRows);
+
+        // Values of the columns in both tables, if the original is columnar
+        final ColumnValues sourceValues[] = new ColumnValues[columns.size()];
+        final ColumnValues targetValues[] = new ColumnValues[columns.size()];
+        if (featureTable instanceof ColumnarFeatureTable) {
+            for (int c = 0; c < columns.size(); c++) {
+                sourceValues[c] = ((ColumnarFeatureTable) featureTable)
+                        .getValues(columns.get(c));
+                targetValues[c] = newTable.getValues(newColumns.get(c));
+            }
+        }
+
+        // Columns of the features which are removed from each row
+        final Set<FeatureTableColumn<?>> removedColumns = Collections
+                .newSetFromMap(new IdentityHashMap<>());
+        final int numOfSamples = featureColumns.length;
+        for (int r = 0; r < rows.size(); r++) {
+            if (!keptRows[r])
+                continue;
+            final FeatureTableRow row = rows.get(r);
+
+            removedColumns.clear();
+            for (int s = 0; s < numOfSamples; s++) {
+                if (!keptFeatures[r * numOfSamples + s])
+                    removedColumns.addAll(featureColumns[s].columns);
+            }
+
+            final ColumnarFeatureTableRow newRow = newTable
+                    .createRow(row.getId());
+            for (int c = 0; c < columns.size(); c++) {
+                final FeatureTableColumn<?> column = columns.get(c);
+                if (removedColumns.contains(column))
+                    continue;
+                if (sourceValues[c] != null) {
+                    targetValues[c].copyValue(newRow.getIndex(),
+                            sourceValues[c],
+                            ((ColumnarFeatureTableRow) row).getIndex());
+                    continue;
+                }
+                final Object value = row.getData(column);
+                if (value != null)
+                    newRow.setData(
+                            (FeatureTableColumn<Object>) newColumns.get(c),
+                            value);
+            }
+            newTable.addRow(newRow);
+        }
+
+        return newTable;
+    }
+
+    private static @Nonnull FeatureTableColumn<?> createColumn(
+            @Nonnull FeatureTableColumn<?> column, @Nullable Sample sample) {
+        for (ColumnName columnName : ColumnName.values()) {
+            if (columnName.getName().equals(column.getName()))
+                return MSDKObjectBuilder.getFeatureTableColumn(columnName,
+                        sample);
+        }
+        return MSDKObjectBuilder.getFeatureTableColumn(column.getName(),
+                column.getDataTypeClass(), sample);
+    }
+
+    private static @Nonnull Sample copySample(@Nonnull Sample sample) {
+        final Sample newSample = MSDKObjectBuilder
+                .getSimpleSample(sample.getName());
+        newSample.setRawDataFile(sample.getRawDataFile());
+        return newSample;
+    }
+
+    /**
+     * The columns of the features of one sample. The values of a columnar
+     * feature table are read from the primitive column values.
+     */
+    private static class FeatureColumns {
+
+        final List<FeatureTableColumn<?>> columns = new ArrayList<>();
+        final FeatureTableColumn<Float> duration, height;
+        final FeatureTableColumn<Double> area, fwhm, tailingFactor,
+                asymmetryFactor;
+        final FeatureTableColumn<Integer> dataPoints;
+        private final @Nullable ColumnarFeatureTable columnarTable;
+
+        FeatureColumns(@Nonnull FeatureTable featureTable,
+                @Nonnull Sample sample) {
+            for (FeatureTableColumn<?> column : featureTable.getColumns()) {
+                if (column.getSample() == sample)
+                    columns.add(column);
+            }
+            duration = featureTable.getColumn(ColumnName.DURATION, sample);
+            area = featureTable.getColumn(ColumnName.AREA, sample);
+            height = featureTable.getColumn(ColumnName.HEIGHT, sample);
+            dataPoints = featureTable.getColumn(ColumnName.NUMBEROFDATAPOINTS,
+                    sample);
+            fwhm = featureTable.getColumn(ColumnName.FWHM, sample);
+            tailingFactor = featureTable.getColumn(ColumnName.TAILINGFACTOR,
+                    sample);
+            asymmetryFactor = featureTable
+                    .getColumn(ColumnName.ASYMMETRYFACTOR, sample);
+            columnarTable = (featureTable instanceof ColumnarFeatureTable)
+                    ? (ColumnarFeatureTable) featureTable : null;
+        }
+
+        /**
+         * @return whether the sample has a feature in the row, i.e. any of
+         *         its columns has a value
+         */
+        boolean isPresent(@Nonnull FeatureTableRow row) {
+            for (FeatureTableColumn<?> column : columns) {
+                if (columnarTable != null) {
+                    if (!columnarTable.getValues(column).isNull(
+                            ((ColumnarFeatureTableRow) row).getIndex()))
+                        return true;
+                } else if (row.getData(column) != null)
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return the value of the row in the numeric column, or NaN if there
+         *         is none
+         */
+        double getDouble(@Nonnull FeatureTableRow row,
+                @Nullable FeatureTableColumn<? extends Number> column) {
+            if (column == null)
+                return Double.NaN;
+            if (columnarTable != null) {
+                final ColumnValues values = columnarTable.getValues(column);
+                if (values.isNumeric())
+                    return values.getDouble(
+                            ((ColumnarFeatureTableRow) row).getIndex());
+            }
+            final Number value = row.getData(column);
+            return (value == null) ? Double.NaN : value.doubleValue();
+        }
+
+        /**
+         * @return whether the feature of the row passes all enabled filters;
+         *         a feature without the value of an enabled filter fails
+         */
+        boolean passes(@Nonnull FeatureTableRow row,
+                @Nonnull FeatureFilters filters) {
+            return passes(row, duration, filters.duration)
+                    && passes(row, area, filters.area)
+                    && passes(row, height, filters.height)
+                    && passes(row, fwhm, filters.fwhm)
+                    && passes(row, tailingFactor, filters.tailingFactor)
+                    && passes(row, asymmetryFactor, filters.asymmetryFactor)
+                    && passesDataPoints(row, filters.dataPoints);
+        }
+
+        private boolean passes(@Nonnull FeatureTableRow row,
+                @Nullable FeatureTableColumn<? extends Number> column,
+                @Nullable Range<Double> range) {
+            if (range == null)
+                return true;
+            final double value = getDouble(row, column);
+            return !Double.isNaN(value) && range.contains(value);
+        }
+
+        private boolean passesDataPoints(@Nonnull FeatureTableRow row,
+                @Nullable Range<Integer> range) {
+            if (range == null)
+                return true;
+            final double value = getDouble(row, dataPoints);
+            return !Double.isNaN(value) && range.contains((int) value);
+        }
+
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        return totalRows == 0 ? null : (float) processedRows.get() / totalRows;
+    }
+
+    @Override
+    @Nullable
+    public FeatureTable getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        this.canceled = true;
+    }
+
+}
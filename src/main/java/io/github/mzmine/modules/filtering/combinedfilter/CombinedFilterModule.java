@@ -0,0 +1,216 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package io.github.mzmine.modules.filtering.combinedfilter;
+
+import java.util.Collection;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.filtering.combinedfilter.CombinedFilterMethod.FeatureFilters;
+import io.github.mzmine.modules.filtering.combinedfilter.CombinedFilterMethod.RowFilters;
+import io.github.mzmine.modules.filtering.rowfilter.DuplicateFilterParameters;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.AbstractParameter;
+import io.github.mzmine.parameters.parametertypes.OptionalParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.taskcontrol.MSDKTask;
+import javafx.concurrent.Task;
+
+/**
+ * Combined filter module, which applies the filters of the feature filter and
+ * the row filter in a single pass over each feature table
+ */
+public class CombinedFilterModule implements MZmineProcessingModule {
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final String MODULE_NAME = "Combined filter";
+    private static final String MODULE_DESCRIPTION = "This module removes certain features and rows based on given restrictions, in one pass over the feature table.";
+
+    @Override
+    public @Nonnull String getName() {
+        return MODULE_NAME;
+    }
+
+    @Override
+    public @Nonnull String getDescription() {
+        return MODULE_DESCRIPTION;
+    }
+
+    @Override
+    public void runModule(@Nonnull MZmineProject project,
+            @Nonnull ParameterSet parameters,
+            @Nonnull Collection<Task<?>> tasks) {
+
+        final FeatureFilters featureFilters = new FeatureFilters();
+        featureFilters.duration = getEnabledValue(parameters
+                .getParameter(CombinedFilterParameters.duration));
+        featureFilters.area = getEnabledValue(
+                parameters.getParameter(CombinedFilterParameters.area));
+        featureFilters.height = getEnabledValue(
+                parameters.getParameter(CombinedFilterParameters.height));
+        featureFilters.dataPoints = getEnabledValue(parameters
+                .getParameter(CombinedFilterParameters.dataPoints));
+        featureFilters.fwhm = getEnabledValue(
+                parameters.getParameter(CombinedFilterParameters.fwhm));
+        featureFilters.tailingFactor = getEnabledValue(parameters
+                .getParameter(CombinedFilterParameters.tailingFactor));
+        featureFilters.asymmetryFactor = getEnabledValue(parameters
+                .getParameter(CombinedFilterParameters.asymmetryFactor));
+
+        final RowFilters rowFilters = new RowFilters();
+        rowFilters.mz = getEnabledValue(
+                parameters.getParameter(CombinedFilterParameters.mzRange));
+        rowFilters.rtMinutes = getEnabledValue(
+                parameters.getParameter(CombinedFilterParameters.rtRange));
+        rowFilters.durationSeconds = getEnabledValue(parameters
+                .getParameter(CombinedFilterParameters.durationRange));
+        rowFilters.minCount = getEnabledValue(
+                parameters.getParameter(CombinedFilterParameters.minCount));
+        rowFilters.minIsotopes = getEnabledValue(parameters
+                .getParameter(CombinedFilterParameters.minIsotopes));
+        final String ionAnnotation = getEnabledValue(parameters
+                .getParameter(CombinedFilterParameters.ionAnnotation));
+        if (!Strings.isNullOrEmpty(ionAnnotation))
+            rowFilters.ionAnnotation = ionAnnotation;
+        final Boolean requireAnnotation = parameters
+                .getParameter(CombinedFilterParameters.requireAnnotation)
+                .getValue();
+        rowFilters.requireAnnotation = (requireAnnotation != null)
+                && requireAnnotation;
+
+        // Remove duplicate parameters
+        final Boolean removeDuplicates = parameters
+                .getParameter(CombinedFilterParameters.removeDuplicates)
+                .getValue();
+        if ((removeDuplicates != null) && removeDuplicates) {
+            final ParameterSet duplicateParameters = parameters
+                    .getParameter(CombinedFilterParameters.removeDuplicates)
+                    .getEmbeddedParameters();
+            rowFilters.duplicateMzTolerance = duplicateParameters
+                    .getParameter(DuplicateFilterParameters.mzTolerance)
+                    .getValue();
+            rowFilters.duplicateRtTolerance = duplicateParameters
+                    .getParameter(DuplicateFilterParameters.rtTolerance)
+                    .getValue();
+            final Boolean requireSameID = duplicateParameters
+                    .getParameter(DuplicateFilterParameters.requireSameID)
+                    .getValue();
+            rowFilters.duplicateRequireSameId = (requireSameID != null)
+                    && requireSameID;
+        }
+
+        // Other values
+        final FeatureTablesSelection featureTables = parameters
+                .getParameter(CombinedFilterParameters.featureTables)
+                .getValue();
+        final Boolean removeOldTable = parameters
+                .getParameter(CombinedFilterParameters.removeOldTable)
+                .getValue();
+        final String nameSuffix = parameters
+                .getParameter(CombinedFilterParameters.nameSuffix).getValue();
+
+        if (featureTables == null
+                || featureTables.getMatchingFeatureTables().isEmpty()) {
+            MZmineGUI.displayMessage(
+                    "Combined filter module started with no feature table selected.");
+            logger.warn(
+                    "Combined filter module started with no feature table selected.");
+            return;
+        }
+
+        // Check if at least one filter is selected
+        if (!featureFilters.isEnabled() && !rowFilters.isEnabled()) {
+            MZmineGUI.displayMessage(
+                    "Combined filter module started with no filter selected.");
+            logger.warn(
+                    "Combined filter module started with no filter selected.");
+            return;
+        }
+
+        // Add a task for each feature table
+        for (FeatureTable featureTable : featureTables
+                .getMatchingFeatureTables()) {
+
+            // Create the data structures
+            DataPointStore dataStore = MZmineCore.getMemoryGovernor()
+                    .createMemoryDataStore();
+
+            final boolean moveRows = (removeOldTable != null)
+                    && removeOldTable;
+            CombinedFilterMethod method = new CombinedFilterMethod(
+                    featureTable, dataStore, featureFilters, rowFilters,
+                    nameSuffix == null ? "" : nameSuffix, moveRows);
+
+            MSDKTask newTask = new MSDKTask("Filtering features and rows",
+                    featureTable.getName(), method);
+
+            // Add the feature table to the project
+            newTask.setOnSucceeded(e -> {
+                FeatureTable newFeatureTable = method.getResult();
+
+                // The new table shares the values of the original table
+                MZmineCore.getReferenceTracker().acquire(featureTable,
+                        newFeatureTable);
+                project.addFeatureTable(newFeatureTable);
+
+                // If selected, remove old feature table
+                if (moveRows) {
+                    project.removeFeatureTable(featureTable);
+                }
+            });
+
+            // Add the task to the queue
+            tasks.add(newTask);
+
+        }
+
+    }
+
+    /**
+     * @return value of the embedded parameter, or null if the optional
+     *         parameter is not selected
+     */
+    private static <T> T getEnabledValue(
+            @Nonnull OptionalParameter<? extends AbstractParameter<T>> parameter) {
+        final Boolean enabled = parameter.getValue();
+        if ((enabled == null) || !enabled)
+            return null;
+        return parameter.getEmbeddedParameter().getValue();
+    }
+
+    @Override
+    public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
+        return CombinedFilterParameters.class;
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package io.github.mzmine.modules.filtering.combinedfilter;
+
+import io.github.mzmine.modules.filtering.featurefilter.FeatureFilterParameters;
+import io.github.mzmine.modules.filtering.rowfilter.RowFilterParameters;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
+import io.github.mzmine.parameters.parametertypes.DoubleParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.OptionalModuleParameter;
+import io.github.mzmine.parameters.parametertypes.OptionalParameter;
+import io.github.mzmine.parameters.parametertypes.RemoveOriginalParameter;
+import io.github.mzmine.parameters.parametertypes.StringParameter;
+import io.github.mzmine.parameters.parametertypes.ranges.DoubleRangeParameter;
+import io.github.mzmine.parameters.parametertypes.ranges.IntegerRangeParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParameter;
+
+/**
+ * The filters are the same as those of the feature filter and the row filter.
+ * They are copies, so that this module keeps its own values.
+ */
+public class CombinedFilterParameters extends ParameterSet {
+
+    public static final FeatureTablesParameter featureTables = new FeatureTablesParameter();
+
+    // Feature filters
+    public static final OptionalParameter<DoubleRangeParameter> duration = FeatureFilterParameters.duration
+            .clone();
+    public static final OptionalParameter<DoubleRangeParameter> area = FeatureFilterParameters.area
+            .clone();
+    public static final OptionalParameter<DoubleRangeParameter> height = FeatureFilterParameters.height
+            .clone();
+    public static final OptionalParameter<IntegerRangeParameter> dataPoints = FeatureFilterParameters.dataPoints
+            .clone();
+    public static final OptionalParameter<DoubleRangeParameter> fwhm = FeatureFilterParameters.fwhm
+            .clone();
+    public static final OptionalParameter<DoubleRangeParameter> tailingFactor = FeatureFilterParameters.tailingFactor
+            .clone();
+    public static final OptionalParameter<DoubleRangeParameter> asymmetryFactor = FeatureFilterParameters.asymmetryFactor
+            .clone();
+
+    // Row filters
+    public static final OptionalParameter<DoubleRangeParameter> mzRange = RowFilterParameters.mzRange
+            .clone();
+    public static final OptionalParameter<DoubleRangeParameter> rtRange = RowFilterParameters.rtRange
+            .clone();
+    public static final OptionalParameter<DoubleRangeParameter> durationRange = RowFilterParameters.durationRange
+            .clone();
+    public static final OptionalParameter<DoubleParameter> minCount = RowFilterParameters.minCount
+            .clone();
+    public static final OptionalParameter<IntegerParameter> minIsotopes = RowFilterParameters.minIsotopes
+            .clone();
+    public static final OptionalParameter<StringParameter> ionAnnotation = RowFilterParameters.ionAnnotation
+            .clone();
+    public static final BooleanParameter requireAnnotation = RowFilterParameters.requireAnnotation
+            .clone();
+    public static final OptionalModuleParameter removeDuplicates = RowFilterParameters.removeDuplicates
+            .clone();
+
+    public static final StringParameter nameSuffix = new StringParameter(
+            "Name suffix", "Suffix to be added to the feature table name.",
+            "Output", " filtered");
+
+    public static final RemoveOriginalParameter removeOldTable = new RemoveOriginalParameter(
+            "Remove original table?",
+            "If checked, the original feature table will be removed and the rows which pass the filters are moved to the new table instead of being copied.",
+            "Output", false);
+
+    /**
+     * Create the parameter set.
+     */
+    public CombinedFilterParameters() {
+        super(featureTables, duration, area, height, dataPoints, fwhm,
+                tailingFactor, asymmetryFactor, mzRange, rtRange,
+                durationRange, minCount, minIsotopes, ionAnnotation,
+                requireAnnotation, removeDuplicates, nameSuffix,
+                removeOldTable);
+    }
+
+}
@@ -29,10 +29,10 @@ import org.slf4j.LoggerFactory;
 import com.google.common.collect.Range;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.features.filtering.FeatureFilterMethod;
 import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
@@ -155,8 +155,8 @@ public class FeatureFilterModule implements MZmineProcessingModule {
                 .getMatchingFeatureTables()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getMemoryDataStore();
+            DataPointStore dataStore = MZmineCore.getMemoryGovernor()
+                    .createMemoryDataStore();
 
             // New feature filter task
             FeatureFilterMethod method = new FeatureFilterMethod(featureTable,
@@ -172,6 +172,10 @@ public class FeatureFilterModule implements MZmineProcessingModule {
             // Add the feature table to the project
             newTask.setOnSucceeded(e -> {
                 FeatureTable newFeatureTable = method.getResult();
+
+                // The new table shares the values of the original table
+                MZmineCore.getReferenceTracker().acquire(featureTable,
+                        newFeatureTable);
                 project.addFeatureTable(newFeatureTable);
 
                 // If selected, remove old feature table
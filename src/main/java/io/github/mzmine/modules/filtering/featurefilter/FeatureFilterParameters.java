@@ -26,6 +26,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.ParameterValidator;
 import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.OptionalParameter;
+import io.github.mzmine.parameters.parametertypes.RemoveOriginalParameter;
 import io.github.mzmine.parameters.parametertypes.StringParameter;
 import io.github.mzmine.parameters.parametertypes.ranges.DoubleRangeParameter;
 import io.github.mzmine.parameters.parametertypes.ranges.IntegerRangeParameter;
@@ -85,7 +86,7 @@ public class FeatureFilterParameters extends ParameterSet {
             "Name suffix", "Suffix to be added to the feature table name.",
             "Output", " rowFiltered");
 
-    public static final BooleanParameter removeOldTable = new BooleanParameter(
+    public static final RemoveOriginalParameter removeOldTable = new RemoveOriginalParameter(
             "Remove original table?",
             "If checked, the original feature table will be removed.", "Output",
             false);
@@ -29,11 +29,11 @@ import org.slf4j.LoggerFactory;
 import com.google.common.collect.Range;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.features.rowfilter.RowFilterMethod;
 import io.github.msdk.util.MZTolerance;
 import io.github.msdk.util.RTTolerance;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
@@ -160,8 +160,8 @@ public class RowFilterModule implements MZmineProcessingModule {
                 .getMatchingFeatureTables()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getMemoryDataStore();
+            DataPointStore dataStore = MZmineCore.getMemoryGovernor()
+                    .createMemoryDataStore();
 
             // Handle < 1 values for minCount
             if (minCount == null)
@@ -186,6 +186,10 @@ public class RowFilterModule implements MZmineProcessingModule {
             // Add the feature table to the project
             newTask.setOnSucceeded(e -> {
                 FeatureTable newFeatureTable = method.getResult();
+
+                // The new table shares the values of the original table
+                MZmineCore.getReferenceTracker().acquire(featureTable,
+                        newFeatureTable);
                 project.addFeatureTable(newFeatureTable);
 
                 // If selected, remove old feature table
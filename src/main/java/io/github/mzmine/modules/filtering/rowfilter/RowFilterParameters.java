@@ -28,6 +28,7 @@ import io.github.mzmine.parameters.parametertypes.DoubleParameter;
 import io.github.mzmine.parameters.parametertypes.IntegerParameter;
 import io.github.mzmine.parameters.parametertypes.OptionalModuleParameter;
 import io.github.mzmine.parameters.parametertypes.OptionalParameter;
+import io.github.mzmine.parameters.parametertypes.RemoveOriginalParameter;
 import io.github.mzmine.parameters.parametertypes.StringParameter;
 import io.github.mzmine.parameters.parametertypes.ranges.DoubleRangeParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParameter;
@@ -82,7 +83,7 @@ public class RowFilterParameters extends ParameterSet {
             "Name suffix", "Suffix to be added to the feature table name.",
             "Output", " rowFiltered");
 
-    public static final BooleanParameter removeOldTable = new BooleanParameter(
+    public static final RemoveOriginalParameter removeOldTable = new RemoveOriginalParameter(
             "Remove original table?",
             "If checked, the original feature table will be removed.", "Output",
             false);
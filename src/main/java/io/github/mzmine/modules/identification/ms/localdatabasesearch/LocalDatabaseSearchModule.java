@@ -173,6 +173,11 @@ public class LocalDatabaseSearchModule implements MZmineProcessingModule {
 
     }
 
+    @Override
+    public boolean createsData() {
+        return false;
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
         return LocalDatabaseSearchParameters.class;
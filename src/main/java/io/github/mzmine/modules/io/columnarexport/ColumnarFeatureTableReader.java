@@ -0,0 +1,493 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.io.columnarexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.mzmine.modules.io.columnarexport.ColumnarFormat.Codec;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFormat.ColumnType;
+
+/**
+ * Reads files in the columnar binary format described in
+ * {@link ColumnarFormat}. Only the footer is parsed when the file is opened;
+ * uncompressed column chunks are memory mapped on request, so the primitive
+ * values are accessed without copying.
+ */
+public class ColumnarFeatureTableReader {
+
+    private static final int TRAILER_LENGTH = 8 + ColumnarFormat.MAGIC.length;
+
+    private final @Nonnull File file;
+    private final @Nonnull String name;
+    private final int numOfRows;
+    private final @Nonnull Codec codec;
+    private final @Nonnull List<SampleInfo> samples = new ArrayList<>();
+    private final @Nonnull List<ColumnInfo> columns = new ArrayList<>();
+
+    public ColumnarFeatureTableReader(@Nonnull File file) throws IOException {
+        this.file = file;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+
+            final long fileSize = channel.size();
+            if (fileSize < 8 + TRAILER_LENGTH)
+                throw new IOException(file + " is not a columnar feature table");
+
+            final ByteBuffer header = map(channel, 0, 8);
+            checkMagic(header);
+            final int version = header.getInt();
+            if (version > ColumnarFormat.VERSION)
+                throw new IOException("Unsupported version " + version
+                        + " of columnar feature table " + file);
+
+            final ByteBuffer trailer = map(channel, fileSize - TRAILER_LENGTH,
+                    TRAILER_LENGTH);
+            final long footerLength = trailer.getLong();
+            checkMagic(trailer);
+            final long footerStart = fileSize - TRAILER_LENGTH - footerLength;
+            if (footerLength < 0 || footerStart < 8)
+                throw new IOException("Corrupted footer in " + file);
+
+            final ByteBuffer footer = map(channel, footerStart, footerLength);
+            name = readString(footer);
+            numOfRows = footer.getInt();
+            codec = Codec.values()[footer.get()];
+
+            final int numOfSamples = footer.getInt();
+            for (int i = 0; i < numOfSamples; i++)
+                samples.add(new SampleInfo(readString(footer),
+                        readString(footer)));
+
+            final int numOfColumns = footer.getInt();
+            for (int i = 0; i < numOfColumns; i++) {
+                final String columnName = readString(footer);
+                final int sampleIndex = footer.getInt();
+                final ColumnType type = ColumnType.values()[footer.get()];
+                final long offset = footer.getLong();
+                final long storedLength = footer.getLong();
+                final long rawLength = footer.getLong();
+                columns.add(new ColumnInfo(columnName, sampleIndex, type,
+                        offset, storedLength, rawLength));
+            }
+        }
+    }
+
+    public @Nonnull String getName() {
+        return name;
+    }
+
+    public int getNumberOfRows() {
+        return numOfRows;
+    }
+
+    public @Nonnull Codec getCodec() {
+        return codec;
+    }
+
+    public @Nonnull List<SampleInfo> getSamples() {
+        return Collections.unmodifiableList(samples);
+    }
+
+    public @Nonnull List<ColumnInfo> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Maps or inflates the chunk of the given column. The returned object
+     * keeps no reference to an open file handle and is safe to use from
+     * multiple threads.
+     */
+    public @Nonnull ColumnChunk readColumn(@Nonnull ColumnInfo column)
+            throws IOException {
+        final ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            final ByteBuffer stored = map(channel, column.offset,
+                    column.storedLength);
+            data = codec == Codec.NONE ? stored
+                    : inflate(stored, column.rawLength);
+        }
+        return new ColumnChunk(column, data, numOfRows);
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position,
+            long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer inflate(ByteBuffer stored, long rawLength)
+            throws IOException {
+        final byte input[] = new byte[stored.remaining()];
+        stored.get(input);
+        final byte output[] = new byte[(int) rawLength];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            int length = 0;
+            while (length < output.length && !inflater.finished()) {
+                final int n = inflater.inflate(output, length,
+                        output.length - length);
+                if (n == 0 && (inflater.needsInput()
+                        || inflater.needsDictionary()))
+                    break;
+                length += n;
+            }
+            if (length != output.length)
+                throw new IOException("Truncated column chunk");
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(output).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void checkMagic(ByteBuffer buffer) throws IOException {
+        final byte magic[] = new byte[ColumnarFormat.MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, ColumnarFormat.MAGIC))
+            throw new IOException(file + " is not a columnar feature table");
+    }
+
+    private static @Nullable String readString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0)
+            return null;
+        final byte bytes[] = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static class SampleInfo {
+        private final String name, rawDataFileName;
+
+        SampleInfo(String name, String rawDataFileName) {
+            this.name = name;
+            this.rawDataFileName = rawDataFileName;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getRawDataFileName() {
+            return rawDataFileName;
+        }
+    }
+
+    public static class ColumnInfo {
+        private final String name;
+        private final int sampleIndex;
+        private final ColumnType type;
+        private final long offset, storedLength, rawLength;
+
+        ColumnInfo(String name, int sampleIndex, ColumnType type, long offset,
+                long storedLength, long rawLength) {
+            this.name = name;
+            this.sampleIndex = sampleIndex;
+            this.type = type;
+            this.offset = offset;
+            this.storedLength = storedLength;
+            this.rawLength = rawLength;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return index into the sample list, or -1 for columns without a
+         *         sample
+         */
+        public int getSampleIndex() {
+            return sampleIndex;
+        }
+
+        public ColumnType getType() {
+            return type;
+        }
+    }
+
+    /**
+     * Ion annotation as stored in the dictionary of an ION_ANNOTATIONS chunk.
+     */
+    public static class IonAnnotationEntry {
+        private final String annotationId, description, formula;
+        private final double expectedMz;
+
+        IonAnnotationEntry(String annotationId, String description,
+                String formula, double expectedMz) {
+            this.annotationId = annotationId;
+            this.description = description;
+            this.formula = formula;
+            this.expectedMz = expectedMz;
+        }
+
+        public @Nullable String getAnnotationId() {
+            return annotationId;
+        }
+
+        public @Nullable String getDescription() {
+            return description;
+        }
+
+        public @Nullable String getFormula() {
+            return formula;
+        }
+
+        /**
+         * @return the expected m/z, or NaN if not known
+         */
+        public double getExpectedMz() {
+            return expectedMz;
+        }
+    }
+
+    /**
+     * Typed view of a single column chunk.
+     */
+    public static class ColumnChunk {
+
+        private final ColumnInfo column;
+        private final ByteBuffer bitmap;
+        private final int numOfRows;
+        private IntBuffer ints;
+        private FloatBuffer floats;
+        private DoubleBuffer doubles;
+        private String stringDictionary[];
+        private IonAnnotationEntry ionDictionary[];
+        private IntBuffer offsets, codes;
+        private IntBuffer chromatogramInfo;
+        private FloatBuffer pointRetentionTimes, pointIntensities;
+        private DoubleBuffer pointMzValues;
+
+        ColumnChunk(ColumnInfo column, ByteBuffer data, int numOfRows) {
+            this.column = column;
+            this.numOfRows = numOfRows;
+            final int bitmapLength = ColumnarFormat.align((numOfRows + 7) / 8,
+                    8);
+            data.position(0).limit(bitmapLength);
+            bitmap = data.slice();
+            data.limit(data.capacity()).position(bitmapLength);
+            final ByteBuffer values = data.slice()
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            switch (column.type) {
+            case INT32:
+                ints = values.asIntBuffer();
+                break;
+            case FLOAT32:
+            case CHROMATOGRAPHY_INFO:
+                floats = values.asFloatBuffer();
+                break;
+            case FLOAT64:
+                doubles = values.asDoubleBuffer();
+                break;
+            case STRING:
+                stringDictionary = new String[values.getInt()];
+                for (int i = 0; i < stringDictionary.length; i++)
+                    stringDictionary[i] = readString(values);
+                codes = alignedSlice(values).asIntBuffer();
+                break;
+            case ION_ANNOTATIONS:
+                ionDictionary = new IonAnnotationEntry[values.getInt()];
+                for (int i = 0; i < ionDictionary.length; i++)
+                    ionDictionary[i] = new IonAnnotationEntry(
+                            readString(values), readString(values),
+                            readString(values), values.getDouble());
+                final ByteBuffer lists = alignedSlice(values);
+                offsets = lists.asIntBuffer();
+                lists.position((numOfRows + 1) * 4);
+                codes = lists.slice().order(ByteOrder.LITTLE_ENDIAN)
+                        .asIntBuffer();
+                break;
+            case CHROMATOGRAM:
+                chromatogramInfo = slice(values, 0, numOfRows * 12)
+                        .asIntBuffer();
+                int position = ColumnarFormat.align(numOfRows * 12, 8);
+                doubles = slice(values, position, numOfRows * 8)
+                        .asDoubleBuffer();
+                position += numOfRows * 8;
+                offsets = slice(values, position, (numOfRows + 1) * 4)
+                        .asIntBuffer();
+                position = ColumnarFormat
+                        .align(position + (numOfRows + 1) * 4, 8);
+                final int numOfPoints = offsets.get(numOfRows);
+                pointRetentionTimes = slice(values, position, numOfPoints * 4)
+                        .asFloatBuffer();
+                position = ColumnarFormat.align(position + numOfPoints * 4,
+                        8);
+                pointMzValues = slice(values, position, numOfPoints * 8)
+                        .asDoubleBuffer();
+                position += numOfPoints * 8;
+                pointIntensities = slice(values, position, numOfPoints * 4)
+                        .asFloatBuffer();
+                break;
+            }
+        }
+
+        private static ByteBuffer slice(ByteBuffer buffer, int position,
+                int length) {
+            final ByteBuffer copy = buffer.duplicate();
+            copy.position(position).limit(position + length);
+            return copy.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private static ByteBuffer alignedSlice(ByteBuffer buffer) {
+            buffer.position(ColumnarFormat.align(buffer.position(), 4));
+            return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        public @Nonnull ColumnInfo getColumn() {
+            return column;
+        }
+
+        public int getNumberOfRows() {
+            return numOfRows;
+        }
+
+        public boolean isNull(int row) {
+            return (bitmap.get(row >> 3) & (1 << (row & 7))) == 0;
+        }
+
+        public int getInt(int row) {
+            return ints.get(row);
+        }
+
+        /**
+         * Also returns the retention time of CHROMATOGRAPHY_INFO columns.
+         */
+        public float getFloat(int row) {
+            return floats.get(row);
+        }
+
+        /**
+         * Also returns the m/z of CHROMATOGRAM columns.
+         */
+        public double getDouble(int row) {
+            return doubles.get(row);
+        }
+
+        public @Nullable String getString(int row) {
+            final int code = codes.get(row);
+            return code < 0 ? null : stringDictionary[code];
+        }
+
+        public @Nonnull List<IonAnnotationEntry> getIonAnnotations(int row) {
+            final int start = offsets.get(row), end = offsets.get(row + 1);
+            final List<IonAnnotationEntry> result = new ArrayList<>(
+                    end - start);
+            for (int i = start; i < end; i++)
+                result.add(ionDictionary[codes.get(i)]);
+            return result;
+        }
+
+        /**
+         * The chromatogram number of CHROMATOGRAM columns.
+         */
+        public int getChromatogramNumber(int row) {
+            return chromatogramInfo.get(row * 3);
+        }
+
+        /**
+         * Ordinal of the ChromatogramType of CHROMATOGRAM columns, -1 if not
+         * set.
+         */
+        public int getChromatogramTypeOrdinal(int row) {
+            return chromatogramInfo.get(row * 3 + 1);
+        }
+
+        /**
+         * Ordinal of the SeparationType of CHROMATOGRAM columns, -1 if not
+         * set.
+         */
+        public int getSeparationTypeOrdinal(int row) {
+            return chromatogramInfo.get(row * 3 + 2);
+        }
+
+        /**
+         * Number of data points of the chromatogram in the given row.
+         */
+        public int getNumberOfDataPoints(int row) {
+            return offsets.get(row + 1) - offsets.get(row);
+        }
+
+        /**
+         * Copies the data points of the chromatogram in the given row into the
+         * arrays, which must hold at least
+         * {@link #getNumberOfDataPoints(int)} values.
+         */
+        public void getDataPoints(int row, float retentionTimes[],
+                double mzValues[], float intensityValues[]) {
+            final int start = offsets.get(row);
+            final int size = offsets.get(row + 1) - start;
+            ((FloatBuffer) pointRetentionTimes.duplicate().position(start))
+                    .get(retentionTimes, 0, size);
+            ((DoubleBuffer) pointMzValues.duplicate().position(start))
+                    .get(mzValues, 0, size);
+            ((FloatBuffer) pointIntensities.duplicate().position(start))
+                    .get(intensityValues, 0, size);
+        }
+
+        /**
+         * Zero-copy access to the values of INT32 columns.
+         */
+        public @Nullable IntBuffer getIntValues() {
+            return ints == null ? null : ints.duplicate();
+        }
+
+        /**
+         * Zero-copy access to the values of FLOAT32 and CHROMATOGRAPHY_INFO
+         * columns.
+         */
+        public @Nullable FloatBuffer getFloatValues() {
+            return floats == null ? null : floats.duplicate();
+        }
+
+        /**
+         * Zero-copy access to the values of FLOAT64 columns and the m/z values
+         * of CHROMATOGRAM columns.
+         */
+        public @Nullable DoubleBuffer getDoubleValues() {
+            return doubles == null ? null : doubles.duplicate();
+        }
+    }
+
+}
@@ -0,0 +1,732 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.io.columnarexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.openscience.cdk.interfaces.IMolecularFormula;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.chromatograms.ChromatogramType;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFormat.Codec;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFormat.ColumnType;
+import io.github.mzmine.util.featuretable.ColumnValues;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTable;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTableRow;
+
+/**
+ * Writes a feature table in the columnar binary format described in
+ * {@link ColumnarFormat}. The column chunks are encoded in parallel, a group of
+ * columns at a time, and appended to the file in column order.
+ * 
+ * The type of a column chunk follows from the data type of the column.
+ * Columns of other types than those of the format are skipped. Some values
+ * are only partly written, e.g. the retention time of a ChromatographyInfo
+ * without its separation type; in exact mode, such values and unsupported
+ * columns make the export fail instead, so that the file can be read back
+ * into an identical table. The raw data files of the chromatograms are given
+ * by the samples of their columns in both modes.
+ */
+public class ColumnarFileExportMethod implements MSDKMethod<File> {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull FeatureTable featureTable;
+    private final @Nonnull File exportFile;
+    private final @Nonnull List<FeatureTableColumn<?>> columns;
+    private final @Nonnull Codec codec;
+    private final boolean exact;
+
+    private int processedColumns = 0, totalColumns = 0;
+    private volatile boolean canceled = false;
+    private File result;
+
+    public ColumnarFileExportMethod(@Nonnull FeatureTable featureTable,
+            @Nonnull File exportFile,
+            @Nonnull List<FeatureTableColumn<?>> columns,
+            @Nonnull Codec codec) {
+        this(featureTable, exportFile, columns, codec, false);
+    }
+
+    /**
+     * @param includeChromatograms
+     *            whether the chromatograms are exported as well; they are
+     *            usually the largest part of the table
+     */
+    public ColumnarFileExportMethod(@Nonnull FeatureTable featureTable,
+            @Nonnull File exportFile,
+            @Nonnull List<FeatureTableColumn<?>> columns, @Nonnull Codec codec,
+            boolean includeChromatograms) {
+        this(featureTable, exportFile, columns, codec, includeChromatograms,
+                false);
+    }
+
+    /**
+     * @param exact
+     *            whether the export fails with an {@link MSDKException} if the
+     *            table cannot be written exactly, see the class description
+     */
+    public ColumnarFileExportMethod(@Nonnull FeatureTable featureTable,
+            @Nonnull File exportFile,
+            @Nonnull List<FeatureTableColumn<?>> columns, @Nonnull Codec codec,
+            boolean includeChromatograms, boolean exact) {
+        this.featureTable = featureTable;
+        this.exportFile = exportFile;
+        this.codec = codec;
+        this.exact = exact;
+
+        this.columns = new ArrayList<>();
+        for (FeatureTableColumn<?> column : columns) {
+            if (!includeChromatograms && column.getName()
+                    .equals(ColumnName.CHROMATOGRAM.getName()))
+                continue;
+            this.columns.add(column);
+        }
+    }
+
+    @Override
+    public File execute() throws MSDKException {
+
+        logger.info("Exporting feature table " + featureTable.getName()
+                + " to columnar file " + exportFile);
+
+        final List<FeatureTableRow> rows = new ArrayList<>(
+                featureTable.getRows());
+        final List<Sample> samples = featureTable.getSamples();
+
+        final List<FeatureTableColumn<?>> columns = new ArrayList<>();
+        final List<ColumnType> types = new ArrayList<>();
+        for (FeatureTableColumn<?> column : this.columns) {
+            final ColumnType type = getColumnType(column);
+            if (type == null) {
+                if (exact)
+                    throw new MSDKException("Column " + column.getName()
+                            + " of type " + column.getDataTypeClass()
+                            + " cannot be written to a columnar file");
+                logger.warn("Skipping column " + column.getName() + " of type "
+                        + column.getDataTypeClass()
+                        + ", which cannot be written to a columnar file");
+                continue;
+            }
+            if (exact)
+                checkExact(column, type, rows);
+            columns.add(column);
+            types.add(type);
+        }
+        totalColumns = columns.size();
+
+        final Encoder footer = new Encoder(1024);
+        footer.putString(featureTable.getName());
+
+        try (FileChannel channel = FileChannel.open(exportFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            final Encoder fileHeader = new Encoder(8);
+            fileHeader.put(ColumnarFormat.MAGIC).putInt(ColumnarFormat.VERSION);
+            long position = writeFully(channel, fileHeader.flip(), 0);
+
+            footer.putInt(rows.size()).put((byte) codec.ordinal());
+            footer.putInt(samples.size());
+            for (Sample sample : samples) {
+                footer.putString(sample.getName());
+                RawDataFile rawDataFile = sample.getRawDataFile();
+                footer.putString(
+                        rawDataFile == null ? "" : rawDataFile.getName());
+            }
+            footer.putInt(columns.size());
+
+            // Encode a group of columns in parallel, then write them in order
+            final int groupSize = Runtime.getRuntime().availableProcessors();
+            for (int first = 0; first < columns.size(); first += groupSize) {
+
+                if (canceled)
+                    return null;
+
+                final List<EncodedChunk> chunks = IntStream
+                        .range(first,
+                                Math.min(columns.size(), first + groupSize))
+                        .parallel()
+                        .mapToObj(i -> encodeColumn(columns.get(i),
+                                types.get(i), rows))
+                        .collect(Collectors.toList());
+
+                for (EncodedChunk chunk : chunks) {
+                    final FeatureTableColumn<?> column = chunk.column;
+                    footer.putString(column.getName());
+                    footer.putInt(samples.indexOf(column.getSample()));
+                    footer.put((byte) chunk.type.ordinal());
+                    footer.putLong(position);
+                    footer.putLong(chunk.data.remaining());
+                    footer.putLong(chunk.rawLength);
+                    position = writeFully(channel, chunk.data, position);
+                    processedColumns++;
+                }
+            }
+
+            // The footer is followed directly by its length and the magic, so
+            // it can be located from the end of the file
+            final int footerLength = footer.size();
+            footer.putLong(footerLength).put(ColumnarFormat.MAGIC);
+            final ByteBuffer footerData = footer.flip();
+            while (footerData.hasRemaining())
+                position += channel.write(footerData, position);
+
+        } catch (IOException e) {
+            throw new MSDKException(e);
+        }
+
+        result = exportFile;
+        return result;
+    }
+
+    /**
+     * Writes the buffer at the given position, followed by zero padding up to
+     * the next 8-byte boundary. Returns the new position.
+     */
+    private static long writeFully(FileChannel channel, ByteBuffer buffer,
+            long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+        final int padding = (int) ((8 - position % 8) % 8);
+        if (padding > 0)
+            position += channel.write(ByteBuffer.allocate(padding), position);
+        return position;
+    }
+
+    private EncodedChunk encodeColumn(FeatureTableColumn<?> column,
+            ColumnType type, List<FeatureTableRow> rows) {
+
+        // Numeric columns of a columnar table are written from the
+        // primitive values
+        if (featureTable instanceof ColumnarFeatureTable) {
+            final ColumnValues values = ((ColumnarFeatureTable) featureTable)
+                    .getValues(column);
+            if ((values != null) && values.isNumeric())
+                return encodeNumericColumn(column, values, rows);
+        }
+
+        final int numOfRows = rows.size();
+        final Object values[] = new Object[numOfRows];
+        for (int i = 0; i < numOfRows; i++)
+            values[i] = rows.get(i).getData(column);
+
+        final int bitmapLength = ColumnarFormat.align((numOfRows + 7) / 8, 8);
+        final Encoder out = new Encoder(bitmapLength + numOfRows * 8 + 64);
+
+        // Null bitmap
+        final byte bitmap[] = new byte[bitmapLength];
+        for (int i = 0; i < numOfRows; i++) {
+            if (values[i] != null)
+                bitmap[i >> 3] |= 1 << (i & 7);
+        }
+        out.put(bitmap);
+
+        switch (type) {
+        case INT32:
+            for (Object value : values)
+                out.putInt(value == null ? 0 : ((Number) value).intValue());
+            break;
+        case FLOAT32:
+            for (Object value : values)
+                out.putFloat(
+                        value == null ? 0f : ((Number) value).floatValue());
+            break;
+        case FLOAT64:
+            for (Object value : values)
+                out.putDouble(
+                        value == null ? 0d : ((Number) value).doubleValue());
+            break;
+        case CHROMATOGRAPHY_INFO:
+            for (Object value : values) {
+                Float rt = value == null ? null
+                        : ((ChromatographyInfo) value).getRetentionTime();
+                out.putFloat(rt == null ? 0f : rt);
+            }
+            break;
+        case STRING: {
+            final Map<String, Integer> dictionary = new HashMap<>();
+            final int codes[] = new int[numOfRows];
+            final List<String> entries = new ArrayList<>();
+            for (int i = 0; i < numOfRows; i++) {
+                if (values[i] == null) {
+                    codes[i] = -1;
+                    continue;
+                }
+                codes[i] = dictionary.computeIfAbsent(values[i].toString(),
+                        s -> {
+                            entries.add(s);
+                            return entries.size() - 1;
+                        });
+            }
+            out.putInt(entries.size());
+            for (String entry : entries)
+                out.putString(entry);
+            out.align(4);
+            for (int code : codes)
+                out.putInt(code);
+            break;
+        }
+        case ION_ANNOTATIONS: {
+            final Map<IonAnnotation, Integer> dictionary = new HashMap<>();
+            final List<IonAnnotation> entries = new ArrayList<>();
+            final int offsets[] = new int[numOfRows + 1];
+            final List<Integer> codes = new ArrayList<>();
+            for (int i = 0; i < numOfRows; i++) {
+                offsets[i] = codes.size();
+                if (values[i] == null)
+                    continue;
+                for (Object item : (List<?>) values[i]) {
+                    if (!(item instanceof IonAnnotation))
+                        continue;
+                    codes.add(dictionary.computeIfAbsent((IonAnnotation) item,
+                            ion -> {
+                                entries.add(ion);
+                                return entries.size() - 1;
+                            }));
+                }
+            }
+            offsets[numOfRows] = codes.size();
+            out.putInt(entries.size());
+            for (IonAnnotation ion : entries) {
+                out.putString(ion.getAnnotationId());
+                out.putString(ion.getDescription());
+                IMolecularFormula formula = ion.getFormula();
+                out.putString(formula == null ? null
+                        : MolecularFormulaManipulator.getString(formula));
+                Double expectedMz = ion.getExpectedMz();
+                out.putDouble(expectedMz == null ? Double.NaN : expectedMz);
+            }
+            out.align(4);
+            for (int offset : offsets)
+                out.putInt(offset);
+            for (int code : codes)
+                out.putInt(code);
+            break;
+        }
+        case CHROMATOGRAM: {
+            final int offsets[] = new int[numOfRows + 1];
+            for (int i = 0; i < numOfRows; i++) {
+                final Chromatogram chromatogram = (Chromatogram) values[i];
+                offsets[i + 1] = offsets[i] + (chromatogram == null ? 0
+                        : chromatogram.getNumberOfDataPoints());
+                Integer number = chromatogram == null ? null
+                        : chromatogram.getChromatogramNumber();
+                ChromatogramType chromatogramType = chromatogram == null
+                        ? null : chromatogram.getChromatogramType();
+                SeparationType separationType = chromatogram == null ? null
+                        : chromatogram.getSeparationType();
+                out.putInt(number == null ? 0 : number);
+                out.putInt(chromatogramType == null ? -1
+                        : chromatogramType.ordinal());
+                out.putInt(separationType == null ? -1
+                        : separationType.ordinal());
+            }
+            out.align(8);
+            for (Object value : values) {
+                Double mz = value == null ? null
+                        : ((Chromatogram) value).getMz();
+                out.putDouble(mz == null ? Double.NaN : mz);
+            }
+            for (int offset : offsets)
+                out.putInt(offset);
+            out.align(8);
+            for (Object value : values) {
+                if (value == null)
+                    continue;
+                final Chromatogram chromatogram = (Chromatogram) value;
+                final ChromatographyInfo rtValues[] = chromatogram
+                        .getRetentionTimes();
+                for (int j = 0; j < chromatogram.getNumberOfDataPoints(); j++) {
+                    Float rt = rtValues[j] == null ? null
+                            : rtValues[j].getRetentionTime();
+                    out.putFloat(rt == null ? 0f : rt);
+                }
+            }
+            out.align(8);
+            for (Object value : values) {
+                if (value == null)
+                    continue;
+                final Chromatogram chromatogram = (Chromatogram) value;
+                final double mzValues[] = chromatogram.getMzValues();
+                for (int j = 0; j < chromatogram.getNumberOfDataPoints(); j++)
+                    out.putDouble(mzValues[j]);
+            }
+            for (Object value : values) {
+                if (value == null)
+                    continue;
+                final Chromatogram chromatogram = (Chromatogram) value;
+                final float intensityValues[] = chromatogram
+                        .getIntensityValues();
+                for (int j = 0; j < chromatogram.getNumberOfDataPoints(); j++)
+                    out.putFloat(intensityValues[j]);
+            }
+            out.align(8);
+            break;
+        }
+        }
+
+        return createChunk(column, type, out);
+    }
+
+    private EncodedChunk encodeNumericColumn(FeatureTableColumn<?> column,
+            ColumnValues values, List<FeatureTableRow> rows) {
+
+        final int numOfRows = rows.size();
+        final int indexes[] = new int[numOfRows];
+        for (int i = 0; i < numOfRows; i++)
+            indexes[i] = ((ColumnarFeatureTableRow) rows.get(i)).getIndex();
+
+        final ColumnType type;
+        switch (values.getValueType()) {
+        case INT32:
+            type = ColumnType.INT32;
+            break;
+        case FLOAT32:
+            type = ColumnType.FLOAT32;
+            break;
+        case RETENTION_TIME:
+            type = ColumnType.CHROMATOGRAPHY_INFO;
+            break;
+        default:
+            type = ColumnType.FLOAT64;
+            break;
+        }
+        final int bitmapLength = ColumnarFormat.align((numOfRows + 7) / 8, 8);
+        final Encoder out = new Encoder(bitmapLength + numOfRows * 8 + 64);
+
+        // Null bitmap
+        final byte bitmap[] = new byte[bitmapLength];
+        for (int i = 0; i < numOfRows; i++) {
+            if (!values.isNull(indexes[i]))
+                bitmap[i >> 3] |= 1 << (i & 7);
+        }
+        out.put(bitmap);
+
+        for (int index : indexes) {
+            final boolean isNull = values.isNull(index);
+            switch (type) {
+            case INT32:
+                out.putInt(isNull ? 0 : values.getInt(index));
+                break;
+            case FLOAT64:
+                out.putDouble(isNull ? 0d : values.getDouble(index));
+                break;
+            default:
+                out.putFloat(isNull ? 0f : values.getFloat(index));
+                break;
+            }
+        }
+
+        return createChunk(column, type, out);
+    }
+
+    private EncodedChunk createChunk(FeatureTableColumn<?> column,
+            ColumnType type, Encoder out) {
+        final ByteBuffer raw = out.flip();
+        final int rawLength = raw.remaining();
+        if (codec == Codec.NONE)
+            return new EncodedChunk(column, type, raw, rawLength);
+
+        // Compress the whole chunk
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(raw.array(), 0, rawLength);
+        deflater.finish();
+        byte compressed[] = new byte[rawLength / 2 + 64];
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length)
+                compressed = Arrays.copyOf(compressed,
+                        compressed.length * 2);
+            compressedLength += deflater.deflate(compressed, compressedLength,
+                    compressed.length - compressedLength);
+        }
+        deflater.end();
+        return new EncodedChunk(column, type,
+                ByteBuffer.wrap(compressed, 0, compressedLength), rawLength);
+    }
+
+    /**
+     * @return the chunk type of the column, or null if the format has no type
+     *         for its values. The RT, chromatogram and ion annotation columns
+     *         are recognized by their names, as their data type classes are
+     *         not specific.
+     */
+    static @Nullable ColumnType getColumnType(
+            @Nonnull FeatureTableColumn<?> column) {
+        final String name = column.getName();
+        if (name.equals(ColumnName.RT.getName()))
+            return ColumnType.CHROMATOGRAPHY_INFO;
+        if (name.equals(ColumnName.CHROMATOGRAM.getName()))
+            return ColumnType.CHROMATOGRAM;
+        if (name.equals(ColumnName.IONANNOTATION.getName()))
+            return ColumnType.ION_ANNOTATIONS;
+        final Class<?> dataTypeClass = column.getDataTypeClass();
+        if (dataTypeClass == Integer.class)
+            return ColumnType.INT32;
+        if (dataTypeClass == Float.class)
+            return ColumnType.FLOAT32;
+        if (dataTypeClass == Double.class)
+            return ColumnType.FLOAT64;
+        if (dataTypeClass == String.class)
+            return ColumnType.STRING;
+        if (ChromatographyInfo.class.isAssignableFrom(dataTypeClass))
+            return ColumnType.CHROMATOGRAPHY_INFO;
+        if (Chromatogram.class.isAssignableFrom(dataTypeClass))
+            return ColumnType.CHROMATOGRAM;
+        return null;
+    }
+
+    /**
+     * Checks that all values of the column can be written exactly.
+     *
+     * @throws MSDKException
+     *             if a value would be changed by writing and reading it
+     */
+    private static void checkExact(@Nonnull FeatureTableColumn<?> column,
+            @Nonnull ColumnType type, @Nonnull List<FeatureTableRow> rows)
+            throws MSDKException {
+        for (FeatureTableRow row : rows) {
+            final Object value = row.getData(column);
+            if ((value != null) && !isExact(value, type))
+                throw new MSDKException("Value " + value + " of column "
+                        + column.getName() + " in row " + row.getId()
+                        + " cannot be written exactly to a columnar file");
+        }
+    }
+
+    private static boolean isExact(@Nonnull Object value,
+            @Nonnull ColumnType type) {
+        switch (type) {
+        case INT32:
+            return value instanceof Integer;
+        case FLOAT32:
+            return value instanceof Float;
+        case FLOAT64:
+            return value instanceof Double;
+        case STRING:
+            return value instanceof String;
+        case CHROMATOGRAPHY_INFO:
+            return (value instanceof ChromatographyInfo)
+                    && isExactRt((ChromatographyInfo) value, null);
+        case ION_ANNOTATIONS:
+            if (!(value instanceof List))
+                return false;
+            for (Object item : (List<?>) value) {
+                if (!(item instanceof IonAnnotation))
+                    return false;
+                final IonAnnotation ion = (IonAnnotation) item;
+                if ((ion.getChemicalStructure() != null)
+                        || (ion.getIonType() != null)
+                        || (ion.getIdentificationMethod() != null)
+                        || (ion.getAccessionURL() != null)
+                        || (ion.getChromatographyInfo() != null))
+                    return false;
+            }
+            return true;
+        case CHROMATOGRAM:
+            if (!(value instanceof Chromatogram))
+                return false;
+            final Chromatogram chromatogram = (Chromatogram) value;
+            if ((chromatogram.getChromatogramNumber() == null)
+                    || (chromatogram.getSeparationType() == null)
+                    || (chromatogram.getIonAnnotation() != null)
+                    || !chromatogram.getIsolations().isEmpty())
+                return false;
+            final ChromatographyInfo rtValues[] = chromatogram
+                    .getRetentionTimes();
+            for (int i = 0; i < chromatogram.getNumberOfDataPoints(); i++) {
+                if ((rtValues[i] == null) || !isExactRt(rtValues[i],
+                        chromatogram.getSeparationType()))
+                    return false;
+            }
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @param separationType
+     *            separation type the value is read back with; null for the
+     *            values of an RT column, which are read back as UNKNOWN
+     */
+    private static boolean isExactRt(@Nonnull ChromatographyInfo info,
+            @Nullable SeparationType separationType) {
+        final SeparationType expectedType = (separationType == null)
+                ? SeparationType.UNKNOWN : separationType;
+        return (info.getRetentionTime() != null)
+                && (info.getSecondaryRetentionTime() == null)
+                && (info.getIonDriftTime() == null)
+                && (info.getSeparationType() == expectedType);
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (totalColumns == 0)
+            return null;
+        return (float) processedColumns / totalColumns;
+    }
+
+    @Override
+    @Nullable
+    public File getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        this.canceled = true;
+    }
+
+    /**
+     * Growable little-endian byte buffer.
+     */
+    private static class Encoder {
+
+        private ByteBuffer buffer;
+
+        Encoder(int initialCapacity) {
+            buffer = ByteBuffer.allocate(initialCapacity)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (buffer.remaining() >= extra)
+                return;
+            final int newCapacity = Math.max(buffer.capacity() * 2,
+                    buffer.position() + extra);
+            final ByteBuffer newBuffer = ByteBuffer.allocate(newCapacity)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            newBuffer.put(buffer);
+            buffer = newBuffer;
+        }
+
+        Encoder put(byte value) {
+            ensureCapacity(1);
+            buffer.put(value);
+            return this;
+        }
+
+        Encoder put(byte values[]) {
+            ensureCapacity(values.length);
+            buffer.put(values);
+            return this;
+        }
+
+        Encoder putInt(int value) {
+            ensureCapacity(4);
+            buffer.putInt(value);
+            return this;
+        }
+
+        Encoder putLong(long value) {
+            ensureCapacity(8);
+            buffer.putLong(value);
+            return this;
+        }
+
+        Encoder putFloat(float value) {
+            ensureCapacity(4);
+            buffer.putFloat(value);
+            return this;
+        }
+
+        Encoder putDouble(double value) {
+            ensureCapacity(8);
+            buffer.putDouble(value);
+            return this;
+        }
+
+        /**
+         * Null strings are written with length -1.
+         */
+        Encoder putString(@Nullable String value) {
+            if (value == null)
+                return putInt(-1);
+            final byte bytes[] = value.getBytes(StandardCharsets.UTF_8);
+            return putInt(bytes.length).put(bytes);
+        }
+
+        Encoder align(int alignment) {
+            final int padding = ColumnarFormat.align(buffer.position(),
+                    alignment) - buffer.position();
+            return put(new byte[padding]);
+        }
+
+        int size() {
+            return buffer.position();
+        }
+
+        ByteBuffer flip() {
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    private static class EncodedChunk {
+        private final FeatureTableColumn<?> column;
+        private final ColumnType type;
+        private final ByteBuffer data;
+        private final int rawLength;
+
+        EncodedChunk(FeatureTableColumn<?> column, ColumnType type,
+                ByteBuffer data, int rawLength) {
+            this.column = column;
+            this.type = type;
+            this.data = data;
+            this.rawLength = rawLength;
+        }
+    }
+
+}
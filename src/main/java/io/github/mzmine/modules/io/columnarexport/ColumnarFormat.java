@@ -0,0 +1,81 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.io.columnarexport;
+
+/**
+ * Layout of the columnar binary feature table format (.mzft). All numbers are
+ * little-endian.
+ * 
+ * <pre>
+ * file    := MAGIC version:int32 chunk* footer footerLength:int64 MAGIC
+ * chunk   := 8-byte aligned, optionally compressed as a whole:
+ *            nullBitmap:byte[(rows + 7) / 8] padding to 8 bytes values
+ * footer  := name:string rows:int32 codec:byte
+ *            sampleCount:int32 (name:string rawFile:string)*
+ *            columnCount:int32 column*
+ * column  := name:string sample:int32 type:byte offset:int64
+ *            storedLength:int64 rawLength:int64
+ * string  := length:int32 utf8:byte[length], length -1 for null
+ * </pre>
+ * 
+ * The values of a chunk depend on the column type:
+ * <ul>
+ * <li>INT32, FLOAT32, FLOAT64: one primitive value per row</li>
+ * <li>CHROMATOGRAPHY_INFO: the retention time as FLOAT32</li>
+ * <li>STRING: dictionary-encoded, dictionarySize:int32 string* padding to 4
+ * bytes, then one int32 dictionary code per row</li>
+ * <li>ION_ANNOTATIONS: dictionary of annotations, dictionarySize:int32
+ * (id:string description:string formula:string expectedMz:float64)* padding
+ * to 4 bytes, then rows + 1 int32 offsets and the int32 dictionary codes of
+ * all rows, like an Arrow list column</li>
+ * <li>CHROMATOGRAM (version 2): per row the chromatogram number, the ordinals
+ * of its ChromatogramType and SeparationType (-1 for null) as int32, padding
+ * to 8 bytes, the m/z as float64 (NaN for null), then rows + 1 int32 data
+ * point offsets, and the retention times as float32, the m/z values as
+ * float64 and the intensities as float32 of all data points, each array
+ * padded to 8 bytes</li>
+ * </ul>
+ * Columns of other types are not written. A set bit in the null bitmap (least
+ * significant bit first) marks a non-null value. Uncompressed chunks can be
+ * read without copying by memory mapping the file; the sample index of a
+ * column is -1 for columns without a sample.
+ */
+public final class ColumnarFormat {
+
+    public static final byte MAGIC[] = { 'M', 'Z', 'F', 'T' };
+    public static final int VERSION = 2;
+    public static final String EXTENSION = "mzft";
+
+    public enum ColumnType {
+        INT32, FLOAT32, FLOAT64, CHROMATOGRAPHY_INFO, STRING, ION_ANNOTATIONS, CHROMATOGRAM;
+    }
+
+    public enum Codec {
+        NONE, DEFLATE;
+    }
+
+    private ColumnarFormat() {
+    }
+
+    static int align(int position, int alignment) {
+        return (position + alignment - 1) / alignment * alignment;
+    }
+
+}
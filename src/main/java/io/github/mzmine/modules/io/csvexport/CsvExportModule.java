@@ -32,7 +32,6 @@ import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
-import io.github.msdk.io.csv.CsvFileExportMethod;
 import io.github.mzmine.gui.MZmineGUI;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
@@ -83,6 +82,9 @@ public class CsvExportModule implements MZmineProcessingModule {
                 .getParameter(CsvExportParameters.exportAllIds).getValue();
         final FeatureTableColumnsSelection tableColumns = parameters
                 .getParameter(CsvExportParameters.tableColumns).getValue();
+        final Boolean compressValue = parameters
+                .getParameter(CsvExportParameters.compress).getValue();
+        final boolean compress = (compressValue != null) && compressValue;
 
         if (featureTables == null
                 || featureTables.getMatchingFeatureTables().isEmpty()) {
@@ -122,12 +124,14 @@ public class CsvExportModule implements MZmineProcessingModule {
             // Multi-CSV export: substitute pattern in name
             String newFilename = exportFilePattern.getPath().replaceAll(
                     Pattern.quote(namePattern), featureTable.getName());
+            if (compress && !newFilename.endsWith(".gz"))
+                newFilename = newFilename + ".gz";
             File exportFileCSV = new File(newFilename);
 
-            // New feature filter task
-            CsvFileExportMethod method = new CsvFileExportMethod(featureTable,
-                    exportFileCSV, separator, itemSeparator, exportAllIds,
-                    columns);
+            // New feature table export task
+            StreamingCsvExportMethod method = new StreamingCsvExportMethod(
+                    featureTable, exportFileCSV, separator, itemSeparator,
+                    exportAllIds, columns, compress);
 
             MSDKTask newTask = new MSDKTask("Exporting feature table",
                     featureTable.getName(), method);
@@ -139,6 +143,11 @@ public class CsvExportModule implements MZmineProcessingModule {
 
     }
 
+    @Override
+    public boolean createsData() {
+        return false;
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
         return CsvExportParameters.class;
@@ -63,9 +63,14 @@ public class CsvExportParameters extends ParameterSet {
 
     public static final FeatureTableColumnsParameter tableColumns = new FeatureTableColumnsParameter();
 
+    public static final BooleanParameter compress = new BooleanParameter(
+            "Compress output (gzip)",
+            "If checked, the exported file will be compressed with gzip on the fly and .gz will be appended to the file name.",
+            "Output", false);
+
     public CsvExportParameters() {
         super(featureTables, exportFileCSV, separator, itemSeparator,
-                exportAllIds, tableColumns);
+                exportAllIds, tableColumns, compress);
     }
 
 }
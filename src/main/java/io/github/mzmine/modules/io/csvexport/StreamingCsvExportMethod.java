@@ -0,0 +1,216 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.io.csvexport;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.mzmine.util.io.ByteBlock;
+import io.github.mzmine.util.io.FastNumberFormat;
+import io.github.mzmine.util.io.ParallelBlockWriter;
+
+/**
+ * CSV export of a feature table. Blocks of rows are formatted in parallel with
+ * locale independent number formatting and streamed in order to the output
+ * file, optionally gzip compressed.
+ */
+public class StreamingCsvExportMethod implements MSDKMethod<File> {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull FeatureTable featureTable;
+    private final @Nonnull File exportFile;
+    private final @Nonnull String separator;
+    private final @Nonnull String itemSeparator;
+    private final boolean exportAllIds;
+    private final @Nonnull List<FeatureTableColumn<?>> columns;
+    private final @Nonnull ParallelBlockWriter writer;
+
+    private int totalRows = 0;
+    private File result;
+
+    public StreamingCsvExportMethod(@Nonnull FeatureTable featureTable,
+            @Nonnull File exportFile, @Nonnull String separator,
+            @Nonnull String itemSeparator, boolean exportAllIds,
+            @Nonnull List<FeatureTableColumn<?>> columns, boolean compress) {
+        this.featureTable = featureTable;
+        this.exportFile = exportFile;
+        this.separator = separator;
+        this.itemSeparator = itemSeparator;
+        this.exportAllIds = exportAllIds;
+        this.writer = new ParallelBlockWriter(exportFile, compress);
+
+        // Chromatograms cannot be represented in a text cell
+        this.columns = new ArrayList<>();
+        for (FeatureTableColumn<?> column : columns) {
+            if (column.getName().equals(ColumnName.CHROMATOGRAM.getName()))
+                continue;
+            this.columns.add(column);
+        }
+    }
+
+    @Override
+    public File execute() throws MSDKException {
+
+        logger.info("Exporting feature table " + featureTable.getName()
+                + " to " + exportFile);
+
+        final List<FeatureTableRow> rows = new ArrayList<>(
+                featureTable.getRows());
+        final FeatureTableColumn<?> tableColumns[] = columns
+                .toArray(new FeatureTableColumn<?>[columns.size()]);
+        final byte separatorBytes[] = separator
+                .getBytes(StandardCharsets.UTF_8);
+        totalRows = rows.size();
+
+        // Header
+        final ByteBlock header = new ByteBlock();
+        for (int i = 0; i < tableColumns.length; i++) {
+            if (i > 0)
+                header.append(separatorBytes);
+            String columnName = tableColumns[i].getName();
+            Sample sample = tableColumns[i].getSample();
+            if (sample != null)
+                columnName = sample.getName() + " " + columnName;
+            appendText(header, columnName);
+        }
+        header.append('\n');
+
+        try {
+            boolean finished = writer.write(header, totalRows,
+                    (firstRow, lastRow, out) -> {
+                        for (int r = firstRow; r < lastRow; r++) {
+                            final FeatureTableRow row = rows.get(r);
+                            for (int i = 0; i < tableColumns.length; i++) {
+                                if (i > 0)
+                                    out.append(separatorBytes);
+                                appendCell(out, row.getData(tableColumns[i]));
+                            }
+                            out.append('\n');
+                        }
+                    });
+            if (!finished)
+                return null;
+        } catch (Exception e) {
+            throw new MSDKException(e);
+        }
+
+        result = exportFile;
+        return result;
+    }
+
+    private void appendCell(ByteBlock out, @Nullable Object value) {
+
+        if (value == null)
+            return;
+
+        if (value instanceof Double) {
+            out.append((Double) value, FastNumberFormat.DOUBLE_DECIMALS);
+        } else if (value instanceof Float) {
+            out.append((Float) value, FastNumberFormat.FLOAT_DECIMALS);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short) {
+            out.append(((Number) value).longValue());
+        } else if (value instanceof ChromatographyInfo) {
+            final Float rt = ((ChromatographyInfo) value).getRetentionTime();
+            if (rt != null)
+                out.append(rt, FastNumberFormat.FLOAT_DECIMALS);
+        } else if (value instanceof Range) {
+            final Range<?> range = (Range<?>) value;
+            appendCell(out, range.lowerEndpoint());
+            out.append('-');
+            appendCell(out, range.upperEndpoint());
+        } else if (value instanceof List) {
+            final StringBuilder sb = new StringBuilder();
+            for (Object item : (List<?>) value) {
+                if (sb.length() > 0)
+                    sb.append(itemSeparator);
+                if (item instanceof IonAnnotation) {
+                    IonAnnotation ionAnnotation = (IonAnnotation) item;
+                    if (ionAnnotation.getDescription() != null)
+                        sb.append(ionAnnotation.getDescription());
+                    else
+                        sb.append(ionAnnotation.getAnnotationId());
+                } else {
+                    sb.append(item);
+                }
+                if (!exportAllIds)
+                    break;
+            }
+            appendText(out, sb.toString());
+        } else {
+            appendText(out, value.toString());
+        }
+    }
+
+    /**
+     * Appends a text cell, quoting it if it contains the separator, a quote or
+     * a line break.
+     */
+    private void appendText(ByteBlock out, String text) {
+        if (text.contains(separator) || text.indexOf('"') >= 0
+                || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            out.append('"');
+            out.append(text.replace("\"", "\"\""));
+            out.append('"');
+        } else {
+            out.append(text);
+        }
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (totalRows == 0)
+            return null;
+        return (float) writer.getWrittenRows() / totalRows;
+    }
+
+    @Override
+    @Nullable
+    public File getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        writer.cancel();
+    }
+
+}
@@ -29,7 +29,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.featuretables.FeatureTable;
-import io.github.msdk.io.mztab.MzTabFileExportMethod;
 import io.github.mzmine.gui.MZmineGUI;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
@@ -74,6 +73,9 @@ public class MzTabExportModule implements MZmineProcessingModule {
         final Boolean exportAllFeatures = parameters
                 .getParameter(MzTabExportParameters.exportAllFeatures)
                 .getValue();
+        final Boolean compressValue = parameters
+                .getParameter(MzTabExportParameters.compress).getValue();
+        final boolean compress = (compressValue != null) && compressValue;
 
         if (featureTables == null
                 || featureTables.getMatchingFeatureTables().isEmpty()) {
@@ -99,11 +101,13 @@ public class MzTabExportModule implements MZmineProcessingModule {
             // Multi-CSV export: substitute pattern in name
             String newFilename = exportFilePattern.getPath().replaceAll(
                     Pattern.quote(namePattern), featureTable.getName());
+            if (compress && !newFilename.endsWith(".gz"))
+                newFilename = newFilename + ".gz";
             File exportFile = new File(newFilename);
 
-            // New feature filter task
-            MzTabFileExportMethod method = new MzTabFileExportMethod(
-                    featureTable, exportFile, exportAllFeatures);
+            // New feature table export task
+            StreamingMzTabExportMethod method = new StreamingMzTabExportMethod(
+                    featureTable, exportFile, exportAllFeatures, compress);
 
             MSDKTask newTask = new MSDKTask("Exporting feature table",
                     featureTable.getName(), method);
@@ -115,6 +119,11 @@ public class MzTabExportModule implements MZmineProcessingModule {
 
     }
 
+    @Override
+    public boolean createsData() {
+        return false;
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
         return MzTabExportParameters.class;
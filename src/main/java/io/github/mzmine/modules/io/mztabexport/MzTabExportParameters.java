@@ -50,8 +50,13 @@ public class MzTabExportParameters extends ParameterSet {
 
     public static final FeatureTableColumnsParameter tableColumns = new FeatureTableColumnsParameter();
 
+    public static final BooleanParameter compress = new BooleanParameter(
+            "Compress output (gzip)",
+            "If checked, the exported file will be compressed with gzip on the fly and .gz will be appended to the file name.",
+            "Output", false);
+
     public MzTabExportParameters() {
-        super(featureTables, exportFile, exportAllFeatures);
+        super(featureTables, exportFile, exportAllFeatures, compress);
     }
 
 }
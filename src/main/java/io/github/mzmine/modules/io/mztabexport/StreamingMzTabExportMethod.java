@@ -0,0 +1,315 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.io.mztabexport;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.openscience.cdk.interfaces.IMolecularFormula;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.util.io.ByteBlock;
+import io.github.mzmine.util.io.FastNumberFormat;
+import io.github.mzmine.util.io.ParallelBlockWriter;
+
+/**
+ * mzTab 1.0 (Summary, Quantification) export of a feature table. The metadata
+ * section is written first, then the small molecule rows are formatted in
+ * parallel blocks and streamed in order to the output file, optionally gzip
+ * compressed. Each ion annotation of a row is written as a separate small
+ * molecule line.
+ */
+public class StreamingMzTabExportMethod implements MSDKMethod<File> {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final String NULL = "null";
+
+    private final @Nonnull FeatureTable featureTable;
+    private final @Nonnull File exportFile;
+    private final boolean exportAllFeatures;
+    private final @Nonnull ParallelBlockWriter writer;
+
+    private int totalRows = 0;
+    private File result;
+
+    public StreamingMzTabExportMethod(@Nonnull FeatureTable featureTable,
+            @Nonnull File exportFile, boolean exportAllFeatures,
+            boolean compress) {
+        this.featureTable = featureTable;
+        this.exportFile = exportFile;
+        this.exportAllFeatures = exportAllFeatures;
+        this.writer = new ParallelBlockWriter(exportFile, compress);
+    }
+
+    @Override
+    public File execute() throws MSDKException {
+
+        logger.info("Exporting feature table " + featureTable.getName()
+                + " to mzTab file " + exportFile);
+
+        final List<FeatureTableRow> rows = new ArrayList<>(
+                featureTable.getRows());
+        final List<Sample> samples = featureTable.getSamples();
+        totalRows = rows.size();
+
+        final FeatureTableColumn<Double> mzColumn = featureTable
+                .getColumn(ColumnName.MZ, null);
+        final FeatureTableColumn<ChromatographyInfo> rtColumn = featureTable
+                .getColumn(ColumnName.RT, null);
+        final FeatureTableColumn<List<IonAnnotation>> ionColumn = featureTable
+                .getColumn(ColumnName.IONANNOTATION, null);
+        final List<FeatureTableColumn<?>> areaColumns = new ArrayList<>();
+        final List<FeatureTableColumn<?>> chargeColumns = new ArrayList<>();
+        for (Sample sample : samples) {
+            areaColumns.add(featureTable.getColumn(ColumnName.AREA, sample));
+            chargeColumns
+                    .add(featureTable.getColumn(ColumnName.CHARGE, sample));
+        }
+
+        final ByteBlock header = new ByteBlock();
+        writeMetadata(header, samples);
+
+        // Small molecule header
+        header.append("SMH\tidentifier\tchemical_formula\tsmiles\tinchi_key"
+                + "\tdescription\texp_mass_to_charge\tcalc_mass_to_charge"
+                + "\tcharge\tretention_time\ttaxid\tspecies\tdatabase"
+                + "\tdatabase_version\treliability\turi\tspectra_ref"
+                + "\tsearch_engine\tbest_search_engine_score[1]"
+                + "\tmodifications");
+        for (int i = 1; i <= samples.size(); i++)
+            header.append("\tsmallmolecule_abundance_assay[" + i + "]");
+        for (int i = 1; i <= samples.size(); i++) {
+            header.append("\tsmallmolecule_abundance_study_variable[" + i
+                    + "]\tsmallmolecule_abundance_stdev_study_variable[" + i
+                    + "]\tsmallmolecule_abundance_std_error_study_variable["
+                    + i + "]");
+        }
+        header.append('\n');
+
+        try {
+            boolean finished = writer.write(header, totalRows,
+                    (firstRow, lastRow, out) -> {
+                        for (int r = firstRow; r < lastRow; r++) {
+                            final FeatureTableRow row = rows.get(r);
+                            List<IonAnnotation> ionAnnotations = null;
+                            if (ionColumn != null)
+                                ionAnnotations = row.getData(ionColumn);
+                            if (ionAnnotations == null
+                                    || ionAnnotations.isEmpty()) {
+                                if (!exportAllFeatures)
+                                    continue;
+                                ionAnnotations = Collections.singletonList(null);
+                            }
+                            for (IonAnnotation ion : ionAnnotations) {
+                                appendRow(out, row, ion,
+                                        mzColumn == null ? null
+                                                : row.getData(mzColumn),
+                                        rtColumn == null ? null
+                                                : row.getData(rtColumn),
+                                        areaColumns, chargeColumns);
+                            }
+                        }
+                    });
+            if (!finished)
+                return null;
+        } catch (Exception e) {
+            throw new MSDKException(e);
+        }
+
+        result = exportFile;
+        return result;
+    }
+
+    private void writeMetadata(ByteBlock out, List<Sample> samples) {
+        out.append("MTD\tmzTab-version\t1.0.0\n");
+        out.append("MTD\tmzTab-mode\tSummary\n");
+        out.append("MTD\tmzTab-type\tQuantification\n");
+        out.append("MTD\tdescription\t").append(clean(featureTable.getName()))
+                .append('\n');
+        out.append("MTD\tsoftware[1]\t[MS, MS:1002342, MZmine, "
+                + MZmineCore.getMZmineVersion() + "]\n");
+        out.append("MTD\tsmall_molecule-quantification_unit"
+                + "\t[PRIDE, PRIDE:0000330, Arbitrary quantification unit, ]\n");
+        out.append("MTD\tsmallmolecule_search_engine_score[1]"
+                + "\t[MS, MS:1001153, search engine specific score, ]\n");
+
+        for (int i = 1; i <= samples.size(); i++) {
+            final Sample sample = samples.get(i - 1);
+            String location = sample.getName();
+            RawDataFile rawDataFile = sample.getRawDataFile();
+            if (rawDataFile != null
+                    && rawDataFile.getOriginalFile() != null)
+                location = rawDataFile.getOriginalFile().toURI().toString();
+            else
+                location = "file:///" + clean(location);
+            out.append("MTD\tms_run[" + i + "]-location\t" + location + "\n");
+        }
+        for (int i = 1; i <= samples.size(); i++) {
+            out.append("MTD\tassay[" + i + "]-quantification_reagent"
+                    + "\t[MS, MS:1002038, unlabeled sample, ]\n");
+            out.append("MTD\tassay[" + i + "]-ms_run_ref\tms_run[" + i
+                    + "]\n");
+        }
+        for (int i = 1; i <= samples.size(); i++) {
+            out.append("MTD\tstudy_variable[" + i + "]-assay_refs\tassay[" + i
+                    + "]\n");
+            out.append("MTD\tstudy_variable[" + i + "]-description\t"
+                    + clean(samples.get(i - 1).getName()) + "\n");
+        }
+        out.append('\n');
+    }
+
+    private void appendRow(ByteBlock out, FeatureTableRow row,
+            @Nullable IonAnnotation ion, @Nullable Double mz,
+            @Nullable ChromatographyInfo rt,
+            List<FeatureTableColumn<?>> areaColumns,
+            List<FeatureTableColumn<?>> chargeColumns) {
+
+        out.append("SML\t");
+
+        // identifier, chemical_formula, smiles, inchi_key, description
+        if (ion != null && ion.getAnnotationId() != null)
+            out.append(clean(ion.getAnnotationId()));
+        else
+            out.append(NULL);
+        out.append('\t');
+        final IMolecularFormula formula = ion == null ? null
+                : ion.getFormula();
+        if (formula != null)
+            out.append(MolecularFormulaManipulator.getString(formula));
+        else
+            out.append(NULL);
+        out.append("\tnull\tnull\t");
+        if (ion != null && ion.getDescription() != null)
+            out.append(clean(ion.getDescription()));
+        else
+            out.append(NULL);
+        out.append('\t');
+
+        // exp_mass_to_charge, calc_mass_to_charge
+        appendNumber(out, mz, FastNumberFormat.DOUBLE_DECIMALS);
+        out.append('\t');
+        appendNumber(out, ion == null ? null : ion.getExpectedMz(),
+                FastNumberFormat.DOUBLE_DECIMALS);
+        out.append('\t');
+
+        // charge, taken from the first sample which has it
+        Object charge = null;
+        for (FeatureTableColumn<?> chargeColumn : chargeColumns) {
+            if (chargeColumn == null)
+                continue;
+            charge = row.getData(chargeColumn);
+            if (charge != null)
+                break;
+        }
+        appendNumber(out, (Number) charge, 0);
+        out.append('\t');
+
+        // retention_time in seconds
+        appendNumber(out, rt == null ? null : rt.getRetentionTime(),
+                FastNumberFormat.FLOAT_DECIMALS);
+
+        // taxid, species, database, database_version, reliability, uri,
+        // spectra_ref, search_engine, best_search_engine_score[1],
+        // modifications
+        out.append("\tnull\tnull\tnull\tnull\tnull\tnull\tnull\tnull\tnull"
+                + "\tnull");
+
+        // Abundances per assay, and per study variable
+        final Number areas[] = new Number[areaColumns.size()];
+        for (int i = 0; i < areas.length; i++) {
+            final FeatureTableColumn<?> areaColumn = areaColumns.get(i);
+            if (areaColumn == null)
+                continue;
+            final Object area = row.getData(areaColumn);
+            if (area instanceof Number)
+                areas[i] = (Number) area;
+        }
+        for (Number area : areas) {
+            out.append('\t');
+            appendNumber(out, area, FastNumberFormat.DOUBLE_DECIMALS);
+        }
+        for (Number area : areas) {
+            out.append('\t');
+            appendNumber(out, area, FastNumberFormat.DOUBLE_DECIMALS);
+            out.append("\tnull\tnull");
+        }
+        out.append('\n');
+    }
+
+    private static void appendNumber(ByteBlock out, @Nullable Number value,
+            int maxDecimals) {
+        if (value == null)
+            out.append(NULL);
+        else if (maxDecimals == 0)
+            out.append(value.longValue());
+        else if (value instanceof Float)
+            out.append(value.doubleValue(),
+                    Math.min(maxDecimals, FastNumberFormat.FLOAT_DECIMALS));
+        else
+            out.append(value.doubleValue(), maxDecimals);
+    }
+
+    /**
+     * Removes the characters which would break the tab separated layout.
+     */
+    private static String clean(String text) {
+        return text.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (totalRows == 0)
+            return null;
+        return (float) writer.getWrittenRows() / totalRows;
+    }
+
+    @Override
+    @Nullable
+    public File getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        writer.cancel();
+    }
+
+}
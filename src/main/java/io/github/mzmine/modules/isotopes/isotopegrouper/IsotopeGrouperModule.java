@@ -27,11 +27,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.features.isotopegrouper.IsotopeGrouperMethod;
 import io.github.msdk.util.MZTolerance;
 import io.github.msdk.util.RTTolerance;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.modules.filtering.featurefilter.FeatureFilterParameters;
 import io.github.mzmine.parameters.ParameterSet;
@@ -105,8 +105,8 @@ public class IsotopeGrouperModule implements MZmineProcessingModule {
                 .getMatchingFeatureTables()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getMemoryDataStore();
+            DataPointStore dataStore = MZmineCore.getMemoryGovernor()
+                    .createMemoryDataStore();
 
             // Feature table name
             String featureTableName = featureTable.getName();
@@ -125,6 +125,10 @@ public class IsotopeGrouperModule implements MZmineProcessingModule {
             // Add the feature table to the project
             newTask.setOnSucceeded(e -> {
                 FeatureTable newFeatureTable = method.getResult();
+
+                // The new table shares the values of the original table
+                MZmineCore.getReferenceTracker().acquire(featureTable,
+                        newFeatureTable);
                 project.addFeatureTable(newFeatureTable);
 
                 // If selected, remove old feature table
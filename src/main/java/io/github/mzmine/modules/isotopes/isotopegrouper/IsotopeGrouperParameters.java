@@ -28,6 +28,7 @@ import io.github.mzmine.parameters.ParameterValidator;
 import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.ComboParameter;
 import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.RemoveOriginalParameter;
 import io.github.mzmine.parameters.parametertypes.StringParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParameter;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZToleranceParameter;
@@ -77,7 +78,7 @@ public class IsotopeGrouperParameters extends ParameterSet {
             "Name suffix", "Suffix to be added to the feature table name.",
             "Output", " deisotoped");
 
-    public static final BooleanParameter removeOldTable = new BooleanParameter(
+    public static final RemoveOriginalParameter removeOldTable = new RemoveOriginalParameter(
             "Remove original table?",
             "If checked, the original feature table will be removed.", "Output",
             false);
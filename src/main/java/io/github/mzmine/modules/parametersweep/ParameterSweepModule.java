@@ -0,0 +1,200 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.parametersweep;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.gui.mainwindow.MainWindowController;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.MZmineProcessingStepImpl;
+import io.github.mzmine.modules.MZmineRunnableModule;
+import io.github.mzmine.modules.alignment.joinaligner.JoinAlignerModule;
+import io.github.mzmine.modules.watchfolder.WatchFolderStep;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import io.github.mzmine.project.MZmineProject;
+import javafx.concurrent.Task;
+
+/**
+ * Parameter sweep module. Runs processing steps for all combinations of the
+ * values of selected parameters and summarizes the results.
+ */
+public class ParameterSweepModule implements MZmineRunnableModule {
+
+    // Guards against grids which would take days to evaluate
+    private static final int MAX_COMBINATIONS = 10000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final @Nonnull String MODULE_NAME = "Parameter sweep";
+    private static final @Nonnull String MODULE_DESCRIPTION = "This module runs processing steps for all combinations of the given parameter values and summarizes the resulting feature tables.";
+
+    @Override
+    public @Nonnull String getName() {
+        return MODULE_NAME;
+    }
+
+    @Override
+    public @Nonnull String getDescription() {
+        return MODULE_DESCRIPTION;
+    }
+
+    @Override
+    public void runModule(@Nonnull MZmineProject project,
+            @Nonnull ParameterSet parameters,
+            @Nonnull Collection<Task<?>> tasks) {
+
+        final RawDataFilesSelection rawDataFiles = parameters
+                .getParameter(ParameterSweepParameters.rawDataFiles)
+                .getValue();
+        final List<WatchFolderStep> selectedSteps = parameters
+                .getParameter(ParameterSweepParameters.steps).getValue();
+        final Boolean joinAlignment = parameters
+                .getParameter(ParameterSweepParameters.joinAlignment)
+                .getValue();
+        final String grid = parameters
+                .getParameter(ParameterSweepParameters.grid).getValue();
+        final Integer maxParallel = parameters
+                .getParameter(ParameterSweepParameters.maxParallel)
+                .getValue();
+        final Boolean keepResults = parameters
+                .getParameter(ParameterSweepParameters.keepResults)
+                .getValue();
+        final File summaryFile = parameters
+                .getParameter(ParameterSweepParameters.summaryFile)
+                .getValue();
+
+        if ((rawDataFiles == null)
+                || rawDataFiles.getMatchingRawDataFiles().isEmpty()) {
+            logger.warn(
+                    "Parameter sweep module started with no raw data files selected");
+            return;
+        }
+
+        // Steps are applied in the order of their definition, followed by
+        // the alignment
+        final List<WatchFolderStep> sortedSteps = new ArrayList<>();
+        if (selectedSteps != null)
+            sortedSteps.addAll(selectedSteps);
+        sortedSteps.sort(Comparator.naturalOrder());
+
+        final List<MZmineProcessingStep<MZmineProcessingModule>> steps = new ArrayList<>();
+        final List<List<String>> stepNames = new ArrayList<>();
+        final List<ParameterSet> stepParameters = new ArrayList<>();
+        for (WatchFolderStep step : sortedSteps) {
+            final MZmineProcessingModule module = MZmineCore
+                    .getModuleInstance(step.getModuleClass());
+            steps.add(new MZmineProcessingStepImpl<>(module,
+                    MZmineCore.getConfiguration()
+                            .getModuleParameters(step.getModuleClass())
+                            .clone()));
+            stepNames.add(Arrays.asList(step.toString(), module.getName()));
+        }
+        if ((joinAlignment != null) && joinAlignment) {
+            final MZmineProcessingModule module = MZmineCore
+                    .getModuleInstance(JoinAlignerModule.class);
+            steps.add(new MZmineProcessingStepImpl<>(module,
+                    MZmineCore.getConfiguration()
+                            .getModuleParameters(JoinAlignerModule.class)
+                            .clone()));
+            stepNames.add(Collections.singletonList(module.getName()));
+        }
+        if (steps.isEmpty()) {
+            final String msg = "Please select at least one processing step";
+            logger.warn(msg);
+            MZmineGUI.displayMessage(msg);
+            return;
+        }
+
+        // The steps run with the parameters last set in their own dialogs,
+        // so check them before anything is started
+        for (MZmineProcessingStep<MZmineProcessingModule> step : steps) {
+            final List<String> messages = new ArrayList<>();
+            if (!step.getParameterSet().checkParameterValues(messages)) {
+                final String msg = "Please set up the parameters of "
+                        + step.getModule().getName() + " first: "
+                        + String.join(", ", messages);
+                logger.warn(msg);
+                MZmineGUI.displayMessage(msg);
+                return;
+            }
+            stepParameters.add(step.getParameterSet());
+        }
+
+        final List<String> gridErrors = new ArrayList<>();
+        final List<SweepAxis> axes = SweepAxis.parseGrid(grid, stepNames,
+                stepParameters, gridErrors);
+        if (axes == null) {
+            final String msg = "Invalid parameter grid: "
+                    + String.join("; ", gridErrors);
+            logger.warn(msg);
+            MZmineGUI.displayMessage(msg);
+            return;
+        }
+        long numOfCombinations = 1;
+        for (SweepAxis axis : axes)
+            numOfCombinations *= axis.getNumberOfValues();
+        if (numOfCombinations > MAX_COMBINATIONS) {
+            final String msg = "The parameter grid has " + numOfCombinations
+                    + " combinations, at most " + MAX_COMBINATIONS
+                    + " are allowed";
+            logger.warn(msg);
+            MZmineGUI.displayMessage(msg);
+            return;
+        }
+
+        final List<RawDataFile> files = new ArrayList<>(
+                rawDataFiles.getMatchingRawDataFiles());
+        ParameterSweepTask newTask = new ParameterSweepTask(files, steps,
+                axes, maxParallel, (keepResults != null) && keepResults,
+                summaryFile, project);
+
+        // The task waits for the tasks of the steps, so it runs on its own
+        // thread instead of occupying a slot of the task scheduler
+        MainWindowController mwc = MZmineGUI.getMainWindowController();
+        if (mwc != null)
+            mwc.getTaskTable().getTasks().add(newTask);
+        Thread sweepThread = new Thread(newTask, "Parameter sweep");
+        sweepThread.setDaemon(true);
+        sweepThread.start();
+
+    }
+
+    @Override
+    public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
+        return ParameterSweepParameters.class;
+    }
+
+}
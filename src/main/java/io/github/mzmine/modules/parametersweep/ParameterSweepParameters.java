@@ -0,0 +1,92 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.parametersweep;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import io.github.mzmine.modules.watchfolder.WatchFolderStep;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.ParameterValidator;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.MultiChoiceParameter;
+import io.github.mzmine.parameters.parametertypes.TextAreaParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import javafx.stage.FileChooser.ExtensionFilter;
+
+public class ParameterSweepParameters extends ParameterSet {
+
+    public static final RawDataFilesParameter rawDataFiles = new RawDataFilesParameter();
+
+    // Export steps would write the same files for every combination
+    public static final MultiChoiceParameter<WatchFolderStep> steps = new MultiChoiceParameter<>(
+            "Processing steps",
+            "Steps applied to the raw data files, in the listed order. Each step uses the parameters last set in its own dialog, except for the parameters varied by the grid.",
+            "Processing",
+            new ArrayList<>(EnumSet.range(WatchFolderStep.BINNING_CENTROIDING,
+                    WatchFolderStep.LOCAL_DATABASE_SEARCH)));
+
+    public static final BooleanParameter joinAlignment = new BooleanParameter(
+            "Join alignment",
+            "Align the feature tables of each combination with the Join Aligner after the processing steps. Its parameters can be varied by the grid as well.",
+            "Processing", true);
+
+    public static final TextAreaParameter grid = new TextAreaParameter(
+            "Parameter grid",
+            "One line per varied parameter: step: parameter = value | value | ...\n"
+                    + "e.g. Chromatogram Builder: Min peak height = 5000 | 10000 | 50000\n"
+                    + "All combinations of the values are evaluated.",
+            "Sweep", ParameterValidator.createNonEmptyValidator(),
+            Arrays.asList(new ExtensionFilter("Text files", "*.txt"),
+                    new ExtensionFilter("All files", "*.*")));
+
+    public static final IntegerParameter maxParallel = new IntegerParameter(
+            "Max. combinations in parallel",
+            "Maximum number of steps of different combinations which run at the same time. The tasks of the steps are further limited by the task scheduler.",
+            "Sweep", (value, messages) -> {
+                if ((value == null) || (value < 1)) {
+                    messages.add(
+                            "At least 1 combination must be processed at a time");
+                    return false;
+                }
+                return true;
+            } , 4);
+
+    public static final BooleanParameter keepResults = new BooleanParameter(
+            "Keep feature tables",
+            "Keep the raw data files and feature tables created by all combinations in the project. Otherwise they are removed once the summary of their combinations has been computed.",
+            "Output", false);
+
+    public static final FileNameParameter summaryFile = new FileNameParameter(
+            "Summary file",
+            "CSV file where the feature counts and alignment statistics of each combination are written",
+            "Output", ParameterValidator.createNonEmptyValidator(),
+            FileNameParameter.Type.SAVE,
+            Arrays.asList(new ExtensionFilter("CSV file", "*.csv")));
+
+    public ParameterSweepParameters() {
+        super(rawDataFiles, steps, joinAlignment, grid, maxParallel,
+                keepResults, summaryFile);
+    }
+
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.parametersweep;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.MZmineProcessingStepImpl;
+import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.RemoveOriginalParameter;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.taskcontrol.MZmineTask;
+import io.github.mzmine.taskcontrol.ProcessingPipeline;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+/**
+ * Runs the processing steps for every combination of the values of the sweep
+ * axes. The combinations form a tree with one level per step: a step runs once
+ * for each combination of the values of its own axes, on the results of its
+ * parent, so the results of steps whose parameters do not vary, or vary only
+ * further down, are computed once and shared by all combinations below them.
+ * Siblings run in parallel, up to the configured number of steps at a time.
+ *
+ * When all combinations have ended, the summary of each combination is written
+ * to a CSV file.
+ */
+class ParameterSweepTask extends Task<Object> implements MZmineTask {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull List<RawDataFile> rawDataFiles;
+    private final @Nonnull List<MZmineProcessingStep<MZmineProcessingModule>> steps;
+    private final @Nonnull List<SweepAxis> axes;
+    private final boolean keepResults;
+    private final @Nonnull File summaryFile;
+    private final @Nonnull MZmineProject project;
+
+    private final int numOfCombinations;
+    private final SweepResult results[];
+    private final CountDownLatch remainingCombinations;
+    private final AtomicInteger failedCombinations = new AtomicInteger();
+    private final ExecutorService sweepThreads;
+
+    /**
+     * @param axes
+     *            varied parameters, ordered by step
+     */
+    ParameterSweepTask(@Nonnull List<RawDataFile> rawDataFiles,
+            @Nonnull List<MZmineProcessingStep<MZmineProcessingModule>> steps,
+            @Nonnull List<SweepAxis> axes, int maxParallel,
+            boolean keepResults, @Nonnull File summaryFile,
+            @Nonnull MZmineProject project) {
+        this.rawDataFiles = rawDataFiles;
+        this.steps = steps;
+        this.axes = axes;
+        this.keepResults = keepResults;
+        this.summaryFile = summaryFile;
+        this.project = project;
+
+        int combinations = 1;
+        for (SweepAxis axis : axes)
+            combinations *= axis.getNumberOfValues();
+        this.numOfCombinations = combinations;
+        this.results = new SweepResult[combinations];
+        this.remainingCombinations = new CountDownLatch(combinations);
+        this.sweepThreads = Executors.newFixedThreadPool(maxParallel, r -> {
+            Thread thread = new Thread(r, "Parameter sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refreshStatus();
+    }
+
+    @Override
+    public void refreshStatus() {
+        final long finished = numOfCombinations
+                - remainingCombinations.getCount();
+        updateProgress(finished, numOfCombinations);
+        updateTitle("Parameter sweep of " + numOfCombinations
+                + " combinations");
+        String message = finished + " of " + numOfCombinations
+                + " combinations evaluated";
+        if (failedCombinations.get() > 0)
+            message += ", " + failedCombinations.get() + " failed";
+        updateMessage(message);
+    }
+
+    @Override
+    protected Object call() throws Exception {
+
+        logger.info("Starting parameter sweep of " + numOfCombinations
+                + " combinations over " + steps.size() + " steps");
+
+        final Node root = new Node(null, -1, new int[axes.size()]);
+        root.rawDataFiles = rawDataFiles;
+        root.featureTables = Collections.emptyList();
+
+        try {
+            submitChildren(root);
+            while (!remainingCombinations.await(1, TimeUnit.SECONDS)) {
+                if (isCancelled())
+                    return null;
+                refreshStatus();
+            }
+        } finally {
+            sweepThreads.shutdownNow();
+        }
+        refreshStatus();
+
+        try {
+            writeSummary();
+        } catch (IOException e) {
+            final String msg = "Could not write the sweep summary to "
+                    + summaryFile + ": " + e.getMessage();
+            logger.error(msg, e);
+            MZmineGUI.displayMessage(msg);
+            return null;
+        }
+
+        final String msg = "Parameter sweep finished, " + numOfCombinations
+                + " combinations evaluated, summary written to "
+                + summaryFile;
+        logger.info(msg);
+        MZmineGUI.displayMessage(msg);
+        return null;
+    }
+
+    /**
+     * Submits a node for each combination of the values of the axes of the
+     * next step
+     */
+    private void submitChildren(@Nonnull Node parent) {
+        final int level = parent.level + 1;
+        final List<Integer> levelAxes = getAxesOfStep(level);
+        int numOfChildren = 1;
+        for (int a : levelAxes)
+            numOfChildren *= axes.get(a).getNumberOfValues();
+
+        parent.remainingChildren.set(numOfChildren);
+        for (int c = 0; c < numOfChildren; c++) {
+            final int valueIndexes[] = parent.valueIndexes.clone();
+            int rest = c;
+            for (int i = levelAxes.size() - 1; i >= 0; i--) {
+                final int a = levelAxes.get(i);
+                valueIndexes[a] = rest % axes.get(a).getNumberOfValues();
+                rest /= axes.get(a).getNumberOfValues();
+            }
+            final Node child = new Node(parent, level, valueIndexes);
+            sweepThreads.execute(() -> runNode(child));
+        }
+    }
+
+    /**
+     * Runs the step of the node on the results of its parent. Runs on a sweep
+     * thread.
+     */
+    private void runNode(@Nonnull Node node) {
+
+        final MZmineProcessingStep<MZmineProcessingModule> step = steps
+                .get(node.level);
+        final ParameterSet parameters = step.getParameterSet().clone();
+        for (int a : getAxesOfStep(node.level))
+            axes.get(a).apply(parameters, node.valueIndexes[a]);
+
+        // The inputs are shared by the sibling combinations; the sweep
+        // removes them itself once all combinations below have ended
+        for (Parameter<?> parameter : parameters) {
+            if (parameter instanceof RemoveOriginalParameter)
+                parameter.setValue(false);
+        }
+
+        final ProcessingPipeline pipeline = new ProcessingPipeline(
+                Collections.singletonList(new MZmineProcessingStepImpl<>(
+                        step.getModule(), parameters)));
+        boolean succeeded;
+        String errorMessage = null;
+        try {
+            succeeded = pipeline.run(node.parent.rawDataFiles,
+                    node.parent.featureTables);
+            if (!succeeded)
+                errorMessage = pipeline.getErrorMessage();
+        } catch (InterruptedException e) {
+            return;
+        } catch (RuntimeException e) {
+            logger.error("Step " + step.getModule().getName()
+                    + " of the parameter sweep failed", e);
+            succeeded = false;
+            errorMessage = String.valueOf(e);
+        }
+        node.createdData = pipeline.getCreatedData();
+
+        if (!succeeded) {
+            failCombinations(node, String.valueOf(errorMessage));
+            release(node);
+            return;
+        }
+
+        final List<RawDataFile> newFiles = new ArrayList<>();
+        for (Object data : node.createdData) {
+            if (data instanceof RawDataFile)
+                newFiles.add((RawDataFile) data);
+        }
+        node.rawDataFiles = newFiles.isEmpty() ? node.parent.rawDataFiles
+                : newFiles;
+        final List<FeatureTable> newTables = pipeline.getFeatureTables();
+        node.featureTables = newTables.isEmpty() ? node.parent.featureTables
+                : newTables;
+
+        if (node.level < steps.size() - 1) {
+            submitChildren(node);
+            return;
+        }
+
+        // A leaf holds the result of one combination
+        final int combination = getCombination(node.valueIndexes);
+        results[combination] = SweepResult.of(node.featureTables);
+        if (keepResults) {
+            final List<FeatureTable> leafTables = newTables;
+            Platform.runLater(() -> {
+                for (FeatureTable table : leafTables)
+                    table.setName(table.getName() + " [sweep "
+                            + (combination + 1) + "]");
+            });
+        }
+        remainingCombinations.countDown();
+        release(node);
+    }
+
+    /**
+     * Records the failure for all combinations below the node
+     */
+    private void failCombinations(@Nonnull Node node,
+            @Nonnull String errorMessage) {
+        logger.warn("Step " + steps.get(node.level).getModule().getName()
+                + " of the parameter sweep failed: " + errorMessage);
+        final List<Integer> openAxes = new ArrayList<>();
+        for (int a = 0; a < axes.size(); a++) {
+            if (axes.get(a).getStepIndex() > node.level)
+                openAxes.add(a);
+        }
+        int numOfLeaves = 1;
+        for (int a : openAxes)
+            numOfLeaves *= axes.get(a).getNumberOfValues();
+
+        for (int leaf = 0; leaf < numOfLeaves; leaf++) {
+            final int valueIndexes[] = node.valueIndexes.clone();
+            int rest = leaf;
+            for (int i = openAxes.size() - 1; i >= 0; i--) {
+                final int a = openAxes.get(i);
+                valueIndexes[a] = rest % axes.get(a).getNumberOfValues();
+                rest /= axes.get(a).getNumberOfValues();
+            }
+            results[getCombination(valueIndexes)] = SweepResult
+                    .failed(errorMessage);
+            failedCombinations.incrementAndGet();
+            remainingCombinations.countDown();
+        }
+    }
+
+    /**
+     * Called when all combinations below the node have ended. Unless the
+     * results are kept, removes the data created by the node, and releases the
+     * parent once all its children are released.
+     */
+    private void release(@Nonnull Node node) {
+        if (!keepResults && !node.createdData.isEmpty()) {
+            final List<Object> createdData = node.createdData;
+            Platform.runLater(() -> {
+                for (Object data : createdData) {
+                    if (data instanceof RawDataFile)
+                        project.removeFile((RawDataFile) data);
+                    else if (data instanceof FeatureTable)
+                        project.removeFeatureTable((FeatureTable) data);
+                }
+            });
+        }
+        final Node parent = node.parent;
+        if ((parent != null)
+                && (parent.remainingChildren.decrementAndGet() == 0))
+            release(parent);
+    }
+
+    private void writeSummary() throws IOException {
+        final List<String> headers = new ArrayList<>();
+        headers.add("Combination");
+        for (SweepAxis axis : axes)
+            headers.add(axis.getLabel());
+        headers.addAll(SweepResult.getSummaryHeaders());
+
+        try (Writer writer = new BufferedWriter(Files.newBufferedWriter(
+                summaryFile.toPath(), StandardCharsets.UTF_8))) {
+            writeLine(writer, headers);
+            final int valueIndexes[] = new int[axes.size()];
+            for (int c = 0; c < numOfCombinations; c++) {
+                getValueIndexes(c, valueIndexes);
+                final List<String> values = new ArrayList<>();
+                values.add(String.valueOf(c + 1));
+                for (int a = 0; a < axes.size(); a++)
+                    values.add(axes.get(a).getValue(valueIndexes[a]));
+                final SweepResult result = results[c];
+                values.addAll(result == null
+                        ? SweepResult.failed("Not evaluated")
+                                .getSummaryValues()
+                        : result.getSummaryValues());
+                writeLine(writer, values);
+            }
+        }
+    }
+
+    private static void writeLine(@Nonnull Writer writer,
+            @Nonnull List<String> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0)
+                writer.write(',');
+            String value = values.get(i);
+            if (value.matches("(?s).*[,\"\\n\\r].*"))
+                value = "\"" + value.replace("\"", "\"\"") + "\"";
+            writer.write(value);
+        }
+        writer.write('\n');
+    }
+
+    private @Nonnull List<Integer> getAxesOfStep(int stepIndex) {
+        final List<Integer> stepAxes = new ArrayList<>();
+        for (int a = 0; a < axes.size(); a++) {
+            if (axes.get(a).getStepIndex() == stepIndex)
+                stepAxes.add(a);
+        }
+        return stepAxes;
+    }
+
+    /**
+     * @return number of the combination, with the last axis varying fastest
+     */
+    private int getCombination(@Nonnull int valueIndexes[]) {
+        int combination = 0;
+        for (int a = 0; a < axes.size(); a++)
+            combination = combination * axes.get(a).getNumberOfValues()
+                    + valueIndexes[a];
+        return combination;
+    }
+
+    private void getValueIndexes(int combination, @Nonnull int valueIndexes[]) {
+        for (int a = axes.size() - 1; a >= 0; a--) {
+            valueIndexes[a] = combination % axes.get(a).getNumberOfValues();
+            combination /= axes.get(a).getNumberOfValues();
+        }
+    }
+
+    /**
+     * One step of the combination tree, with the values of the axes of this
+     * and all previous steps
+     */
+    private static class Node {
+        final @Nullable Node parent;
+        final int level;
+        final @Nonnull int valueIndexes[];
+        final AtomicInteger remainingChildren = new AtomicInteger();
+        volatile List<RawDataFile> rawDataFiles;
+        volatile List<FeatureTable> featureTables;
+        volatile List<Object> createdData = Collections.emptyList();
+
+        Node(@Nullable Node parent, int level, @Nonnull int valueIndexes[]) {
+            this.parent = parent;
+            this.level = level;
+            this.valueIndexes = valueIndexes;
+        }
+    }
+
+}
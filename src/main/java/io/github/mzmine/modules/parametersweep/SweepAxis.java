@@ -0,0 +1,243 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.parametersweep;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZToleranceParameter;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTToleranceParameter;
+
+/**
+ * One parameter of a processing step and the values it takes in a sweep. An
+ * axis is written as one line of the grid:
+ * 
+ * <pre>
+ * step name: parameter name = value | value | ...
+ * </pre>
+ * 
+ * A value is the content of the parameter in the configuration file, e.g. a
+ * number, or XML elements for compound parameters. m/z tolerances can also be
+ * written as "absolute ppm", e.g. "0.002 10", and relative retention time
+ * tolerances as a percentage, e.g. "5%".
+ */
+@Immutable
+class SweepAxis {
+
+    private final int stepIndex;
+    private final @Nonnull String stepName, parameterName;
+    private final @Nonnull List<String> values;
+
+    private SweepAxis(int stepIndex, @Nonnull String stepName,
+            @Nonnull String parameterName, @Nonnull List<String> values) {
+        this.stepIndex = stepIndex;
+        this.stepName = stepName;
+        this.parameterName = parameterName;
+        this.values = values;
+    }
+
+    /**
+     * Parses the axes of the grid. Every value is tried on a copy of the
+     * parameters of its step.
+     * 
+     * @param stepNames
+     *            names by which the steps can be referred to, for each step
+     * @param stepParameters
+     *            parameters of each step
+     * @param errorMessages
+     *            collection where the errors in the grid are added
+     * @return the axes, ordered by step, or null if the grid has errors
+     */
+    static @Nullable List<SweepAxis> parseGrid(@Nonnull String grid,
+            @Nonnull List<List<String>> stepNames,
+            @Nonnull List<ParameterSet> stepParameters,
+            @Nonnull Collection<String> errorMessages) {
+
+        final List<SweepAxis> axes = new ArrayList<>();
+        for (String line : grid.split("\\r?\\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            final int colon = line.indexOf(':');
+            final int equals = line.indexOf('=', colon + 1);
+            if ((colon < 0) || (equals < 0)) {
+                errorMessages.add("Expected \"step: parameter = value | ...\""
+                        + " in line \"" + line + "\"");
+                continue;
+            }
+            final String stepName = line.substring(0, colon).trim();
+            final String parameterName = line.substring(colon + 1, equals)
+                    .trim();
+            final List<String> values = new ArrayList<>();
+            for (String value : line.substring(equals + 1).split("\\|")) {
+                if (!value.trim().isEmpty())
+                    values.add(value.trim());
+            }
+
+            int stepIndex = -1;
+            for (int i = 0; i < stepNames.size(); i++) {
+                for (String name : stepNames.get(i)) {
+                    if (name.equalsIgnoreCase(stepName))
+                        stepIndex = i;
+                }
+            }
+            if (stepIndex < 0) {
+                errorMessages.add("Step " + stepName
+                        + " is not one of the selected steps");
+                continue;
+            }
+            if (values.isEmpty()) {
+                errorMessages.add("No values given for " + stepName + ": "
+                        + parameterName);
+                continue;
+            }
+
+            final SweepAxis axis = new SweepAxis(stepIndex, stepName,
+                    parameterName, values);
+            final ParameterSet parameters = stepParameters.get(stepIndex)
+                    .clone();
+            boolean valid = true;
+            for (int i = 0; valid && (i < values.size()); i++) {
+                try {
+                    axis.apply(parameters, i);
+                } catch (RuntimeException e) {
+                    errorMessages.add("Invalid value " + values.get(i)
+                            + " for " + axis.getLabel() + ": "
+                            + e.getMessage());
+                    valid = false;
+                }
+            }
+            if (valid)
+                axes.add(axis);
+        }
+
+        if (!errorMessages.isEmpty())
+            return null;
+        axes.sort((a1, a2) -> Integer.compare(a1.stepIndex, a2.stepIndex));
+        return axes;
+    }
+
+    /**
+     * Sets the parameter to one of the values of this axis.
+     * 
+     * @throws IllegalArgumentException
+     *             if the step has no such parameter or the value cannot be
+     *             read
+     */
+    void apply(@Nonnull ParameterSet parameters, int valueIndex) {
+        Parameter<?> parameter = null;
+        for (Parameter<?> p : parameters) {
+            if (p.getName().equalsIgnoreCase(parameterName))
+                parameter = p;
+        }
+        if (parameter == null)
+            throw new IllegalArgumentException(
+                    stepName + " has no parameter " + parameterName);
+
+        final String value = values.get(valueIndex);
+        final Element element;
+        try {
+            if (value.startsWith("<")) {
+                element = DocumentBuilderFactory.newInstance()
+                        .newDocumentBuilder()
+                        .parse(new InputSource(new StringReader(
+                                "<parameter>" + value + "</parameter>")))
+                        .getDocumentElement();
+            } else {
+                final Document document = DocumentBuilderFactory
+                        .newInstance().newDocumentBuilder().newDocument();
+                element = document.createElement("parameter");
+                document.appendChild(element);
+                setShortValue(parameter, element, value);
+            }
+        } catch (ParserConfigurationException | SAXException
+                | IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        parameter.loadValueFromXML(element);
+    }
+
+    /**
+     * Fills the parameter element from the short form of a value
+     */
+    private static void setShortValue(@Nonnull Parameter<?> parameter,
+            @Nonnull Element element, @Nonnull String value) {
+        final Document document = element.getOwnerDocument();
+        if (parameter instanceof MZToleranceParameter) {
+            final String parts[] = value.split("\\s+");
+            if (parts.length != 2)
+                throw new IllegalArgumentException(
+                        "expected absolute tolerance and ppm");
+            // Checked here, because the parameter falls back to its defaults
+            Double.parseDouble(parts[0]);
+            Double.parseDouble(parts[1]);
+            final Element absolute = document
+                    .createElement("absolutetolerance");
+            absolute.setTextContent(parts[0]);
+            final Element ppm = document.createElement("ppmtolerance");
+            ppm.setTextContent(parts[1]);
+            element.appendChild(absolute);
+            element.appendChild(ppm);
+        } else if ((parameter instanceof RTToleranceParameter)
+                && value.endsWith("%")) {
+            element.setAttribute("type", "percent");
+            element.setTextContent(
+                    value.substring(0, value.length() - 1).trim());
+        } else {
+            element.setTextContent(value);
+        }
+    }
+
+    int getStepIndex() {
+        return stepIndex;
+    }
+
+    int getNumberOfValues() {
+        return values.size();
+    }
+
+    @Nonnull
+    String getValue(int valueIndex) {
+        return values.get(valueIndex);
+    }
+
+    @Nonnull
+    String getLabel() {
+        return stepName + ": " + parameterName;
+    }
+
+}
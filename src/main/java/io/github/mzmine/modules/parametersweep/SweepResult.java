@@ -0,0 +1,133 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.parametersweep;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+
+/**
+ * Summary of the feature tables produced by one combination of a parameter
+ * sweep. Tables with more than one sample are counted as aligned tables; a
+ * feature is present in a sample if the sample has an area or a height for
+ * it.
+ */
+@Immutable
+class SweepResult {
+
+    private static final List<String> HEADERS = Arrays.asList("Status",
+            "Feature tables", "Rows", "Rows per table", "Aligned rows",
+            "Rows in all samples", "Fill ratio");
+
+    private final @Nullable String errorMessage;
+    private final int tables, rows, alignedRows, completeRows;
+    private final double fillRatio;
+
+    private SweepResult(@Nullable String errorMessage, int tables, int rows,
+            int alignedRows, int completeRows, double fillRatio) {
+        this.errorMessage = errorMessage;
+        this.tables = tables;
+        this.rows = rows;
+        this.alignedRows = alignedRows;
+        this.completeRows = completeRows;
+        this.fillRatio = fillRatio;
+    }
+
+    static @Nonnull SweepResult failed(@Nonnull String errorMessage) {
+        return new SweepResult(errorMessage, 0, 0, 0, 0, Double.NaN);
+    }
+
+    static @Nonnull SweepResult of(@Nonnull List<FeatureTable> featureTables) {
+        int rows = 0, alignedRows = 0, completeRows = 0;
+        long presentValues = 0, possibleValues = 0;
+
+        for (FeatureTable table : featureTables) {
+            final List<FeatureTableRow> tableRows = table.getRows();
+            rows += tableRows.size();
+
+            final List<Sample> samples = table.getSamples();
+            if (samples.size() < 2)
+                continue;
+            final FeatureTableColumn<?> columns[] = new FeatureTableColumn<?>[samples
+                    .size()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = table.getColumn(ColumnName.AREA, samples.get(i));
+                if (columns[i] == null)
+                    columns[i] = table.getColumn(ColumnName.HEIGHT,
+                            samples.get(i));
+            }
+
+            alignedRows += tableRows.size();
+            for (FeatureTableRow row : tableRows) {
+                int present = 0;
+                for (FeatureTableColumn<?> column : columns) {
+                    if ((column != null) && (row.getData(column) != null))
+                        present++;
+                }
+                if (present == columns.length)
+                    completeRows++;
+                presentValues += present;
+                possibleValues += columns.length;
+            }
+        }
+
+        final double fillRatio = possibleValues == 0 ? Double.NaN
+                : (double) presentValues / possibleValues;
+        return new SweepResult(null, featureTables.size(), rows, alignedRows,
+                completeRows, fillRatio);
+    }
+
+    static @Nonnull List<String> getSummaryHeaders() {
+        return HEADERS;
+    }
+
+    /**
+     * @return the values of the summary columns, see
+     *         {@link #getSummaryHeaders()}
+     */
+    @Nonnull
+    List<String> getSummaryValues() {
+        if (errorMessage != null)
+            return Arrays.asList("Failed: " + errorMessage, "", "", "", "",
+                    "", "");
+        final boolean aligned = !Double.isNaN(fillRatio);
+        return Arrays.asList("OK", String.valueOf(tables),
+                String.valueOf(rows),
+                tables == 0 ? ""
+                        : String.format("%.1f", (double) rows / tables),
+                aligned ? String.valueOf(alignedRows) : "",
+                aligned ? String.valueOf(completeRows) : "",
+                aligned ? String.format("%.3f", fillRatio) : "");
+    }
+
+    boolean isFailed() {
+        return errorMessage != null;
+    }
+
+}
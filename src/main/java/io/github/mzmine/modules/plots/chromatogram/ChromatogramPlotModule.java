@@ -20,26 +20,34 @@
 package io.github.mzmine.modules.plots.chromatogram;
 
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.Range;
 
 import io.github.msdk.datamodel.chromatograms.Chromatogram;
 import io.github.msdk.datamodel.chromatograms.ChromatogramType;
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
 import io.github.msdk.datamodel.rawdata.MsScan;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.datamodel.rawdata.SeparationType;
 import io.github.msdk.rawdata.xic.MSDKXICMethod;
 import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineRunnableModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.util.rawdata.RasterIndex;
+import io.github.mzmine.util.rawdata.ScanSummary;
 import javafx.concurrent.Task;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -95,20 +103,43 @@ public class ChromatogramPlotModule implements MZmineRunnableModule {
 
             for (RawDataFile dataFile : dataFiles) {
 
+                // Keep the raw data file while the plot is shown
+                MZmineGUI.retainWhileShowing(node, dataFile);
+
                 // Load the actual data in a separate thread to avoid blocking
                 // the GUI
                 threadPool.execute(() -> {
                     try {
-                        DataPointStore store = DataPointStoreFactory
-                                .getMemoryDataStore();
-                        List<MsScan> scans = scanSelection
-                                .getMatchingScans(dataFile);
+                        DataPointStore store = MZmineCore.getMemoryGovernor()
+                                .createMemoryDataStore();
+                        ScanSummary summary = ScanSummary.get(dataFile);
+                        int scanIndexes[] = scanSelection
+                                .getMatchingScanIndexes(dataFile, summary);
                         ChromatogramType chromatogramType = ChromatogramType.TIC;
                         if (plotType == ChromatogramPlotType.BASEPEAK)
                             chromatogramType = ChromatogramType.BPC;
-                        MSDKXICMethod xicExtractor = new MSDKXICMethod(dataFile,
-                                scans, mzRange, chromatogramType, store);
-                        Chromatogram chromatogram = xicExtractor.execute();
+                        Chromatogram chromatogram;
+                        if (coversWholeScans(summary, scanIndexes, mzRange)) {
+                            // TIC and base peak are in the scan summary
+                            chromatogram = buildChromatogram(dataFile, summary,
+                                    scanIndexes, chromatogramType, store);
+                        } else if (isRasterXic(dataFile, scanSelection,
+                                mzRange)) {
+                            // Wide XIC, read from the raster index
+                            chromatogram = buildRasterChromatogram(
+                                    RasterIndex.getIfPresent(dataFile,
+                                            scanSelection.getMsLevel()),
+                                    scanSelection.getScanRTRange(), mzRange,
+                                    chromatogramType, store);
+                        } else {
+                            List<MsScan> scans = new ArrayList<>();
+                            for (int index : scanIndexes)
+                                scans.add(dataFile.getScans().get(index));
+                            MSDKXICMethod xicExtractor = new MSDKXICMethod(
+                                    dataFile, scans, mzRange, chromatogramType,
+                                    store);
+                            chromatogram = xicExtractor.execute();
+                        }
                         controller.addChromatogram(chromatogram);
                     } catch (Exception e) {
                         e.printStackTrace();
@@ -123,6 +154,106 @@ public class ChromatogramPlotModule implements MZmineRunnableModule {
 
     }
 
+    /**
+     * @return true if the m/z range includes all data points of the given
+     *         scans, so that the TIC and base peak do not depend on it
+     */
+    private static boolean coversWholeScans(@Nonnull ScanSummary summary,
+            @Nonnull int scanIndexes[], @Nullable Range<Double> mzRange) {
+        if (mzRange == null)
+            return true;
+        for (int index : scanIndexes) {
+            final double lowestMz = summary.getLowestMz(index);
+            final double highestMz = summary.getHighestMz(index);
+            // Empty scans contribute nothing in any case
+            if (Double.isNaN(lowestMz))
+                continue;
+            if (!mzRange.contains(lowestMz) || !mzRange.contains(highestMz))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the raster index of the file was built, the scan
+     *         selection only restricts the MS level and retention time, and
+     *         the m/z range is wide enough for the raster
+     */
+    private static boolean isRasterXic(@Nonnull RawDataFile dataFile,
+            @Nonnull ScanSelection scanSelection,
+            @Nullable Range<Double> mzRange) {
+        if ((mzRange == null) || (scanSelection.getMsLevel() == null)
+                || (scanSelection.getScanNumberRange() != null)
+                || (scanSelection.getPolarity() != null)
+                || (scanSelection.getSpectrumType() != null)
+                || !Strings.isNullOrEmpty(scanSelection.getScanDefinition()))
+            return false;
+        final RasterIndex rasterIndex = RasterIndex.getIfPresent(dataFile,
+                scanSelection.getMsLevel());
+        return (rasterIndex != null) && rasterIndex.isSuitableForXic(mzRange);
+    }
+
+    private static @Nonnull Chromatogram buildRasterChromatogram(
+            @Nonnull RasterIndex rasterIndex, @Nullable Range<Double> rtRange,
+            @Nonnull Range<Double> mzRange,
+            @Nonnull ChromatogramType chromatogramType,
+            @Nonnull DataPointStore store) {
+        final float xic[] = rasterIndex.getXic(mzRange,
+                chromatogramType == ChromatogramType.BPC);
+        final ChromatographyInfo rtValues[] = new ChromatographyInfo[xic.length];
+        final double mzValues[] = new double[xic.length];
+        final float intensityValues[] = new float[xic.length];
+        final double centerMz = (mzRange.lowerEndpoint()
+                + mzRange.upperEndpoint()) / 2;
+        int size = 0;
+        for (int row = 0; row < xic.length; row++) {
+            final float rt = (rasterIndex.getRowStartRt(0, row)
+                    + rasterIndex.getRowEndRt(0, row)) / 2;
+            if ((rtRange != null) && !rtRange.contains((double) rt))
+                continue;
+            rtValues[size] = MSDKObjectBuilder
+                    .getChromatographyInfo1D(SeparationType.UNKNOWN, rt);
+            mzValues[size] = centerMz;
+            intensityValues[size] = xic[row];
+            size++;
+        }
+        final Chromatogram chromatogram = MSDKObjectBuilder.getChromatogram(
+                store, 1, chromatogramType, SeparationType.UNKNOWN);
+        chromatogram.setDataPoints(rtValues, mzValues, intensityValues, size);
+        return chromatogram;
+    }
+
+    private static @Nonnull Chromatogram buildChromatogram(
+            @Nonnull RawDataFile dataFile, @Nonnull ScanSummary summary,
+            @Nonnull int scanIndexes[],
+            @Nonnull ChromatogramType chromatogramType,
+            @Nonnull DataPointStore store) {
+        final List<MsScan> scans = dataFile.getScans();
+        final ChromatographyInfo rtValues[] = new ChromatographyInfo[scanIndexes.length];
+        final double mzValues[] = new double[scanIndexes.length];
+        final float intensityValues[] = new float[scanIndexes.length];
+        int size = 0;
+        for (int index : scanIndexes) {
+            final ChromatographyInfo rt = scans.get(index)
+                    .getChromatographyInfo();
+            if (rt == null)
+                continue;
+            rtValues[size] = rt;
+            mzValues[size] = Double.isNaN(summary.getBasePeakMz(index)) ? 0
+                    : summary.getBasePeakMz(index);
+            intensityValues[size] = chromatogramType == ChromatogramType.BPC
+                    ? summary.getBasePeakIntensity(index)
+                    : summary.getTIC(index);
+            size++;
+        }
+        final SeparationType separationType = size == 0
+                ? SeparationType.UNKNOWN : rtValues[0].getSeparationType();
+        final Chromatogram chromatogram = MSDKObjectBuilder.getChromatogram(
+                store, 1, chromatogramType, separationType);
+        chromatogram.setDataPoints(rtValues, mzValues, intensityValues, size);
+        return chromatogram;
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
         return ChromatogramPlotParameters.class;
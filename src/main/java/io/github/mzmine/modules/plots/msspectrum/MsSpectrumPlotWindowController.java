@@ -92,6 +92,7 @@ import io.github.mzmine.util.jfreechart.IntelligentItemLabelGenerator;
 import io.github.mzmine.util.jfreechart.JFreeChartUtils;
 import io.github.mzmine.util.jfreechart.JFreeChartUtils.ImgFileType;
 import io.github.mzmine.util.jfreechart.ManualZoomDialog;
+import io.github.mzmine.util.rawdata.PrecursorIndex;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
@@ -254,6 +255,13 @@ public class MsSpectrumPlotWindowController {
 
         Preconditions.checkNotNull(spectrum);
 
+        // Keep the raw data file of the scan while the plot is shown
+        if (spectrum instanceof MsScan) {
+            RawDataFile rawDataFile = ((MsScan) spectrum).getRawDataFile();
+            if (rawDataFile != null)
+                MZmineGUI.retainWhileShowing(chartPane, rawDataFile);
+        }
+
         MsSpectrumDataSet newDataSet = new MsSpectrumDataSet(spectrum, name);
         newDataSet.mzShiftProperty().bind(mzShift);
         datasets.add(newDataSet);
@@ -552,12 +560,14 @@ public class MsSpectrumPlotWindowController {
         msmsItems.clear();
         MZmineProject project = MZmineCore.getCurrentProject();
         for (RawDataFile file : project.getRawDataFiles()) {
-            scans: for (MsScan scan : file.getScans()) {
-                if (scan.getMsFunction().getMsLevel() == 1)
-                    continue;
+            final PrecursorIndex precursorIndex = PrecursorIndex.get(file);
+            final int entries[] = precursorIndex
+                    .findByIsolatedMz(clickedMzWithShift, null);
+            scans: for (MsScan scan : precursorIndex.getScans(file, entries)) {
                 for (IsolationInfo isolation : scan.getIsolations()) {
-                    if (!isolation.getIsolationMzRange()
-                            .contains(clickedMzWithShift))
+                    if ((isolation.getIsolationMzRange() == null)
+                            || !isolation.getIsolationMzRange()
+                                    .contains(clickedMzWithShift))
                         continue;
                     String menuLabel = MsScanUtils
                             .createSingleLineMsScanDescription(scan, isolation);
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2006-2015 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.plots.threed;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.orsoncharts.data.function.Function3D;
+
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.mzmine.util.rawdata.RasterIndex;
+
+/**
+ * Highest intensities of a raw data file on a regular retention time x m/z
+ * grid. As a function, the grid returns the intensity at a given retention
+ * time (in minutes, x) and m/z (z), interpolated between the centres of the
+ * grid cells.
+ */
+@Immutable
+class ThreeDPlotGrid implements Function3D {
+
+    private static final long serialVersionUID = 1L;
+
+    private final double rtLow, rtHigh, mzLow, mzHigh;
+    private final int rtSteps, mzSteps;
+    private final float values[];
+    private final float maxValue;
+
+    private ThreeDPlotGrid(double rtLow, double rtHigh, double mzLow,
+            double mzHigh, int rtSteps, int mzSteps, float values[]) {
+        this.rtLow = rtLow;
+        this.rtHigh = rtHigh;
+        this.mzLow = mzLow;
+        this.mzHigh = mzHigh;
+        this.rtSteps = rtSteps;
+        this.mzSteps = mzSteps;
+        this.values = values;
+        float max = 0;
+        for (float value : values)
+            max = Math.max(max, value);
+        this.maxValue = max;
+    }
+
+    /**
+     * Computes the grid of the given ranges. The number of retention time
+     * steps is limited to the number of scans in the range, and the m/z steps
+     * use the rest of the budget. The values are taken from the raster index
+     * while it resolves the m/z steps, and binned from the data points of the
+     * scans otherwise.
+     *
+     * @param scans
+     *            the scans to plot, in the order of their retention times
+     * @param scanRts
+     *            retention times of the scans
+     * @param maxDataPoints
+     *            maximum number of grid cells
+     * @throws InterruptedException
+     *             if the thread was interrupted while reading the scans
+     */
+    static @Nonnull ThreeDPlotGrid compute(@Nonnull RasterIndex rasterIndex,
+            @Nonnull List<MsScan> scans, @Nonnull float scanRts[],
+            double rtLow, double rtHigh, double mzLow, double mzHigh,
+            int maxDataPoints) throws InterruptedException {
+
+        final int firstScan = lowerBound(scanRts, rtLow);
+        final int lastScan = lowerBound(scanRts,
+                Math.nextUp((float) rtHigh)) - 1;
+        final int scanCount = Math.max(0, lastScan - firstScan + 1);
+        final int rtSteps = Math.max(2, Math.min(scanCount,
+                (int) Math.round(Math.sqrt(maxDataPoints))));
+        final int mzSteps = Math.max(2, maxDataPoints / rtSteps);
+        final float values[] = new float[rtSteps * mzSteps];
+
+        if (rasterIndex.resolvesMz((mzHigh - mzLow) / mzSteps)) {
+            rasterIndex.getMaxGrid(rtLow, rtHigh, mzLow, mzHigh, rtSteps,
+                    mzSteps, values);
+        } else {
+            binScans(scans, scanRts, firstScan, lastScan, rtLow, rtHigh,
+                    mzLow, mzHigh, rtSteps, mzSteps, values);
+        }
+
+        return new ThreeDPlotGrid(rtLow, rtHigh, mzLow, mzHigh, rtSteps,
+                mzSteps, values);
+    }
+
+    /**
+     * Bins the data points of the scans into the grid. Retention time steps
+     * without a scan take the values of the nearest step that has one.
+     */
+    private static void binScans(List<MsScan> scans, float scanRts[],
+            int firstScan, int lastScan, double rtLow, double rtHigh,
+            double mzLow, double mzHigh, int rtSteps, int mzSteps,
+            float values[]) throws InterruptedException {
+        final double rtStep = (rtHigh - rtLow) / rtSteps;
+        final double mzStep = (mzHigh - mzLow) / mzSteps;
+        final boolean filled[] = new boolean[rtSteps];
+        double mzBuffer[] = new double[0];
+        float intensityBuffer[] = new float[0];
+
+        for (int s = firstScan; s <= lastScan; s++) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            final int x = Math.min(rtSteps - 1,
+                    (int) ((scanRts[s] - rtLow) / rtStep));
+            filled[x] = true;
+            final MsScan scan = scans.get(s);
+            mzBuffer = scan.getMzValues(mzBuffer);
+            intensityBuffer = scan.getIntensityValues(intensityBuffer);
+            final int size = scan.getNumberOfDataPoints();
+            for (int i = 0; i < size; i++) {
+                if ((mzBuffer[i] < mzLow) || (mzBuffer[i] > mzHigh))
+                    continue;
+                final int y = Math.min(mzSteps - 1,
+                        (int) ((mzBuffer[i] - mzLow) / mzStep));
+                values[y * rtSteps + x] = Math.max(values[y * rtSteps + x],
+                        intensityBuffer[i]);
+            }
+        }
+
+        for (int x = 0; x < rtSteps; x++) {
+            if (filled[x])
+                continue;
+            int nearest = -1;
+            for (int d = 1; (d < rtSteps) && (nearest < 0); d++) {
+                if ((x - d >= 0) && filled[x - d])
+                    nearest = x - d;
+                else if ((x + d < rtSteps) && filled[x + d])
+                    nearest = x + d;
+            }
+            if (nearest < 0)
+                return;
+            for (int y = 0; y < mzSteps; y++)
+                values[y * rtSteps + x] = values[y * rtSteps + nearest];
+        }
+    }
+
+    /**
+     * Index of the first value that is not smaller than the given one
+     */
+    private static int lowerBound(float sortedValues[], double value) {
+        int index = Arrays.binarySearch(sortedValues, (float) value);
+        if (index < 0)
+            return -index - 1;
+        while ((index > 0) && (sortedValues[index - 1] == sortedValues[index]))
+            index--;
+        return index;
+    }
+
+    double getRtLow() {
+        return rtLow;
+    }
+
+    double getRtHigh() {
+        return rtHigh;
+    }
+
+    double getMzLow() {
+        return mzLow;
+    }
+
+    double getMzHigh() {
+        return mzHigh;
+    }
+
+    int getRtSteps() {
+        return rtSteps;
+    }
+
+    int getMzSteps() {
+        return mzSteps;
+    }
+
+    float getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * @param x
+     *            retention time in minutes
+     * @param z
+     *            m/z value
+     */
+    @Override
+    public double getValue(double x, double z) {
+        final double column = clamp(
+                (x * 60.0 - rtLow) / (rtHigh - rtLow) * rtSteps - 0.5,
+                rtSteps - 1);
+        final double row = clamp((z - mzLow) / (mzHigh - mzLow) * mzSteps - 0.5,
+                mzSteps - 1);
+        final int x0 = Math.min((int) column, rtSteps - 2);
+        final int y0 = Math.min((int) row, mzSteps - 2);
+        final double fx = column - x0, fy = row - y0;
+        final double low = values[y0 * rtSteps + x0] * (1 - fx)
+                + values[y0 * rtSteps + x0 + 1] * fx;
+        final double high = values[(y0 + 1) * rtSteps + x0] * (1 - fx)
+                + values[(y0 + 1) * rtSteps + x0 + 1] * fx;
+        return low * (1 - fy) + high * fy;
+    }
+
+    private static double clamp(double value, double max) {
+        return Math.max(0, Math.min(max, value));
+    }
+
+}
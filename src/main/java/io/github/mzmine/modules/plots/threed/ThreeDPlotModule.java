@@ -21,12 +21,18 @@ package io.github.mzmine.modules.plots.threed;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.annotation.Nonnull;
 
+import com.google.common.collect.Range;
+
 import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.gui.MZmineGUI;
 import io.github.mzmine.modules.MZmineRunnableModule;
 import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.project.MZmineProject;
 import javafx.concurrent.Task;
 
@@ -38,6 +44,13 @@ public class ThreeDPlotModule implements MZmineRunnableModule {
     private static final @Nonnull String MODULE_NAME = "3D Plot";
     private static final @Nonnull String MODULE_DESCRIPTION = "3D Plot";
 
+    private static final ExecutorService threadPool = Executors
+            .newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "3D plot computation");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     @Override
     public @Nonnull String getName() {
         return MODULE_NAME;
@@ -56,6 +69,26 @@ public class ThreeDPlotModule implements MZmineRunnableModule {
         final List<RawDataFile> dataFiles = parameters
                 .getParameter(ThreeDPlotParameters.inputFiles).getValue()
                 .getMatchingRawDataFiles();
+        final ScanSelection scanSelection = parameters
+                .getParameter(ThreeDPlotParameters.scanSelection).getValue();
+        final Range<Double> mzRange = parameters
+                .getParameter(ThreeDPlotParameters.mzRange).getValue();
+        final Integer maxDataPoints = parameters
+                .getParameter(ThreeDPlotParameters.maxDataPoints).getValue();
+
+        for (RawDataFile dataFile : dataFiles) {
+            ThreeDPlotWindow window = new ThreeDPlotWindow(dataFile,
+                    scanSelection, mzRange, maxDataPoints);
+            MZmineGUI.addWindow(window, "3D plot: " + dataFile.getName(),
+                    false);
+
+            // Keep the raw data file while the plot is shown
+            MZmineGUI.retainWhileShowing(window, dataFile);
+
+            // Load the actual data in a separate thread to avoid blocking
+            // the GUI
+            window.loadData(threadPool);
+        }
 
     }
 
@@ -36,19 +36,22 @@ public class ThreeDPlotParameters extends ParameterSet {
     public static final DoubleRangeParameter mzRange = new DoubleRangeParameter(
             "m/z range", "m/z range", "Data range");
 
-    public static final IntegerParameter rtResolution = new IntegerParameter(
-            "Retention time resolution",
-            "Number of data points on retention time axis", "Resolution", 500);
-
-    public static final IntegerParameter mzResolution = new IntegerParameter(
-            "m/z resolution", "Number of data points on m/z axis", "Resolution",
-            500);
+    public static final IntegerParameter maxDataPoints = new IntegerParameter(
+            "Maximum number of data points",
+            "Maximum number of retention time x m/z points of the plotted surface. More points show more detail, but make rotating the plot slower.",
+            "Resolution", (value, messages) -> {
+                if ((value != null) && (value < 4)) {
+                    messages.add("At least 4 data points are needed");
+                    return false;
+                }
+                return true;
+            } , 2500);
 
     /**
      * Create the parameter set.
      */
     public ThreeDPlotParameters() {
-        super(inputFiles, scanSelection, mzRange, rtResolution, mzResolution);
+        super(inputFiles, scanSelection, mzRange, maxDataPoints);
     }
 
 }
@@ -13,21 +13,331 @@
  * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
  * 
  * You should have received a copy of the GNU General Public License along with
- * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin
- * St, Fifth Floor, Boston, MA 02110-1301 USA
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
  */
 
 package io.github.mzmine.modules.plots.threed;
 
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+import com.orsoncharts.Chart3D;
+import com.orsoncharts.Chart3DFactory;
+import com.orsoncharts.axis.NumberAxis3D;
+import com.orsoncharts.fx.Chart3DViewer;
+import com.orsoncharts.plot.XYZPlot;
+import com.orsoncharts.renderer.GradientColorScale;
+import com.orsoncharts.renderer.xyz.SurfaceRenderer;
+
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.main.MZmineConfiguration;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.util.rawdata.RasterIndex;
+import io.github.mzmine.util.rawdata.RasterIndexBuildMethod;
+import io.github.mzmine.util.rawdata.ScanSummary;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.control.ToolBar;
 import javafx.scene.layout.BorderPane;
+import javafx.util.Duration;
 
 /**
- * 3D plot window
+ * Window showing the intensities of a raw data file as a surface over
+ * retention time and m/z. The surface is computed on a background thread for
+ * the selected ranges; changing the ranges cancels a computation that is
+ * still running.
  */
 public class ThreeDPlotWindow extends BorderPane {
 
-    ThreeDPlotWindow() {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final TextField rtLowField = createRangeField();
+    private final TextField rtHighField = createRangeField();
+    private final TextField mzLowField = createRangeField();
+    private final TextField mzHighField = createRangeField();
+    private final Button applyButton = new Button("Apply");
+    private final Button resetButton = new Button("Reset");
+    private final Label statusLabel = new Label();
+    private final Label messageLabel = new Label();
+
+    private final RawDataFile dataFile;
+    private final ScanSelection scanSelection;
+    private final Range<Double> mzRange;
+    private final int maxDataPoints;
+    private ExecutorService executor;
+
+    // Data of the plot, set once the raster index is ready
+    private RasterIndex rasterIndex;
+    private List<MsScan> scans;
+    private float scanRts[];
+
+    private RasterIndexBuildMethod buildMethod;
+    private Future<?> gridBuild;
+    private int gridBuildCount;
+    private Chart3DViewer chartViewer;
+    private boolean disposed;
+
+    ThreeDPlotWindow(@Nonnull RawDataFile dataFile,
+            @Nonnull ScanSelection scanSelection,
+            @Nullable Range<Double> mzRange, int maxDataPoints) {
+        this.dataFile = dataFile;
+        this.scanSelection = scanSelection;
+        this.mzRange = mzRange;
+        this.maxDataPoints = maxDataPoints;
+
+        final ToolBar toolBar = new ToolBar(new Label("RT (min)"), rtLowField,
+                new Label("-"), rtHighField, new Label("m/z"), mzLowField,
+                new Label("-"), mzHighField, applyButton, resetButton,
+                statusLabel);
+        toolBar.setDisable(true);
+        applyButton.setOnAction(e -> applyRanges());
+        resetButton.setOnAction(e -> resetRanges());
+        for (TextField field : new TextField[] { rtLowField, rtHighField,
+                mzLowField, mzHighField })
+            field.setOnAction(e -> applyRanges());
+
+        setTop(toolBar);
+        setCenter(messageLabel);
+        setPrefSize(800, 600);
+
+        // Stop the computations once the window is closed
+        sceneProperty().addListener((observable, oldScene, newScene) -> {
+            if ((oldScene != null) && (newScene == null))
+                dispose();
+        });
+    }
+
+    /**
+     * Prepares the data on the given executor and shows the plot when done.
+     */
+    void loadData(@Nonnull ExecutorService executor) {
+        this.executor = executor;
+        final int msLevel = scanSelection.getMsLevel() == null ? 1
+                : scanSelection.getMsLevel();
+        final RasterIndex existingIndex = RasterIndex.getIfPresent(dataFile,
+                msLevel);
+        final RasterIndexBuildMethod method = existingIndex == null
+                ? new RasterIndexBuildMethod(dataFile, msLevel) : null;
+        buildMethod = method;
+
+        final Timeline progressUpdater = new Timeline(
+                new KeyFrame(Duration.millis(500), e -> {
+                    final Float progress = method == null ? null
+                            : method.getFinishedPercentage();
+                    messageLabel.setText("Indexing " + dataFile.getName()
+                            + (progress == null ? "..."
+                                    : " " + Math.round(progress * 100)
+                                            + "%"));
+                }));
+        progressUpdater.setCycleCount(Timeline.INDEFINITE);
+        messageLabel.setText("Indexing " + dataFile.getName() + "...");
+        progressUpdater.play();
+
+        executor.execute(() -> {
+            try {
+                final RasterIndex index = method == null ? existingIndex
+                        : method.execute();
+                if (index == null)
+                    return;
+                loadScans();
+                Platform.runLater(() -> {
+                    progressUpdater.stop();
+                    rasterIndex = index;
+                    getTop().setDisable(false);
+                    resetRanges();
+                });
+            } catch (Exception e) {
+                logger.error("Could not prepare the 3D plot of "
+                        + dataFile.getName(), e);
+                Platform.runLater(() -> {
+                    progressUpdater.stop();
+                    messageLabel.setText("Error: " + e.getMessage());
+                });
+            }
+        });
+    }
+
+    /**
+     * Collects the scans of the selection in the order of their retention
+     * times.
+     */
+    private void loadScans() {
+        final ScanSummary summary = ScanSummary.get(dataFile);
+        final int scanIndexes[] = scanSelection
+                .getMatchingScanIndexes(dataFile, summary);
+        final List<Integer> sortedIndexes = new ArrayList<>();
+        for (int index : scanIndexes) {
+            if (!Float.isNaN(summary.getRetentionTime(index)))
+                sortedIndexes.add(index);
+        }
+        sortedIndexes.sort(Comparator.comparingDouble(
+                index -> summary.getRetentionTime(index)));
+        final List<MsScan> allScans = dataFile.getScans();
+        final List<MsScan> selectedScans = new ArrayList<>(
+                sortedIndexes.size());
+        final float rts[] = new float[sortedIndexes.size()];
+        for (int i = 0; i < rts.length; i++) {
+            selectedScans.add(allScans.get(sortedIndexes.get(i)));
+            rts[i] = summary.getRetentionTime(sortedIndexes.get(i));
+        }
+        scans = selectedScans;
+        scanRts = rts;
+    }
+
+    private void resetRanges() {
+        final Range<Double> rtRange = scanSelection.getScanRTRange();
+        final double rtLow = rtRange != null ? rtRange.lowerEndpoint()
+                : rasterIndex.getRtRange().lowerEndpoint();
+        double rtHigh = rtRange != null ? rtRange.upperEndpoint()
+                : rasterIndex.getRtRange().upperEndpoint();
+        if (rtHigh <= rtLow)
+            rtHigh = rtLow + 1;
+        final Range<Double> initialMzRange = mzRange != null ? mzRange
+                : rasterIndex.getMzRange();
+        setRanges(rtLow, rtHigh, initialMzRange.lowerEndpoint(),
+                initialMzRange.upperEndpoint());
+        rebuild(rtLow, rtHigh, initialMzRange.lowerEndpoint(),
+                initialMzRange.upperEndpoint());
+    }
+
+    private void applyRanges() {
+        final double rtLow, rtHigh, mzLow, mzHigh;
+        try {
+            rtLow = Double.parseDouble(rtLowField.getText()) * 60.0;
+            rtHigh = Double.parseDouble(rtHighField.getText()) * 60.0;
+            mzLow = Double.parseDouble(mzLowField.getText());
+            mzHigh = Double.parseDouble(mzHighField.getText());
+        } catch (NumberFormatException e) {
+            statusLabel.setText("Invalid number: " + e.getMessage());
+            return;
+        }
+        if ((rtHigh <= rtLow) || (mzHigh <= mzLow)) {
+            statusLabel.setText("Empty range");
+            return;
+        }
+        rebuild(rtLow, rtHigh, mzLow, mzHigh);
+    }
+
+    private void setRanges(double rtLow, double rtHigh, double mzLow,
+            double mzHigh) {
+        final MZmineConfiguration configuration = MZmineCore
+                .getConfiguration();
+        rtLowField.setText(configuration.getRTFormat().format(rtLow / 60.0));
+        rtHighField
+                .setText(configuration.getRTFormat().format(rtHigh / 60.0));
+        mzLowField.setText(configuration.getMZFormat().format(mzLow));
+        mzHighField.setText(configuration.getMZFormat().format(mzHigh));
+    }
+
+    /**
+     * Computes the surface of the given ranges in the background, cancelling
+     * any computation that is still running. Only the most recently started
+     * computation updates the plot.
+     */
+    private void rebuild(double rtLow, double rtHigh, double mzLow,
+            double mzHigh) {
+        if (gridBuild != null)
+            gridBuild.cancel(true);
+        final int buildNumber = ++gridBuildCount;
+        statusLabel.setText("Computing...");
+
+        final RasterIndex index = rasterIndex;
+        final List<MsScan> plotScans = scans;
+        final float plotScanRts[] = scanRts;
+        gridBuild = executor.submit(() -> {
+            try {
+                final ThreeDPlotGrid grid = ThreeDPlotGrid.compute(index,
+                        plotScans, plotScanRts, rtLow, rtHigh, mzLow, mzHigh,
+                        maxDataPoints);
+                Platform.runLater(() -> {
+                    if ((buildNumber == gridBuildCount) && !disposed)
+                        showGrid(grid);
+                });
+            } catch (InterruptedException e) {
+                // Cancelled by a newer computation
+            } catch (Exception e) {
+                logger.error("Could not compute the 3D plot of "
+                        + dataFile.getName(), e);
+                Platform.runLater(() -> {
+                    if (buildNumber == gridBuildCount)
+                        statusLabel.setText("Error: " + e.getMessage());
+                });
+            }
+        });
+    }
+
+    private void showGrid(ThreeDPlotGrid grid) {
+        final SurfaceRenderer renderer = new SurfaceRenderer(grid);
+        renderer.setXSamples(grid.getRtSteps());
+        renderer.setZSamples(grid.getMzSteps());
+        renderer.setDrawFaceOutlines(false);
+        final double maxValue = grid.getMaxValue() > 0 ? grid.getMaxValue()
+                : 1;
+        renderer.setColorScale(new GradientColorScale(
+                new com.orsoncharts.Range(0, maxValue), Color.BLUE,
+                Color.RED));
+
+        if (chartViewer == null) {
+            final Chart3D chart = Chart3DFactory.createSurfaceChart(
+                    dataFile.getName(), null, grid, "Retention time (min)",
+                    "Intensity", "m/z");
+            final MZmineConfiguration configuration = MZmineCore
+                    .getConfiguration();
+            final XYZPlot plot = (XYZPlot) chart.getPlot();
+            ((NumberAxis3D) plot.getXAxis())
+                    .setTickLabelFormatter(configuration.getRTFormat());
+            ((NumberAxis3D) plot.getYAxis())
+                    .setTickLabelFormatter(configuration.getIntensityFormat());
+            ((NumberAxis3D) plot.getZAxis())
+                    .setTickLabelFormatter(configuration.getMZFormat());
+            chartViewer = new Chart3DViewer(chart);
+            setCenter(chartViewer);
+        }
+
+        // Keep the view point and replace the data
+        final XYZPlot plot = (XYZPlot) chartViewer.getChart().getPlot();
+        plot.getXAxis().setRange(grid.getRtLow() / 60.0,
+                grid.getRtHigh() / 60.0);
+        plot.getYAxis().setRange(0, maxValue);
+        plot.getZAxis().setRange(grid.getMzLow(), grid.getMzHigh());
+        plot.setRenderer(renderer);
+
+        setRanges(grid.getRtLow(), grid.getRtHigh(), grid.getMzLow(),
+                grid.getMzHigh());
+        statusLabel.setText(
+                grid.getRtSteps() + " x " + grid.getMzSteps() + " points");
+    }
+
+    private void dispose() {
+        disposed = true;
+        if (buildMethod != null)
+            buildMethod.cancel();
+        if (gridBuild != null)
+            gridBuild.cancel(true);
+    }
 
+    private static TextField createRangeField() {
+        final TextField field = new TextField();
+        field.setPrefColumnCount(6);
+        return field;
     }
 
-}
\ No newline at end of file
+}
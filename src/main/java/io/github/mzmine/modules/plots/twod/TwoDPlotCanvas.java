@@ -0,0 +1,463 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.plots.twod;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.plots.twod.TwoDTileRenderer.TileKey;
+import javafx.application.Platform;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * Canvas showing the tiles of a {@link TwoDTileRenderer}. Tiles that are not
+ * computed yet are drawn from a cached tile of a coarser zoom level, so the
+ * plot is refined progressively while zooming. Drag a rectangle to zoom in,
+ * scroll to zoom around the cursor and double-click to show all data.
+ */
+class TwoDPlotCanvas extends Pane {
+
+    private static final double LEFT_MARGIN = 70, BOTTOM_MARGIN = 40,
+            TOP_MARGIN = 10, RIGHT_MARGIN = 15;
+
+    private static final double SCROLL_ZOOM_FACTOR = 1.25;
+
+    private final Canvas canvas = new Canvas();
+    private final AtomicBoolean redrawPending = new AtomicBoolean();
+
+    private TwoDTileRenderer renderer;
+    private String message = "";
+    private Consumer<String> statusListener = s -> {
+    };
+
+    private double viewRtLow, viewRtHigh, viewMzLow, viewMzHigh;
+    private double dragStartX, dragStartY, dragX, dragY;
+    private boolean dragging = false;
+
+    TwoDPlotCanvas() {
+        getChildren().add(canvas);
+        canvas.widthProperty().bind(widthProperty());
+        canvas.heightProperty().bind(heightProperty());
+        canvas.widthProperty().addListener(e -> draw());
+        canvas.heightProperty().addListener(e -> draw());
+        setMinSize(200, 150);
+
+        canvas.setOnMousePressed(this::mousePressed);
+        canvas.setOnMouseDragged(this::mouseDragged);
+        canvas.setOnMouseReleased(this::mouseReleased);
+        canvas.setOnMouseClicked(this::mouseClicked);
+        canvas.setOnMouseMoved(this::mouseMoved);
+        canvas.setOnScroll(this::scrolled);
+    }
+
+    /**
+     * Shows the given renderer, initially with the given ranges as far as
+     * they overlap the data.
+     */
+    void setRenderer(@Nonnull TwoDTileRenderer renderer,
+            double initialRtLow, double initialRtHigh, double initialMzLow,
+            double initialMzHigh) {
+        this.renderer = renderer;
+        viewRtLow = Math.max(renderer.getRtLow(), initialRtLow);
+        viewRtHigh = Math.min(renderer.getRtHigh(), initialRtHigh);
+        if (viewRtHigh <= viewRtLow) {
+            viewRtLow = renderer.getRtLow();
+            viewRtHigh = renderer.getRtHigh();
+        }
+        viewMzLow = Math.max(renderer.getMzLow(), initialMzLow);
+        viewMzHigh = Math.min(renderer.getMzHigh(), initialMzHigh);
+        if (viewMzHigh <= viewMzLow) {
+            viewMzLow = renderer.getMzLow();
+            viewMzHigh = renderer.getMzHigh();
+        }
+        draw();
+    }
+
+    /**
+     * Shows a message instead of the plot, e.g. while the data are being
+     * prepared.
+     */
+    void setMessage(@Nonnull String message) {
+        this.message = message;
+        draw();
+    }
+
+    void setStatusListener(@Nonnull Consumer<String> statusListener) {
+        this.statusListener = statusListener;
+    }
+
+    /**
+     * Redraws on the FX thread after a tile was computed. Several tiles
+     * finishing at once cause a single redraw.
+     */
+    void tileReady(@Nonnull TileKey key) {
+        if (redrawPending.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                redrawPending.set(false);
+                draw();
+            });
+        }
+    }
+
+    private void draw() {
+        final GraphicsContext gc = canvas.getGraphicsContext2D();
+        final double width = canvas.getWidth(), height = canvas.getHeight();
+        gc.setFill(Color.WHITE);
+        gc.fillRect(0, 0, width, height);
+
+        final double plotWidth = getPlotWidth(), plotHeight = getPlotHeight();
+        if ((renderer == null) || (plotWidth <= 0) || (plotHeight <= 0)) {
+            gc.setFill(Color.GRAY);
+            gc.setTextAlign(TextAlignment.CENTER);
+            gc.setTextBaseline(VPos.CENTER);
+            gc.fillText(message, width / 2, height / 2);
+            return;
+        }
+
+        final int rtZoom = getZoomLevel(
+                renderer.getRtHigh() - renderer.getRtLow(),
+                viewRtHigh - viewRtLow, plotWidth);
+        final int mzZoom = getZoomLevel(
+                renderer.getMzHigh() - renderer.getMzLow(),
+                viewMzHigh - viewMzLow, plotHeight);
+        final double tileRtWidth = renderer.getTileRtWidth(rtZoom);
+        final double tileMzWidth = renderer.getTileMzWidth(mzZoom);
+        final int maxIndexRt = (1 << rtZoom) - 1,
+                maxIndexMz = (1 << mzZoom) - 1;
+        final int firstRt = clamp((int) Math.floor(
+                (viewRtLow - renderer.getRtLow()) / tileRtWidth), maxIndexRt);
+        final int lastRt = clamp((int) Math.floor(
+                (viewRtHigh - renderer.getRtLow()) / tileRtWidth), maxIndexRt);
+        final int firstMz = clamp((int) Math.floor(
+                (viewMzLow - renderer.getMzLow()) / tileMzWidth), maxIndexMz);
+        final int lastMz = clamp((int) Math.floor(
+                (viewMzHigh - renderer.getMzLow()) / tileMzWidth), maxIndexMz);
+
+        final List<TileKey> visibleTiles = new ArrayList<>();
+        for (int rtIndex = firstRt; rtIndex <= lastRt; rtIndex++) {
+            for (int mzIndex = firstMz; mzIndex <= lastMz; mzIndex++)
+                visibleTiles.add(
+                        new TileKey(rtZoom, mzZoom, rtIndex, mzIndex));
+        }
+
+        gc.save();
+        gc.beginPath();
+        gc.rect(LEFT_MARGIN, TOP_MARGIN, plotWidth, plotHeight);
+        gc.clip();
+        for (TileKey key : visibleTiles)
+            drawTile(gc, key);
+        gc.restore();
+
+        drawAxes(gc, plotWidth, plotHeight);
+
+        if (dragging) {
+            gc.setStroke(Color.BLACK);
+            gc.setLineDashes(4);
+            gc.strokeRect(Math.min(dragStartX, dragX),
+                    Math.min(dragStartY, dragY), Math.abs(dragX - dragStartX),
+                    Math.abs(dragY - dragStartY));
+            gc.setLineDashes(null);
+        }
+
+        // The overview tile first, then the visible tiles from the center
+        // outwards
+        final double centerRt = (firstRt + lastRt) / 2.0,
+                centerMz = (firstMz + lastMz) / 2.0;
+        visibleTiles.sort(Comparator.comparingDouble(
+                k -> Math.abs(k.rtIndex - centerRt)
+                        + Math.abs(k.mzIndex - centerMz)));
+        final List<TileKey> wantedTiles = new ArrayList<>();
+        wantedTiles.add(new TileKey(0, 0, 0, 0));
+        wantedTiles.addAll(visibleTiles);
+        renderer.requestTiles(wantedTiles);
+    }
+
+    /**
+     * Draws a tile, or the corresponding part of the finest cached tile of a
+     * coarser zoom level if the tile is not computed yet.
+     */
+    private void drawTile(GraphicsContext gc, TileKey key) {
+        final double tileRtLow = renderer.getRtLow()
+                + key.rtIndex * renderer.getTileRtWidth(key.rtZoom);
+        final double tileMzLow = renderer.getMzLow()
+                + key.mzIndex * renderer.getTileMzWidth(key.mzZoom);
+        final double tileRtWidth = renderer.getTileRtWidth(key.rtZoom);
+        final double tileMzWidth = renderer.getTileMzWidth(key.mzZoom);
+
+        final double x = rtToX(tileRtLow);
+        final double y = mzToY(tileMzLow + tileMzWidth);
+        final double w = rtToX(tileRtLow + tileRtWidth) - x;
+        final double h = mzToY(tileMzLow) - y;
+
+        final int maxSteps = Math.max(key.rtZoom, key.mzZoom);
+        for (int step = 0; step <= maxSteps; step++) {
+            final int rtZoom = Math.max(0, key.rtZoom - step);
+            final int mzZoom = Math.max(0, key.mzZoom - step);
+            final TileKey ancestor = new TileKey(rtZoom, mzZoom,
+                    key.rtIndex >> (key.rtZoom - rtZoom),
+                    key.mzIndex >> (key.mzZoom - mzZoom));
+            final WritableImage image = renderer.getTile(ancestor);
+            if (image == null)
+                continue;
+
+            final double ancestorRtWidth = renderer.getTileRtWidth(rtZoom);
+            final double ancestorMzWidth = renderer.getTileMzWidth(mzZoom);
+            final double ancestorRtLow = renderer.getRtLow()
+                    + ancestor.rtIndex * ancestorRtWidth;
+            final double ancestorMzHigh = renderer.getMzLow()
+                    + (ancestor.mzIndex + 1) * ancestorMzWidth;
+            final int size = TwoDTileRenderer.TILE_SIZE;
+            final double sx = (tileRtLow - ancestorRtLow) / ancestorRtWidth
+                    * size;
+            final double sy = (ancestorMzHigh - tileMzLow - tileMzWidth)
+                    / ancestorMzWidth * size;
+            final double sw = tileRtWidth / ancestorRtWidth * size;
+            final double sh = tileMzWidth / ancestorMzWidth * size;
+            gc.drawImage(image, sx, sy, sw, sh, x, y, w, h);
+            return;
+        }
+    }
+
+    private void drawAxes(GraphicsContext gc, double plotWidth,
+            double plotHeight) {
+        gc.setStroke(Color.BLACK);
+        gc.setLineWidth(1);
+        gc.strokeRect(LEFT_MARGIN, TOP_MARGIN, plotWidth, plotHeight);
+        gc.setFill(Color.BLACK);
+
+        // Retention time axis, labeled in minutes
+        final NumberFormat rtFormat = MZmineCore.getConfiguration()
+                .getRTFormat();
+        final double rtStep = getTickStep(
+                (viewRtHigh - viewRtLow) / 60, plotWidth / 80);
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.setTextBaseline(VPos.TOP);
+        for (double rt = Math.ceil(viewRtLow / 60 / rtStep)
+                * rtStep; rt <= viewRtHigh / 60; rt += rtStep) {
+            final double x = rtToX(rt * 60);
+            gc.strokeLine(x, TOP_MARGIN + plotHeight, x,
+                    TOP_MARGIN + plotHeight + 4);
+            gc.fillText(rtFormat.format(rt), x, TOP_MARGIN + plotHeight + 6);
+        }
+        gc.fillText("Retention time (min)", LEFT_MARGIN + plotWidth / 2,
+                TOP_MARGIN + plotHeight + 22);
+
+        // m/z axis
+        final NumberFormat mzFormat = MZmineCore.getConfiguration()
+                .getMZFormat();
+        final double mzStep = getTickStep(viewMzHigh - viewMzLow,
+                plotHeight / 40);
+        gc.setTextAlign(TextAlignment.RIGHT);
+        gc.setTextBaseline(VPos.CENTER);
+        for (double mz = Math.ceil(viewMzLow / mzStep)
+                * mzStep; mz <= viewMzHigh; mz += mzStep) {
+            final double y = mzToY(mz);
+            gc.strokeLine(LEFT_MARGIN - 4, y, LEFT_MARGIN, y);
+            gc.fillText(mzFormat.format(mz), LEFT_MARGIN - 6, y);
+        }
+        gc.save();
+        gc.translate(12, TOP_MARGIN + plotHeight / 2);
+        gc.rotate(-90);
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.fillText("m/z", 0, 0);
+        gc.restore();
+    }
+
+    private void mousePressed(MouseEvent e) {
+        if ((renderer == null) || (e.getButton() != MouseButton.PRIMARY))
+            return;
+        dragStartX = dragX = clampX(e.getX());
+        dragStartY = dragY = clampY(e.getY());
+    }
+
+    private void mouseDragged(MouseEvent e) {
+        if ((renderer == null) || (e.getButton() != MouseButton.PRIMARY))
+            return;
+        dragging = true;
+        dragX = clampX(e.getX());
+        dragY = clampY(e.getY());
+        draw();
+    }
+
+    private void mouseReleased(MouseEvent e) {
+        if (!dragging)
+            return;
+        dragging = false;
+        if ((Math.abs(dragX - dragStartX) > 5)
+                && (Math.abs(dragY - dragStartY) > 5)) {
+            final double rtLow = xToRt(Math.min(dragStartX, dragX));
+            final double rtHigh = xToRt(Math.max(dragStartX, dragX));
+            final double mzLow = yToMz(Math.max(dragStartY, dragY));
+            final double mzHigh = yToMz(Math.min(dragStartY, dragY));
+            setView(rtLow, rtHigh, mzLow, mzHigh);
+        } else {
+            draw();
+        }
+    }
+
+    private void mouseClicked(MouseEvent e) {
+        if ((renderer == null) || (e.getClickCount() != 2))
+            return;
+        setView(renderer.getRtLow(), renderer.getRtHigh(),
+                renderer.getMzLow(), renderer.getMzHigh());
+    }
+
+    private void mouseMoved(MouseEvent e) {
+        if ((renderer == null) || !isInPlot(e.getX(), e.getY())) {
+            statusListener.accept("");
+            return;
+        }
+        statusListener.accept("Retention time: "
+                + MZmineCore.getConfiguration().getRTFormat()
+                        .format(xToRt(e.getX()) / 60)
+                + " min, m/z: " + MZmineCore.getConfiguration().getMZFormat()
+                        .format(yToMz(e.getY())));
+    }
+
+    private void scrolled(ScrollEvent e) {
+        if ((renderer == null) || (e.getDeltaY() == 0)
+                || !isInPlot(e.getX(), e.getY()))
+            return;
+        final double factor = e.getDeltaY() > 0 ? 1 / SCROLL_ZOOM_FACTOR
+                : SCROLL_ZOOM_FACTOR;
+        final double rt = xToRt(e.getX()), mz = yToMz(e.getY());
+        setView(rt - (rt - viewRtLow) * factor,
+                rt + (viewRtHigh - rt) * factor,
+                mz - (mz - viewMzLow) * factor,
+                mz + (viewMzHigh - mz) * factor);
+    }
+
+    /**
+     * Sets the visible range, limited to the data and to the finest zoom
+     * level.
+     */
+    private void setView(double rtLow, double rtHigh, double mzLow,
+            double mzHigh) {
+        final double minRtWidth = (renderer.getRtHigh() - renderer.getRtLow())
+                / (1 << TwoDTileRenderer.MAX_ZOOM_LEVEL);
+        final double minMzWidth = (renderer.getMzHigh() - renderer.getMzLow())
+                / (1 << TwoDTileRenderer.MAX_ZOOM_LEVEL);
+        viewRtLow = Math.max(renderer.getRtLow(), rtLow);
+        viewRtHigh = Math.min(renderer.getRtHigh(),
+                Math.max(rtHigh, viewRtLow + minRtWidth));
+        viewMzLow = Math.max(renderer.getMzLow(), mzLow);
+        viewMzHigh = Math.min(renderer.getMzHigh(),
+                Math.max(mzHigh, viewMzLow + minMzWidth));
+        draw();
+    }
+
+    /**
+     * @return the zoom level whose tiles have at least as many pixels per
+     *         data unit as the screen
+     */
+    private static int getZoomLevel(double fullWidth, double viewWidth,
+            double pixels) {
+        final double tiles = fullWidth / viewWidth * pixels
+                / TwoDTileRenderer.TILE_SIZE;
+        final int zoomLevel = (int) Math
+                .ceil(Math.log(Math.max(1, tiles)) / Math.log(2));
+        return Math.min(TwoDTileRenderer.MAX_ZOOM_LEVEL, zoomLevel);
+    }
+
+    /**
+     * @return a step of 1, 2 or 5 times a power of 10 that divides the range
+     *         into about the given number of ticks
+     */
+    private static double getTickStep(double range, double ticks) {
+        final double rawStep = range / Math.max(1, ticks);
+        final double magnitude = Math.pow(10, Math.floor(Math.log10(rawStep)));
+        final double normalized = rawStep / magnitude;
+        if (normalized <= 1)
+            return magnitude;
+        if (normalized <= 2)
+            return 2 * magnitude;
+        if (normalized <= 5)
+            return 5 * magnitude;
+        return 10 * magnitude;
+    }
+
+    private static int clamp(int index, int maxIndex) {
+        return Math.max(0, Math.min(maxIndex, index));
+    }
+
+    private double getPlotWidth() {
+        return canvas.getWidth() - LEFT_MARGIN - RIGHT_MARGIN;
+    }
+
+    private double getPlotHeight() {
+        return canvas.getHeight() - TOP_MARGIN - BOTTOM_MARGIN;
+    }
+
+    private boolean isInPlot(double x, double y) {
+        return (x >= LEFT_MARGIN) && (x <= LEFT_MARGIN + getPlotWidth())
+                && (y >= TOP_MARGIN) && (y <= TOP_MARGIN + getPlotHeight());
+    }
+
+    private double clampX(double x) {
+        return Math.max(LEFT_MARGIN, Math.min(LEFT_MARGIN + getPlotWidth(), x));
+    }
+
+    private double clampY(double y) {
+        return Math.max(TOP_MARGIN, Math.min(TOP_MARGIN + getPlotHeight(), y));
+    }
+
+    private double rtToX(double rt) {
+        return LEFT_MARGIN
+                + (rt - viewRtLow) / (viewRtHigh - viewRtLow) * getPlotWidth();
+    }
+
+    private double mzToY(double mz) {
+        return TOP_MARGIN + (viewMzHigh - mz) / (viewMzHigh - viewMzLow)
+                * getPlotHeight();
+    }
+
+    private double xToRt(double x) {
+        return viewRtLow
+                + (x - LEFT_MARGIN) / getPlotWidth() * (viewRtHigh - viewRtLow);
+    }
+
+    private double yToMz(double y) {
+        return viewMzHigh - (y - TOP_MARGIN) / getPlotHeight()
+                * (viewMzHigh - viewMzLow);
+    }
+
+    @Nullable
+    TwoDTileRenderer getRenderer() {
+        return renderer;
+    }
+
+}
@@ -21,23 +21,39 @@ package io.github.mzmine.modules.plots.twod;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.annotation.Nonnull;
 
+import com.google.common.collect.Range;
+
 import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.gui.MZmineGUI;
 import io.github.mzmine.modules.MZmineRunnableModule;
 import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.project.MZmineProject;
 import javafx.concurrent.Task;
 
 /**
  * 2D plot
  */
+/**
+ * 2D plot of the intensities of raw data files over retention time and m/z
+ */
 public class TwoDPlotModule implements MZmineRunnableModule {
 
     private static final @Nonnull String MODULE_NAME = "2D Plot";
     private static final @Nonnull String MODULE_DESCRIPTION = "2D Plot";
 
+    private static final ExecutorService threadPool = Executors
+            .newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "2D plot indexing");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     @Override
     public @Nonnull String getName() {
         return MODULE_NAME;
@@ -56,6 +72,24 @@ public class TwoDPlotModule implements MZmineRunnableModule {
         final List<RawDataFile> dataFiles = parameters
                 .getParameter(TwoDPlotParameters.inputFiles).getValue()
                 .getMatchingRawDataFiles();
+        final ScanSelection scanSelection = parameters
+                .getParameter(TwoDPlotParameters.scanSelection).getValue();
+        final Range<Double> mzRange = parameters
+                .getParameter(TwoDPlotParameters.mzRange).getValue();
+
+        for (RawDataFile dataFile : dataFiles) {
+            TwoDPlotWindow window = new TwoDPlotWindow(dataFile,
+                    scanSelection, mzRange);
+            MZmineGUI.addWindow(window, "2D plot: " + dataFile.getName(),
+                    false);
+
+            // Keep the raw data file while the plot is shown
+            MZmineGUI.retainWhileShowing(window, dataFile);
+
+            // Load the actual data in a separate thread to avoid blocking
+            // the GUI
+            window.loadData(threadPool);
+        }
 
     }
 
@@ -20,7 +20,6 @@
 package io.github.mzmine.modules.plots.twod;
 
 import io.github.mzmine.parameters.ParameterSet;
-import io.github.mzmine.parameters.parametertypes.IntegerParameter;
 import io.github.mzmine.parameters.parametertypes.ranges.DoubleRangeParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
@@ -36,19 +35,11 @@ public class TwoDPlotParameters extends ParameterSet {
     public static final DoubleRangeParameter mzRange = new DoubleRangeParameter(
             "m/z range", "m/z range", "Data range");
 
-    public static final IntegerParameter rtResolution = new IntegerParameter(
-            "Retention time resolution",
-            "Number of data points on retention time axis", "Resolution", 500);
-
-    public static final IntegerParameter mzResolution = new IntegerParameter(
-            "m/z resolution", "Number of data points on m/z axis", "Resolution",
-            500);
-
     /**
      * Create the parameter set.
      */
     public TwoDPlotParameters() {
-        super(inputFiles, scanSelection, mzRange, rtResolution, mzResolution);
+        super(inputFiles, scanSelection, mzRange);
     }
 
 }
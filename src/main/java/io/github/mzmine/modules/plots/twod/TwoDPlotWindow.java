@@ -17,17 +17,164 @@
  * St, Fifth Floor, Boston, MA 02110-1301 USA
  */
 
+
 package io.github.mzmine.modules.plots.twod;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.util.rawdata.RasterIndex;
+import io.github.mzmine.util.rawdata.RasterIndexBuildMethod;
+import io.github.mzmine.util.rawdata.ScanSummary;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.scene.control.Label;
 import javafx.scene.layout.BorderPane;
+import javafx.util.Duration;
 
 /**
- * 2D plot window
+ * Window showing the intensities of a raw data file over retention time and
+ * m/z. The raster index of the file is built in the background first, if
+ * necessary.
  */
 public class TwoDPlotWindow extends BorderPane {
 
-    TwoDPlotWindow() {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final TwoDPlotCanvas plotCanvas = new TwoDPlotCanvas();
+    private final Label statusLabel = new Label();
+
+    private final RawDataFile dataFile;
+    private final ScanSelection scanSelection;
+    private final Range<Double> mzRange;
+    private RasterIndexBuildMethod buildMethod;
+
+    TwoDPlotWindow(@Nonnull RawDataFile dataFile,
+            @Nonnull ScanSelection scanSelection,
+            @Nullable Range<Double> mzRange) {
+        this.dataFile = dataFile;
+        this.scanSelection = scanSelection;
+        this.mzRange = mzRange;
+
+        setCenter(plotCanvas);
+        setBottom(statusLabel);
+        setPrefSize(800, 600);
+        plotCanvas.setStatusListener(statusLabel::setText);
+
+        // Stop rendering once the window is closed
+        sceneProperty().addListener((observable, oldScene, newScene) -> {
+            if ((oldScene != null) && (newScene == null))
+                dispose();
+        });
+    }
+
+    /**
+     * Prepares the data on the given thread and shows the plot when done.
+     */
+    void loadData(@Nonnull Executor executor) {
+        final int msLevel = scanSelection.getMsLevel() == null ? 1
+                : scanSelection.getMsLevel();
+        final RasterIndex existingIndex = RasterIndex.getIfPresent(dataFile,
+                msLevel);
+        final RasterIndexBuildMethod method = existingIndex == null
+                ? new RasterIndexBuildMethod(dataFile, msLevel) : null;
+        buildMethod = method;
+
+        final Timeline progressUpdater = new Timeline(
+                new KeyFrame(Duration.millis(500), e -> {
+                    final Float progress = method == null ? null
+                            : method.getFinishedPercentage();
+                    plotCanvas.setMessage("Indexing " + dataFile.getName()
+                            + (progress == null ? "..."
+                                    : " " + Math.round(progress * 100)
+                                            + "%"));
+                }));
+        progressUpdater.setCycleCount(Timeline.INDEFINITE);
+        plotCanvas.setMessage("Indexing " + dataFile.getName() + "...");
+        progressUpdater.play();
+
+        executor.execute(() -> {
+            try {
+                final RasterIndex rasterIndex = method == null
+                        ? existingIndex : method.execute();
+                if (rasterIndex == null)
+                    return;
+                final TwoDTileRenderer renderer = createRenderer(rasterIndex);
+                Platform.runLater(() -> {
+                    progressUpdater.stop();
+                    final Range<Double> initialRtRange = scanSelection
+                            .getScanRTRange();
+                    final Range<Double> initialMzRange = mzRange != null
+                            ? mzRange : rasterIndex.getMzRange();
+                    plotCanvas.setRenderer(renderer,
+                            initialRtRange == null ? renderer.getRtLow()
+                                    : initialRtRange.lowerEndpoint(),
+                            initialRtRange == null ? renderer.getRtHigh()
+                                    : initialRtRange.upperEndpoint(),
+                            initialMzRange.lowerEndpoint(),
+                            initialMzRange.upperEndpoint());
+                });
+            } catch (Exception e) {
+                logger.error("Could not prepare the 2D plot of "
+                        + dataFile.getName(), e);
+                Platform.runLater(() -> {
+                    progressUpdater.stop();
+                    plotCanvas.setMessage("Error: " + e.getMessage());
+                });
+            }
+        });
+    }
+
+    private TwoDTileRenderer createRenderer(RasterIndex rasterIndex) {
+        // The scans of the selection, in the order of their retention times
+        final ScanSummary summary = ScanSummary.get(dataFile);
+        final int scanIndexes[] = scanSelection
+                .getMatchingScanIndexes(dataFile, summary);
+        final List<Integer> sortedIndexes = new ArrayList<>();
+        for (int index : scanIndexes) {
+            if (!Float.isNaN(summary.getRetentionTime(index)))
+                sortedIndexes.add(index);
+        }
+        sortedIndexes.sort(Comparator.comparingDouble(
+                index -> summary.getRetentionTime(index)));
+        final List<MsScan> allScans = dataFile.getScans();
+        final List<MsScan> scans = new ArrayList<>(sortedIndexes.size());
+        final float scanRts[] = new float[sortedIndexes.size()];
+        for (int i = 0; i < scanRts.length; i++) {
+            scans.add(allScans.get(sortedIndexes.get(i)));
+            scanRts[i] = summary.getRetentionTime(sortedIndexes.get(i));
+        }
+
+        final Range<Float> rtRange = rasterIndex.getRtRange();
+        final double rtHigh = rtRange.upperEndpoint() > rtRange.lowerEndpoint()
+                ? rtRange.upperEndpoint() : rtRange.lowerEndpoint() + 1;
+        return new TwoDTileRenderer(rasterIndex, scans, scanRts,
+                rtRange.lowerEndpoint(), rtHigh,
+                rasterIndex.getMzRange().lowerEndpoint(),
+                rasterIndex.getMzRange().upperEndpoint(),
+                plotCanvas::tileReady);
+    }
 
+    private void dispose() {
+        if (buildMethod != null)
+            buildMethod.cancel();
+        final TwoDTileRenderer renderer = plotCanvas.getRenderer();
+        if (renderer != null)
+            renderer.dispose();
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.plots.twod;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.mzmine.util.rawdata.RasterIndex;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+/**
+ * Computes the tiles of a 2D plot on background threads and keeps the most
+ * recently used ones.
+ * 
+ * The data area is divided into 2^z tiles along each axis, with separate
+ * zoom levels for retention time and m/z. A tile is
+ * {@link #TILE_SIZE} pixels square. Tiles are sampled from the
+ * {@link RasterIndex} as long as it has at least one m/z bin per pixel, and
+ * binned from the data points of the scans when zoomed in further.
+ */
+class TwoDTileRenderer {
+
+    static final int TILE_SIZE = 256;
+
+    static final int MAX_ZOOM_LEVEL = 20;
+
+    private static final int MAX_CACHED_TILES = 256;
+
+    private static final ExecutorService tileThreads = Executors
+            .newFixedThreadPool(
+                    Math.max(1,
+                            Runtime.getRuntime().availableProcessors() - 1),
+                    r -> {
+                        Thread thread = new Thread(r, "2D plot tiles");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    });
+
+    private static final int palette[] = createPalette();
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final RasterIndex rasterIndex;
+    private final List<MsScan> scans;
+    private final float scanRts[];
+    private final double rtLow, rtHigh, mzLow, mzHigh;
+    private final float maxIntensity;
+    private final Consumer<TileKey> onTileReady;
+
+    // Access order makes the first entry the least recently used one
+    private final Map<TileKey, WritableImage> tiles = new LinkedHashMap<>(16,
+            0.75f, true);
+    private final Set<TileKey> pendingTiles = new HashSet<>();
+    private Set<TileKey> wantedTiles = Collections.emptySet();
+
+    /**
+     * @param scans
+     *            the scans to plot, in the order of their retention times
+     * @param scanRts
+     *            retention times of the scans
+     * @param onTileReady
+     *            called on a background thread when a tile was computed
+     */
+    TwoDTileRenderer(@Nonnull RasterIndex rasterIndex,
+            @Nonnull List<MsScan> scans, @Nonnull float scanRts[],
+            double rtLow, double rtHigh, double mzLow, double mzHigh,
+            @Nonnull Consumer<TileKey> onTileReady) {
+        this.rasterIndex = rasterIndex;
+        this.scans = scans;
+        this.scanRts = scanRts;
+        this.rtLow = rtLow;
+        this.rtHigh = rtHigh;
+        this.mzLow = mzLow;
+        this.mzHigh = mzHigh;
+        this.maxIntensity = rasterIndex.getMaxIntensity();
+        this.onTileReady = onTileReady;
+    }
+
+    double getRtLow() {
+        return rtLow;
+    }
+
+    double getRtHigh() {
+        return rtHigh;
+    }
+
+    double getMzLow() {
+        return mzLow;
+    }
+
+    double getMzHigh() {
+        return mzHigh;
+    }
+
+    double getTileRtWidth(int zoomLevel) {
+        return (rtHigh - rtLow) / (1 << zoomLevel);
+    }
+
+    double getTileMzWidth(int zoomLevel) {
+        return (mzHigh - mzLow) / (1 << zoomLevel);
+    }
+
+    synchronized @Nullable WritableImage getTile(@Nonnull TileKey key) {
+        return tiles.get(key);
+    }
+
+    /**
+     * Replaces the set of tiles that are needed for the current view and
+     * starts computing those that are neither cached nor being computed.
+     * Tiles that were requested before but are no longer needed are skipped
+     * when their turn comes.
+     * 
+     * @param keys
+     *            the tiles in the order they should be computed
+     */
+    synchronized void requestTiles(@Nonnull List<TileKey> keys) {
+        wantedTiles = new HashSet<>(keys);
+        for (TileKey key : keys) {
+            if (tiles.containsKey(key) || pendingTiles.contains(key))
+                continue;
+            pendingTiles.add(key);
+            tileThreads.execute(() -> computeTile(key));
+        }
+    }
+
+    synchronized void dispose() {
+        wantedTiles = Collections.emptySet();
+        tiles.clear();
+    }
+
+    private void computeTile(TileKey key) {
+        synchronized (this) {
+            if (!wantedTiles.contains(key)) {
+                pendingTiles.remove(key);
+                return;
+            }
+        }
+        try {
+            final double tileRtLow = rtLow
+                    + key.rtIndex * getTileRtWidth(key.rtZoom);
+            final double tileMzLow = mzLow
+                    + key.mzIndex * getTileMzWidth(key.mzZoom);
+            final double tileRtHigh = tileRtLow + getTileRtWidth(key.rtZoom);
+            final double tileMzHigh = tileMzLow + getTileMzWidth(key.mzZoom);
+
+            final float grid[] = new float[TILE_SIZE * TILE_SIZE];
+            if (rasterIndex.resolvesMz(
+                    (tileMzHigh - tileMzLow) / TILE_SIZE)) {
+                rasterIndex.getMaxGrid(tileRtLow, tileRtHigh, tileMzLow,
+                        tileMzHigh, TILE_SIZE, TILE_SIZE, grid);
+            } else {
+                binScans(tileRtLow, tileRtHigh, tileMzLow, tileMzHigh, grid);
+            }
+            final WritableImage image = createImage(grid);
+
+            synchronized (this) {
+                pendingTiles.remove(key);
+                tiles.put(key, image);
+                while (tiles.size() > MAX_CACHED_TILES)
+                    tiles.remove(tiles.keySet().iterator().next());
+            }
+            onTileReady.accept(key);
+        } catch (Exception e) {
+            logger.error("Could not compute 2D plot tile " + key, e);
+            synchronized (this) {
+                pendingTiles.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Bins the data points of the scans into the grid. Each pixel column
+     * shows the scans in its retention time range, or the nearest scan if
+     * there is none.
+     */
+    private void binScans(double tileRtLow, double tileRtHigh,
+            double tileMzLow, double tileMzHigh, float grid[]) {
+        final double pixelRt = (tileRtHigh - tileRtLow) / TILE_SIZE;
+        final double pixelMz = (tileMzHigh - tileMzLow) / TILE_SIZE;
+        final Map<Integer, float[]> binnedScans = new LinkedHashMap<>();
+        double mzBuffer[] = new double[0];
+        float intensityBuffer[] = new float[0];
+
+        for (int x = 0; x < TILE_SIZE; x++) {
+            final double low = tileRtLow + x * pixelRt, high = low + pixelRt;
+            if (scanRts.length == 0 || (high < scanRts[0])
+                    || (low > scanRts[scanRts.length - 1]))
+                continue;
+            int first = Arrays.binarySearch(scanRts, (float) low);
+            first = first < 0 ? -first - 1 : first;
+            int last = first;
+            while ((last < scanRts.length) && (scanRts[last] <= high))
+                last++;
+            last--;
+            if (last < first) {
+                // Between two scans, take the nearer one
+                final double center = (low + high) / 2;
+                first = last = (first > 0) && ((first == scanRts.length)
+                        || (center - scanRts[first - 1] < scanRts[first]
+                                - center)) ? first - 1 : first;
+            }
+
+            for (int s = first; s <= last; s++) {
+                float binned[] = binnedScans.get(s);
+                if (binned == null) {
+                    binned = new float[TILE_SIZE];
+                    final MsScan scan = scans.get(s);
+                    mzBuffer = scan.getMzValues(mzBuffer);
+                    intensityBuffer = scan
+                            .getIntensityValues(intensityBuffer);
+                    final int size = scan.getNumberOfDataPoints();
+                    for (int i = 0; i < size; i++) {
+                        if ((mzBuffer[i] < tileMzLow)
+                                || (mzBuffer[i] >= tileMzHigh))
+                            continue;
+                        final int y = Math.min(TILE_SIZE - 1,
+                                (int) ((mzBuffer[i] - tileMzLow) / pixelMz));
+                        binned[y] = Math.max(binned[y], intensityBuffer[i]);
+                    }
+                    binnedScans.put(s, binned);
+                }
+                for (int y = 0; y < TILE_SIZE; y++)
+                    grid[y * TILE_SIZE + x] = Math
+                            .max(grid[y * TILE_SIZE + x], binned[y]);
+            }
+        }
+    }
+
+    /**
+     * Creates the image of a tile; the first row of the grid (lowest m/z) is
+     * the bottom row of the image.
+     */
+    private WritableImage createImage(float grid[]) {
+        final int pixels[] = new int[TILE_SIZE * TILE_SIZE];
+        final double scale = maxIntensity > 0 ? 1000.0 / maxIntensity : 0;
+        for (int y = 0; y < TILE_SIZE; y++) {
+            final int imageRow = (TILE_SIZE - 1 - y) * TILE_SIZE;
+            for (int x = 0; x < TILE_SIZE; x++) {
+                final float value = grid[y * TILE_SIZE + x];
+                if (value <= 0) {
+                    pixels[imageRow + x] = 0;
+                    continue;
+                }
+                // Logarithmic scale over 3 orders of magnitude
+                final double level = Math.log10(1 + value * scale) / 3.0;
+                final int index = (int) Math.min(palette.length - 1,
+                        level * (palette.length - 1));
+                pixels[imageRow + x] = palette[index];
+            }
+        }
+        final WritableImage image = new WritableImage(TILE_SIZE, TILE_SIZE);
+        final PixelWriter writer = image.getPixelWriter();
+        writer.setPixels(0, 0, TILE_SIZE, TILE_SIZE,
+                PixelFormat.getIntArgbInstance(), pixels, 0, TILE_SIZE);
+        return image;
+    }
+
+    /**
+     * Colors from blue (low intensity) over green and yellow to red (high
+     * intensity)
+     */
+    private static int[] createPalette() {
+        final int colors[] = new int[256];
+        for (int i = 0; i < colors.length; i++) {
+            final double fraction = (double) i / (colors.length - 1);
+            final Color color = Color.hsb(240 * (1 - fraction), 1.0,
+                    0.6 + 0.4 * fraction);
+            colors[i] = (0xFF << 24)
+                    | ((int) Math.round(color.getRed() * 255) << 16)
+                    | ((int) Math.round(color.getGreen() * 255) << 8)
+                    | (int) Math.round(color.getBlue() * 255);
+        }
+        return colors;
+    }
+
+    /**
+     * Identifies a tile by its zoom levels and position along both axes.
+     */
+    static class TileKey {
+        final int rtZoom, mzZoom, rtIndex, mzIndex;
+
+        TileKey(int rtZoom, int mzZoom, int rtIndex, int mzIndex) {
+            this.rtZoom = rtZoom;
+            this.mzZoom = mzZoom;
+            this.rtIndex = rtIndex;
+            this.mzIndex = mzIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey))
+                return false;
+            final TileKey other = (TileKey) o;
+            return (rtZoom == other.rtZoom) && (mzZoom == other.mzZoom)
+                    && (rtIndex == other.rtIndex)
+                    && (mzIndex == other.mzIndex);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((rtZoom * 31 + mzZoom) * 31 + rtIndex) * 31 + mzIndex;
+        }
+
+        @Override
+        public String toString() {
+            return rtZoom + "/" + mzZoom + "/" + rtIndex + "/" + mzIndex;
+        }
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package io.github.mzmine.modules.rawdata.centroiding;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.StandardXYBarPainter;
+import org.jfree.chart.renderer.xy.XYBarRenderer;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.rawdata.centroiding.MSDKCentroidingAlgorithm;
+import io.github.msdk.rawdata.centroiding.MSDKCentroidingMethod;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.plots.msspectrum.datasets.MsSpectrumDataSet;
+import io.github.mzmine.parameters.ParameterPreview;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.util.MsScanUtils;
+import io.github.mzmine.util.jfreechart.ChartNodeJFreeChart;
+import io.github.mzmine.util.rawdata.ScanSubsetMethod;
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.layout.HBox;
+import javafx.util.StringConverter;
+
+/**
+ * Preview of the centroiding modules: centroids one selected scan and shows
+ * the result over the original scan.
+ */
+public class CentroidingPreview
+        extends ParameterPreview<CentroidingPreview.CentroidedScan> {
+
+    private final @Nonnull BiFunction<ParameterSet, DataPointStore, MSDKCentroidingAlgorithm> algorithmFactory;
+
+    private final ComboBox<RawDataFile> fileComboBox = new ComboBox<>();
+    private final ComboBox<MsScan> scanComboBox = new ComboBox<>();
+    private final ChartNodeJFreeChart chartNode = new ChartNodeJFreeChart();
+
+    private volatile RawDataFile selectedFile;
+    private volatile MsScan selectedScan;
+
+    // Copy of the selected scan, which the algorithm is applied to
+    private MsScan subsetScan;
+    private RawDataFile subset;
+
+    /**
+     * @param algorithmFactory
+     *            creates the centroiding algorithm of the module from its
+     *            parameters
+     */
+    public CentroidingPreview(
+            @Nonnull BiFunction<ParameterSet, DataPointStore, MSDKCentroidingAlgorithm> algorithmFactory) {
+        this.algorithmFactory = algorithmFactory;
+
+        fileComboBox.setConverter(new StringConverter<RawDataFile>() {
+            @Override
+            public String toString(RawDataFile file) {
+                return file == null ? "" : file.getName();
+            }
+
+            @Override
+            public RawDataFile fromString(String string) {
+                return null;
+            }
+        });
+        scanComboBox.setConverter(new StringConverter<MsScan>() {
+            @Override
+            public String toString(MsScan scan) {
+                return scan == null ? ""
+                        : MsScanUtils.createSingleLineMsScanDescription(scan);
+            }
+
+            @Override
+            public MsScan fromString(String string) {
+                return null;
+            }
+        });
+        scanComboBox.setMaxWidth(300.0);
+
+        fileComboBox.valueProperty().addListener((prop, oldFile, newFile) -> {
+            selectedFile = newFile;
+            if (newFile == null) {
+                scanComboBox.getItems().clear();
+                return;
+            }
+            scanComboBox.setItems(
+                    FXCollections.observableArrayList(newFile.getScans()));
+            if (!scanComboBox.getItems().isEmpty())
+                scanComboBox.setValue(scanComboBox.getItems().get(0));
+        });
+        scanComboBox.valueProperty().addListener((prop, oldScan, newScan) -> {
+            selectedScan = newScan;
+            update();
+        });
+
+        final HBox dataSelection = new HBox(5.0, new Label("Raw data file"),
+                fileComboBox, new Label("Scan"), scanComboBox);
+        dataSelection.setPadding(new Insets(5.0));
+        setTop(dataSelection);
+
+        final XYPlot plot = chartNode.getChart().getXYPlot();
+        final NumberAxis xAxis = (NumberAxis) plot.getDomainAxis();
+        xAxis.setLabel("m/z");
+        xAxis.setNumberFormatOverride(
+                MZmineCore.getConfiguration().getMZFormat());
+        final NumberAxis yAxis = (NumberAxis) plot.getRangeAxis();
+        yAxis.setLabel("Intensity");
+        yAxis.setNumberFormatOverride(
+                MZmineCore.getConfiguration().getIntensityFormat());
+        plot.setRenderer(0, new XYLineAndShapeRenderer(true, false));
+        final XYBarRenderer barRenderer = new XYBarRenderer();
+        barRenderer.setBarPainter(new StandardXYBarPainter());
+        barRenderer.setShadowVisible(false);
+        plot.setRenderer(1, barRenderer);
+        setCenter(chartNode);
+
+        final List<RawDataFile> files = MZmineCore.getCurrentProject()
+                .getRawDataFiles();
+        fileComboBox.setItems(FXCollections.observableArrayList(files));
+        if (files.isEmpty())
+            setStatus("There are no raw data files to preview");
+        else
+            fileComboBox.setValue(files.get(0));
+    }
+
+    @Override
+    protected @Nullable CentroidedScan computePreview(
+            @Nonnull ParameterSet parameters, @Nonnull PreviewTask task)
+            throws Exception {
+        final RawDataFile file = selectedFile;
+        final MsScan scan = selectedScan;
+        if ((file == null) || (scan == null))
+            return null;
+
+        final RawDataFile scanFile = getSubset(file, scan, task);
+        if (scanFile == null)
+            return null;
+
+        final DataPointStore dataStore = DataPointStoreFactory
+                .getMemoryDataStore();
+        final MSDKCentroidingAlgorithm algorithm = algorithmFactory
+                .apply(parameters, dataStore);
+        final RawDataFile centroidedFile = task.execute(
+                new MSDKCentroidingMethod(scanFile, algorithm, dataStore));
+        if ((centroidedFile == null) || centroidedFile.getScans().isEmpty())
+            return null;
+        return new CentroidedScan(scan, centroidedFile.getScans().get(0));
+    }
+
+    /**
+     * @return a raw data file with a copy of the scan, or null if the
+     *         computation was cancelled
+     */
+    private synchronized @Nullable RawDataFile getSubset(
+            @Nonnull RawDataFile file, @Nonnull MsScan scan,
+            @Nonnull PreviewTask task) throws Exception {
+        if (scan == subsetScan)
+            return subset;
+        final RawDataFile newSubset = task
+                .execute(new ScanSubsetMethod(file,
+                        Collections.singletonList(scan),
+                        DataPointStoreFactory.getMemoryDataStore()));
+        if (newSubset == null)
+            return null;
+        if (subset != null)
+            subset.dispose();
+        subset = newSubset;
+        subsetScan = scan;
+        return subset;
+    }
+
+    @Override
+    protected void showPreview(@Nonnull CentroidedScan result) {
+        final XYPlot plot = chartNode.getChart().getXYPlot();
+        plot.setDataset(0,
+                new MsSpectrumDataSet(result.originalScan, "Original scan"));
+        plot.setDataset(1, new MsSpectrumDataSet(result.centroidedScan,
+                "Centroided scan"));
+        chartNode.getChart()
+                .setTitle(result.centroidedScan.getNumberOfDataPoints()
+                        + " centroids from "
+                        + result.originalScan.getNumberOfDataPoints()
+                        + " data points");
+    }
+
+    @Override
+    protected synchronized void dispose() {
+        if (subset != null) {
+            subset.dispose();
+            subset = null;
+            subsetScan = null;
+        }
+    }
+
+    static class CentroidedScan {
+
+        private final @Nonnull MsScan originalScan, centroidedScan;
+
+        private CentroidedScan(@Nonnull MsScan originalScan,
+                @Nonnull MsScan centroidedScan) {
+            this.originalScan = originalScan;
+            this.centroidedScan = centroidedScan;
+        }
+
+    }
+
+}
@@ -27,15 +27,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.msdk.rawdata.centroiding.BinningCentroidingAlgorithm;
+import io.github.msdk.rawdata.centroiding.MSDKCentroidingAlgorithm;
 import io.github.msdk.rawdata.centroiding.MSDKCentroidingMethod;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskCostEstimate;
 import javafx.concurrent.Task;
 
 /**
@@ -66,8 +68,6 @@ public class BinningCentroidingModule implements MZmineProcessingModule {
         final RawDataFilesSelection rawDataFiles = parameters
                 .getParameter(BinningCentroidingParameters.dataFiles)
                 .getValue();
-        final Double binSize = parameters
-                .getParameter(BinningCentroidingParameters.binSize).getValue();
         final String suffix = parameters
                 .getParameter(BinningCentroidingParameters.suffix).getValue();
 
@@ -81,12 +81,12 @@ public class BinningCentroidingModule implements MZmineProcessingModule {
         for (RawDataFile rawDataFile : rawDataFiles.getMatchingRawDataFiles()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getTmpFileDataStore();
+            DataPointStore dataStore = MZmineCore.getMemoryGovernor()
+                    .createTmpFileDataStore();
 
             final String newName = rawDataFile.getName() + " " + suffix;
-            BinningCentroidingAlgorithm algorithm = new BinningCentroidingAlgorithm(
-                    dataStore, binSize);
+            MSDKCentroidingAlgorithm algorithm = createAlgorithm(parameters,
+                    dataStore);
 
             MSDKCentroidingMethod method = new MSDKCentroidingMethod(
                     rawDataFile, algorithm, dataStore);
@@ -108,6 +108,24 @@ public class BinningCentroidingModule implements MZmineProcessingModule {
 
     }
 
+    /**
+     * Creates the centroiding algorithm with the given parameters
+     */
+    static @Nonnull MSDKCentroidingAlgorithm createAlgorithm(
+            @Nonnull ParameterSet parameters,
+            @Nonnull DataPointStore dataStore) {
+        final Double binSize = parameters
+                .getParameter(BinningCentroidingParameters.binSize).getValue();
+        return new BinningCentroidingAlgorithm(dataStore, binSize);
+    }
+
+    @Override
+    public @Nonnull TaskCostEstimate estimateTaskCost(@Nonnull Object input,
+            @Nonnull ParameterSet parameters) {
+        // Centroided scans are written to a temporary file
+        return TaskCostEstimate.forInput(input).movedToDisk();
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
         return BinningCentroidingParameters.class;
@@ -19,7 +19,9 @@
 
 package io.github.mzmine.modules.rawdata.centroiding.binning;
 
+import io.github.mzmine.modules.rawdata.centroiding.CentroidingPreview;
 import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterPreview;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.DoubleParameter;
 import io.github.mzmine.parameters.parametertypes.StringParameter;
@@ -39,4 +41,10 @@ public class BinningCentroidingParameters extends ParameterSet {
         super(new Parameter[] { dataFiles, binSize, suffix });
     }
 
+    @Override
+    public ParameterPreview<?> createPreview() {
+        return new CentroidingPreview(
+                BinningCentroidingModule::createAlgorithm);
+    }
+
 }
@@ -19,7 +19,9 @@
 
 package io.github.mzmine.modules.rawdata.centroiding.localmaxima;
 
+import io.github.mzmine.modules.rawdata.centroiding.CentroidingPreview;
 import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterPreview;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.StringParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
@@ -35,4 +37,10 @@ public class LocalMaxCentroidingParameters extends ParameterSet {
         super(new Parameter[] { dataFiles, suffix });
     }
 
+    @Override
+    public ParameterPreview<?> createPreview() {
+        return new CentroidingPreview(
+                LocalMaxCentroidingModule::createAlgorithm);
+    }
+
 }
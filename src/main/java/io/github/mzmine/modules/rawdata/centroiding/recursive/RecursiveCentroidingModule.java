@@ -29,15 +29,17 @@ import org.slf4j.LoggerFactory;
 import com.google.common.collect.Range;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.rawdata.centroiding.MSDKCentroidingAlgorithm;
 import io.github.msdk.rawdata.centroiding.MSDKCentroidingMethod;
 import io.github.msdk.rawdata.centroiding.RecursiveCentroidingAlgorithm;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskCostEstimate;
 import javafx.concurrent.Task;
 
 /**
@@ -68,8 +70,6 @@ public class RecursiveCentroidingModule implements MZmineProcessingModule {
         final RawDataFilesSelection rawDataFiles = parameters
                 .getParameter(RecursiveCentroidingParameters.dataFiles)
                 .getValue();
-        final Range<Double> mzPeakWidth = RecursiveCentroidingParameters.mzPeakWidth
-                .getValue();
         final String suffix = parameters
                 .getParameter(RecursiveCentroidingParameters.suffix).getValue();
 
@@ -83,12 +83,12 @@ public class RecursiveCentroidingModule implements MZmineProcessingModule {
         for (RawDataFile rawDataFile : rawDataFiles.getMatchingRawDataFiles()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getTmpFileDataStore();
+            DataPointStore dataStore = MZmineCore.getMemoryGovernor()
+                    .createTmpFileDataStore();
 
             final String newName = rawDataFile.getName() + " " + suffix;
-            RecursiveCentroidingAlgorithm algorithm = new RecursiveCentroidingAlgorithm(
-                    dataStore, mzPeakWidth);
+            MSDKCentroidingAlgorithm algorithm = createAlgorithm(parameters,
+                    dataStore);
 
             MSDKCentroidingMethod method = new MSDKCentroidingMethod(
                     rawDataFile, algorithm, dataStore);
@@ -110,6 +110,25 @@ public class RecursiveCentroidingModule implements MZmineProcessingModule {
 
     }
 
+    /**
+     * Creates the centroiding algorithm with the given parameters
+     */
+    static @Nonnull MSDKCentroidingAlgorithm createAlgorithm(
+            @Nonnull ParameterSet parameters,
+            @Nonnull DataPointStore dataStore) {
+        final Range<Double> mzPeakWidth = parameters
+                .getParameter(RecursiveCentroidingParameters.mzPeakWidth)
+                .getValue();
+        return new RecursiveCentroidingAlgorithm(dataStore, mzPeakWidth);
+    }
+
+    @Override
+    public @Nonnull TaskCostEstimate estimateTaskCost(@Nonnull Object input,
+            @Nonnull ParameterSet parameters) {
+        // Centroided scans are written to a temporary file
+        return TaskCostEstimate.forInput(input).movedToDisk();
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
         return RecursiveCentroidingParameters.class;
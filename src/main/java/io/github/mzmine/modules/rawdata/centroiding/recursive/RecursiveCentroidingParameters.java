@@ -19,7 +19,9 @@
 
 package io.github.mzmine.modules.rawdata.centroiding.recursive;
 
+import io.github.mzmine.modules.rawdata.centroiding.CentroidingPreview;
 import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterPreview;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.StringParameter;
 import io.github.mzmine.parameters.parametertypes.ranges.DoubleRangeParameter;
@@ -40,4 +42,10 @@ public class RecursiveCentroidingParameters extends ParameterSet {
         super(new Parameter[] { dataFiles, mzPeakWidth, suffix });
     }
 
+    @Override
+    public ParameterPreview<?> createPreview() {
+        return new CentroidingPreview(
+                RecursiveCentroidingModule::createAlgorithm);
+    }
+
 }
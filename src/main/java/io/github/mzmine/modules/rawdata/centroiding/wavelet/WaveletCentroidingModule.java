@@ -27,15 +27,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.rawdata.centroiding.MSDKCentroidingAlgorithm;
 import io.github.msdk.rawdata.centroiding.MSDKCentroidingMethod;
 import io.github.msdk.rawdata.centroiding.WaveletCentroidingAlgorithm;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskCostEstimate;
 import javafx.concurrent.Task;
 
 /**
@@ -66,12 +68,6 @@ public class WaveletCentroidingModule implements MZmineProcessingModule {
         final RawDataFilesSelection rawDataFiles = parameters
                 .getParameter(WaveletCentroidingParameters.dataFiles)
                 .getValue();
-        final Integer scaleLevel = parameters
-                .getParameter(WaveletCentroidingParameters.scaleLevel)
-                .getValue();
-        final Double waveletWindow = parameters
-                .getParameter(WaveletCentroidingParameters.waveletWindow)
-                .getValue();
         final String suffix = parameters
                 .getParameter(WaveletCentroidingParameters.suffix).getValue();
 
@@ -85,12 +81,12 @@ public class WaveletCentroidingModule implements MZmineProcessingModule {
         for (RawDataFile rawDataFile : rawDataFiles.getMatchingRawDataFiles()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getTmpFileDataStore();
+            DataPointStore dataStore = MZmineCore.getMemoryGovernor()
+                    .createTmpFileDataStore();
 
             final String newName = rawDataFile.getName() + " " + suffix;
-            WaveletCentroidingAlgorithm algorithm = new WaveletCentroidingAlgorithm(
-                    dataStore, scaleLevel, waveletWindow);
+            MSDKCentroidingAlgorithm algorithm = createAlgorithm(parameters,
+                    dataStore);
 
             MSDKCentroidingMethod method = new MSDKCentroidingMethod(
                     rawDataFile, algorithm, dataStore);
@@ -112,6 +108,29 @@ public class WaveletCentroidingModule implements MZmineProcessingModule {
 
     }
 
+    /**
+     * Creates the centroiding algorithm with the given parameters
+     */
+    static @Nonnull MSDKCentroidingAlgorithm createAlgorithm(
+            @Nonnull ParameterSet parameters,
+            @Nonnull DataPointStore dataStore) {
+        final Integer scaleLevel = parameters
+                .getParameter(WaveletCentroidingParameters.scaleLevel)
+                .getValue();
+        final Double waveletWindow = parameters
+                .getParameter(WaveletCentroidingParameters.waveletWindow)
+                .getValue();
+        return new WaveletCentroidingAlgorithm(dataStore, scaleLevel,
+                waveletWindow);
+    }
+
+    @Override
+    public @Nonnull TaskCostEstimate estimateTaskCost(@Nonnull Object input,
+            @Nonnull ParameterSet parameters) {
+        // Centroided scans are written to a temporary file
+        return TaskCostEstimate.forInput(input).movedToDisk();
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
         return WaveletCentroidingParameters.class;
@@ -19,7 +19,9 @@
 
 package io.github.mzmine.modules.rawdata.centroiding.wavelet;
 
+import io.github.mzmine.modules.rawdata.centroiding.CentroidingPreview;
 import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterPreview;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.IntegerParameter;
 import io.github.mzmine.parameters.parametertypes.PercentParameter;
@@ -46,4 +48,10 @@ public class WaveletCentroidingParameters extends ParameterSet {
         super(new Parameter[] { dataFiles, scaleLevel, waveletWindow, suffix });
     }
 
+    @Override
+    public ParameterPreview<?> createPreview() {
+        return new CentroidingPreview(
+                WaveletCentroidingModule::createAlgorithm);
+    }
+
 }
@@ -92,6 +92,11 @@ public class MzMLExportModule implements MZmineProcessingModule {
 
     }
 
+    @Override
+    public boolean createsData() {
+        return false;
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
         return MzMLExportParameters.class;
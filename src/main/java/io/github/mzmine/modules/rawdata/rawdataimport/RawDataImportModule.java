@@ -24,6 +24,7 @@ import java.util.Collection;
 import java.util.List;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
@@ -31,15 +32,21 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Strings;
 
+import io.github.msdk.MSDKMethod;
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.msdk.io.RawDataFileImportMethod;
 import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.rawdata.rawdataimport.mzml.IndexedMzMLFile;
+import io.github.mzmine.modules.rawdata.rawdataimport.mzml.IndexedMzMLOpenMethod;
+import io.github.mzmine.modules.rawdata.rawdataimport.mzml.MzMLImportMethod;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskCostEstimate;
+import io.github.mzmine.util.rawdata.ScanSummaryMethod;
 import javafx.concurrent.Task;
 
 /**
@@ -74,6 +81,8 @@ public class RawDataImportModule implements MZmineProcessingModule {
                 .getParameter(RawDataImportParameters.removePrefix).getValue();
         final String removeSuffix = parameters
                 .getParameter(RawDataImportParameters.removeSuffix).getValue();
+        final RawDataImportMode importMode = parameters
+                .getParameter(RawDataImportParameters.importMode).getValue();
 
         if (fileNames == null) {
             logger.warn("Raw data import module started with no filenames");
@@ -87,11 +96,19 @@ public class RawDataImportModule implements MZmineProcessingModule {
                 continue;
             }
 
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getTmpFileDataStore();
-
-            RawDataFileImportMethod method = new RawDataFileImportMethod(
-                    fileName, dataStore);
+            final MSDKMethod<RawDataFile> method;
+            if (isOpenedInPlace(fileName, importMode)) {
+                // Only the data which is not in the file is stored
+                method = new IndexedMzMLOpenMethod(fileName,
+                        MZmineCore.getMemoryGovernor().createMemoryDataStore());
+            } else if (FilenameUtils.getExtension(fileName.getName())
+                    .equalsIgnoreCase("mzML")) {
+                method = new MzMLImportMethod(fileName,
+                        createDataStore(importMode));
+            } else {
+                method = new ScanSummaryMethod(new RawDataFileImportMethod(
+                        fileName, createDataStore(importMode)));
+            }
             MSDKTask newTask = new MSDKTask("Importing raw data file",
                     fileName.getName(), method);
             newTask.setOnSucceeded(e -> {
@@ -129,6 +146,39 @@ public class RawDataImportModule implements MZmineProcessingModule {
 
     }
 
+    @Override
+    public @Nonnull TaskCostEstimate estimateTaskCost(@Nonnull Object input,
+            @Nonnull ParameterSet parameters) {
+        final RawDataImportMode importMode = parameters
+                .getParameter(RawDataImportParameters.importMode).getValue();
+        if ((input instanceof File)
+                && isOpenedInPlace((File) input, importMode)) {
+            // Only the metadata of the scans is read
+            final long length = ((File) input).length();
+            return new TaskCostEstimate(length / 100, 0, length / 100);
+        }
+        if (importMode == RawDataImportMode.LOAD_MEMORY)
+            return TaskCostEstimate.forInput(input);
+        return TaskCostEstimate.forInput(input).movedToDisk();
+    }
+
+    /**
+     * Files are opened in place if the import mode is transparent and the
+     * file is an indexed mzML file. Other files are always imported.
+     */
+    private static boolean isOpenedInPlace(@Nonnull File fileName,
+            @Nullable RawDataImportMode importMode) {
+        return (importMode == RawDataImportMode.TRANSPARENT)
+                && IndexedMzMLFile.isIndexedMzML(fileName);
+    }
+
+    private static @Nonnull DataPointStore createDataStore(
+            @Nullable RawDataImportMode importMode) {
+        if (importMode == RawDataImportMode.LOAD_MEMORY)
+            return MZmineCore.getMemoryGovernor().createMemoryDataStore();
+        return MZmineCore.getMemoryGovernor().createTmpFileDataStore();
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
         return RawDataImportParameters.class;
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport.mzml;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import io.github.msdk.MSDKRuntimeException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.rawdata.MsScan;
+
+/**
+ * Data point store of a raw data file opened in place. The data points of the
+ * scans are not stored, but referenced by the offset of their spectrum in the
+ * indexed mzML file, and decoded when they are loaded. Recently decoded
+ * spectra are kept in a cache of limited size. All other data (e.g.
+ * chromatograms) is kept in a regular data store.
+ */
+public class IndexedMzMLDataPointStore implements DataPointStore {
+
+    /**
+     * Default maximum size of decoded spectra kept in the cache, in bytes
+     */
+    public static final long DEFAULT_CACHE_SIZE = 32L * 1024 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull IndexedMzMLFile mzMLFile;
+    private final @Nonnull DataPointStore dataStore;
+    private final long cacheSizeLimit;
+
+    private final Map<Long, MzMLSpectrumData> cache = new LinkedHashMap<>(16,
+            0.75f, true);
+    private long cacheSize = 0;
+
+    // Offset of the spectrum whose data points are being set
+    private long pendingOffset = -1;
+    private double placeholderMzValues[] = new double[0];
+    private float placeholderIntensityValues[] = new float[0];
+
+    private volatile boolean disposed = false;
+
+    /**
+     * @param dataStore
+     *            store for all data that does not come from the spectra of the
+     *            mzML file
+     */
+    public IndexedMzMLDataPointStore(@Nonnull IndexedMzMLFile mzMLFile,
+            @Nonnull DataPointStore dataStore, long cacheSizeLimit) {
+        this.mzMLFile = mzMLFile;
+        this.dataStore = dataStore;
+        this.cacheSizeLimit = cacheSizeLimit;
+    }
+
+    public @Nonnull IndexedMzMLFile getMzMLFile() {
+        return mzMLFile;
+    }
+
+    /**
+     * Sets the data points of the scan to reference the spectrum at the given
+     * offset, without decoding it. The scan computes its m/z range and total
+     * ion current from the arrays it is given, so it is given placeholder
+     * arrays with the same range and sum, built from the metadata of the
+     * spectrum.
+     */
+    public synchronized void setLazyDataPoints(@Nonnull MsScan scan,
+            long offset, int size, double lowestMz, double highestMz,
+            float tic) {
+        if (placeholderMzValues.length < size) {
+            placeholderMzValues = new double[size];
+            placeholderIntensityValues = new float[size];
+        }
+        if (size > 0) {
+            Arrays.fill(placeholderMzValues, 0, size, highestMz);
+            placeholderMzValues[0] = lowestMz;
+            placeholderIntensityValues[0] = tic;
+        }
+        pendingOffset = offset;
+        try {
+            scan.setDataPoints(placeholderMzValues,
+                    placeholderIntensityValues, size);
+        } finally {
+            pendingOffset = -1;
+            if (size > 0)
+                placeholderIntensityValues[0] = 0f;
+        }
+    }
+
+    /**
+     * Sets the data points of the scan to reference the spectrum at the given
+     * offset, which was already decoded.
+     */
+    public synchronized void setDataPoints(@Nonnull MsScan scan, long offset,
+            @Nonnull MzMLSpectrumData spectrumData) {
+        pendingOffset = offset;
+        try {
+            scan.setDataPoints(spectrumData.getMzValues(),
+                    spectrumData.getIntensityValues(),
+                    spectrumData.getNumberOfDataPoints());
+        } finally {
+            pendingOffset = -1;
+        }
+        addToCache(offset, spectrumData);
+    }
+
+    @Override
+    public synchronized @Nonnull Object storeData(@Nonnull Object data,
+            @Nonnull Integer size) {
+        Preconditions.checkNotNull(data);
+        Preconditions.checkState(!disposed, "Data store was disposed");
+        if (pendingOffset >= 0) {
+            if (data instanceof double[])
+                return new SpectrumArrayId(pendingOffset, true);
+            if (data instanceof float[])
+                return new SpectrumArrayId(pendingOffset, false);
+        }
+        return dataStore.storeData(data, size);
+    }
+
+    @Override
+    public void loadData(@Nonnull Object id, @Nonnull Object array) {
+        Preconditions.checkState(!disposed, "Data store was disposed");
+        if (!(id instanceof SpectrumArrayId)) {
+            dataStore.loadData(id, array);
+            return;
+        }
+
+        final SpectrumArrayId arrayId = (SpectrumArrayId) id;
+        final MzMLSpectrumData spectrumData = getSpectrumData(arrayId.offset);
+        final int size = Math.min(spectrumData.getNumberOfDataPoints(),
+                Array.getLength(array));
+        if (arrayId.mzValues)
+            System.arraycopy(spectrumData.getMzValues(), 0, array, 0, size);
+        else
+            System.arraycopy(spectrumData.getIntensityValues(), 0, array, 0,
+                    size);
+    }
+
+    @Override
+    public void removeData(@Nonnull Object id) {
+        // The spectra stay in the mzML file
+        if (!(id instanceof SpectrumArrayId))
+            dataStore.removeData(id);
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            if (disposed)
+                return;
+            disposed = true;
+            cache.clear();
+            cacheSize = 0;
+        }
+        dataStore.dispose();
+        try {
+            mzMLFile.close();
+        } catch (IOException e) {
+            logger.warn("Could not close " + mzMLFile.getFile(), e);
+        }
+    }
+
+    private @Nonnull MzMLSpectrumData getSpectrumData(long offset) {
+        synchronized (this) {
+            final MzMLSpectrumData cached = cache.get(offset);
+            if (cached != null)
+                return cached;
+        }
+
+        // Decode outside of the lock, so that several threads can decode
+        // different spectra at the same time
+        final MzMLSpectrumData spectrumData;
+        try {
+            spectrumData = mzMLFile.readSpectrumData(offset);
+        } catch (IOException e) {
+            throw new MSDKRuntimeException(e);
+        }
+        synchronized (this) {
+            if (!disposed)
+                addToCache(offset, spectrumData);
+        }
+        return spectrumData;
+    }
+
+    private void addToCache(long offset, MzMLSpectrumData spectrumData) {
+        final MzMLSpectrumData previous = cache.put(offset, spectrumData);
+        if (previous != null)
+            cacheSize -= previous.getSizeInBytes();
+        cacheSize += spectrumData.getSizeInBytes();
+
+        // Evict the least recently used spectra
+        final Iterator<MzMLSpectrumData> iterator = cache.values().iterator();
+        while (cacheSize > cacheSizeLimit && cache.size() > 1) {
+            cacheSize -= iterator.next().getSizeInBytes();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Identifies the m/z or intensity array of a spectrum.
+     */
+    private static class SpectrumArrayId {
+
+        private final long offset;
+        private final boolean mzValues;
+
+        SpectrumArrayId(long offset, boolean mzValues) {
+            this.offset = offset;
+            this.mzValues = mzValues;
+        }
+
+    }
+
+}
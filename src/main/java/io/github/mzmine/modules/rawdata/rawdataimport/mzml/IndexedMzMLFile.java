@@ -0,0 +1,307 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport.mzml;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.google.common.primitives.Longs;
+
+import io.github.mzmine.modules.rawdata.rawdataimport.mzml.MzMLParser.EncodedArray;
+
+/**
+ * Random access to the spectra and chromatograms of an indexed mzML file. The
+ * offsets of the spectrum and chromatogram elements are read from the index
+ * at the end of the file. Each element is then parsed on its own by seeking to
+ * its offset, so the metadata of a spectrum can be read without reading its
+ * data arrays. The methods are thread safe.
+ */
+public class IndexedMzMLFile implements Closeable {
+
+    private static final int TAIL_LENGTH = 4096;
+    private static final Pattern INDEX_LIST_OFFSET_PATTERN = Pattern
+            .compile("<indexListOffset>\\s*(\\d+)\\s*</indexListOffset>");
+
+    private final @Nonnull File file;
+    private final @Nonnull RandomAccessFile randomAccessFile;
+    private final @Nonnull FileChannel channel;
+    private final @Nonnull XMLInputFactory xmlInputFactory;
+    private final @Nonnull long spectrumOffsets[];
+    private final @Nonnull long chromatogramOffsets[];
+
+    /**
+     * Opens the file and reads its index.
+     * 
+     * @throws IOException
+     *             if the file cannot be read or is not an indexed mzML file
+     */
+    public IndexedMzMLFile(@Nonnull File file) throws IOException {
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+        this.channel = randomAccessFile.getChannel();
+        this.xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+        final List<Long> spectrumOffsetList = new ArrayList<>();
+        final List<Long> chromatogramOffsetList = new ArrayList<>();
+        try {
+            final long indexListOffset = readIndexListOffset(channel);
+            if (indexListOffset < 0)
+                throw new IOException(file + " is not an indexed mzML file");
+            final XMLStreamReader reader = createReader(indexListOffset);
+            try {
+                List<Long> currentList = null;
+                while (reader.hasNext()) {
+                    final int event = reader.next();
+                    if (event == XMLStreamConstants.END_ELEMENT && reader
+                            .getLocalName().equals("indexList"))
+                        break;
+                    if (event != XMLStreamConstants.START_ELEMENT)
+                        continue;
+                    switch (reader.getLocalName()) {
+                    case "index":
+                        final String name = reader.getAttributeValue(null,
+                                "name");
+                        if ("spectrum".equals(name))
+                            currentList = spectrumOffsetList;
+                        else if ("chromatogram".equals(name))
+                            currentList = chromatogramOffsetList;
+                        else
+                            currentList = null;
+                        break;
+                    case "offset":
+                        final String offset = reader.getElementText().trim();
+                        if (currentList != null)
+                            currentList.add(Long.parseLong(offset));
+                        break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException | NumberFormatException e) {
+            randomAccessFile.close();
+            throw e instanceof IOException ? (IOException) e
+                    : new IOException("Cannot read the index of " + file, e);
+        }
+        this.spectrumOffsets = Longs.toArray(spectrumOffsetList);
+        this.chromatogramOffsets = Longs.toArray(chromatogramOffsetList);
+    }
+
+    /**
+     * @return true if the file ends with the offset of an mzML index
+     */
+    public static boolean isIndexedMzML(@Nonnull File file) {
+        if (!file.isFile())
+            return false;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return readIndexListOffset(raf.getChannel()) >= 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static long readIndexListOffset(FileChannel channel)
+            throws IOException {
+        final long size = channel.size();
+        final int tailLength = (int) Math.min(size, TAIL_LENGTH);
+        final ByteBuffer tail = ByteBuffer.allocate(tailLength);
+        long position = size - tailLength;
+        while (tail.hasRemaining()) {
+            final int read = channel.read(tail, position);
+            if (read < 0)
+                break;
+            position += read;
+        }
+        final String tailText = new String(tail.array(), 0, tail.position(),
+                StandardCharsets.UTF_8);
+        final Matcher matcher = INDEX_LIST_OFFSET_PATTERN.matcher(tailText);
+        if (!matcher.find())
+            return -1;
+        final long offset = Long.parseLong(matcher.group(1));
+        return offset < size ? offset : -1;
+    }
+
+    public @Nonnull File getFile() {
+        return file;
+    }
+
+    public int getNumberOfSpectra() {
+        return spectrumOffsets.length;
+    }
+
+    public long getSpectrumOffset(int index) {
+        return spectrumOffsets[index];
+    }
+
+    public int getNumberOfChromatograms() {
+        return chromatogramOffsets.length;
+    }
+
+    /**
+     * Reads the metadata of the spectrum with the given index, stopping
+     * before its data arrays.
+     */
+    public @Nonnull MzMLSpectrumHeader readSpectrumHeader(int index)
+            throws IOException {
+        final long offset = spectrumOffsets[index];
+        final XMLStreamReader reader = createReader(offset);
+        try {
+            expectElement(reader, "spectrum", offset);
+            return MzMLParser.parseSpectrum(reader, index, offset, null);
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException(
+                    "Cannot read spectrum " + index + " of " + file, e);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Reads and decodes the data arrays of the spectrum at the given offset.
+     */
+    public @Nonnull MzMLSpectrumData readSpectrumData(long offset)
+            throws IOException {
+        final XMLStreamReader reader = createReader(offset);
+        try {
+            expectElement(reader, "spectrum", offset);
+            final List<EncodedArray> encodedArrays = new ArrayList<>(2);
+            MzMLParser.parseSpectrum(reader, -1, offset, encodedArrays);
+            return MzMLParser.decodeSpectrum(encodedArrays);
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException(
+                    "Cannot read spectrum at offset " + offset + " of " + file,
+                    e);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Reads the chromatogram with the given index, including its data
+     * arrays.
+     */
+    public @Nonnull MzMLChromatogramData readChromatogram(int index)
+            throws IOException {
+        final long offset = chromatogramOffsets[index];
+        final XMLStreamReader reader = createReader(offset);
+        try {
+            expectElement(reader, "chromatogram", offset);
+            return MzMLParser.parseChromatogram(reader, index);
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException(
+                    "Cannot read chromatogram " + index + " of " + file, e);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+    /**
+     * Creates a reader of the XML fragment starting at the given offset. The
+     * fragment is not a complete document, so the reader must not be read
+     * past the end of the element at the offset.
+     */
+    private XMLStreamReader createReader(long offset) throws IOException {
+        try {
+            return xmlInputFactory.createXMLStreamReader(
+                    new BufferedInputStream(
+                            new ChannelInputStream(channel, offset)),
+                    "UTF-8");
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void expectElement(XMLStreamReader reader, String name,
+            long offset) throws XMLStreamException, IOException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                if (reader.getLocalName().equals(name))
+                    return;
+                break;
+            }
+        }
+        throw new IOException("Invalid index of " + file + ": no " + name
+                + " element at offset " + offset);
+    }
+
+    private static void closeQuietly(XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            // Ignore
+        }
+    }
+
+    /**
+     * Reads a file channel from a given position, without moving the position
+     * of the channel, so that several streams can read at the same time.
+     */
+    private static class ChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+
+        ChannelInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte b[] = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            final int read = channel.read(ByteBuffer.wrap(b, off, len),
+                    position);
+            if (read > 0)
+                position += read;
+            return read;
+        }
+
+    }
+
+}
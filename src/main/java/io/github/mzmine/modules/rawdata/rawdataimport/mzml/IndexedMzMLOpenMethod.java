@@ -0,0 +1,192 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport.mzml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.files.FileType;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.MsFunction;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.util.rawdata.ScanSummary;
+
+/**
+ * Opens an indexed mzML file in place. Only the index and the metadata of the
+ * spectra are read; the data points are decoded from the file when they are
+ * needed (see {@link IndexedMzMLDataPointStore}). Spectra whose metadata lack
+ * the total ion current, the base peak or the observed m/z range are decoded
+ * once while opening, so that the {@link ScanSummary} of the file is
+ * complete. Chromatograms are small and read completely.
+ */
+public class IndexedMzMLOpenMethod implements MSDKMethod<RawDataFile> {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull File sourceFile;
+    private final @Nonnull DataPointStore dataStore;
+    private final long cacheSizeLimit;
+
+    private int parsedItems = 0, totalItems = 0;
+    private volatile boolean canceled = false;
+    private RawDataFile result;
+
+    /**
+     * @param dataStore
+     *            store for the data not referenced in the mzML file, such as
+     *            chromatograms
+     */
+    public IndexedMzMLOpenMethod(@Nonnull File sourceFile,
+            @Nonnull DataPointStore dataStore) {
+        this(sourceFile, dataStore,
+                IndexedMzMLDataPointStore.DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSizeLimit
+     *            maximum size of decoded spectra kept in memory, in bytes
+     */
+    public IndexedMzMLOpenMethod(@Nonnull File sourceFile,
+            @Nonnull DataPointStore dataStore, long cacheSizeLimit) {
+        this.sourceFile = sourceFile;
+        this.dataStore = dataStore;
+        this.cacheSizeLimit = cacheSizeLimit;
+    }
+
+    @Override
+    public RawDataFile execute() throws MSDKException {
+
+        logger.info("Opening indexed mzML file " + sourceFile + " in place");
+
+        final IndexedMzMLDataPointStore lazyStore;
+        try {
+            lazyStore = new IndexedMzMLDataPointStore(
+                    new IndexedMzMLFile(sourceFile), dataStore,
+                    cacheSizeLimit);
+        } catch (IOException e) {
+            throw new MSDKException(e);
+        }
+        final IndexedMzMLFile mzMLFile = lazyStore.getMzMLFile();
+        totalItems = mzMLFile.getNumberOfSpectra()
+                + mzMLFile.getNumberOfChromatograms();
+
+        final RawDataFile rawDataFile = MSDKObjectBuilder.getRawDataFile(
+                sourceFile.getName(), sourceFile, FileType.MZML, lazyStore);
+        final ScanSummary.Builder scanSummary = new ScanSummary.Builder();
+        int decodedSpectra = 0;
+        try {
+            final Map<Integer, MsFunction> msFunctions = new HashMap<>();
+            for (int i = 0; i < mzMLFile.getNumberOfSpectra(); i++) {
+                if (canceled) {
+                    rawDataFile.dispose();
+                    return null;
+                }
+                final MzMLSpectrumHeader header = mzMLFile
+                        .readSpectrumHeader(i);
+                final MsScan scan = MzMLObjectBuilder.createScan(lazyStore,
+                        header, msFunctions);
+
+                if (header.getTIC() != null && header.getLowestMz() != null
+                        && header.getHighestMz() != null
+                        && header.getBasePeakMz() != null
+                        && header.getBasePeakIntensity() != null) {
+                    lazyStore.setLazyDataPoints(scan, header.getOffset(),
+                            header.getNumberOfDataPoints(),
+                            header.getLowestMz(), header.getHighestMz(),
+                            header.getTIC());
+                    rawDataFile.addScan(scan);
+                    scanSummary.add(scan, header.getTIC(),
+                            header.getBasePeakMz(),
+                            header.getBasePeakIntensity(),
+                            Range.closed(header.getLowestMz(),
+                                    header.getHighestMz()));
+                } else {
+                    final MzMLSpectrumData spectrumData = mzMLFile
+                            .readSpectrumData(header.getOffset());
+                    lazyStore.setDataPoints(scan, header.getOffset(),
+                            spectrumData);
+                    rawDataFile.addScan(scan);
+                    scanSummary.add(scan, spectrumData.getMzValues(),
+                            spectrumData.getIntensityValues(),
+                            spectrumData.getNumberOfDataPoints());
+                    decodedSpectra++;
+                }
+                parsedItems++;
+            }
+
+            for (int i = 0; i < mzMLFile.getNumberOfChromatograms(); i++) {
+                if (canceled) {
+                    rawDataFile.dispose();
+                    return null;
+                }
+                rawDataFile.addChromatogram(MzMLObjectBuilder
+                        .createChromatogram(lazyStore,
+                                mzMLFile.readChromatogram(i)));
+                parsedItems++;
+            }
+        } catch (IOException | RuntimeException e) {
+            rawDataFile.dispose();
+            throw new MSDKException(e);
+        }
+
+        if (decodedSpectra > 0)
+            logger.info(decodedSpectra + " spectra of " + sourceFile
+                    + " lack the total ion current, base peak or m/z range in their metadata and were decoded while opening");
+
+        ScanSummary.put(rawDataFile, scanSummary.build());
+
+        result = rawDataFile;
+        return result;
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (totalItems == 0)
+            return null;
+        return (float) parsedItems / totalItems;
+    }
+
+    @Override
+    @Nullable
+    public RawDataFile getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        this.canceled = true;
+    }
+
+}
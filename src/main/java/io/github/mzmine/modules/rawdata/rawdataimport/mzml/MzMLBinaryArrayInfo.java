@@ -0,0 +1,149 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport.mzml;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Description of one binaryDataArray element of an mzML spectrum or
+ * chromatogram, collected from its cvParams.
+ */
+class MzMLBinaryArrayInfo {
+
+    enum ArrayType {
+        MZ, INTENSITY, TIME, OTHER
+    }
+
+    enum Numpress {
+        NONE, LINEAR, PIC, SLOF
+    }
+
+    private ArrayType arrayType = ArrayType.OTHER;
+    private boolean doublePrecision = true;
+    private boolean zlibCompressed = false;
+    private @Nonnull Numpress numpress = Numpress.NONE;
+    private @Nullable String unsupportedCompression;
+    private boolean timeInMinutes = false;
+    private final int expectedLength;
+
+    MzMLBinaryArrayInfo(int expectedLength) {
+        this.expectedLength = expectedLength;
+    }
+
+    void addCvParam(@Nonnull String accession, @Nullable String name,
+            @Nullable String unitAccession) {
+        switch (accession) {
+        case "MS:1000514": // m/z array
+            arrayType = ArrayType.MZ;
+            break;
+        case "MS:1000515": // intensity array
+            arrayType = ArrayType.INTENSITY;
+            break;
+        case "MS:1000595": // time array
+            arrayType = ArrayType.TIME;
+            timeInMinutes = "UO:0000031".equals(unitAccession);
+            break;
+        case "MS:1000521": // 32-bit float
+            doublePrecision = false;
+            break;
+        case "MS:1000523": // 64-bit float
+            doublePrecision = true;
+            break;
+        case "MS:1000574": // zlib compression
+            zlibCompressed = true;
+            break;
+        case "MS:1000576": // no compression
+            zlibCompressed = false;
+            break;
+        case "MS:1002312": // MS-Numpress linear prediction compression
+            numpress = Numpress.LINEAR;
+            break;
+        case "MS:1002313": // MS-Numpress positive integer compression
+            numpress = Numpress.PIC;
+            break;
+        case "MS:1002314": // MS-Numpress short logged float compression
+            numpress = Numpress.SLOF;
+            break;
+        case "MS:1002746": // MS-Numpress linear followed by zlib
+            numpress = Numpress.LINEAR;
+            zlibCompressed = true;
+            break;
+        case "MS:1002747": // MS-Numpress positive integer followed by zlib
+            numpress = Numpress.PIC;
+            zlibCompressed = true;
+            break;
+        case "MS:1002748": // MS-Numpress short logged float followed by zlib
+            numpress = Numpress.SLOF;
+            zlibCompressed = true;
+            break;
+        default:
+            if ((name != null) && name.toLowerCase().contains("compression"))
+                unsupportedCompression = name;
+        }
+    }
+
+    @Nonnull
+    ArrayType getArrayType() {
+        return arrayType;
+    }
+
+    boolean isDoublePrecision() {
+        return doublePrecision;
+    }
+
+    boolean isZlibCompressed() {
+        return zlibCompressed;
+    }
+
+    /**
+     * @return the MS-Numpress compression, applied before zlib compression
+     */
+    @Nonnull
+    Numpress getNumpress() {
+        return numpress;
+    }
+
+    boolean isTimeInMinutes() {
+        return timeInMinutes;
+    }
+
+    int getExpectedLength() {
+        return expectedLength;
+    }
+
+    /**
+     * @return expected size of the data after zlib decompression, in bytes
+     */
+    int getExpectedBytes() {
+        if (numpress != Numpress.NONE)
+            return expectedLength * 5 + 8;
+        return expectedLength * (doublePrecision ? 8 : 4);
+    }
+
+    void checkSupported() throws IOException {
+        if (unsupportedCompression != null)
+            throw new IOException(
+                    "Unsupported binary compression: " + unsupportedCompression);
+    }
+
+}
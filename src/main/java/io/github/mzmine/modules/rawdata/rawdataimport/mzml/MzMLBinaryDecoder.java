@@ -0,0 +1,136 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport.mzml;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nonnull;
+
+import io.github.mzmine.modules.rawdata.rawdataimport.mzml.MzMLBinaryArrayInfo.Numpress;
+
+/**
+ * Decodes the base64 encoded binary data arrays of mzML files, which may be
+ * compressed with zlib and MS-Numpress.
+ */
+final class MzMLBinaryDecoder {
+
+    private MzMLBinaryDecoder() {
+    }
+
+    /**
+     * @return the decoded values, converted to double precision
+     */
+    static @Nonnull double[] decodeDoubles(@Nonnull String base64,
+            @Nonnull MzMLBinaryArrayInfo arrayInfo) throws IOException {
+        final ByteBuffer buffer = decodeBytes(base64, arrayInfo);
+        if (arrayInfo.getNumpress() != Numpress.NONE)
+            return MzMLNumpressDecoder.decode(buffer.array(),
+                    buffer.remaining(), arrayInfo.getNumpress(),
+                    arrayInfo.getExpectedLength());
+        final double values[];
+        if (arrayInfo.isDoublePrecision()) {
+            values = new double[buffer.remaining() / 8];
+            buffer.asDoubleBuffer().get(values);
+        } else {
+            values = new double[buffer.remaining() / 4];
+            for (int i = 0; i < values.length; i++)
+                values[i] = buffer.getFloat();
+        }
+        return values;
+    }
+
+    /**
+     * @return the decoded values, converted to single precision
+     */
+    static @Nonnull float[] decodeFloats(@Nonnull String base64,
+            @Nonnull MzMLBinaryArrayInfo arrayInfo) throws IOException {
+        final ByteBuffer buffer = decodeBytes(base64, arrayInfo);
+        final float values[];
+        if (arrayInfo.getNumpress() != Numpress.NONE) {
+            final double doubleValues[] = MzMLNumpressDecoder.decode(
+                    buffer.array(), buffer.remaining(),
+                    arrayInfo.getNumpress(), arrayInfo.getExpectedLength());
+            values = new float[doubleValues.length];
+            for (int i = 0; i < values.length; i++)
+                values[i] = (float) doubleValues[i];
+        } else if (arrayInfo.isDoublePrecision()) {
+            values = new float[buffer.remaining() / 8];
+            for (int i = 0; i < values.length; i++)
+                values[i] = (float) buffer.getDouble();
+        } else {
+            values = new float[buffer.remaining() / 4];
+            buffer.asFloatBuffer().get(values);
+        }
+        return values;
+    }
+
+    private static ByteBuffer decodeBytes(String base64,
+            MzMLBinaryArrayInfo arrayInfo) throws IOException {
+        byte bytes[];
+        try {
+            bytes = Base64.getMimeDecoder().decode(base64);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid base64 data", e);
+        }
+        if (arrayInfo.isZlibCompressed())
+            bytes = inflate(bytes, arrayInfo.getExpectedBytes());
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static byte[] inflate(byte compressed[], int expectedBytes)
+            throws IOException {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte result[] = new byte[Math.max(expectedBytes,
+                    compressed.length * 2)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == result.length) {
+                    final byte newResult[] = new byte[result.length * 2];
+                    System.arraycopy(result, 0, newResult, 0, length);
+                    result = newResult;
+                }
+                final int inflated = inflater.inflate(result, length,
+                        result.length - length);
+                if ((inflated == 0) && !inflater.finished()
+                        && (inflater.needsInput()
+                                || inflater.needsDictionary()))
+                    throw new IOException("Truncated zlib data");
+                length += inflated;
+            }
+            if (length == result.length)
+                return result;
+            final byte trimmedResult[] = new byte[length];
+            System.arraycopy(result, 0, trimmedResult, 0, length);
+            return trimmedResult;
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid zlib data", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
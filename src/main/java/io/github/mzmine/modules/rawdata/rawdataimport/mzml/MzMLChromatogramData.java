@@ -0,0 +1,136 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport.mzml;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamReader;
+
+import io.github.msdk.datamodel.chromatograms.ChromatogramType;
+import io.github.msdk.datamodel.rawdata.PolarityType;
+
+/**
+ * An mzML chromatogram with its data arrays. For SRM chromatograms, the
+ * precursor and product m/z are the targets of the isolation windows.
+ */
+public class MzMLChromatogramData {
+
+    private final int index;
+    @Nullable
+    String id;
+    @Nonnull
+    float rtValues[] = new float[0];
+    @Nonnull
+    float intensityValues[] = new float[0];
+    int numberOfDataPoints;
+    private @Nonnull ChromatogramType chromatogramType = ChromatogramType.UNKNOWN;
+    private @Nonnull PolarityType polarity = PolarityType.UNKNOWN;
+    private @Nullable Double precursorMz, productMz;
+
+    MzMLChromatogramData(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Reads the cvParam the reader is positioned at.
+     * 
+     * @param path
+     *            names of the elements enclosing the cvParam, below the
+     *            chromatogram element
+     */
+    void addCvParam(@Nonnull List<String> path,
+            @Nonnull XMLStreamReader reader) {
+        final String accession = reader.getAttributeValue(null, "accession");
+        final String value = reader.getAttributeValue(null, "value");
+        if (accession == null)
+            return;
+        if (path.contains("isolationWindow")) {
+            if (!accession.equals("MS:1000827"))
+                return;
+            if (path.contains("precursor") && precursorMz == null)
+                precursorMz = MzMLParser.parseDouble(value);
+            else if (path.contains("product") && productMz == null)
+                productMz = MzMLParser.parseDouble(value);
+            return;
+        }
+        switch (accession) {
+        case "MS:1000235": // total ion current chromatogram
+            chromatogramType = ChromatogramType.TIC;
+            break;
+        case "MS:1000628": // basepeak chromatogram
+            chromatogramType = ChromatogramType.BPC;
+            break;
+        case "MS:1001473": // selected reaction monitoring chromatogram
+            chromatogramType = ChromatogramType.MRM_SRM;
+            break;
+        case "MS:1000627": // selected ion current chromatogram
+            chromatogramType = ChromatogramType.SIM;
+            break;
+        case "MS:1000130": // positive scan
+            polarity = PolarityType.POSITIVE;
+            break;
+        case "MS:1000129": // negative scan
+            polarity = PolarityType.NEGATIVE;
+            break;
+        }
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public @Nullable String getId() {
+        return id;
+    }
+
+    public @Nonnull ChromatogramType getChromatogramType() {
+        return chromatogramType;
+    }
+
+    public @Nonnull PolarityType getPolarity() {
+        return polarity;
+    }
+
+    public @Nullable Double getPrecursorMz() {
+        return precursorMz;
+    }
+
+    public @Nullable Double getProductMz() {
+        return productMz;
+    }
+
+    /**
+     * @return retention times in seconds
+     */
+    public @Nonnull float[] getRtValues() {
+        return rtValues;
+    }
+
+    public @Nonnull float[] getIntensityValues() {
+        return intensityValues;
+    }
+
+    public int getNumberOfDataPoints() {
+        return numberOfDataPoints;
+    }
+
+}
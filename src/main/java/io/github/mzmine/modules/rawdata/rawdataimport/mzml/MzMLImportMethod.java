@@ -0,0 +1,228 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport.mzml;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.CountingInputStream;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.files.FileType;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.MsFunction;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.modules.rawdata.rawdataimport.mzml.MzMLParser.EncodedArray;
+import io.github.mzmine.util.rawdata.ScanSummary;
+
+/**
+ * Imports an mzML file into a data point store. The file is read by a single
+ * StAX parser, while the binary data arrays of the spectra (base64, zlib,
+ * MS-Numpress) are decoded in parallel on the common fork/join pool. The
+ * decoded scans are added to the raw data file in the order of the file. The
+ * number of spectra waiting to be added is limited, which limits the memory
+ * used by the import. The {@link ScanSummary} of the file is collected on the
+ * way.
+ */
+public class MzMLImportMethod implements MSDKMethod<RawDataFile> {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull File sourceFile;
+    private final @Nonnull DataPointStore dataStore;
+    private final int maxPendingSpectra;
+
+    private final ScanSummary.Builder scanSummary = new ScanSummary.Builder();
+
+    private CountingInputStream countingInputStream;
+    private long totalBytes = 0;
+    private volatile boolean canceled = false;
+    private RawDataFile result;
+
+    public MzMLImportMethod(@Nonnull File sourceFile,
+            @Nonnull DataPointStore dataStore) {
+        this.sourceFile = sourceFile;
+        this.dataStore = dataStore;
+        this.maxPendingSpectra = 4 * ForkJoinPool.getCommonPoolParallelism();
+    }
+
+    @Override
+    public RawDataFile execute() throws MSDKException {
+
+        logger.info("Importing mzML file " + sourceFile);
+
+        final RawDataFile rawDataFile = MSDKObjectBuilder.getRawDataFile(
+                sourceFile.getName(), sourceFile, FileType.MZML, dataStore);
+        final Map<Integer, MsFunction> msFunctions = new HashMap<>();
+        final ArrayDeque<PendingSpectrum> pendingSpectra = new ArrayDeque<>();
+
+        totalBytes = sourceFile.length();
+        final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+        try (InputStream in = new FileInputStream(sourceFile)) {
+            countingInputStream = new CountingInputStream(
+                    new BufferedInputStream(in, 1 << 16));
+            final XMLStreamReader reader = xmlInputFactory
+                    .createXMLStreamReader(countingInputStream);
+            int spectrumIndex = 0, chromatogramIndex = 0;
+            while (reader.hasNext()) {
+                if (canceled) {
+                    cancelPending(pendingSpectra);
+                    rawDataFile.dispose();
+                    return null;
+                }
+                if (reader.next() != XMLStreamConstants.START_ELEMENT)
+                    continue;
+                switch (reader.getLocalName()) {
+                case "spectrum":
+                    final List<EncodedArray> encodedArrays = new ArrayList<>(
+                            2);
+                    final MzMLSpectrumHeader header = MzMLParser.parseSpectrum(
+                            reader, spectrumIndex++, -1, encodedArrays);
+                    final CompletableFuture<MzMLSpectrumData> decoded = CompletableFuture
+                            .supplyAsync(() -> decode(encodedArrays));
+                    pendingSpectra.add(new PendingSpectrum(header, decoded));
+                    while (pendingSpectra.size() > maxPendingSpectra)
+                        addScan(rawDataFile, msFunctions,
+                                pendingSpectra.poll());
+                    break;
+                case "chromatogram":
+                    rawDataFile.addChromatogram(
+                            MzMLObjectBuilder.createChromatogram(dataStore,
+                                    MzMLParser.parseChromatogram(reader,
+                                            chromatogramIndex++)));
+                    break;
+                }
+            }
+            reader.close();
+            while (!pendingSpectra.isEmpty())
+                addScan(rawDataFile, msFunctions, pendingSpectra.poll());
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            cancelPending(pendingSpectra);
+            rawDataFile.dispose();
+            throw new MSDKException(e);
+        }
+
+        ScanSummary.put(rawDataFile, scanSummary.build());
+
+        result = rawDataFile;
+        return result;
+    }
+
+    private static MzMLSpectrumData decode(List<EncodedArray> encodedArrays) {
+        try {
+            return MzMLParser.decodeSpectrum(encodedArrays);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void addScan(RawDataFile rawDataFile,
+            Map<Integer, MsFunction> msFunctions, PendingSpectrum pending)
+            throws IOException {
+        final MzMLSpectrumData spectrumData;
+        try {
+            spectrumData = pending.decoded.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+        final MsScan scan = MzMLObjectBuilder.createScan(dataStore,
+                pending.header, msFunctions);
+        scan.setDataPoints(spectrumData.getMzValues(),
+                spectrumData.getIntensityValues(),
+                spectrumData.getNumberOfDataPoints());
+        rawDataFile.addScan(scan);
+        scanSummary.add(scan, spectrumData.getMzValues(),
+                spectrumData.getIntensityValues(),
+                spectrumData.getNumberOfDataPoints());
+    }
+
+    private static void cancelPending(ArrayDeque<PendingSpectrum> pending) {
+        for (PendingSpectrum spectrum : pending)
+            spectrum.decoded.cancel(false);
+        pending.clear();
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (totalBytes == 0 || countingInputStream == null)
+            return null;
+        return (float) countingInputStream.getCount() / totalBytes;
+    }
+
+    @Override
+    @Nullable
+    public RawDataFile getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        this.canceled = true;
+    }
+
+    /**
+     * A parsed spectrum whose data arrays are being decoded.
+     */
+    private static class PendingSpectrum {
+
+        private final MzMLSpectrumHeader header;
+        private final CompletableFuture<MzMLSpectrumData> decoded;
+
+        PendingSpectrum(MzMLSpectrumHeader header,
+                CompletableFuture<MzMLSpectrumData> decoded) {
+            this.header = header;
+            this.decoded = decoded;
+        }
+
+    }
+
+}
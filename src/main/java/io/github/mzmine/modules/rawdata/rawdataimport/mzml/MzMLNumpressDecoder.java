@@ -0,0 +1,205 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport.mzml;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+import io.github.mzmine.modules.rawdata.rawdataimport.mzml.MzMLBinaryArrayInfo.Numpress;
+
+/**
+ * Decoder of the MS-Numpress compressions (Teleman et al., Mol Cell
+ * Proteomics 2014). Integers are stored as sequences of half bytes; the
+ * fixed point of the linear and short logged float compressions is a big
+ * endian double at the start of the data.
+ */
+final class MzMLNumpressDecoder {
+
+    private MzMLNumpressDecoder() {
+    }
+
+    /**
+     * @param expectedLength
+     *            expected number of values, used to size the result
+     */
+    static @Nonnull double[] decode(@Nonnull byte data[], int length,
+            @Nonnull Numpress numpress, int expectedLength)
+            throws IOException {
+        switch (numpress) {
+        case LINEAR:
+            return decodeLinear(data, length, expectedLength);
+        case PIC:
+            return decodePic(data, length, expectedLength);
+        case SLOF:
+            return decodeSlof(data, length);
+        default:
+            throw new IllegalArgumentException(numpress.toString());
+        }
+    }
+
+    private static double[] decodeLinear(byte data[], int length,
+            int expectedLength) throws IOException {
+        if (length == 0)
+            return new double[0];
+        if (length < 12)
+            throw new IOException("Corrupt MS-Numpress linear data");
+        final double fixedPoint = decodeFixedPoint(data);
+        double result[] = new double[Math.max(expectedLength, 2)];
+        long previous = decodeInt32(data, 8);
+        result[0] = previous / fixedPoint;
+        if (length == 12)
+            return trim(result, 1);
+        if (length < 16)
+            throw new IOException("Corrupt MS-Numpress linear data");
+        long current = decodeInt32(data, 12);
+        result[1] = current / fixedPoint;
+
+        final HalfByteReader reader = new HalfByteReader(data, 16, length);
+        int count = 2;
+        while (reader.hasNext()) {
+            final long extrapolation = current + (current - previous);
+            final long value = extrapolation + reader.next();
+            if (count == result.length)
+                result = grow(result);
+            result[count++] = value / fixedPoint;
+            previous = current;
+            current = value;
+        }
+        return trim(result, count);
+    }
+
+    private static double[] decodePic(byte data[], int length,
+            int expectedLength) throws IOException {
+        double result[] = new double[expectedLength];
+        final HalfByteReader reader = new HalfByteReader(data, 0, length);
+        int count = 0;
+        while (reader.hasNext()) {
+            if (count == result.length)
+                result = grow(result);
+            result[count++] = reader.next() & 0xffffffffL;
+        }
+        return trim(result, count);
+    }
+
+    private static double[] decodeSlof(byte data[], int length)
+            throws IOException {
+        if (length < 8)
+            throw new IOException("Corrupt MS-Numpress slof data");
+        final double fixedPoint = decodeFixedPoint(data);
+        final double result[] = new double[(length - 8) / 2];
+        for (int i = 0; i < result.length; i++) {
+            final int value = (data[8 + 2 * i] & 0xff)
+                    | ((data[9 + 2 * i] & 0xff) << 8);
+            result[i] = Math.exp(value / fixedPoint) - 1;
+        }
+        return result;
+    }
+
+    private static double decodeFixedPoint(byte data[]) {
+        long bits = 0;
+        for (int i = 0; i < 8; i++)
+            bits = (bits << 8) | (data[i] & 0xff);
+        return Double.longBitsToDouble(bits);
+    }
+
+    private static long decodeInt32(byte data[], int offset) {
+        long value = 0;
+        for (int i = 0; i < 4; i++)
+            value |= (data[offset + i] & 0xffL) << (8 * i);
+        return value;
+    }
+
+    private static double[] grow(double array[]) {
+        final double newArray[] = new double[Math.max(16, array.length * 2)];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    private static double[] trim(double array[], int length) {
+        if (array.length == length)
+            return array;
+        final double trimmedArray[] = new double[length];
+        System.arraycopy(array, 0, trimmedArray, 0, length);
+        return trimmedArray;
+    }
+
+    /**
+     * Reads the integers encoded as half bytes. The first half byte of each
+     * integer gives the number of leading zero (0-8) or, minus 8, leading
+     * 0xf (9-15) half bytes, which are omitted; the remaining half bytes
+     * follow, least significant first.
+     */
+    private static class HalfByteReader {
+
+        private final byte data[];
+        private final int length;
+        private int position;
+        private boolean half = false;
+
+        HalfByteReader(byte data[], int position, int length) {
+            this.data = data;
+            this.position = position;
+            this.length = length;
+        }
+
+        boolean hasNext() {
+            if (position >= length)
+                return false;
+            // The low half of the last byte is padding, unless it encodes 0
+            if (half && (position == length - 1)
+                    && ((data[position] & 0xf) != 0x8))
+                return false;
+            return true;
+        }
+
+        int next() throws IOException {
+            final int head = nextHalfByte();
+            int value = 0;
+            final int leadingHalfBytes;
+            if (head <= 8) {
+                leadingHalfBytes = head;
+            } else {
+                leadingHalfBytes = head - 8;
+                for (int i = 0; i < leadingHalfBytes; i++)
+                    value |= 0xf0000000 >>> (4 * i);
+            }
+            for (int i = leadingHalfBytes; i < 8; i++)
+                value |= nextHalfByte() << ((i - leadingHalfBytes) * 4);
+            return value;
+        }
+
+        private int nextHalfByte() throws IOException {
+            if (position >= length)
+                throw new IOException("Corrupt MS-Numpress data");
+            final int halfByte;
+            if (!half) {
+                halfByte = (data[position] & 0xff) >> 4;
+            } else {
+                halfByte = data[position] & 0xf;
+                position++;
+            }
+            half = !half;
+            return halfByte;
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport.mzml;
+
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.MsFunction;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+
+/**
+ * Creates MSDK scans and chromatograms from parsed mzML elements.
+ */
+final class MzMLObjectBuilder {
+
+    private MzMLObjectBuilder() {
+    }
+
+    /**
+     * Creates a scan with the metadata of the spectrum, but without data
+     * points.
+     * 
+     * @param msFunctions
+     *            MS functions created so far, by MS level
+     */
+    static @Nonnull MsScan createScan(@Nonnull DataPointStore dataStore,
+            @Nonnull MzMLSpectrumHeader header,
+            @Nonnull Map<Integer, MsFunction> msFunctions) {
+        final MsFunction msFunction = msFunctions.computeIfAbsent(
+                header.getMsLevel(), MSDKObjectBuilder::getMsFunction);
+        final MsScan scan = MSDKObjectBuilder.getMsScan(dataStore,
+                header.getScanNumber(), msFunction);
+
+        if (header.getSpectrumType() != null)
+            scan.setSpectrumType(header.getSpectrumType());
+        scan.setPolarity(header.getPolarity());
+        scan.setScanDefinition(header.getScanDefinition());
+        if (header.getRetentionTime() != null)
+            scan.setChromatographyInfo(
+                    MSDKObjectBuilder.getChromatographyInfo1D(
+                            SeparationType.UNKNOWN,
+                            header.getRetentionTime()));
+
+        final Double targetMz = header.getIsolationTargetMz();
+        final Double precursorMz = header.getPrecursorMz() != null
+                ? header.getPrecursorMz() : targetMz;
+        if (precursorMz == null)
+            return scan;
+        Range<Double> isolationRange = null;
+        if (targetMz != null && header.getIsolationLowerOffset() != null
+                && header.getIsolationUpperOffset() != null)
+            isolationRange = Range.closed(
+                    targetMz - header.getIsolationLowerOffset(),
+                    targetMz + header.getIsolationUpperOffset());
+        scan.getIsolations().add(MSDKObjectBuilder.getIsolationInfo(
+                isolationRange, null, precursorMz,
+                header.getPrecursorCharge()));
+        return scan;
+    }
+
+    /**
+     * Creates a chromatogram with its data points. The isolations of SRM
+     * chromatograms are the precursor (Q1) and the product (Q3), in this
+     * order.
+     */
+    static @Nonnull Chromatogram createChromatogram(
+            @Nonnull DataPointStore dataStore,
+            @Nonnull MzMLChromatogramData data) {
+        final Chromatogram chromatogram = MSDKObjectBuilder.getChromatogram(
+                dataStore, data.getIndex() + 1, data.getChromatogramType(),
+                SeparationType.UNKNOWN);
+        final int size = data.getNumberOfDataPoints();
+        final ChromatographyInfo rtValues[] = new ChromatographyInfo[size];
+        for (int i = 0; i < size; i++)
+            rtValues[i] = MSDKObjectBuilder.getChromatographyInfo1D(
+                    SeparationType.UNKNOWN, data.getRtValues()[i]);
+
+        // SRM chromatograms are measured at the product m/z
+        final Double mz = data.getProductMz() != null ? data.getProductMz()
+                : data.getPrecursorMz();
+        final double mzValues[] = new double[size];
+        if (mz != null) {
+            for (int i = 0; i < size; i++)
+                mzValues[i] = mz;
+            chromatogram.setMz(mz);
+        }
+        chromatogram.setDataPoints(rtValues, mzValues,
+                data.getIntensityValues(), size);
+
+        if (data.getPrecursorMz() != null)
+            chromatogram.getIsolations().add(MSDKObjectBuilder
+                    .getIsolationInfo(null, null, data.getPrecursorMz(), null));
+        if (data.getProductMz() != null)
+            chromatogram.getIsolations().add(MSDKObjectBuilder
+                    .getIsolationInfo(null, null, data.getProductMz(), null));
+        return chromatogram;
+    }
+
+}
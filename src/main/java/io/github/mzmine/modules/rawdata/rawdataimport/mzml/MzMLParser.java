@@ -0,0 +1,248 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport.mzml;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import io.github.mzmine.modules.rawdata.rawdataimport.mzml.MzMLBinaryArrayInfo.ArrayType;
+
+/**
+ * Parses the spectrum and chromatogram elements of mzML files. The methods
+ * expect the reader to be positioned at the start of the element and return
+ * when the reader is positioned at its end, so they can be used both on whole
+ * files and on single elements read at an offset.
+ */
+final class MzMLParser {
+
+    private static final Pattern SCAN_NUMBER_PATTERN = Pattern
+            .compile("scan=(\\d+)");
+
+    private MzMLParser() {
+    }
+
+    /**
+     * Parses a spectrum element.
+     * 
+     * @param encodedArrays
+     *            list to collect the encoded data arrays of the spectrum, or
+     *            null to stop before the data arrays
+     */
+    static @Nonnull MzMLSpectrumHeader parseSpectrum(
+            @Nonnull XMLStreamReader reader, int index, long offset,
+            @Nullable List<EncodedArray> encodedArrays)
+            throws XMLStreamException {
+
+        final MzMLSpectrumHeader header = new MzMLSpectrumHeader(index,
+                offset);
+        header.id = reader.getAttributeValue(null, "id");
+        header.numberOfDataPoints = parseInt(
+                reader.getAttributeValue(null, "defaultArrayLength"), 0);
+        final Matcher matcher = header.id == null ? null
+                : SCAN_NUMBER_PATTERN.matcher(header.id);
+        header.scanNumber = (matcher != null && matcher.find())
+                ? Integer.parseInt(matcher.group(1)) : index + 1;
+
+        // cvParams are assigned by the elements they are nested in
+        final List<String> path = new ArrayList<>();
+        MzMLBinaryArrayInfo arrayInfo = null;
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                if (path.isEmpty())
+                    break;
+                path.remove(path.size() - 1);
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT)
+                continue;
+            final String element = reader.getLocalName();
+            switch (element) {
+            case "binaryDataArrayList":
+                if (encodedArrays == null)
+                    return header;
+                break;
+            case "precursor":
+                header.numberOfPrecursors++;
+                break;
+            case "binaryDataArray":
+                arrayInfo = new MzMLBinaryArrayInfo(
+                        header.getNumberOfDataPoints());
+                break;
+            case "cvParam":
+                if (arrayInfo != null)
+                    addCvParam(arrayInfo, reader);
+                else
+                    header.addCvParam(path, reader);
+                break;
+            case "binary":
+                // getElementText() consumes the end of the element
+                final String text = reader.getElementText();
+                if (arrayInfo != null)
+                    encodedArrays.add(new EncodedArray(arrayInfo, text));
+                arrayInfo = null;
+                continue;
+            }
+            path.add(element);
+        }
+        return header;
+    }
+
+    /**
+     * Parses a chromatogram element and decodes its data arrays. Retention
+     * times are converted to seconds.
+     */
+    static @Nonnull MzMLChromatogramData parseChromatogram(
+            @Nonnull XMLStreamReader reader, int index)
+            throws XMLStreamException, IOException {
+
+        final MzMLChromatogramData chromatogram = new MzMLChromatogramData(
+                index);
+        chromatogram.id = reader.getAttributeValue(null, "id");
+        final int numberOfDataPoints = parseInt(
+                reader.getAttributeValue(null, "defaultArrayLength"), 0);
+
+        final List<String> path = new ArrayList<>();
+        MzMLBinaryArrayInfo arrayInfo = null;
+        float rtValues[] = null, intensityValues[] = null;
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                if (path.isEmpty())
+                    break;
+                path.remove(path.size() - 1);
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT)
+                continue;
+            final String element = reader.getLocalName();
+            switch (element) {
+            case "binaryDataArray":
+                arrayInfo = new MzMLBinaryArrayInfo(numberOfDataPoints);
+                break;
+            case "cvParam":
+                if (arrayInfo != null)
+                    addCvParam(arrayInfo, reader);
+                else
+                    chromatogram.addCvParam(path, reader);
+                break;
+            case "binary":
+                final String text = reader.getElementText();
+                if (arrayInfo == null)
+                    continue;
+                if (arrayInfo.getArrayType() == ArrayType.TIME) {
+                    rtValues = MzMLBinaryDecoder.decodeFloats(text,
+                            arrayInfo);
+                    if (arrayInfo.isTimeInMinutes()) {
+                        for (int i = 0; i < rtValues.length; i++)
+                            rtValues[i] *= 60f;
+                    }
+                } else if (arrayInfo.getArrayType() == ArrayType.INTENSITY) {
+                    intensityValues = MzMLBinaryDecoder.decodeFloats(text,
+                            arrayInfo);
+                }
+                arrayInfo = null;
+                continue;
+            }
+            path.add(element);
+        }
+
+        if (rtValues == null)
+            rtValues = new float[0];
+        if (intensityValues == null)
+            intensityValues = new float[rtValues.length];
+        chromatogram.rtValues = rtValues;
+        chromatogram.intensityValues = intensityValues;
+        chromatogram.numberOfDataPoints = Math.min(rtValues.length,
+                intensityValues.length);
+        return chromatogram;
+    }
+
+    /**
+     * Decodes the m/z and intensity arrays of a spectrum.
+     */
+    static @Nonnull MzMLSpectrumData decodeSpectrum(
+            @Nonnull List<EncodedArray> encodedArrays) throws IOException {
+        double mzValues[] = null;
+        float intensityValues[] = null;
+        for (EncodedArray encodedArray : encodedArrays) {
+            final MzMLBinaryArrayInfo arrayInfo = encodedArray.arrayInfo;
+            if (arrayInfo.getArrayType() == ArrayType.MZ)
+                mzValues = MzMLBinaryDecoder.decodeDoubles(encodedArray.text,
+                        arrayInfo);
+            else if (arrayInfo.getArrayType() == ArrayType.INTENSITY)
+                intensityValues = MzMLBinaryDecoder
+                        .decodeFloats(encodedArray.text, arrayInfo);
+        }
+        if (mzValues == null)
+            mzValues = new double[0];
+        if (intensityValues == null)
+            intensityValues = new float[mzValues.length];
+        return new MzMLSpectrumData(mzValues, intensityValues,
+                Math.min(mzValues.length, intensityValues.length));
+    }
+
+    private static void addCvParam(MzMLBinaryArrayInfo arrayInfo,
+            XMLStreamReader reader) {
+        final String accession = reader.getAttributeValue(null, "accession");
+        if (accession != null)
+            arrayInfo.addCvParam(accession,
+                    reader.getAttributeValue(null, "name"),
+                    reader.getAttributeValue(null, "unitAccession"));
+    }
+
+    static int parseInt(@Nullable String value, int defaultValue) {
+        if (value == null || value.trim().isEmpty())
+            return defaultValue;
+        return Integer.parseInt(value.trim());
+    }
+
+    static @Nullable Double parseDouble(@Nullable String value) {
+        if (value == null || value.trim().isEmpty())
+            return null;
+        return Double.valueOf(value.trim());
+    }
+
+    /**
+     * A binary data array which was not decoded yet.
+     */
+    static class EncodedArray {
+
+        private final @Nonnull MzMLBinaryArrayInfo arrayInfo;
+        private final @Nonnull String text;
+
+        EncodedArray(@Nonnull MzMLBinaryArrayInfo arrayInfo,
+                @Nonnull String text) {
+            this.arrayInfo = arrayInfo;
+            this.text = text;
+        }
+
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport.mzml;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Decoded data arrays of a spectrum.
+ */
+public class MzMLSpectrumData {
+
+    private final @Nonnull double mzValues[];
+    private final @Nonnull float intensityValues[];
+    private final int numberOfDataPoints;
+
+    MzMLSpectrumData(@Nonnull double mzValues[],
+            @Nonnull float intensityValues[], int numberOfDataPoints) {
+        this.mzValues = mzValues;
+        this.intensityValues = intensityValues;
+        this.numberOfDataPoints = numberOfDataPoints;
+    }
+
+    public @Nonnull double[] getMzValues() {
+        return mzValues;
+    }
+
+    public @Nonnull float[] getIntensityValues() {
+        return intensityValues;
+    }
+
+    public int getNumberOfDataPoints() {
+        return numberOfDataPoints;
+    }
+
+    /**
+     * @return approximate heap size of the arrays in bytes
+     */
+    public long getSizeInBytes() {
+        return 32L + mzValues.length * 8L + intensityValues.length * 4L;
+    }
+
+}
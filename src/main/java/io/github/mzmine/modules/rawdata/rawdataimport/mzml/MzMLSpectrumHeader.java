@@ -0,0 +1,232 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport.mzml;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamReader;
+
+import io.github.msdk.datamodel.msspectra.MsSpectrumType;
+import io.github.msdk.datamodel.rawdata.PolarityType;
+
+/**
+ * Metadata of an mzML spectrum.
+ */
+public class MzMLSpectrumHeader {
+
+    private final int index;
+    private final long offset;
+    @Nullable
+    String id;
+    int scanNumber;
+    int numberOfDataPoints;
+    int numberOfPrecursors;
+    private int msLevel = 1;
+    private @Nullable MsSpectrumType spectrumType;
+    private @Nonnull PolarityType polarity = PolarityType.UNKNOWN;
+    private @Nullable Float retentionTime;
+    private @Nullable String scanDefinition;
+    private @Nullable Float tic;
+    private @Nullable Double basePeakMz;
+    private @Nullable Float basePeakIntensity;
+    private @Nullable Double lowestMz, highestMz;
+    private @Nullable Double isolationTargetMz, isolationLowerOffset,
+            isolationUpperOffset;
+    private @Nullable Double precursorMz;
+    private @Nullable Integer precursorCharge;
+
+    MzMLSpectrumHeader(int index, long offset) {
+        this.index = index;
+        this.offset = offset;
+    }
+
+    /**
+     * Reads the cvParam the reader is positioned at.
+     * 
+     * @param path
+     *            names of the elements enclosing the cvParam, below the
+     *            spectrum element
+     */
+    void addCvParam(@Nonnull List<String> path,
+            @Nonnull XMLStreamReader reader) {
+        final String accession = reader.getAttributeValue(null, "accession");
+        final String value = reader.getAttributeValue(null, "value");
+        if (accession == null)
+            return;
+        if (path.contains("precursor")) {
+            // Only the first precursor and its first selected ion are used
+            if (numberOfPrecursors > 1)
+                return;
+            if (path.contains("isolationWindow")) {
+                if (accession.equals("MS:1000827"))
+                    isolationTargetMz = MzMLParser.parseDouble(value);
+                else if (accession.equals("MS:1000828"))
+                    isolationLowerOffset = MzMLParser.parseDouble(value);
+                else if (accession.equals("MS:1000829"))
+                    isolationUpperOffset = MzMLParser.parseDouble(value);
+            } else if (path.contains("selectedIon")) {
+                if (accession.equals("MS:1000744") && precursorMz == null)
+                    precursorMz = MzMLParser.parseDouble(value);
+                else if (accession.equals("MS:1000041")
+                        && precursorCharge == null)
+                    precursorCharge = MzMLParser.parseInt(value, 0);
+            }
+            return;
+        }
+        if (path.contains("product"))
+            return;
+        switch (accession) {
+        case "MS:1000511": // ms level
+            msLevel = MzMLParser.parseInt(value, 1);
+            break;
+        case "MS:1000127": // centroid spectrum
+            spectrumType = MsSpectrumType.CENTROIDED;
+            break;
+        case "MS:1000128": // profile spectrum
+            spectrumType = MsSpectrumType.PROFILE;
+            break;
+        case "MS:1000130": // positive scan
+            polarity = PolarityType.POSITIVE;
+            break;
+        case "MS:1000129": // negative scan
+            polarity = PolarityType.NEGATIVE;
+            break;
+        case "MS:1000016": // scan start time
+            final Double rt = MzMLParser.parseDouble(value);
+            if (rt != null && retentionTime == null) {
+                final String unit = reader.getAttributeValue(null,
+                        "unitAccession");
+                retentionTime = (float) ("UO:0000031".equals(unit) ? rt * 60
+                        : rt.doubleValue());
+            }
+            break;
+        case "MS:1000512": // filter string
+            scanDefinition = value;
+            break;
+        case "MS:1000285": // total ion current
+            final Double ticValue = MzMLParser.parseDouble(value);
+            tic = ticValue == null ? null : ticValue.floatValue();
+            break;
+        case "MS:1000504": // base peak m/z
+            basePeakMz = MzMLParser.parseDouble(value);
+            break;
+        case "MS:1000505": // base peak intensity
+            final Double basePeakValue = MzMLParser.parseDouble(value);
+            basePeakIntensity = basePeakValue == null ? null
+                    : basePeakValue.floatValue();
+            break;
+        case "MS:1000528": // lowest observed m/z
+            lowestMz = MzMLParser.parseDouble(value);
+            break;
+        case "MS:1000527": // highest observed m/z
+            highestMz = MzMLParser.parseDouble(value);
+            break;
+        }
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return offset of the spectrum element in the file, or -1 if unknown
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public @Nullable String getId() {
+        return id;
+    }
+
+    public int getScanNumber() {
+        return scanNumber;
+    }
+
+    public int getMsLevel() {
+        return msLevel;
+    }
+
+    public int getNumberOfDataPoints() {
+        return numberOfDataPoints;
+    }
+
+    public @Nullable MsSpectrumType getSpectrumType() {
+        return spectrumType;
+    }
+
+    public @Nonnull PolarityType getPolarity() {
+        return polarity;
+    }
+
+    /**
+     * @return scan start time in seconds
+     */
+    public @Nullable Float getRetentionTime() {
+        return retentionTime;
+    }
+
+    public @Nullable String getScanDefinition() {
+        return scanDefinition;
+    }
+
+    public @Nullable Float getTIC() {
+        return tic;
+    }
+
+    public @Nullable Double getBasePeakMz() {
+        return basePeakMz;
+    }
+
+    public @Nullable Float getBasePeakIntensity() {
+        return basePeakIntensity;
+    }
+
+    public @Nullable Double getLowestMz() {
+        return lowestMz;
+    }
+
+    public @Nullable Double getHighestMz() {
+        return highestMz;
+    }
+
+    public @Nullable Double getIsolationTargetMz() {
+        return isolationTargetMz;
+    }
+
+    public @Nullable Double getIsolationLowerOffset() {
+        return isolationLowerOffset;
+    }
+
+    public @Nullable Double getIsolationUpperOffset() {
+        return isolationUpperOffset;
+    }
+
+    public @Nullable Double getPrecursorMz() {
+        return precursorMz;
+    }
+
+    public @Nullable Integer getPrecursorCharge() {
+        return precursorCharge;
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.sharding;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.gui.mainwindow.MainWindowController;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineRunnableModule;
+import io.github.mzmine.modules.alignment.joinaligner.JoinAlignerModule;
+import io.github.mzmine.modules.rawdata.rawdataimport.RawDataImportModule;
+import io.github.mzmine.modules.rawdata.rawdataimport.RawDataImportParameters;
+import io.github.mzmine.modules.watchfolder.WatchFolderStep;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.project.MZmineProject;
+import javafx.concurrent.Task;
+
+/**
+ * Sharded processing module. Distributes the per-file processing of many raw
+ * data files over several MZmine worker processes and aligns the results.
+ */
+public class ShardedProcessingModule implements MZmineRunnableModule {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final @Nonnull String MODULE_NAME = "Sharded processing";
+    private static final @Nonnull String MODULE_DESCRIPTION = "This module processes raw data files on several worker processes and aligns the resulting feature tables.";
+
+    @Override
+    public @Nonnull String getName() {
+        return MODULE_NAME;
+    }
+
+    @Override
+    public @Nonnull String getDescription() {
+        return MODULE_DESCRIPTION;
+    }
+
+    @Override
+    public void runModule(@Nonnull MZmineProject project,
+            @Nonnull ParameterSet parameters,
+            @Nonnull Collection<Task<?>> tasks) {
+
+        final List<File> fileNames = parameters
+                .getParameter(ShardedProcessingParameters.fileNames)
+                .getValue();
+        final List<WatchFolderStep> selectedSteps = parameters
+                .getParameter(ShardedProcessingParameters.steps).getValue();
+        final Boolean joinAlignment = parameters
+                .getParameter(ShardedProcessingParameters.joinAlignment)
+                .getValue();
+        final Integer localWorkers = parameters
+                .getParameter(ShardedProcessingParameters.localWorkers)
+                .getValue();
+        final Integer workerMemory = parameters
+                .getParameter(ShardedProcessingParameters.workerMemory)
+                .getValue();
+        final String remoteWorkers = parameters
+                .getParameter(ShardedProcessingParameters.remoteWorkers)
+                .getValue();
+        final Integer filesPerWorker = parameters
+                .getParameter(ShardedProcessingParameters.filesPerWorker)
+                .getValue();
+        final Boolean transferChromatograms = parameters
+                .getParameter(
+                        ShardedProcessingParameters.transferChromatograms)
+                .getValue();
+
+        if ((fileNames == null) || fileNames.isEmpty()) {
+            logger.warn(
+                    "Sharded processing module started with no raw data files selected");
+            return;
+        }
+
+        final List<InetSocketAddress> remoteAddresses = new ArrayList<>();
+        if (!Strings.isNullOrEmpty(remoteWorkers)) {
+            for (String address : remoteWorkers.split(",")) {
+                final String trimmed = address.trim();
+                final int colon = trimmed.lastIndexOf(':');
+                remoteAddresses.add(new InetSocketAddress(
+                        trimmed.substring(0, colon),
+                        Integer.parseInt(trimmed.substring(colon + 1))));
+            }
+        }
+        if ((localWorkers == 0) && remoteAddresses.isEmpty()) {
+            final String msg = "Please start at least one local worker or add a remote worker";
+            logger.warn(msg);
+            MZmineGUI.displayMessage(msg);
+            return;
+        }
+
+        // Steps are applied in the order of their definition
+        final List<WatchFolderStep> steps = new ArrayList<>();
+        if (selectedSteps != null)
+            steps.addAll(selectedSteps);
+        steps.sort(Comparator.naturalOrder());
+        for (WatchFolderStep step : steps) {
+            if (step.writesFiles()) {
+                final String msg = "The step " + step
+                        + " writes files and cannot be run by the workers";
+                logger.warn(msg);
+                MZmineGUI.displayMessage(msg);
+                return;
+            }
+        }
+
+        // The steps run with the parameters last set in their own dialogs,
+        // so check them before any worker is started
+        final List<Class<? extends MZmineRunnableModule>> moduleClasses = new ArrayList<>();
+        moduleClasses.add(RawDataImportModule.class);
+        for (WatchFolderStep step : steps)
+            moduleClasses.add(step.getModuleClass());
+        if ((joinAlignment != null) && joinAlignment)
+            moduleClasses.add(JoinAlignerModule.class);
+        for (Class<? extends MZmineRunnableModule> moduleClass : moduleClasses) {
+            final ParameterSet moduleParameters = MZmineCore.getConfiguration()
+                    .getModuleParameters(moduleClass).clone();
+            if (moduleClass == RawDataImportModule.class)
+                moduleParameters
+                        .getParameter(RawDataImportParameters.fileNames)
+                        .setValue(fileNames);
+            final List<String> messages = new ArrayList<>();
+            if (!moduleParameters.checkParameterValues(messages)) {
+                final String msg = "Please set up the parameters of "
+                        + MZmineCore.getModuleInstance(moduleClass).getName()
+                        + " first: " + String.join(", ", messages);
+                logger.warn(msg);
+                MZmineGUI.displayMessage(msg);
+                return;
+            }
+        }
+
+        ShardedProcessingTask newTask = new ShardedProcessingTask(
+                new ArrayList<>(fileNames), steps,
+                (joinAlignment != null) && joinAlignment, localWorkers,
+                workerMemory, remoteAddresses, filesPerWorker,
+                (transferChromatograms != null) && transferChromatograms,
+                project);
+
+        // The task waits for the workers and for the alignment task, so it
+        // runs on its own thread instead of occupying a slot of the task
+        // scheduler
+        MainWindowController mwc = MZmineGUI.getMainWindowController();
+        if (mwc != null)
+            mwc.getTaskTable().getTasks().add(newTask);
+        Thread coordinatorThread = new Thread(newTask, "Sharded processing");
+        coordinatorThread.setDaemon(true);
+        coordinatorThread.start();
+
+    }
+
+    @Override
+    public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
+        return ShardedProcessingParameters.class;
+    }
+
+}
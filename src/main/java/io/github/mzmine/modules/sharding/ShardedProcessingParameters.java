@@ -0,0 +1,136 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.sharding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Strings;
+
+import io.github.mzmine.modules.watchfolder.WatchFolderStep;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.ParameterValidator;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.MultiChoiceParameter;
+import io.github.mzmine.parameters.parametertypes.StringParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNamesParameter;
+import io.github.mzmine.server.ShardProtocol;
+import javafx.stage.FileChooser.ExtensionFilter;
+
+public class ShardedProcessingParameters extends ParameterSet {
+
+    public static final FileNamesParameter fileNames = new FileNamesParameter(
+            "Raw data files",
+            "Raw data files to process. The workers open the files by the same path, so remote workers need them on a shared file system.",
+            "Input files", ParameterValidator.createNonEmptyValidator(),
+            Arrays.asList(
+                    new ExtensionFilter("mzML files", "*.mzML", "*.mzml"),
+                    new ExtensionFilter("All files", "*.*")));
+
+    public static final MultiChoiceParameter<WatchFolderStep> steps = new MultiChoiceParameter<>(
+            "Per-file steps",
+            "Steps applied to each file on a worker after the import, in the listed order. Each step uses the parameters last set in its own dialog.",
+            "Processing", getWorkerSteps());
+
+    public static final BooleanParameter joinAlignment = new BooleanParameter(
+            "Join alignment",
+            "Align the feature tables received from the workers with the Join Aligner, using the parameters last set in its dialog",
+            "Processing", true);
+
+    public static final IntegerParameter localWorkers = new IntegerParameter(
+            "Local workers",
+            "Number of worker processes started on this machine. Each worker is a separate Java virtual machine with its own heap.",
+            "Workers", (value, messages) -> {
+                if ((value == null) || (value < 0)) {
+                    messages.add("Number of local workers cannot be negative");
+                    return false;
+                }
+                return true;
+            } , 2);
+
+    public static final IntegerParameter workerMemory = new IntegerParameter(
+            "Local worker memory (MB)",
+            "Maximum heap size of each local worker process",
+            "Workers", (value, messages) -> {
+                if ((value == null) || (value < 256)) {
+                    messages.add("Local workers need at least 256 MB");
+                    return false;
+                }
+                return true;
+            } , 4096);
+
+    public static final StringParameter remoteWorkers = new StringParameter(
+            "Remote workers",
+            "Comma-separated host:port addresses of workers which were started with the --worker option, on this or other machines",
+            "Workers", (value, messages) -> {
+                if (Strings.isNullOrEmpty(value))
+                    return true;
+                for (String address : value.split(",")) {
+                    if (!address.trim().matches(".+:\\d+")) {
+                        messages.add("Invalid worker address " + address
+                                + ", expected host:port");
+                        return false;
+                    }
+                }
+                if (ShardProtocol.getSecret() == null) {
+                    messages.add("Set the " + ShardProtocol.SECRET_VARIABLE
+                            + " environment variable to the secret of the remote workers");
+                    return false;
+                }
+                return true;
+            } , "");
+
+    public static final IntegerParameter filesPerWorker = new IntegerParameter(
+            "Files per worker",
+            "Number of files each worker processes at the same time. The tasks of a worker are further limited by its own task scheduler.",
+            "Workers", (value, messages) -> {
+                if ((value == null) || (value < 1)) {
+                    messages.add("Each worker must process at least 1 file");
+                    return false;
+                }
+                return true;
+            } , 2);
+
+    public static final BooleanParameter transferChromatograms = new BooleanParameter(
+            "Transfer chromatograms",
+            "Also send the chromatograms of the features from the workers. They are needed for plotting, but are usually the largest part of a feature table.",
+            "Workers", false);
+
+    public ShardedProcessingParameters() {
+        super(fileNames, steps, joinAlignment, localWorkers, workerMemory,
+                remoteWorkers, filesPerWorker, transferChromatograms);
+    }
+
+    /**
+     * @return the per-file steps the workers accept; steps which write files
+     *         are not run by workers
+     */
+    private static List<WatchFolderStep> getWorkerSteps() {
+        final List<WatchFolderStep> workerSteps = new ArrayList<>();
+        for (WatchFolderStep step : WatchFolderStep.values()) {
+            if (!step.writesFiles())
+                workerSteps.add(step);
+        }
+        return workerSteps;
+    }
+
+}
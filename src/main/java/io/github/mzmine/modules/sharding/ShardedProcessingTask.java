@@ -0,0 +1,475 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.sharding;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.main.MZmineMain;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.MZmineProcessingStepImpl;
+import io.github.mzmine.modules.alignment.joinaligner.JoinAlignerModule;
+import io.github.mzmine.modules.featuretableimport.ColumnarFileImportMethod;
+import io.github.mzmine.modules.rawdata.rawdataimport.RawDataImportModule;
+import io.github.mzmine.modules.watchfolder.WatchFolderStep;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.server.ShardProtocol;
+import io.github.mzmine.taskcontrol.MZmineTask;
+import io.github.mzmine.taskcontrol.ProcessingPipeline;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+/**
+ * Coordinates the processing of many raw data files by several worker
+ * processes. Each file is a shard: a worker imports it, applies the per-file
+ * steps and sends the resulting feature tables back in the columnar binary
+ * format. The received tables are added to the project of the coordinator,
+ * which then aligns them. The raw data itself is never loaded by the
+ * coordinator, so its heap only has to hold the feature tables.
+ *
+ * Every worker gets the configured number of connections, each of which takes
+ * the next file from a shared queue, so faster workers process more files. A
+ * file whose worker connection fails is given to another worker once, so the
+ * connections keep waiting for files until every file has been processed or
+ * has failed.
+ */
+class ShardedProcessingTask extends Task<Object> implements MZmineTask {
+
+    private static final long LOCAL_WORKER_START_TIMEOUT = 120000; // ms
+    private static final long REMOTE_WORKER_TIMEOUT = 10000; // ms
+    private static final int MAX_ATTEMPTS = 2;
+    private static final long SHARD_POLL_INTERVAL = 500; // ms
+
+    // System properties passed on to local workers, so that they start the
+    // JavaFX toolkit the same way as the coordinator
+    private static final String FORWARDED_PROPERTIES[] = { "glass.platform",
+            "monocle.platform", "java.awt.headless", "java.io.tmpdir" };
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull List<File> files;
+    private final @Nonnull List<WatchFolderStep> steps;
+    private final boolean joinAlignment;
+    private final int localWorkers, workerMemory;
+    private final @Nonnull List<InetSocketAddress> remoteWorkers;
+    private final int filesPerWorker;
+    private final boolean transferChromatograms;
+    private final @Nonnull MZmineProject project;
+
+    private final BlockingQueue<Shard> pendingShards = new LinkedBlockingQueue<>();
+    // Shards which are queued or being processed
+    private final AtomicInteger outstandingShards = new AtomicInteger();
+    private final List<List<FeatureTable>> receivedTables;
+    private final List<String> failures = Collections
+            .synchronizedList(new ArrayList<>());
+    private final Set<WorkerConnection> openConnections = Collections
+            .synchronizedSet(new HashSet<>());
+    private final AtomicInteger processedFiles = new AtomicInteger();
+    private volatile String stage = "Starting workers";
+
+    /**
+     * @param steps
+     *            per-file steps, in the order they are applied
+     */
+    ShardedProcessingTask(@Nonnull List<File> files,
+            @Nonnull List<WatchFolderStep> steps, boolean joinAlignment,
+            int localWorkers, int workerMemory,
+            @Nonnull List<InetSocketAddress> remoteWorkers, int filesPerWorker,
+            boolean transferChromatograms, @Nonnull MZmineProject project) {
+        this.files = files;
+        this.steps = steps;
+        this.joinAlignment = joinAlignment;
+        this.localWorkers = localWorkers;
+        this.workerMemory = workerMemory;
+        this.remoteWorkers = remoteWorkers;
+        this.filesPerWorker = filesPerWorker;
+        this.transferChromatograms = transferChromatograms;
+        this.project = project;
+        this.receivedTables = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++)
+            receivedTables.add(null);
+        refreshStatus();
+    }
+
+    @Override
+    public void refreshStatus() {
+        final int done = processedFiles.get() + failures.size();
+        updateProgress(done, files.size());
+        updateTitle("Sharded processing of " + files.size() + " files");
+        String message = stage + ", " + processedFiles.get() + " of "
+                + files.size() + " files processed";
+        if (!failures.isEmpty())
+            message += ", " + failures.size() + " failed";
+        updateMessage(message);
+    }
+
+    @Override
+    protected Object call() throws Exception {
+
+        final Document jobTemplate = createJobTemplate();
+        for (int i = 0; i < files.size(); i++)
+            pendingShards.add(new Shard(i, files.get(i),
+                    createJobDescription(jobTemplate, files.get(i))));
+        outstandingShards.set(files.size());
+
+        // Local workers get a new secret, remote workers have been started
+        // with the secret set in the environment of this instance
+        final byte localSecretBytes[] = new byte[32];
+        new SecureRandom().nextBytes(localSecretBytes);
+        final String localSecret = Base64.getEncoder()
+                .encodeToString(localSecretBytes);
+        final String remoteSecret = ShardProtocol.getSecret();
+        if (!remoteWorkers.isEmpty() && (remoteSecret == null))
+            logger.warn("Not connecting to remote workers, the "
+                    + ShardProtocol.SECRET_VARIABLE
+                    + " environment variable is not set");
+
+        final List<Process> processes = new ArrayList<>();
+        final ExecutorService connectionThreads = Executors
+                .newCachedThreadPool(r -> {
+                    Thread thread = new Thread(r, "Shard coordinator");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        try {
+            for (int i = 0; i < localWorkers; i++) {
+                final InetSocketAddress address = new InetSocketAddress(
+                        InetAddress.getLoopbackAddress(), findFreePort());
+                final Process process = startLocalWorker(address.getPort(),
+                        localSecret);
+                processes.add(process);
+                for (int j = 0; j < filesPerWorker; j++)
+                    connectionThreads.execute(() -> processShards(address,
+                            process, LOCAL_WORKER_START_TIMEOUT, localSecret));
+            }
+            for (InetSocketAddress address : remoteWorkers) {
+                if (remoteSecret == null)
+                    break;
+                for (int j = 0; j < filesPerWorker; j++)
+                    connectionThreads.execute(() -> processShards(address,
+                            null, REMOTE_WORKER_TIMEOUT, remoteSecret));
+            }
+
+            stage = "Processing files";
+            connectionThreads.shutdown();
+            while (!connectionThreads.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (isCancelled())
+                    return null;
+                refreshStatus();
+            }
+
+            // All connections have ended; files still queued had no worker
+            Shard shard;
+            while ((shard = pendingShards.poll()) != null)
+                failures.add(shard.file.getName() + ": no worker available");
+
+        } finally {
+            connectionThreads.shutdownNow();
+            synchronized (openConnections) {
+                for (WorkerConnection connection : openConnections)
+                    closeQuietly(connection);
+            }
+            for (Process process : processes)
+                process.destroy();
+        }
+
+        final List<FeatureTable> tables = new ArrayList<>();
+        for (List<FeatureTable> fileTables : receivedTables) {
+            if (fileTables != null)
+                tables.addAll(fileTables);
+        }
+        logger.info("Received " + tables.size() + " feature tables for "
+                + processedFiles.get() + " of " + files.size() + " files");
+
+        if (joinAlignment && (tables.size() > 1) && !isCancelled())
+            align(tables);
+
+        stage = "Finished";
+        refreshStatus();
+        if (!failures.isEmpty()) {
+            final String msg = failures.size() + " of " + files.size()
+                    + " files could not be processed: "
+                    + String.join("; ", failures);
+            logger.warn(msg);
+            MZmineGUI.displayMessage(msg);
+        }
+        return null;
+    }
+
+    /**
+     * Takes shards from the queue and lets the worker process them, until all
+     * shards are finished or the connection fails. A shard given back by a
+     * failed connection can be queued again at any time, so the queue being
+     * empty does not end the connection. Runs on a connection thread.
+     */
+    private void processShards(@Nonnull InetSocketAddress address,
+            @Nullable Process process, long connectTimeout,
+            @Nonnull String secret) {
+
+        WorkerConnection connection;
+        try {
+            connection = WorkerConnection.connect(address, process,
+                    connectTimeout, secret);
+        } catch (InterruptedException e) {
+            return;
+        } catch (IOException e) {
+            logger.warn("Could not connect to worker " + address + ": " + e);
+            return;
+        }
+        openConnections.add(connection);
+
+        try {
+            while (!isCancelled() && (outstandingShards.get() > 0)) {
+                final Shard shard = pendingShards.poll(SHARD_POLL_INTERVAL,
+                        TimeUnit.MILLISECONDS);
+                if (shard == null)
+                    continue;
+                final List<File> tableFiles;
+                try {
+                    tableFiles = connection.process(shard.jobDescription);
+                } catch (MSDKException e) {
+                    logger.warn("Worker " + address + " failed to process "
+                            + shard.file + ": " + e.getMessage());
+                    failures.add(shard.file.getName() + ": " + e.getMessage());
+                    outstandingShards.decrementAndGet();
+                    continue;
+                } catch (IOException e) {
+                    logger.warn("Connection to worker " + address
+                            + " failed while processing " + shard.file, e);
+                    shard.attempts++;
+                    if (shard.attempts < MAX_ATTEMPTS) {
+                        pendingShards.add(shard);
+                    } else {
+                        failures.add(shard.file.getName() + ": " + e);
+                        outstandingShards.decrementAndGet();
+                    }
+                    return;
+                }
+                receiveTables(shard, tableFiles);
+                outstandingShards.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            // Stopped by the coordinator
+        } finally {
+            openConnections.remove(connection);
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Imports the feature tables of a processed shard and adds them to the
+     * project
+     */
+    private void receiveTables(@Nonnull Shard shard,
+            @Nonnull List<File> tableFiles) {
+        final List<FeatureTable> tables = new ArrayList<>();
+        try {
+            for (File tableFile : tableFiles) {
+                final ColumnarFileImportMethod method = new ColumnarFileImportMethod(
+                        tableFile, MZmineCore.getMemoryGovernor()
+                                .createMemoryDataStore());
+                tables.add(method.execute());
+            }
+        } catch (MSDKException e) {
+            logger.error("Could not read the feature tables of " + shard.file,
+                    e);
+            failures.add(shard.file.getName() + ": " + e);
+            return;
+        } finally {
+            for (File tableFile : tableFiles)
+                tableFile.delete();
+        }
+
+        synchronized (receivedTables) {
+            receivedTables.set(shard.index, tables);
+        }
+        Platform.runLater(() -> {
+            for (FeatureTable table : tables)
+                project.addFeatureTable(table);
+        });
+        processedFiles.incrementAndGet();
+        logger.info("Received " + tables.size() + " feature tables for "
+                + shard.file.getName());
+    }
+
+    private void align(@Nonnull List<FeatureTable> tables)
+            throws InterruptedException {
+        stage = "Aligning feature tables";
+        refreshStatus();
+        final MZmineProcessingStep<MZmineProcessingModule> alignmentStep = new MZmineProcessingStepImpl<>(
+                MZmineCore.getModuleInstance(JoinAlignerModule.class),
+                MZmineCore.getConfiguration()
+                        .getModuleParameters(JoinAlignerModule.class));
+        final ProcessingPipeline pipeline = new ProcessingPipeline(
+                Collections.singletonList(alignmentStep));
+        if (!pipeline.run(Collections.emptyList(), tables)) {
+            final String msg = "Alignment of the feature tables failed: "
+                    + pipeline.getErrorMessage();
+            logger.error(msg);
+            MZmineGUI.displayMessage(msg);
+        }
+    }
+
+    /**
+     * Creates a job description with the import and the per-file steps, with
+     * the parameters last set in their dialogs
+     */
+    private @Nonnull Document createJobTemplate()
+            throws ParserConfigurationException {
+        final Document document = DocumentBuilderFactory.newInstance()
+                .newDocumentBuilder().newDocument();
+        final Element job = document.createElement("job");
+        job.setAttribute(ShardProtocol.CHROMATOGRAMS_ATTRIBUTE,
+                String.valueOf(transferChromatograms));
+        document.appendChild(job);
+
+        final List<Class<? extends MZmineProcessingModule>> moduleClasses = new ArrayList<>();
+        moduleClasses.add(RawDataImportModule.class);
+        for (WatchFolderStep step : steps)
+            moduleClasses.add(step.getModuleClass());
+        for (Class<? extends MZmineProcessingModule> moduleClass : moduleClasses) {
+            final Element module = document.createElement("module");
+            module.setAttribute("class", moduleClass.getName());
+            MZmineCore.getConfiguration().getModuleParameters(moduleClass)
+                    .saveValuesToXML(module);
+            job.appendChild(module);
+        }
+        return document;
+    }
+
+    private static @Nonnull String createJobDescription(
+            @Nonnull Document template, @Nonnull File file)
+            throws TransformerException {
+        final Document document = (Document) template.cloneNode(true);
+        final Element job = document.getDocumentElement();
+        final Element fileElement = document.createElement("file");
+        fileElement.setTextContent(file.getAbsolutePath());
+        job.insertBefore(fileElement, job.getFirstChild());
+
+        final StringWriter writer = new StringWriter();
+        TransformerFactory.newInstance().newTransformer()
+                .transform(new DOMSource(document), new StreamResult(writer));
+        return writer.toString();
+    }
+
+    /**
+     * Starts a worker process running the same MZmine installation as this
+     * one. Its output is written to a log file in the temporary folder. The
+     * secret is passed in the environment, where other users of the machine
+     * cannot see it.
+     */
+    private @Nonnull Process startLocalWorker(int port,
+            @Nonnull String secret) throws IOException {
+        final List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java");
+        command.add("-Xmx" + workerMemory + "m");
+        for (String property : FORWARDED_PROPERTIES) {
+            final String value = System.getProperty(property);
+            if (value != null)
+                command.add("-D" + property + "=" + value);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MZmineMain.class.getName());
+        command.add("--worker");
+        command.add(String.valueOf(port));
+
+        final File logFile = File.createTempFile("mzmine-worker-" + port,
+                ".log");
+        final ProcessBuilder builder = new ProcessBuilder(command);
+        builder.environment().put(ShardProtocol.SECRET_VARIABLE, secret);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(logFile);
+        logger.info("Starting local worker on port " + port + ", log in "
+                + logFile);
+        return builder.start();
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1,
+                InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private void closeQuietly(@Nonnull WorkerConnection connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            logger.debug("Could not close the connection to "
+                    + connection.getAddress(), e);
+        }
+    }
+
+    /**
+     * A file to be processed by one of the workers
+     */
+    private static class Shard {
+        final int index;
+        final @Nonnull File file;
+        final @Nonnull String jobDescription;
+        int attempts = 0;
+
+        Shard(int index, @Nonnull File file, @Nonnull String jobDescription) {
+            this.index = index;
+            this.file = file;
+            this.jobDescription = jobDescription;
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.sharding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.MSDKException;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFormat;
+import io.github.mzmine.server.ShardProtocol;
+
+/**
+ * Connection of the coordinator to a shard worker, see {@link ShardProtocol}.
+ * A connection processes one job at a time.
+ */
+class WorkerConnection implements Closeable {
+
+    private static final int CONNECT_TIMEOUT = 5000; // ms
+    private static final long RETRY_INTERVAL = 500; // ms
+
+    private final @Nonnull InetSocketAddress address;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    private WorkerConnection(@Nonnull InetSocketAddress address,
+            @Nonnull Socket socket, @Nonnull String secret)
+            throws IOException {
+        this.address = address;
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+        ShardProtocol.writeHello(out);
+        ShardProtocol.readHello(in);
+        ShardProtocol.answerChallenge(in, out, secret);
+    }
+
+    /**
+     * Connects to the worker, retrying until the worker accepts connections.
+     * 
+     * @param process
+     *            process of a local worker which is starting; connecting fails
+     *            as soon as the process has exited
+     * @param timeout
+     *            time in ms after which connecting fails
+     * @param secret
+     *            secret of the worker, see {@link ShardProtocol}
+     */
+    static @Nonnull WorkerConnection connect(
+            @Nonnull InetSocketAddress address, @Nullable Process process,
+            long timeout, @Nonnull String secret)
+            throws IOException, InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            final Socket socket = new Socket();
+            try {
+                socket.connect(address, CONNECT_TIMEOUT);
+                return new WorkerConnection(address, socket, secret);
+            } catch (ConnectException e) {
+                socket.close();
+                if ((process != null) && !process.isAlive())
+                    throw new IOException("Worker process for " + address
+                            + " exited with code " + process.exitValue());
+                if (System.currentTimeMillis() > deadline)
+                    throw e;
+                Thread.sleep(RETRY_INTERVAL);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Sends the job to the worker and waits for its feature tables.
+     * 
+     * @return temporary files with the feature tables in the columnar binary
+     *         format; the caller deletes them
+     * @throws MSDKException
+     *             if the job failed on the worker
+     * @throws IOException
+     *             if the connection to the worker failed
+     */
+    @Nonnull
+    List<File> process(@Nonnull String jobDescription)
+            throws IOException, MSDKException {
+
+        out.writeByte(ShardProtocol.JOB);
+        ShardProtocol.writeString(out, jobDescription);
+        out.flush();
+
+        final byte status = in.readByte();
+        if (status == ShardProtocol.FAILED)
+            throw new MSDKException(ShardProtocol.readString(in));
+        if (status != ShardProtocol.OK)
+            throw new IOException("Unknown response " + status + " from "
+                    + address);
+
+        final int numOfTables = in.readInt();
+        final List<File> tableFiles = new ArrayList<>(numOfTables);
+        try {
+            final byte buffer[] = new byte[65536];
+            for (int i = 0; i < numOfTables; i++) {
+                final File tableFile = File.createTempFile("mzmine",
+                        "." + ColumnarFormat.EXTENSION);
+                tableFiles.add(tableFile);
+                long remaining = in.readLong();
+                try (OutputStream tableOut = new FileOutputStream(tableFile)) {
+                    while (remaining > 0) {
+                        final int length = (int) Math.min(buffer.length,
+                                remaining);
+                        in.readFully(buffer, 0, length);
+                        tableOut.write(buffer, 0, length);
+                        remaining -= length;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            for (File tableFile : tableFiles)
+                tableFile.delete();
+            throw e;
+        }
+        return tableFiles;
+    }
+
+    @Nonnull
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.writeByte(ShardProtocol.CLOSE);
+            out.flush();
+        } finally {
+            socket.close();
+        }
+    }
+
+}
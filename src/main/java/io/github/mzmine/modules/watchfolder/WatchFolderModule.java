@@ -0,0 +1,135 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.watchfolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.gui.mainwindow.MainWindowController;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineRunnableModule;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.project.MZmineProject;
+import javafx.concurrent.Task;
+
+/**
+ * Watch folder module. Processes the raw data files written into a folder as
+ * soon as they are finished.
+ */
+public class WatchFolderModule implements MZmineRunnableModule {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final @Nonnull String MODULE_NAME = "Watch folder";
+    private static final @Nonnull String MODULE_DESCRIPTION = "This module imports and processes new raw data files in a folder as soon as they are finished.";
+
+    @Override
+    public @Nonnull String getName() {
+        return MODULE_NAME;
+    }
+
+    @Override
+    public @Nonnull String getDescription() {
+        return MODULE_DESCRIPTION;
+    }
+
+    @Override
+    public void runModule(@Nonnull MZmineProject project,
+            @Nonnull ParameterSet parameters,
+            @Nonnull Collection<Task<?>> tasks) {
+
+        final File folder = parameters
+                .getParameter(WatchFolderParameters.folder).getValue();
+        final String fileNamePattern = parameters
+                .getParameter(WatchFolderParameters.fileNamePattern)
+                .getValue();
+        final Boolean processExisting = parameters
+                .getParameter(WatchFolderParameters.processExisting)
+                .getValue();
+        final Integer stableTime = parameters
+                .getParameter(WatchFolderParameters.stableTime).getValue();
+        final String lockFileSuffix = parameters
+                .getParameter(WatchFolderParameters.lockFileSuffix)
+                .getValue();
+        final Integer maxParallelFiles = parameters
+                .getParameter(WatchFolderParameters.maxParallelFiles)
+                .getValue();
+        final List<WatchFolderStep> selectedSteps = parameters
+                .getParameter(WatchFolderParameters.steps).getValue();
+
+        if ((folder == null) || !folder.isDirectory()) {
+            final String msg = "Folder " + folder + " does not exist";
+            logger.warn(msg);
+            MZmineGUI.displayMessage(msg);
+            return;
+        }
+
+        // Steps are applied in the order of their definition
+        final List<WatchFolderStep> steps = new ArrayList<>();
+        if (selectedSteps != null)
+            steps.addAll(selectedSteps);
+        steps.sort(Comparator.naturalOrder());
+
+        // Each step runs with the parameters last set in its own dialog, so
+        // check them before any file is processed
+        for (WatchFolderStep step : steps) {
+            final List<String> messages = new ArrayList<>();
+            if (!MZmineCore.getConfiguration()
+                    .getModuleParameters(step.getModuleClass())
+                    .checkParameterValues(messages)) {
+                final String msg = "Please set up the parameters of " + step
+                        + " first: " + String.join(", ", messages);
+                logger.warn(msg);
+                MZmineGUI.displayMessage(msg);
+                return;
+            }
+        }
+
+        WatchFolderTask newTask = new WatchFolderTask(folder, fileNamePattern,
+                processExisting != null && processExisting,
+                stableTime * 1000L, lockFileSuffix, maxParallelFiles, steps);
+
+        // The watching never ends by itself, so it runs on its own thread
+        // instead of occupying a slot of the task scheduler
+        MainWindowController mwc = MZmineGUI.getMainWindowController();
+        if (mwc != null)
+            mwc.getTaskTable().getTasks().add(newTask);
+        Thread watchThread = new Thread(newTask,
+                "Watch folder " + folder.getName());
+        watchThread.setDaemon(true);
+        watchThread.start();
+
+    }
+
+    @Override
+    public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
+        return WatchFolderParameters.class;
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.watchfolder;
+
+import java.util.Arrays;
+
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.ParameterValidator;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.MultiChoiceParameter;
+import io.github.mzmine.parameters.parametertypes.StringParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
+
+public class WatchFolderParameters extends ParameterSet {
+
+    public static final FileNameParameter folder = new FileNameParameter(
+            "Folder", "Folder where the instrument writes the raw data files",
+            "Input files", ParameterValidator.createNonEmptyValidator(),
+            FileNameParameter.Type.DIRECTORY);
+
+    public static final StringParameter fileNamePattern = new StringParameter(
+            "File name pattern",
+            "Only files matching this pattern are processed. Wildcards * and ? are supported.",
+            "Input files", ParameterValidator.createNonEmptyValidator(),
+            "*.mzML");
+
+    public static final BooleanParameter processExisting = new BooleanParameter(
+            "Process existing files",
+            "Also process the matching files which are already in the folder when the watching starts",
+            "Input files", false);
+
+    public static final IntegerParameter stableTime = new IntegerParameter(
+            "Stable time (s)",
+            "A file is considered finished when its size and modification time have not changed for this number of seconds",
+            "Finished files", (value, messages) -> {
+                if ((value == null) || (value < 1)) {
+                    messages.add("Stable time must be at least 1 s");
+                    return false;
+                }
+                return true;
+            } , 10);
+
+    public static final StringParameter lockFileSuffix = new StringParameter(
+            "Lock file suffix",
+            "A file is not processed while a file with the same name plus this suffix exists in the folder (e.g. sample.mzML.lock). Leave empty to rely on the stable time only.",
+            "Finished files", ".lock");
+
+    public static final IntegerParameter maxParallelFiles = new IntegerParameter(
+            "Max. files in parallel",
+            "Maximum number of files processed at the same time. The tasks of the processing steps are further limited by the task scheduler.",
+            "Processing", (value, messages) -> {
+                if ((value == null) || (value < 1)) {
+                    messages.add("At least 1 file must be processed at a time");
+                    return false;
+                }
+                return true;
+            } , 2);
+
+    public static final MultiChoiceParameter<WatchFolderStep> steps = new MultiChoiceParameter<>(
+            "Processing steps",
+            "Steps applied to each file after the import, in the listed order. Each step uses the parameters last set in its own dialog; the input files and feature tables are those created by the previous step.",
+            "Processing", Arrays.asList(WatchFolderStep.values()));
+
+    public WatchFolderParameters() {
+        super(folder, fileNamePattern, processExisting, stableTime,
+                lockFileSuffix, maxParallelFiles, steps);
+    }
+
+}
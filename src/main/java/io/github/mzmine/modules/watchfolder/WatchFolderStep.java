@@ -0,0 +1,110 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.watchfolder;
+
+import javax.annotation.Nonnull;
+
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.featuredetection.chromatogrambuilder.ChromatogramBuilderModule;
+import io.github.mzmine.modules.featuredetection.msmsdetection.MsMsDetectionModule;
+import io.github.mzmine.modules.featuredetection.srmdetection.SrmDetectionModule;
+import io.github.mzmine.modules.featuredetection.targeteddetection.TargetedDetectionModule;
+import io.github.mzmine.modules.filtering.combinedfilter.CombinedFilterModule;
+import io.github.mzmine.modules.filtering.featurefilter.FeatureFilterModule;
+import io.github.mzmine.modules.filtering.rowfilter.RowFilterModule;
+import io.github.mzmine.modules.identification.ms.localdatabasesearch.LocalDatabaseSearchModule;
+import io.github.mzmine.modules.io.columnarexport.ColumnarExportModule;
+import io.github.mzmine.modules.io.csvexport.CsvExportModule;
+import io.github.mzmine.modules.io.mztabexport.MzTabExportModule;
+import io.github.mzmine.modules.isotopes.isotopegrouper.IsotopeGrouperModule;
+import io.github.mzmine.modules.rawdata.centroiding.binning.BinningCentroidingModule;
+import io.github.mzmine.modules.rawdata.centroiding.exactmass.ExactMassCentroidingModule;
+import io.github.mzmine.modules.rawdata.centroiding.localmaxima.LocalMaxCentroidingModule;
+import io.github.mzmine.modules.rawdata.centroiding.recursive.RecursiveCentroidingModule;
+import io.github.mzmine.modules.rawdata.centroiding.wavelet.WaveletCentroidingModule;
+
+/**
+ * Processing steps which can be applied to each file of a watched folder. The
+ * selected steps are run in the order of this enum, after the import of the
+ * file.
+ */
+public enum WatchFolderStep {
+
+    BINNING_CENTROIDING("Centroiding - Binning",
+            BinningCentroidingModule.class), //
+    LOCAL_MAXIMA_CENTROIDING("Centroiding - Local Maxima",
+            LocalMaxCentroidingModule.class), //
+    EXACT_MASS_CENTROIDING("Centroiding - Exact Mass",
+            ExactMassCentroidingModule.class), //
+    RECURSIVE_CENTROIDING("Centroiding - Recursive",
+            RecursiveCentroidingModule.class), //
+    WAVELET_CENTROIDING("Centroiding - Wavelet",
+            WaveletCentroidingModule.class), //
+    CHROMATOGRAM_BUILDER("Chromatogram Builder",
+            ChromatogramBuilderModule.class), //
+    TARGETED_DETECTION("Targeted Feature Detection",
+            TargetedDetectionModule.class), //
+    MSMS_DETECTION("MS/MS Feature List Builder", MsMsDetectionModule.class), //
+    SRM_DETECTION("SRM Feature List Builder", SrmDetectionModule.class), //
+    ISOTOPE_GROUPER("Isotope Grouper", IsotopeGrouperModule.class), //
+    FEATURE_FILTER("Feature Filter", FeatureFilterModule.class), //
+    ROW_FILTER("Row Filter", RowFilterModule.class), //
+    COMBINED_FILTER("Combined Filter", CombinedFilterModule.class), //
+    LOCAL_DATABASE_SEARCH("Local Database Search",
+            LocalDatabaseSearchModule.class), //
+    CSV_EXPORT("Export - CSV", CsvExportModule.class, true), //
+    MZTAB_EXPORT("Export - mzTab", MzTabExportModule.class, true), //
+    COLUMNAR_EXPORT("Export - Columnar binary (mzft)",
+            ColumnarExportModule.class, true);
+
+    private final @Nonnull String stringValue;
+    private final @Nonnull Class<? extends MZmineProcessingModule> moduleClass;
+    private final boolean writesFiles;
+
+    WatchFolderStep(@Nonnull String stringValue,
+            @Nonnull Class<? extends MZmineProcessingModule> moduleClass) {
+        this(stringValue, moduleClass, false);
+    }
+
+    WatchFolderStep(@Nonnull String stringValue,
+            @Nonnull Class<? extends MZmineProcessingModule> moduleClass,
+            boolean writesFiles) {
+        this.stringValue = stringValue;
+        this.moduleClass = moduleClass;
+        this.writesFiles = writesFiles;
+    }
+
+    public @Nonnull Class<? extends MZmineProcessingModule> getModuleClass() {
+        return moduleClass;
+    }
+
+    /**
+     * @return whether the step writes files to paths set in its parameters
+     */
+    public boolean writesFiles() {
+        return writesFiles;
+    }
+
+    @Override
+    public String toString() {
+        return stringValue;
+    }
+
+}
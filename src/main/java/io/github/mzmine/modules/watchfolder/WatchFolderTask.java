@@ -0,0 +1,333 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.watchfolder;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.MZmineProcessingStepImpl;
+import io.github.mzmine.modules.rawdata.rawdataimport.RawDataImportModule;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.taskcontrol.MZmineTask;
+import io.github.mzmine.taskcontrol.ProcessingPipeline;
+import io.github.mzmine.util.TextUtils;
+import javafx.concurrent.Task;
+
+/**
+ * Watches a folder for new raw data files. A file is processed once its size
+ * and modification time have been stable for the configured time and no lock
+ * file exists for it. Each file is imported and passed through the processing
+ * steps by a {@link ProcessingPipeline} on its own pipeline thread, with at
+ * most the configured number of files in progress.
+ *
+ * Cancelling this task stops the watching and the pipelines; tasks which have
+ * already been submitted for a step run to completion.
+ */
+public class WatchFolderTask extends Task<Object> implements MZmineTask {
+
+    private static final long POLL_INTERVAL = 1000; // ms
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull File folder;
+    private final @Nonnull String fileNameRegex;
+    private final boolean processExisting;
+    private final long stableTime;
+    private final @Nullable String lockFileSuffix;
+    private final int maxParallelFiles;
+    private final @Nonnull List<WatchFolderStep> steps;
+
+    // Files which have not been stable long enough yet, accessed only by the
+    // watching thread
+    private final Map<Path, FileState> candidates = new LinkedHashMap<>();
+    private final Set<Path> submittedFiles = new HashSet<>();
+
+    private final AtomicInteger runningFiles = new AtomicInteger(),
+            processedFiles = new AtomicInteger(),
+            failedFiles = new AtomicInteger();
+
+    /**
+     * @param stableTime
+     *            time in ms for which a file must not change before it is
+     *            processed
+     * @param steps
+     *            processing steps, in the order they are applied
+     */
+    public WatchFolderTask(@Nonnull File folder,
+            @Nonnull String fileNamePattern, boolean processExisting,
+            long stableTime, @Nullable String lockFileSuffix,
+            int maxParallelFiles, @Nonnull List<WatchFolderStep> steps) {
+        this.folder = folder;
+        this.fileNameRegex = TextUtils.createRegexFromWildcards(fileNamePattern);
+        this.processExisting = processExisting;
+        this.stableTime = stableTime;
+        this.lockFileSuffix = Strings.emptyToNull(lockFileSuffix);
+        this.maxParallelFiles = maxParallelFiles;
+        this.steps = steps;
+        refreshStatus();
+    }
+
+    @Override
+    public void refreshStatus() {
+        // The task has no defined end
+        updateProgress(-1, 1.0);
+        updateTitle("Watching folder " + folder.getName());
+        String message = processedFiles.get() + " files processed, "
+                + runningFiles.get() + " in progress";
+        if (failedFiles.get() > 0)
+            message += ", " + failedFiles.get() + " failed";
+        updateMessage(message);
+    }
+
+    @Override
+    protected Object call() throws Exception {
+
+        final Path dir = folder.toPath();
+        final ExecutorService pipelineThreads = Executors
+                .newFixedThreadPool(maxParallelFiles, r -> {
+                    Thread thread = new Thread(r, "Watch folder pipeline");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        try (WatchService watchService = FileSystems.getDefault()
+                .newWatchService()) {
+
+            dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+            logger.info("Watching folder " + folder + " for files matching "
+                    + fileNameRegex);
+
+            if (processExisting)
+                addFolderContents(dir);
+            else
+                markFolderContentsSubmitted(dir);
+
+            while (!isCancelled()) {
+                final WatchKey key = watchService.poll(POLL_INTERVAL,
+                        TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            // Events were lost, look at the whole folder
+                            addFolderContents(dir);
+                            continue;
+                        }
+                        addCandidate(dir.resolve((Path) event.context()));
+                    }
+                    if (!key.reset()) {
+                        final String msg = "Folder " + folder
+                                + " is no longer accessible, watching stopped";
+                        logger.error(msg);
+                        MZmineGUI.displayMessage(msg);
+                        break;
+                    }
+                }
+                submitStableFiles(pipelineThreads);
+            }
+
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Cancelled
+        } catch (IOException e) {
+            final String msg = "Cannot watch folder " + folder + ": "
+                    + e.getMessage();
+            logger.error(msg, e);
+            MZmineGUI.displayMessage(msg);
+        } finally {
+            pipelineThreads.shutdownNow();
+            logger.info("Stopped watching folder " + folder);
+        }
+
+        return null;
+    }
+
+    private void addFolderContents(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files)
+                addCandidate(file);
+        }
+    }
+
+    /**
+     * Files that exist when the watching starts are not processed, even if
+     * they are modified later.
+     */
+    private void markFolderContentsSubmitted(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files)
+                submittedFiles.add(file);
+        }
+    }
+
+    private void addCandidate(Path file) {
+        if (submittedFiles.contains(file) || candidates.containsKey(file))
+            return;
+        if (!file.getFileName().toString().matches(fileNameRegex))
+            return;
+        candidates.put(file, new FileState());
+    }
+
+    /**
+     * Submits the pipeline of each candidate which is finished, and updates
+     * the state of the others.
+     */
+    private void submitStableFiles(ExecutorService pipelineThreads) {
+        final long now = System.currentTimeMillis();
+        final Iterator<Map.Entry<Path, FileState>> it = candidates.entrySet()
+                .iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Path, FileState> entry = it.next();
+            final Path file = entry.getKey();
+            final FileState state = entry.getValue();
+
+            long size, lastModified;
+            try {
+                if (!Files.isRegularFile(file)) {
+                    it.remove();
+                    continue;
+                }
+                size = Files.size(file);
+                lastModified = Files.getLastModifiedTime(file).toMillis();
+            } catch (IOException e) {
+                // Deleted in the meantime
+                it.remove();
+                continue;
+            }
+
+            if ((size != state.size) || (lastModified != state.lastModified)) {
+                state.size = size;
+                state.lastModified = lastModified;
+                state.lastChange = now;
+                continue;
+            }
+            if ((now - state.lastChange < stableTime) || isLocked(file))
+                continue;
+
+            it.remove();
+            submittedFiles.add(file);
+            runningFiles.incrementAndGet();
+            pipelineThreads.execute(() -> processFile(file));
+        }
+    }
+
+    /**
+     * @return true if a lock file exists for the file, or the file cannot be
+     *         opened because the instrument still holds it
+     */
+    private boolean isLocked(Path file) {
+        if ((lockFileSuffix != null) && Files.exists(file
+                .resolveSibling(file.getFileName() + lockFileSuffix)))
+            return true;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Imports the file and applies the processing steps. Runs on a pipeline
+     * thread.
+     */
+    private void processFile(Path file) {
+        final String fileName = file.getFileName().toString();
+        logger.info("Processing new file " + file);
+        boolean succeeded = false;
+        try {
+            // Each step uses the parameters last set in its own dialog
+            final ParameterSet importParameters = MZmineCore.getConfiguration()
+                    .getModuleParameters(RawDataImportModule.class);
+            final List<MZmineProcessingStep<MZmineProcessingModule>> pipelineSteps = new ArrayList<>();
+            for (WatchFolderStep step : steps) {
+                pipelineSteps.add(new MZmineProcessingStepImpl<>(
+                        MZmineCore.getModuleInstance(step.getModuleClass()),
+                        MZmineCore.getConfiguration()
+                                .getModuleParameters(step.getModuleClass())));
+            }
+
+            final ProcessingPipeline pipeline = new ProcessingPipeline(
+                    Collections.singletonList(file.toFile()), importParameters,
+                    pipelineSteps);
+            succeeded = pipeline.run();
+            if (succeeded)
+                logger.info("Finished processing " + fileName);
+            else
+                logger.warn("Processing of " + fileName + " stopped at "
+                        + pipeline.getCurrentStep() + ": "
+                        + pipeline.getErrorMessage());
+        } catch (InterruptedException e) {
+            logger.info("Processing of " + fileName + " cancelled");
+        } catch (RuntimeException e) {
+            logger.error("Processing of " + fileName + " failed", e);
+        } finally {
+            runningFiles.decrementAndGet();
+            if (succeeded)
+                processedFiles.incrementAndGet();
+            else
+                failedFiles.incrementAndGet();
+        }
+    }
+
+    /**
+     * Size and modification time of a file when it was last seen changing
+     */
+    private static class FileState {
+        long size = -1, lastModified = -1, lastChange;
+    }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package io.github.mzmine.parameters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import javafx.animation.PauseTransition;
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.scene.control.Label;
+import javafx.scene.layout.BorderPane;
+import javafx.util.Duration;
+
+/**
+ * Live preview of a module, shown next to its parameters in the
+ * {@link ParameterSetupDialog}. The preview runs the algorithm of the module on
+ * a small part of the data, selected by controls of the preview itself, so
+ * that the effect of the parameter values can be seen without running the
+ * whole module.
+ * 
+ * The preview is computed again shortly after the parameter values or the
+ * selected data change; a computation which is still running at that time is
+ * cancelled. Computations run on their own thread, outside of the task
+ * scheduler.
+ * 
+ * @param <ResultType>
+ *            result of the computation, displayed by
+ *            {@link #showPreview(Object)}
+ */
+public abstract class ParameterPreview<ResultType> extends BorderPane {
+
+    // Time without further edits after which the preview is computed
+    private static final Duration UPDATE_DELAY = Duration.millis(200);
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Label statusLabel = new Label();
+    private final PauseTransition updateDelay = new PauseTransition(
+            UPDATE_DELAY);
+
+    private @Nullable ParameterSet parameters;
+    private @Nullable Element parameterValues;
+    private @Nullable PreviewTask runningTask;
+
+    protected ParameterPreview() {
+        setPrefSize(500.0, 400.0);
+        statusLabel.setPadding(new Insets(5.0));
+        setBottom(statusLabel);
+        updateDelay.setOnFinished(e -> startComputation());
+    }
+
+    /**
+     * Computes the preview. Called on the preview thread.
+     * 
+     * @param parameters
+     *            copy of the parameter values currently entered in the dialog
+     * @return the result to display, or null if there is nothing to show
+     */
+    protected abstract @Nullable ResultType computePreview(
+            @Nonnull ParameterSet parameters, @Nonnull PreviewTask task)
+            throws Exception;
+
+    /**
+     * Displays the result of {@link #computePreview}. Called on the JavaFX
+     * thread.
+     */
+    protected abstract void showPreview(@Nonnull ResultType result);
+
+    /**
+     * Releases the data held by the preview. Called on the JavaFX thread when
+     * the dialog is closed.
+     */
+    protected void dispose() {
+    }
+
+    /**
+     * Sets the parameter values entered in the dialog. The preview is updated
+     * if they differ from the previous values.
+     */
+    void setParameters(@Nonnull ParameterSet parameters) {
+        final Element values = saveValues(parameters);
+        if ((parameterValues != null) && parameterValues.isEqualNode(values))
+            return;
+        this.parameters = parameters;
+        this.parameterValues = values;
+        update();
+    }
+
+    /**
+     * Schedules an update of the preview, e.g. when other data was selected.
+     * Must be called on the JavaFX thread.
+     */
+    protected final void update() {
+        cancelComputation();
+        updateDelay.playFromStart();
+    }
+
+    /**
+     * Stops the preview, cancelling a running computation. The preview is
+     * computed again on the next call of {@link #setParameters}.
+     */
+    void stop() {
+        updateDelay.stop();
+        cancelComputation();
+        parameterValues = null;
+    }
+
+    protected final void setStatus(@Nonnull String status) {
+        statusLabel.setText(status);
+    }
+
+    private void cancelComputation() {
+        if (runningTask != null) {
+            runningTask.cancel();
+            runningTask = null;
+        }
+    }
+
+    private void startComputation() {
+        if (parameters == null)
+            return;
+
+        final List<String> errorMessages = new ArrayList<>();
+        if (!parameters.checkParameterValues(errorMessages)) {
+            setStatus(String.join(", ", errorMessages));
+            return;
+        }
+
+        final PreviewTask task = new PreviewTask(parameters);
+        runningTask = task;
+        final long startTime = System.currentTimeMillis();
+        setStatus("Computing preview...");
+
+        task.setOnSucceeded(e -> {
+            if (task != runningTask)
+                return;
+            runningTask = null;
+            final ResultType result = task.getValue();
+            if (result == null)
+                return;
+            showPreview(result);
+            setStatus("Preview computed in "
+                    + (System.currentTimeMillis() - startTime) + " ms");
+        });
+        task.setOnFailed(e -> {
+            if (task != runningTask)
+                return;
+            runningTask = null;
+            final Throwable exception = task.getException();
+            logger.warn("Preview failed", exception);
+            setStatus("Preview failed: " + exception.getMessage());
+        });
+
+        final Thread thread = new Thread(task, "Parameter preview");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static Element saveValues(ParameterSet parameters) {
+        try {
+            final Document document = DocumentBuilderFactory.newInstance()
+                    .newDocumentBuilder().newDocument();
+            final Element element = document.createElement("parameters");
+            parameters.saveValuesToXML(element);
+            return element;
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * One computation of the preview. MSDK methods run through
+     * {@link #execute(MSDKMethod)} are cancelled together with the
+     * computation.
+     */
+    protected final class PreviewTask extends Task<ResultType> {
+
+        private final @Nonnull ParameterSet parameters;
+        private volatile MSDKMethod<?> method;
+
+        private PreviewTask(@Nonnull ParameterSet parameters) {
+            this.parameters = parameters;
+        }
+
+        @Override
+        protected ResultType call() throws Exception {
+            return computePreview(parameters, this);
+        }
+
+        /**
+         * Runs the method on the current thread.
+         * 
+         * @return the result of the method, or null if the computation was
+         *         cancelled
+         */
+        public @Nullable <T> T execute(@Nonnull MSDKMethod<T> method)
+                throws MSDKException {
+            this.method = method;
+            if (isCancelled())
+                return null;
+            final T result = method.execute();
+            return isCancelled() ? null : result;
+        }
+
+        @Override
+        protected void cancelled() {
+            final MSDKMethod<?> m = method;
+            if (m != null)
+                m.cancel();
+        }
+
+    }
+
+}
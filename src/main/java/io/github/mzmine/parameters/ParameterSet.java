@@ -20,10 +20,12 @@
 package io.github.mzmine.parameters;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
@@ -87,15 +89,12 @@ public class ParameterSet implements Iterable<Parameter<?>>, Cloneable {
             e.printStackTrace();
             return null;
         }
-        for (Parameter<?> param : parameters) {
-            Object value = param.getValue();
-            Parameter<?> newParam = newSet.getParameter(param);
-            if (newParam == null)
-                throw new IllegalStateException(
-                        "Cannot clone parameter set of type "
-                                + this.getClass());
-            newParam.setValue(value);
-        }
+        // The parameters of a parameter set class are static fields shared by
+        // all its instances, so they are cloned as well; otherwise copies used
+        // at the same time would overwrite each other's values
+        newSet.parameters.clear();
+        for (Parameter<?> param : parameters)
+            newSet.parameters.add(param.clone());
         return newSet;
     }
 
@@ -103,6 +102,43 @@ public class ParameterSet implements Iterable<Parameter<?>>, Cloneable {
         return parameters;
     }
 
+    /**
+     * Checks the values of all parameters with their validators.
+     * 
+     * @param errorMessages
+     *            collection where the messages of the invalid values are added,
+     *            prefixed with the parameter names
+     * @return true if all values are valid
+     */
+    @SuppressWarnings("unchecked")
+    public boolean checkParameterValues(
+            @Nonnull Collection<String> errorMessages) {
+        boolean allValid = true;
+        for (Parameter<?> param : parameters) {
+            final ParameterValidator<Object> validator = (ParameterValidator<Object>) param
+                    .getValidator();
+            if (validator == null)
+                continue;
+            final List<String> messages = new ArrayList<>();
+            if (!validator.checkValue(param.getValue(), messages)) {
+                allValid = false;
+                for (String message : messages)
+                    errorMessages.add(param.getName() + ": " + message);
+            }
+        }
+        return allValid;
+    }
+
+    /**
+     * Creates the live preview shown in the setup dialog. Parameter sets of
+     * modules which support a preview override this method.
+     * 
+     * @return a new preview, or null if this parameter set has none
+     */
+    public @Nullable ParameterPreview<?> createPreview() {
+        return null;
+    }
+
     public ButtonType showSetupDialog(@Nullable String title) {
         ParameterSetupDialog dialog = new ParameterSetupDialog(this, title);
         Optional<ButtonType> result = dialog.showAndWait();
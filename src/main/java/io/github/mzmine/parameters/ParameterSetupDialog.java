@@ -31,13 +31,23 @@ import org.controlsfx.validation.ValidationSupport;
 
 import io.github.mzmine.gui.MZmineGUI;
 import io.github.mzmine.gui.helpwindow.HelpWindow;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
+import javafx.event.Event;
+import javafx.event.EventHandler;
+import javafx.geometry.Insets;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonBar.ButtonData;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.SplitPane;
 import javafx.scene.image.Image;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.BorderPane;
 import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
 
 /**
  * Parameter setup dialog
@@ -78,7 +88,13 @@ public class ParameterSetupDialog extends Alert {
         // Add ParmeterSheetView to edit the parameters
         ParameterSheetView sheet = new ParameterSheetView(parameters,
                 validationSupport);
-        getDialogPane().setContent(sheet);
+
+        // Add the live preview, if the module has one
+        final ParameterPreview<?> preview = parameters.createPreview();
+        if (preview != null)
+            setupPreview(parameters, sheet, preview);
+        else
+            getDialogPane().setContent(sheet);
 
         // When the user presses the OK button, we need to commit all the
         // changes in the editors to the actual parameters
@@ -108,6 +124,65 @@ public class ParameterSetupDialog extends Alert {
 
     }
 
+    private void setupPreview(ParameterSet parameters,
+            ParameterSheetView sheet, ParameterPreview<?> preview) {
+
+        final CheckBox previewCheckBox = new CheckBox("Show preview");
+        final BorderPane content = new BorderPane(sheet);
+        content.setBottom(previewCheckBox);
+        BorderPane.setMargin(previewCheckBox, new Insets(5.0, 0.0, 0.0, 0.0));
+        final SplitPane splitPane = new SplitPane();
+        getDialogPane().setContent(content);
+
+        previewCheckBox.selectedProperty()
+                .addListener((prop, oldValue, showPreview) -> {
+                    if (showPreview) {
+                        splitPane.getItems().setAll(sheet, preview);
+                        content.setCenter(splitPane);
+                        preview.setParameters(
+                                getEditedParameters(parameters, sheet));
+                    } else {
+                        preview.stop();
+                        content.setCenter(sheet);
+                    }
+                    getDialogPane().getScene().getWindow().sizeToScene();
+                });
+
+        // The editors do not report their changes, so the edited values are
+        // passed to the preview after every input in the parameter sheet; the
+        // preview is only computed again if they have actually changed
+        final EventHandler<Event> inputHandler = e -> {
+            if (previewCheckBox.isSelected())
+                Platform.runLater(() -> preview
+                        .setParameters(getEditedParameters(parameters, sheet)));
+        };
+        sheet.addEventFilter(KeyEvent.KEY_RELEASED, inputHandler);
+        sheet.addEventFilter(MouseEvent.MOUSE_RELEASED, inputHandler);
+        sheet.addEventFilter(ActionEvent.ACTION, inputHandler);
+
+        getDialogPane().getScene().getWindow()
+                .addEventHandler(WindowEvent.WINDOW_HIDDEN, e -> {
+                    preview.stop();
+                    preview.dispose();
+                });
+
+    }
+
+    /**
+     * @return a copy of the parameters with the values currently shown in the
+     *         editors
+     */
+    private static ParameterSet getEditedParameters(ParameterSet parameters,
+            ParameterSheetView sheet) {
+        final ParameterSet editedParameters = parameters.clone();
+        for (Parameter<?> parameter : editedParameters) {
+            PropertyEditor<?> editor = sheet.getEditorForParameter(parameter);
+            if (editor != null)
+                parameter.setValue(editor.getValue());
+        }
+        return editedParameters;
+    }
+
     private void setupHelpButton(URL helpURL) {
 
         // Add a Help button
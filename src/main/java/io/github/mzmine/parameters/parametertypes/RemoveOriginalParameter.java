@@ -0,0 +1,46 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin
+ * St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.parameters.parametertypes;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Parameter telling whether a module removes its input data from the project
+ * once the new data has been created. Modules which run a step several times
+ * on the same inputs, such as the parameter sweep, find these parameters by
+ * their type and turn them off.
+ */
+public class RemoveOriginalParameter extends BooleanParameter {
+
+    public RemoveOriginalParameter(@Nonnull String name,
+            @Nonnull String description, @Nonnull String category,
+            @Nullable Boolean defaultValue) {
+        super(name, description, category, defaultValue);
+    }
+
+    @Override
+    public @Nonnull RemoveOriginalParameter clone() {
+        RemoveOriginalParameter copy = new RemoveOriginalParameter(getName(),
+                getDescription(), getCategory(), getValue());
+        return copy;
+    }
+
+}
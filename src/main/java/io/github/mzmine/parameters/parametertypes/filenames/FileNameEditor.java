@@ -33,6 +33,7 @@ import javafx.scene.control.Button;
 import javafx.scene.control.Control;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.BorderPane;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Window;
 
@@ -62,6 +63,23 @@ public class FileNameEditor extends BorderPane
         setRight(browseButton);
         setMargin(browseButton, new Insets(0, 0, 0, 10.0));
         browseButton.setOnAction(e -> {
+            if (fileNameParameter
+                    .getFileNameParameterType() == FileNameParameter.Type.DIRECTORY) {
+                DirectoryChooser directoryChooser = new DirectoryChooser();
+                File lastOpenPath = fileNameParameter.getLastOpenPath();
+                if (lastOpenPath != null)
+                    directoryChooser.setInitialDirectory(lastOpenPath);
+                directoryChooser.setTitle("Find folder");
+                File selectedDir = directoryChooser
+                        .showDialog(this.getScene().getWindow());
+                if (selectedDir != null) {
+                    textField.setText(selectedDir.getPath());
+                    fileNameParameter
+                            .setLastOpenPath(selectedDir.getParentFile());
+                }
+                return;
+            }
+
             List<FileChooser.ExtensionFilter> extensions = fileNameParameter
                     .getExtensions();
             FileChooser fileChooser = new FileChooser();
@@ -38,7 +38,7 @@ import javafx.stage.FileChooser;
 public class FileNameParameter extends AbstractParameter<File> {
 
     public enum Type {
-        OPEN, SAVE
+        OPEN, SAVE, DIRECTORY
     }
 
     private static final String fileNameElement = "filename";
@@ -20,6 +20,7 @@
 package io.github.mzmine.parameters.parametertypes.selectors;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.annotation.concurrent.Immutable;
@@ -32,6 +33,7 @@ import io.github.msdk.datamodel.rawdata.MsScan;
 import io.github.msdk.datamodel.rawdata.PolarityType;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.mzmine.util.TextUtils;
+import io.github.mzmine.util.rawdata.ScanSummary;
 
 @Immutable
 public class ScanSelection {
@@ -93,6 +95,17 @@ public class ScanSelection {
 
     public List<MsScan> getMatchingScans(RawDataFile dataFile) {
 
+        final ScanSummary summary = ScanSummary.getIfPresent(dataFile);
+        if (summary != null) {
+            final List<MsScan> scans = dataFile.getScans();
+            final int indexes[] = getMatchingScanIndexes(dataFile, summary);
+            final List<MsScan> matchingScans = new ArrayList<>(
+                    indexes.length);
+            for (int index : indexes)
+                matchingScans.add(scans.get(index));
+            return matchingScans;
+        }
+
         final List<MsScan> matchingScans = new ArrayList<>();
 
         for (MsScan scan : dataFile.getScans()) {
@@ -137,4 +150,60 @@ public class ScanSelection {
         return matchingScans;
 
     }
+
+    /**
+     * Finds the matching scans using the scan summary of the data file. Only
+     * the spectrum type and scan definition, which are not part of the
+     * summary, are checked on the scans themselves.
+     * 
+     * @return indexes of the matching scans in {@link RawDataFile#getScans()}
+     */
+    public int[] getMatchingScanIndexes(RawDataFile dataFile,
+            ScanSummary summary) {
+
+        final List<MsScan> scans = dataFile.getScans();
+        final String regex = Strings.isNullOrEmpty(scanDefinition) ? null
+                : TextUtils.createRegexFromWildcards(scanDefinition);
+        final int matchingIndexes[] = new int[summary.getNumberOfScans()];
+        int numberOfMatches = 0;
+
+        for (int i = 0; i < summary.getNumberOfScans(); i++) {
+
+            if ((msLevel != null) && (msLevel != summary.getMsLevel(i)))
+                continue;
+
+            if ((polarity != null) && (polarity != summary.getPolarity(i)))
+                continue;
+
+            if ((scanNumberRange != null)
+                    && (!scanNumberRange.contains(summary.getScanNumber(i))))
+                continue;
+
+            if ((scanRTRange != null) && (!scanRTRange
+                    .contains((double) summary.getRetentionTime(i))))
+                continue;
+
+            if ((spectrumType != null)
+                    && (!spectrumType.equals(scans.get(i).getSpectrumType())))
+                continue;
+
+            if (regex != null) {
+
+                final String actualScanDefition = scans.get(i)
+                        .getScanDefinition();
+
+                if (Strings.isNullOrEmpty(actualScanDefition))
+                    continue;
+
+                if (!actualScanDefition.matches(regex))
+                    continue;
+
+            }
+
+            matchingIndexes[numberOfMatches++] = i;
+        }
+
+        return Arrays.copyOf(matchingIndexes, numberOfMatches);
+
+    }
 }
\ No newline at end of file
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.util.DataSizeUtils;
+
+/**
+ * Reference counting for raw data files and feature tables. Every holder of a
+ * data object (the project, a running module, an open plot window, a feature
+ * table built from raw data) acquires a reference under its own owner object
+ * and releases it when done. When the last reference is released, the data
+ * object is disposed, which frees its data point store (temporary files and
+ * heap buffers) immediately instead of at shutdown.
+ */
+public class DataReferenceTracker {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Map<Object, ReferencedData> entries = new IdentityHashMap<>();
+
+    /**
+     * Adds a reference from the given owner to the data object. The data
+     * object starts to be tracked if it was not yet. Acquiring the same data
+     * object twice by the same owner has no further effect.
+     */
+    public void acquire(@Nonnull Object data, @Nonnull Object owner) {
+        checkDataType(data);
+        Preconditions.checkNotNull(owner);
+        acquire(data, owner, false);
+    }
+
+    /**
+     * Adds a reference from the given owner to the data object only if the
+     * data object is already tracked, e.g. because it is part of the project.
+     * 
+     * @return true if the reference was added
+     */
+    public boolean acquireIfTracked(@Nonnull Object data,
+            @Nonnull Object owner) {
+        checkDataType(data);
+        Preconditions.checkNotNull(owner);
+        return acquire(data, owner, true);
+    }
+
+    /**
+     * Removes the reference from the given owner to the data object. If this
+     * was the last reference, the data object is disposed.
+     */
+    public void release(@Nonnull Object data, @Nonnull Object owner) {
+        Preconditions.checkNotNull(data);
+        Preconditions.checkNotNull(owner);
+
+        final ReferencedData disposed;
+        synchronized (entries) {
+            ReferencedData entry = entries.get(data);
+            if (entry == null || !entry.owners.remove(owner))
+                return;
+            if (!entry.owners.isEmpty())
+                return;
+            entries.remove(data);
+            disposed = entry;
+        }
+        dispose(disposed);
+    }
+
+    /**
+     * Removes all references held by the given owner.
+     */
+    public void releaseAll(@Nonnull Object owner) {
+        Preconditions.checkNotNull(owner);
+
+        final List<ReferencedData> disposed = new ArrayList<>();
+        synchronized (entries) {
+            Iterator<ReferencedData> it = entries.values().iterator();
+            while (it.hasNext()) {
+                ReferencedData entry = it.next();
+                if (entry.owners.remove(owner) && entry.owners.isEmpty()) {
+                    it.remove();
+                    disposed.add(entry);
+                }
+            }
+        }
+        for (ReferencedData entry : disposed)
+            dispose(entry);
+    }
+
+    /**
+     * @return number of references currently held on the data object
+     */
+    public int getReferenceCount(@Nonnull Object data) {
+        synchronized (entries) {
+            ReferencedData entry = entries.get(data);
+            return entry == null ? 0 : entry.owners.size();
+        }
+    }
+
+    /**
+     * Returns a snapshot of all tracked data objects with their reference
+     * counts and estimated number of bytes held, largest first. The sizes of
+     * data objects acquired since the last call are estimated on the calling
+     * thread, which may take a while for large feature tables.
+     */
+    public @Nonnull List<DataReferenceInfo> getReferences() {
+        final List<ReferencedData> snapshot;
+        final int referenceCounts[], versions[];
+        final long estimates[];
+        synchronized (entries) {
+            snapshot = new ArrayList<>(entries.values());
+            referenceCounts = new int[snapshot.size()];
+            versions = new int[snapshot.size()];
+            estimates = new long[snapshot.size()];
+            for (int i = 0; i < snapshot.size(); i++) {
+                referenceCounts[i] = snapshot.get(i).owners.size();
+                versions[i] = snapshot.get(i).version;
+                estimates[i] = snapshot.get(i).estimatedBytes;
+            }
+        }
+
+        // Estimate outside of the lock, so that acquiring and releasing
+        // references is never blocked by it
+        final List<DataReferenceInfo> result = new ArrayList<>();
+        for (int i = 0; i < snapshot.size(); i++) {
+            final ReferencedData entry = snapshot.get(i);
+            if (estimates[i] < 0) {
+                estimates[i] = estimateBytes(entry.data);
+                synchronized (entries) {
+                    if (entry.version == versions[i])
+                        entry.estimatedBytes = estimates[i];
+                }
+            }
+            result.add(new DataReferenceInfo(getName(entry.data),
+                    referenceCounts[i], estimates[i]));
+        }
+        Collections.sort(result, (a, b) -> Long
+                .compare(b.getEstimatedBytes(), a.getEstimatedBytes()));
+        return ImmutableList.copyOf(result);
+    }
+
+    /**
+     * @return estimated total number of bytes held by all tracked data
+     *         objects, see {@link #getReferences()}
+     */
+    public long getTotalBytesHeld() {
+        long total = 0;
+        for (DataReferenceInfo reference : getReferences())
+            total += reference.getEstimatedBytes();
+        return total;
+    }
+
+    private boolean acquire(Object data, Object owner, boolean onlyIfTracked) {
+        final boolean newEntry;
+        synchronized (entries) {
+            ReferencedData entry = entries.get(data);
+            newEntry = (entry == null);
+            if (newEntry) {
+                if (onlyIfTracked)
+                    return false;
+                entry = new ReferencedData(data);
+                entries.put(data, entry);
+            }
+            entry.owners.add(owner);
+            // Data may have grown since the last estimate, e.g. rows added,
+            // so it is estimated again when the sizes are requested
+            entry.estimatedBytes = -1;
+            entry.version++;
+        }
+
+        // A feature table keeps the raw data files of its samples alive
+        if (newEntry && (data instanceof FeatureTable)) {
+            for (Sample sample : ((FeatureTable) data).getSamples()) {
+                RawDataFile rawDataFile = sample.getRawDataFile();
+                if (rawDataFile != null)
+                    acquireIfTracked(rawDataFile, data);
+            }
+        }
+        return true;
+    }
+
+    private void dispose(ReferencedData entry) {
+        logger.debug("Disposing " + getName(entry.data)
+                + ", no references left");
+        try {
+            if (entry.data instanceof RawDataFile) {
+                ((RawDataFile) entry.data).dispose();
+            } else {
+                ((FeatureTable) entry.data).dispose();
+            }
+        } catch (Exception e) {
+            logger.warn("Error disposing " + getName(entry.data) + ": " + e);
+        }
+
+        // Drop the references held by the disposed object itself
+        releaseAll(entry.data);
+    }
+
+    private static void checkDataType(Object data) {
+        Preconditions.checkNotNull(data);
+        Preconditions.checkArgument(
+                (data instanceof RawDataFile) || (data instanceof FeatureTable),
+                "Only raw data files and feature tables can be tracked");
+    }
+
+    private static String getName(Object data) {
+        if (data instanceof RawDataFile)
+            return ((RawDataFile) data).getName();
+        return ((FeatureTable) data).getName();
+    }
+
+    private static long estimateBytes(Object data) {
+        if (data instanceof RawDataFile)
+            return DataSizeUtils.estimateBytes((RawDataFile) data);
+        return DataSizeUtils.estimateBytes((FeatureTable) data);
+    }
+
+    private static class ReferencedData {
+        private final Object data;
+        private final Set<Object> owners = Collections
+                .newSetFromMap(new IdentityHashMap<>());
+        // Guarded by the lock of the entries; -1 if not estimated yet
+        private long estimatedBytes = -1;
+        private int version;
+
+        ReferencedData(Object data) {
+            this.data = data;
+        }
+    }
+
+    /**
+     * Snapshot of the reference state of one data object.
+     */
+    @Immutable
+    public static class DataReferenceInfo {
+
+        private final String name;
+        private final int referenceCount;
+        private final long estimatedBytes;
+
+        DataReferenceInfo(String name, int referenceCount,
+                long estimatedBytes) {
+            this.name = name;
+            this.referenceCount = referenceCount;
+            this.estimatedBytes = estimatedBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getReferenceCount() {
+            return referenceCount;
+        }
+
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+    }
+
+}
@@ -31,10 +31,13 @@ import com.google.common.collect.ImmutableList;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.datamodel.featuretables.Sample;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.project.auditlog.AuditLogEntry;
 
 /**
- * Simple implementation of the MZmineProject interface.
+ * Simple implementation of the MZmineProject interface. The project holds a
+ * reference on each of its raw data files and feature tables, see
+ * {@link DataReferenceTracker}.
  */
 public class MZmineProject {
 
@@ -71,12 +74,16 @@ public class MZmineProject {
         synchronized (rawDataFiles) {
             rawDataFiles.add(rawDataFile);
         }
+        MZmineCore.getReferenceTracker().acquire(rawDataFile, this);
     }
 
     public void removeFile(final RawDataFile rawDataFile) {
+        final boolean removed;
         synchronized (rawDataFiles) {
-            rawDataFiles.remove(rawDataFile);
+            removed = rawDataFiles.remove(rawDataFile);
         }
+        if (removed)
+            MZmineCore.getReferenceTracker().release(rawDataFile, this);
     }
 
     public @Nonnull List<RawDataFile> getRawDataFiles() {
@@ -89,12 +96,16 @@ public class MZmineProject {
         synchronized (featureTables) {
             featureTables.add(featureTable);
         }
+        MZmineCore.getReferenceTracker().acquire(featureTable, this);
     }
 
     public void removeFeatureTable(final FeatureTable featureTable) {
+        final boolean removed;
         synchronized (featureTables) {
-            featureTables.remove(featureTable);
+            removed = featureTables.remove(featureTable);
         }
+        if (removed)
+            MZmineCore.getReferenceTracker().release(featureTable, this);
     }
 
     public @Nonnull List<FeatureTable> getFeatureTables() {
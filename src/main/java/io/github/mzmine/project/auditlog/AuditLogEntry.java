@@ -20,27 +20,37 @@
 package io.github.mzmine.project.auditlog;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 
 import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.ParameterSet;
 import javafx.concurrent.Task;
 
 /**
- * Audit log entry which keeps track of the module, parameters and tasks.
+ * Audit log entry which keeps track of the module, parameters and tasks. The
+ * parameter values are kept as text, so that the entry does not retain the
+ * raw data files and feature tables referenced by the parameters.
  */
 public class AuditLogEntry {
 
     private final MZmineModule module;
-    private final ParameterSet parameterSet;
+    private final Map<String, String> parameterValues = new LinkedHashMap<>();
     private final List<AuditLogTaskRecord> taskRecords = new ArrayList<>();
 
     public AuditLogEntry(@Nonnull MZmineModule module,
             @Nonnull ParameterSet parameterSet, @Nonnull List<Task<?>> tasks) {
         this.module = module;
-        this.parameterSet = parameterSet;
+
+        for (Parameter<?> parameter : parameterSet) {
+            parameterValues.put(parameter.getName(),
+                    String.valueOf(parameter.getValue()));
+        }
 
         for (Task<?> task : tasks) {
             AuditLogTaskRecord taskRecord = new AuditLogTaskRecord(task);
@@ -53,9 +63,12 @@ public class AuditLogEntry {
         return module;
     }
 
+    /**
+     * @return parameter names and their values at the time the module was run
+     */
     @Nonnull
-    public ParameterSet getParameterSet() {
-        return parameterSet;
+    public Map<String, String> getParameterValues() {
+        return Collections.unmodifiableMap(parameterValues);
     }
 
     @Nonnull
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.server.ProcessingJob.JobState;
+
+/**
+ * HTTP server which accepts processing jobs from other programs on the same
+ * machine, so that they can use one long-running MZmine instance instead of
+ * starting a new one per batch. The server listens on the loopback interface
+ * only and offers the following resources, all exchanging XML:
+ *
+ * <ul>
+ * <li>POST /jobs - submits a job, see {@link ProcessingJob} for the format.
+ * Responds with the state of the new job, including its id.</li>
+ * <li>GET /jobs - states of all jobs</li>
+ * <li>GET /jobs/{id} - state of a job, with the created data and the exported
+ * files once it has finished</li>
+ * <li>DELETE /jobs/{id} - cancels a job</li>
+ * <li>GET /metrics - job counts, task scheduler and memory statistics</li>
+ * </ul>
+ *
+ * Jobs run on a fixed number of job threads; the tasks of their steps share
+ * the task scheduler, the memory governor and the result cache.
+ */
+public class JobServer {
+
+    public static final int DEFAULT_PORT = 8321;
+
+    // Finished jobs kept for status requests
+    private static final int MAX_ENDED_JOBS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final int port;
+    private final ExecutorService jobThreads;
+    private final Map<Integer, ProcessingJob> jobs = new LinkedHashMap<>();
+    private final AtomicInteger nextJobId = new AtomicInteger(1);
+    private final long startTime = System.currentTimeMillis();
+    private HttpServer httpServer;
+
+    /**
+     * @param maxParallelJobs
+     *            number of jobs which run at the same time; further jobs wait
+     *            in the queue
+     */
+    public JobServer(int port, int maxParallelJobs) {
+        this.port = port;
+        this.jobThreads = Executors.newFixedThreadPool(maxParallelJobs, r -> {
+            Thread thread = new Thread(r, "Job server job");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() throws IOException {
+        httpServer = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                0);
+        httpServer.createContext("/jobs", this::handleJobs);
+        httpServer.createContext("/metrics", this::handleMetrics);
+        httpServer.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "Job server request");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        httpServer.start();
+        logger.info("Job server listening on "
+                + httpServer.getAddress().getHostString() + ":" + port);
+    }
+
+    public void stop() {
+        if (httpServer != null)
+            httpServer.stop(0);
+        jobThreads.shutdownNow();
+    }
+
+    private void handleJobs(HttpExchange exchange) throws IOException {
+        try {
+            final String method = exchange.getRequestMethod();
+            final String path = exchange.getRequestURI().getPath();
+            final String idString = path.replaceFirst("^/jobs/?", "");
+
+            if (idString.isEmpty()) {
+                if (method.equals("POST"))
+                    submitJob(exchange);
+                else if (method.equals("GET"))
+                    sendResponse(exchange, 200, listJobs());
+                else
+                    sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            final ProcessingJob job = getJob(idString);
+            if (job == null) {
+                sendError(exchange, 404, "No job " + idString);
+                return;
+            }
+            if (method.equals("DELETE"))
+                job.cancel();
+            else if (!method.equals("GET")) {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+            final Document response = newDocument();
+            response.appendChild(job.toXML(response));
+            sendResponse(exchange, 200, response);
+
+        } catch (RuntimeException e) {
+            logger.error("Error handling " + exchange.getRequestURI(), e);
+            sendError(exchange, 500, String.valueOf(e));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void submitJob(HttpExchange exchange) throws IOException {
+        final Document description;
+        try (InputStream in = exchange.getRequestBody()) {
+            description = ProcessingJob.readDescription(in);
+        } catch (SAXException e) {
+            sendError(exchange, 400, "Invalid job description: " + e);
+            return;
+        }
+
+        final ProcessingJob job;
+        try {
+            job = ProcessingJob.parse(nextJobId.getAndIncrement(),
+                    description);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        }
+
+        synchronized (jobs) {
+            jobs.put(job.getId(), job);
+            removeOldJobs();
+        }
+        job.setFuture(jobThreads.submit(job::run));
+        logger.info("Queued job " + job.getId());
+
+        final Document response = newDocument();
+        response.appendChild(job.toXML(response));
+        exchange.getResponseHeaders().set("Location", "/jobs/" + job.getId());
+        sendResponse(exchange, 201, response);
+    }
+
+    private @Nullable ProcessingJob getJob(String idString) {
+        try {
+            synchronized (jobs) {
+                return jobs.get(Integer.parseInt(idString));
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Document listJobs() {
+        final Document document = newDocument();
+        final Element root = document.createElement("jobs");
+        document.appendChild(root);
+        for (ProcessingJob job : getJobs())
+            root.appendChild(job.toXML(document));
+        return document;
+    }
+
+    private List<ProcessingJob> getJobs() {
+        synchronized (jobs) {
+            return new ArrayList<>(jobs.values());
+        }
+    }
+
+    /**
+     * Forgets the oldest jobs which have ended, once there are too many
+     */
+    private void removeOldJobs() {
+        int ended = 0;
+        for (ProcessingJob job : jobs.values()) {
+            if (isEnded(job))
+                ended++;
+        }
+        final Iterator<ProcessingJob> it = jobs.values().iterator();
+        while ((ended > MAX_ENDED_JOBS) && it.hasNext()) {
+            if (isEnded(it.next())) {
+                it.remove();
+                ended--;
+            }
+        }
+    }
+
+    private static boolean isEnded(ProcessingJob job) {
+        return (job.getState() != JobState.QUEUED)
+                && (job.getState() != JobState.RUNNING);
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            final Document document = newDocument();
+            final Element root = document.createElement("metrics");
+            document.appendChild(root);
+
+            final Map<JobState, Integer> jobCounts = new LinkedHashMap<>();
+            for (JobState state : JobState.values())
+                jobCounts.put(state, 0);
+            for (ProcessingJob job : getJobs())
+                jobCounts.put(job.getState(), jobCounts.get(job.getState()) + 1);
+            for (Map.Entry<JobState, Integer> count : jobCounts.entrySet())
+                addMetric(root, "jobs." + count.getKey().name().toLowerCase(),
+                        count.getValue());
+
+            addMetric(root, "tasks.running",
+                    MZmineCore.getTaskScheduler().getNumberOfRunningTasks());
+            addMetric(root, "tasks.waiting",
+                    MZmineCore.getTaskScheduler().getNumberOfWaitingTasks());
+            addMetric(root, "resultCache.hits",
+                    MZmineCore.getResultCache().getHits());
+            addMetric(root, "resultCache.misses",
+                    MZmineCore.getResultCache().getMisses());
+            addMetric(root, "project.rawDataFiles", MZmineCore
+                    .getCurrentProject().getRawDataFiles().size());
+            addMetric(root, "project.featureTables", MZmineCore
+                    .getCurrentProject().getFeatureTables().size());
+
+            final Runtime runtime = Runtime.getRuntime();
+            addMetric(root, "memory.used",
+                    runtime.totalMemory() - runtime.freeMemory());
+            addMetric(root, "memory.max", runtime.maxMemory());
+            addMetric(root, "uptime", System.currentTimeMillis() - startTime);
+
+            sendResponse(exchange, 200, document);
+        } catch (RuntimeException e) {
+            logger.error("Error handling " + exchange.getRequestURI(), e);
+            sendError(exchange, 500, String.valueOf(e));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void addMetric(Element parent, String name, long value) {
+        final Element metric = parent.getOwnerDocument()
+                .createElement("metric");
+        metric.setAttribute("name", name);
+        metric.setTextContent(String.valueOf(value));
+        parent.appendChild(metric);
+    }
+
+    private void sendError(HttpExchange exchange, int status,
+            @Nonnull String message) throws IOException {
+        final Document document = newDocument();
+        final Element error = document.createElement("error");
+        error.setTextContent(message);
+        document.appendChild(error);
+        sendResponse(exchange, status, document);
+    }
+
+    private void sendResponse(HttpExchange exchange, int status,
+            Document document) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            Transformer transformer = TransformerFactory.newInstance()
+                    .newTransformer();
+            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+            transformer.transform(new DOMSource(document),
+                    new StreamResult(buffer));
+        } catch (TransformerException e) {
+            throw new IOException(e);
+        }
+        exchange.getResponseHeaders().set("Content-Type",
+                "application/xml; charset=UTF-8");
+        exchange.sendResponseHeaders(status, buffer.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            buffer.writeTo(out);
+        }
+    }
+
+    private static Document newDocument() {
+        try {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .newDocument();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import com.google.common.base.Strings;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.MZmineProcessingStepImpl;
+import io.github.mzmine.modules.rawdata.rawdataimport.RawDataImportModule;
+import io.github.mzmine.modules.rawdata.rawdataimport.RawDataImportParameters;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.taskcontrol.ProcessingPipeline;
+import javafx.application.Platform;
+
+/**
+ * A job submitted to the {@link JobServer}: raw data files and the processing
+ * steps to apply to them. The job description has the following format, where
+ * the parameters of a module are written as in the configuration file and
+ * parameters which are not given keep the values of the server's
+ * configuration:
+ *
+ * <pre>
+ * &lt;job keepData="false"&gt;
+ *   &lt;file&gt;/data/sample1.mzML&lt;/file&gt;
+ *   &lt;file&gt;/data/sample2.mzML&lt;/file&gt;
+ *   &lt;module class="io.github.mzmine.modules.featuredetection.chromatogrambuilder.ChromatogramBuilderModule"&gt;
+ *     &lt;parameter name="Min peak height"&gt;10000&lt;/parameter&gt;
+ *   &lt;/module&gt;
+ *   &lt;module class="io.github.mzmine.modules.io.csvexport.CsvExportModule"&gt;
+ *     &lt;parameter name="Output file"&gt;&lt;filename&gt;/results/{}.csv&lt;/filename&gt;&lt;/parameter&gt;
+ *   &lt;/module&gt;
+ * &lt;/job&gt;
+ * </pre>
+ *
+ * A module element for the raw data import module sets the import parameters
+ * instead of adding a step. Unless keepData is true, the raw data files and
+ * feature tables created by the job are removed from the project when the job
+ * ends, so that a long-running server does not accumulate them; the exported
+ * files are listed in the job status.
+ */
+public class ProcessingJob {
+
+    public enum JobState {
+        QUEUED, RUNNING, FINISHED, FAILED, CANCELLED
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final int id;
+    private final @Nonnull List<File> files;
+    private final boolean keepData;
+    private final @Nonnull ProcessingPipeline pipeline;
+
+    private volatile JobState state = JobState.QUEUED;
+    private volatile String errorMessage;
+    private final long submitTime = System.currentTimeMillis();
+    private volatile long startTime, endTime;
+    private volatile Future<?> future;
+
+    private ProcessingJob(int id, @Nonnull List<File> files,
+            @Nonnull ParameterSet importParameters,
+            @Nonnull List<MZmineProcessingStep<MZmineProcessingModule>> steps,
+            boolean keepData) {
+        this.id = id;
+        this.files = files;
+        this.keepData = keepData;
+        this.pipeline = new ProcessingPipeline(files, importParameters, steps);
+    }
+
+    /**
+     * Creates a job from its description.
+     *
+     * @throws IllegalArgumentException
+     *             if the description is not valid
+     */
+    public static @Nonnull ProcessingJob parse(int id,
+            @Nonnull Document description) {
+
+        final Element root = description.getDocumentElement();
+        if (!root.getNodeName().equals("job"))
+            throw new IllegalArgumentException("Root element must be <job>");
+
+        final List<File> files = new ArrayList<>();
+        ParameterSet importParameters = MZmineCore.getConfiguration()
+                .getModuleParameters(RawDataImportModule.class).clone();
+        final List<MZmineProcessingStep<MZmineProcessingModule>> steps = new ArrayList<>();
+
+        final NodeList children = root.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            final Node node = children.item(i);
+            if (node.getNodeType() != Node.ELEMENT_NODE)
+                continue;
+            final Element element = (Element) node;
+
+            if (element.getNodeName().equals("file")) {
+                final File file = new File(element.getTextContent().trim());
+                if (!file.canRead())
+                    throw new IllegalArgumentException(
+                            "Cannot read input file " + file);
+                files.add(file);
+                continue;
+            }
+
+            if (!element.getNodeName().equals("module"))
+                throw new IllegalArgumentException(
+                        "Unknown element <" + element.getNodeName() + ">");
+
+            final MZmineProcessingModule module = getModule(
+                    element.getAttribute("class"));
+            final ParameterSet parameters = MZmineCore.getConfiguration()
+                    .getModuleParameters(module.getClass()).clone();
+            parameters.loadValuesFromXML(element);
+            if (module instanceof RawDataImportModule)
+                importParameters = parameters;
+            else
+                steps.add(new MZmineProcessingStepImpl<>(module, parameters));
+        }
+
+        if (files.isEmpty())
+            throw new IllegalArgumentException("No input <file> given");
+
+        // Check the parameters now rather than when the job runs; the inputs
+        // of the steps are set by the pipeline
+        final List<String> messages = new ArrayList<>();
+        final ParameterSet checkedImport = importParameters.clone();
+        checkedImport.getParameter(RawDataImportParameters.fileNames)
+                .setValue(files);
+        if (!checkedImport.checkParameterValues(messages))
+            throw new IllegalArgumentException("Invalid parameters of "
+                    + "raw data import: " + String.join(", ", messages));
+        for (MZmineProcessingStep<MZmineProcessingModule> step : steps) {
+            if (!step.getParameterSet().checkParameterValues(messages))
+                throw new IllegalArgumentException(
+                        "Invalid parameters of " + step.getModule().getName()
+                                + ": " + String.join(", ", messages));
+        }
+
+        return new ProcessingJob(id, files, importParameters, steps,
+                Boolean.parseBoolean(root.getAttribute("keepData")));
+    }
+
+    /**
+     * Reads a job description. Document type declarations are rejected, so
+     * that a description cannot refer to other files of the machine.
+     */
+    static @Nonnull Document readDescription(@Nonnull InputStream in)
+            throws IOException, SAXException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory
+                    .newInstance();
+            factory.setFeature(
+                    "http://apache.org/xml/features/disallow-doctype-decl",
+                    true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            return builder.parse(in);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static @Nonnull MZmineProcessingModule getModule(
+            @Nullable String className) {
+        if (Strings.isNullOrEmpty(className))
+            throw new IllegalArgumentException(
+                    "<module> element without class attribute");
+        final Class<?> moduleClass;
+        try {
+            moduleClass = Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unknown module " + className);
+        }
+        if (!MZmineProcessingModule.class.isAssignableFrom(moduleClass))
+            throw new IllegalArgumentException(
+                    className + " is not a processing module");
+        @SuppressWarnings("unchecked")
+        final MZmineModule module = MZmineCore.getModuleInstance(
+                (Class<? extends MZmineModule>) moduleClass);
+        if (module == null)
+            throw new IllegalArgumentException(
+                    "Module " + className + " is not loaded");
+        return (MZmineProcessingModule) module;
+    }
+
+    /**
+     * Runs the job on the current thread
+     */
+    void run() {
+        if (state == JobState.CANCELLED)
+            return;
+        state = JobState.RUNNING;
+        startTime = System.currentTimeMillis();
+        logger.info("Starting job " + id + " on " + files.size() + " files");
+        try {
+            if (pipeline.run()) {
+                state = JobState.FINISHED;
+            } else {
+                errorMessage = pipeline.getErrorMessage();
+                state = JobState.FAILED;
+            }
+        } catch (InterruptedException e) {
+            state = JobState.CANCELLED;
+        } catch (RuntimeException e) {
+            logger.error("Job " + id + " failed", e);
+            errorMessage = String.valueOf(e);
+            state = JobState.FAILED;
+        } finally {
+            endTime = System.currentTimeMillis();
+            if (!keepData)
+                removeCreatedData();
+        }
+        logger.info("Job " + id + " ended as " + state + " after "
+                + (endTime - startTime) + " ms");
+    }
+
+    /**
+     * Cancels the job. A job which is running stops after the tasks of its
+     * current step.
+     */
+    void cancel() {
+        if ((state == JobState.QUEUED) || (state == JobState.RUNNING)) {
+            if (state == JobState.QUEUED)
+                state = JobState.CANCELLED;
+            final Future<?> f = future;
+            if (f != null)
+                f.cancel(true);
+        }
+    }
+
+    void setFuture(@Nonnull Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * Removes the raw data files and feature tables created by the job from
+     * the project
+     */
+    void removeCreatedData() {
+        final List<Object> createdData = pipeline.getCreatedData();
+        final MZmineProject project = MZmineCore.getCurrentProject();
+        Platform.runLater(() -> {
+            for (Object data : createdData) {
+                if (data instanceof RawDataFile)
+                    project.removeFile((RawDataFile) data);
+                else if (data instanceof FeatureTable)
+                    project.removeFeatureTable((FeatureTable) data);
+            }
+        });
+    }
+
+    /**
+     * @return feature tables created by the last step which created any
+     */
+    @Nonnull
+    List<FeatureTable> getFeatureTables() {
+        return pipeline.getFeatureTables();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public @Nonnull JobState getState() {
+        return state;
+    }
+
+    public @Nullable String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * Writes the state of the job as a &lt;job&gt; element
+     */
+    @Nonnull
+    Element toXML(@Nonnull Document document) {
+        final Element element = document.createElement("job");
+        element.setAttribute("id", String.valueOf(id));
+        element.setAttribute("state", state.name());
+        final String step = pipeline.getCurrentStep();
+        if ((state == JobState.RUNNING) && (step != null))
+            element.setAttribute("step", step);
+
+        addElement(element, "submitted", String.valueOf(submitTime));
+        if (startTime > 0)
+            addElement(element, "started", String.valueOf(startTime));
+        if (endTime > 0)
+            addElement(element, "ended", String.valueOf(endTime));
+        if (errorMessage != null)
+            addElement(element, "error", errorMessage);
+        for (File file : files)
+            addElement(element, "file", file.getPath());
+        for (Object data : pipeline.getCreatedData()) {
+            if (data instanceof RawDataFile)
+                addElement(element, "rawDataFile",
+                        ((RawDataFile) data).getName());
+            else if (data instanceof FeatureTable)
+                addElement(element, "featureTable",
+                        ((FeatureTable) data).getName());
+        }
+        for (File output : pipeline.getOutputFiles())
+            addElement(element, "output", output.getPath());
+        return element;
+    }
+
+    private static void addElement(Element parent, String name,
+            String value) {
+        final Element child = parent.getOwnerDocument().createElement(name);
+        child.setTextContent(value);
+        parent.appendChild(child);
+    }
+
+}
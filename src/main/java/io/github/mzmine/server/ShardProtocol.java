@@ -0,0 +1,199 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Messages exchanged between a coordinator and a {@link ShardWorker} over a
+ * TCP connection. All numbers are big-endian.
+ *
+ * <pre>
+ * connection := hello auth (request response)* CLOSE
+ * hello      := MAGIC version:int32, sent by both sides
+ * auth       := challenge:byte[32], sent by the worker
+ *               mac:byte[32], sent by the coordinator
+ *               (OK | FAILED message:string), sent by the worker
+ * request    := JOB job:string
+ * response   := OK tableCount:int32 (length:int64 mzft:byte[length])*
+ *             | FAILED message:string
+ * string     := length:int32 utf8:byte[length]
+ * </pre>
+ *
+ * The job is described in the format accepted by the job server, see
+ * {@link ProcessingJob}; its files must be readable by the worker. The
+ * feature tables created by the job are sent back in the columnar binary
+ * format of the columnar export module.
+ *
+ * A worker runs the jobs it is sent with the permissions of its process, so
+ * it only accepts coordinators which know its secret. Both sides read the
+ * secret from the {@value #SECRET_VARIABLE} environment variable; the
+ * coordinator answers the random challenge of the worker with the
+ * HMAC-SHA256 of the challenge, keyed with the secret, so the secret itself
+ * is never sent. The connection is not encrypted.
+ */
+public final class ShardProtocol {
+
+    public static final byte MAGIC[] = { 'M', 'Z', 'S', 'H' };
+    public static final int VERSION = 2;
+
+    // Environment variable with the secret shared by coordinator and worker
+    public static final String SECRET_VARIABLE = "MZMINE_WORKER_SECRET";
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int CHALLENGE_LENGTH = 32;
+
+    public static final byte JOB = 1, CLOSE = 2;
+    public static final byte OK = 1, FAILED = 2;
+
+    // Job description attribute telling whether the chromatograms of the
+    // features are sent back
+    public static final String CHROMATOGRAMS_ATTRIBUTE = "chromatograms";
+
+    private ShardProtocol() {
+    }
+
+    public static void writeHello(@Nonnull DataOutputStream out)
+            throws IOException {
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        out.flush();
+    }
+
+    /**
+     * @throws IOException
+     *             if the other side does not speak this protocol version
+     */
+    public static void readHello(@Nonnull DataInputStream in)
+            throws IOException {
+        final byte magic[] = new byte[MAGIC.length];
+        in.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i])
+                throw new IOException("Not an MZmine shard connection");
+        }
+        final int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported shard protocol version "
+                    + version + ", expected " + VERSION);
+    }
+
+    /**
+     * @return the secret set in the environment, or null if there is none
+     */
+    public static @Nullable String getSecret() {
+        final String secret = System.getenv(SECRET_VARIABLE);
+        if ((secret == null) || secret.isEmpty())
+            return null;
+        return secret;
+    }
+
+    /**
+     * Sends a challenge to the coordinator and checks its answer. Run by the
+     * worker after the hello.
+     * 
+     * @throws IOException
+     *             if the coordinator does not know the secret
+     */
+    public static void authenticateCoordinator(@Nonnull DataInputStream in,
+            @Nonnull DataOutputStream out, @Nonnull String secret)
+            throws IOException {
+        final byte challenge[] = new byte[CHALLENGE_LENGTH];
+        new SecureRandom().nextBytes(challenge);
+        out.write(challenge);
+        out.flush();
+
+        final byte expected[] = computeMac(secret, challenge);
+        final byte mac[] = new byte[expected.length];
+        in.readFully(mac);
+        if (!MessageDigest.isEqual(mac, expected)) {
+            out.writeByte(FAILED);
+            writeString(out, "Authentication failed, check the "
+                    + SECRET_VARIABLE + " environment variable");
+            out.flush();
+            throw new IOException("Coordinator failed to authenticate");
+        }
+        out.writeByte(OK);
+        out.flush();
+    }
+
+    /**
+     * Answers the challenge of the worker. Run by the coordinator after the
+     * hello.
+     * 
+     * @throws IOException
+     *             if the worker rejected the answer
+     */
+    public static void answerChallenge(@Nonnull DataInputStream in,
+            @Nonnull DataOutputStream out, @Nonnull String secret)
+            throws IOException {
+        final byte challenge[] = new byte[CHALLENGE_LENGTH];
+        in.readFully(challenge);
+        out.write(computeMac(secret, challenge));
+        out.flush();
+
+        final byte status = in.readByte();
+        if (status == FAILED)
+            throw new IOException(readString(in));
+        if (status != OK)
+            throw new IOException("Unknown authentication response " + status);
+    }
+
+    private static @Nonnull byte[] computeMac(@Nonnull String secret,
+            @Nonnull byte challenge[]) throws IOException {
+        try {
+            final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(
+                    secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM));
+            return mac.doFinal(challenge);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot compute " + MAC_ALGORITHM, e);
+        }
+    }
+
+    public static void writeString(@Nonnull DataOutputStream out,
+            @Nonnull String value) throws IOException {
+        final byte data[] = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    public static @Nonnull String readString(@Nonnull DataInputStream in)
+            throws IOException {
+        final int length = in.readInt();
+        if (length < 0)
+            throw new IOException("Invalid string length " + length);
+        final byte data[] = new byte[length];
+        in.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFileExportMethod;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFormat;
+import io.github.mzmine.modules.io.columnarexport.ColumnarFormat.Codec;
+import io.github.mzmine.modules.rawdata.rawdataimport.RawDataImportModule;
+import io.github.mzmine.modules.watchfolder.WatchFolderStep;
+import io.github.mzmine.server.ProcessingJob.JobState;
+
+/**
+ * Worker which processes shards of a larger batch for a coordinator, see
+ * {@link ShardProtocol}. Each shard is a job with the raw data files of one or
+ * a few samples; the worker runs it like the job server does and sends the
+ * resulting feature tables back. The data created by a job is removed from
+ * the project once the tables have been sent, so that a worker can process
+ * any number of shards with a small heap.
+ *
+ * Each connection processes its jobs one after the other, so a coordinator
+ * opens as many connections as it wants files in progress on this worker.
+ *
+ * Only coordinators which know the secret of the worker are accepted. Jobs
+ * may only contain the raw data import and the per-file steps of the watch
+ * folder which do not write files, so that a coordinator cannot make the
+ * worker write to arbitrary paths.
+ */
+public class ShardWorker {
+
+    public static final int DEFAULT_PORT = 8322;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull InetSocketAddress address;
+    private final @Nonnull String secret;
+    private final AtomicInteger nextJobId = new AtomicInteger(1);
+    private ServerSocket serverSocket;
+
+    /**
+     * @param secret
+     *            secret the coordinators must know, see {@link ShardProtocol}
+     */
+    public ShardWorker(@Nonnull InetSocketAddress address,
+            @Nonnull String secret) {
+        this.address = address;
+        this.secret = secret;
+    }
+
+    /**
+     * @return names of the module classes a job may contain
+     */
+    public static @Nonnull Set<String> getAllowedModules() {
+        final Set<String> allowedModules = new HashSet<>();
+        allowedModules.add(RawDataImportModule.class.getName());
+        for (WatchFolderStep step : WatchFolderStep.values()) {
+            if (!step.writesFiles())
+                allowedModules.add(step.getModuleClass().getName());
+        }
+        return allowedModules;
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+        // Not a daemon thread, it keeps the worker process running
+        final Thread acceptThread = new Thread(this::acceptConnections,
+                "Shard worker");
+        acceptThread.start();
+        logger.info("Shard worker listening on " + address);
+    }
+
+    public void stop() {
+        try {
+            if (serverSocket != null)
+                serverSocket.close();
+        } catch (IOException e) {
+            logger.warn("Could not close the shard worker socket", e);
+        }
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                final Thread thread = new Thread(
+                        () -> handleConnection(socket),
+                        "Shard worker connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (SocketException e) {
+                // Closed by stop()
+            } catch (IOException e) {
+                logger.error("Could not accept a coordinator connection", e);
+            }
+        }
+    }
+
+    private void handleConnection(Socket socket) {
+        final String coordinator = String
+                .valueOf(socket.getRemoteSocketAddress());
+        try (Socket s = socket;
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(s.getInputStream()));
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(s.getOutputStream()))) {
+
+            s.setTcpNoDelay(true);
+            ShardProtocol.writeHello(out);
+            ShardProtocol.readHello(in);
+            ShardProtocol.authenticateCoordinator(in, out, secret);
+            logger.info("Coordinator " + coordinator + " connected");
+
+            while (true) {
+                final byte request = in.readByte();
+                if (request == ShardProtocol.CLOSE)
+                    break;
+                if (request != ShardProtocol.JOB)
+                    throw new IOException("Unknown request " + request);
+                processJob(ShardProtocol.readString(in), out);
+                out.flush();
+            }
+            logger.info("Coordinator " + coordinator + " disconnected");
+
+        } catch (EOFException e) {
+            logger.warn("Coordinator " + coordinator + " closed the connection");
+        } catch (IOException e) {
+            logger.warn("Connection to coordinator " + coordinator + " failed",
+                    e);
+        }
+    }
+
+    /**
+     * Runs the job and writes the response
+     */
+    private void processJob(@Nonnull String description,
+            @Nonnull DataOutputStream out) throws IOException {
+
+        final Document document;
+        try {
+            document = ProcessingJob.readDescription(new ByteArrayInputStream(
+                    description.getBytes(StandardCharsets.UTF_8)));
+        } catch (SAXException e) {
+            sendFailure(out, "Invalid job description: " + e);
+            return;
+        }
+
+        final Set<String> allowedModules = getAllowedModules();
+        final NodeList modules = document.getElementsByTagName("module");
+        for (int i = 0; i < modules.getLength(); i++) {
+            final String moduleClass = ((Element) modules.item(i))
+                    .getAttribute("class");
+            if (!allowedModules.contains(moduleClass)) {
+                sendFailure(out, "Module " + moduleClass
+                        + " cannot be run by a shard worker");
+                return;
+            }
+        }
+
+        // The created data is removed only after the tables have been sent
+        final boolean includeChromatograms = Boolean
+                .parseBoolean(document.getDocumentElement()
+                        .getAttribute(ShardProtocol.CHROMATOGRAMS_ATTRIBUTE));
+        document.getDocumentElement().setAttribute("keepData", "true");
+
+        final ProcessingJob job;
+        try {
+            job = ProcessingJob.parse(nextJobId.getAndIncrement(), document);
+        } catch (IllegalArgumentException e) {
+            sendFailure(out, e.getMessage());
+            return;
+        }
+
+        final List<File> tableFiles = new ArrayList<>();
+        try {
+            job.run();
+            if (job.getState() != JobState.FINISHED) {
+                final String error = job.getErrorMessage();
+                sendFailure(out, "Job " + job.getState()
+                        + (error == null ? "" : ": " + error));
+                return;
+            }
+
+            // Write all tables first, so that a failure can still be reported
+            for (FeatureTable table : job.getFeatureTables()) {
+                final File tableFile = File.createTempFile("mzmine",
+                        "." + ColumnarFormat.EXTENSION);
+                tableFiles.add(tableFile);
+                new ColumnarFileExportMethod(table, tableFile,
+                        table.getColumns(), Codec.DEFLATE,
+                        includeChromatograms).execute();
+            }
+
+            out.writeByte(ShardProtocol.OK);
+            out.writeInt(tableFiles.size());
+            for (File tableFile : tableFiles) {
+                out.writeLong(tableFile.length());
+                Files.copy(tableFile.toPath(), out);
+            }
+
+        } catch (MSDKException e) {
+            logger.error("Could not write the feature tables of job "
+                    + job.getId(), e);
+            sendFailure(out, "Could not write the feature tables: " + e);
+        } finally {
+            job.removeCreatedData();
+            for (File tableFile : tableFiles)
+                tableFile.delete();
+        }
+    }
+
+    private static void sendFailure(@Nonnull DataOutputStream out,
+            @Nonnull String message) throws IOException {
+        out.writeByte(ShardProtocol.FAILED);
+        ShardProtocol.writeString(out, message);
+    }
+
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.main.RecordingProject;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.MZmineRunnableModule;
+import io.github.mzmine.modules.rawdata.rawdataimport.RawDataImportModule;
+import io.github.mzmine.modules.rawdata.rawdataimport.RawDataImportParameters;
+import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelectionType;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker.State;
+
+/**
+ * Imports raw data files and applies processing steps to them, one step after
+ * the other. Each step is run through {@link MZmineCore#runModule}, like a
+ * module started from the menu, with its raw data file and feature table
+ * selections pointing to the data created by the previous step. The pipeline
+ * waits for all tasks of a step before it starts the next one, so it must not
+ * be run on the JavaFX thread. A step fails if one of its tasks fails, or if
+ * a module which creates data created less data than it had tasks; the
+ * pipeline then stops. A pipeline without files applies its steps to data
+ * which is already in the project.
+ */
+public class ProcessingPipeline {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull List<File> files;
+    private final @Nullable ParameterSet importParameters;
+    private final @Nonnull List<MZmineProcessingStep<MZmineProcessingModule>> steps;
+
+    private volatile String currentStep;
+    private volatile String errorMessage;
+    private volatile List<FeatureTable> featureTables = Collections
+            .emptyList();
+    private final List<Object> createdData = Collections
+            .synchronizedList(new ArrayList<>());
+    private final List<File> outputFiles = Collections
+            .synchronizedList(new ArrayList<>());
+
+    /**
+     * @param importParameters
+     *            parameters of the raw data import; the file names are
+     *            replaced by the given files
+     * @param steps
+     *            processing steps, in the order they are applied
+     */
+    public ProcessingPipeline(@Nonnull List<File> files,
+            @Nonnull ParameterSet importParameters,
+            @Nonnull List<MZmineProcessingStep<MZmineProcessingModule>> steps) {
+        this.files = files;
+        this.importParameters = importParameters;
+        this.steps = steps;
+    }
+
+    /**
+     * Creates a pipeline which applies the steps to existing data, see
+     * {@link #run(List, List)}.
+     */
+    public ProcessingPipeline(
+            @Nonnull List<MZmineProcessingStep<MZmineProcessingModule>> steps) {
+        this.files = Collections.emptyList();
+        this.importParameters = null;
+        this.steps = steps;
+    }
+
+    /**
+     * Imports the files and runs the steps on the current thread.
+     *
+     * @return true if all steps succeeded; otherwise
+     *         {@link #getErrorMessage()} tells why the pipeline stopped
+     * @throws InterruptedException
+     *             if the thread was interrupted while waiting for a step
+     */
+    public boolean run() throws InterruptedException {
+
+        if (importParameters == null)
+            throw new IllegalStateException("Pipeline has no files to import");
+
+        currentStep = "Raw data import";
+        final ParameterSet parameters = importParameters.clone();
+        parameters.getParameter(RawDataImportParameters.fileNames)
+                .setValue(new ArrayList<>(files));
+        List<Object> created = runStep(RawDataImportModule.class, parameters);
+        if (created == null)
+            return false;
+
+        final List<RawDataFile> rawDataFiles = filter(created,
+                RawDataFile.class);
+        if (rawDataFiles.size() < files.size()) {
+            errorMessage = (files.size() - rawDataFiles.size()) + " of "
+                    + files.size() + " files could not be imported";
+            return false;
+        }
+
+        return run(rawDataFiles, Collections.emptyList());
+    }
+
+    /**
+     * Runs the steps on the current thread, starting with the given raw data
+     * files and feature tables as input.
+     *
+     * @return true if all steps succeeded; otherwise
+     *         {@link #getErrorMessage()} tells why the pipeline stopped
+     * @throws InterruptedException
+     *             if the thread was interrupted while waiting for a step
+     */
+    public boolean run(@Nonnull List<RawDataFile> rawDataFiles,
+            @Nonnull List<FeatureTable> featureTables)
+            throws InterruptedException {
+
+        for (MZmineProcessingStep<MZmineProcessingModule> step : steps) {
+            currentStep = step.getModule().getName();
+            final ParameterSet stepParameters = step.getParameterSet()
+                    .clone();
+            if (!setInputs(stepParameters, rawDataFiles, featureTables)) {
+                errorMessage = currentStep
+                        + " needs feature tables, but no previous step created any";
+                return false;
+            }
+            final List<Object> created = runStep(step.getModule().getClass(),
+                    stepParameters);
+            if (created == null)
+                return false;
+            collectOutputFiles(stepParameters, featureTables);
+
+            // The next step works on the data created by this one
+            final List<RawDataFile> newFiles = filter(created,
+                    RawDataFile.class);
+            if (!newFiles.isEmpty())
+                rawDataFiles = newFiles;
+            final List<FeatureTable> newTables = filter(created,
+                    FeatureTable.class);
+            if (!newTables.isEmpty()) {
+                featureTables = newTables;
+                this.featureTables = newTables;
+            }
+        }
+
+        currentStep = null;
+        return true;
+    }
+
+    /**
+     * @return name of the step which is running, or at which the pipeline
+     *         stopped
+     */
+    public @Nullable String getCurrentStep() {
+        return currentStep;
+    }
+
+    public @Nullable String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * @return raw data files and feature tables created by the steps so far
+     */
+    public @Nonnull List<Object> getCreatedData() {
+        synchronized (createdData) {
+            return new ArrayList<>(createdData);
+        }
+    }
+
+    /**
+     * @return feature tables created by the last step which created any, i.e.
+     *         the result of the pipeline once it has finished
+     */
+    public @Nonnull List<FeatureTable> getFeatureTables() {
+        return featureTables;
+    }
+
+    /**
+     * @return files written by the export steps so far
+     */
+    public @Nonnull List<File> getOutputFiles() {
+        synchronized (outputFiles) {
+            return new ArrayList<>(outputFiles);
+        }
+    }
+
+    /**
+     * Points the raw data file and feature table selections of the parameters
+     * to the given data.
+     *
+     * @return false if the step needs feature tables and there are none
+     */
+    private boolean setInputs(ParameterSet parameters,
+            List<RawDataFile> rawDataFiles, List<FeatureTable> featureTables) {
+        for (Parameter<?> parameter : parameters) {
+            if (parameter instanceof RawDataFilesParameter) {
+                parameter.setValue(new RawDataFilesSelection(rawDataFiles));
+            }
+            if (parameter instanceof FeatureTablesParameter) {
+                if (featureTables.isEmpty())
+                    return false;
+                parameter.setValue(new FeatureTablesSelection(
+                        FeatureTablesSelectionType.SPECIFIC_FEATURE_TABLES,
+                        featureTables, null));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records the files written by an export step. The export modules
+     * substitute the pattern {} in the file name with the feature table name
+     * and may append .gz.
+     */
+    private void collectOutputFiles(ParameterSet parameters,
+            List<FeatureTable> featureTables) {
+        for (Parameter<?> parameter : parameters) {
+            if (!(parameter instanceof FileNameParameter))
+                continue;
+            final FileNameParameter fileParameter = (FileNameParameter) parameter;
+            final File file = fileParameter.getValue();
+            if ((file == null) || (fileParameter
+                    .getFileNameParameterType() != FileNameParameter.Type.SAVE))
+                continue;
+            final List<String> paths = new ArrayList<>();
+            if (file.getPath().contains("{}")) {
+                for (FeatureTable table : featureTables)
+                    paths.add(file.getPath().replaceAll(Pattern.quote("{}"),
+                            table.getName()));
+            } else {
+                paths.add(file.getPath());
+            }
+            for (String path : paths) {
+                if (new File(path).exists())
+                    outputFiles.add(new File(path));
+                else if (new File(path + ".gz").exists())
+                    outputFiles.add(new File(path + ".gz"));
+            }
+        }
+    }
+
+    /**
+     * Runs the module on the JavaFX thread and waits for all its tasks to
+     * finish.
+     *
+     * @return the raw data files and feature tables created by the module, or
+     *         null if one of its tasks failed or was cancelled, or if a module
+     *         which creates data created less data than it had tasks
+     */
+    private @Nullable List<Object> runStep(
+            Class<? extends MZmineRunnableModule> moduleClass,
+            ParameterSet parameters) throws InterruptedException {
+
+        final RecordingProject project = new RecordingProject(
+                MZmineCore.getCurrentProject());
+        final AtomicBoolean failed = new AtomicBoolean();
+        final AtomicInteger numOfTasks = new AtomicInteger();
+
+        // The listeners are registered in the same JavaFX event as the tasks
+        // are submitted, so no state change can be missed. The state listeners
+        // run before the onSucceeded handlers of the module, which add the
+        // results to the project, so a task is only counted as finished in a
+        // later JavaFX event.
+        final FutureTask<CountDownLatch> submission = new FutureTask<>(() -> {
+            final List<Task<?>> tasks = MZmineCore.runModule(moduleClass,
+                    parameters, project);
+            numOfTasks.set(tasks.size());
+            final CountDownLatch finished = new CountDownLatch(tasks.size());
+            for (Task<?> task : tasks) {
+                task.stateProperty().addListener((prop, oldState, newState) -> {
+                    if ((newState == State.FAILED)
+                            || (newState == State.CANCELLED))
+                        failed.set(true);
+                    if ((newState == State.SUCCEEDED)
+                            || (newState == State.FAILED)
+                            || (newState == State.CANCELLED))
+                        Platform.runLater(finished::countDown);
+                });
+            }
+            return finished;
+        });
+        Platform.runLater(submission);
+
+        try {
+            submission.get().await();
+        } catch (ExecutionException e) {
+            logger.error("Could not run " + moduleClass.getSimpleName(),
+                    e.getCause());
+            errorMessage = "Could not run " + currentStep + ": "
+                    + e.getCause();
+            return null;
+        }
+
+        final List<Object> created = project.getAddedData();
+        createdData.addAll(created);
+        if (failed.get()) {
+            errorMessage = "A task of " + currentStep
+                    + " failed or was cancelled";
+            return null;
+        }
+
+        // The tasks of a module do not fail when its method throws an error,
+        // they succeed without adding their result
+        final MZmineRunnableModule module = MZmineCore
+                .getModuleInstance(moduleClass);
+        if ((module instanceof MZmineProcessingModule)
+                && ((MZmineProcessingModule) module).createsData()
+                && (created.size() < numOfTasks.get())) {
+            errorMessage = (numOfTasks.get() - created.size()) + " of "
+                    + numOfTasks.get() + " tasks of " + currentStep
+                    + " created no data";
+            return null;
+        }
+        return created;
+    }
+
+    private static <T> List<T> filter(List<Object> data, Class<T> type) {
+        final List<T> result = new ArrayList<>();
+        for (Object item : data) {
+            if (type.isInstance(item))
+                result.add(type.cast(item));
+        }
+        return result;
+    }
+
+}
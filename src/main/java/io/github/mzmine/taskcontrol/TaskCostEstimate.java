@@ -0,0 +1,128 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.io.File;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.util.DataSizeUtils;
+
+/**
+ * Estimated resources needed to run a task: bytes of heap, bytes of temporary
+ * disk space and a CPU weight which is proportional to the expected running
+ * time. The estimates are rough and only meant to compare tasks and decide
+ * how many of them can run at the same time.
+ */
+@Immutable
+public class TaskCostEstimate {
+
+    /**
+     * Estimate for tasks whose inputs are not known. Such tasks always fit
+     * into the budgets.
+     */
+    public static final TaskCostEstimate UNKNOWN = new TaskCostEstimate(0, 0,
+            0);
+
+    private final long heapBytes, diskBytes;
+    private final double cpuWeight;
+
+    public TaskCostEstimate(long heapBytes, long diskBytes, double cpuWeight) {
+        this.heapBytes = heapBytes;
+        this.diskBytes = diskBytes;
+        this.cpuWeight = cpuWeight;
+    }
+
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+
+    public long getDiskBytes() {
+        return diskBytes;
+    }
+
+    public double getCpuWeight() {
+        return cpuWeight;
+    }
+
+    public @Nonnull TaskCostEstimate plus(@Nonnull TaskCostEstimate other) {
+        return new TaskCostEstimate(heapBytes + other.heapBytes,
+                diskBytes + other.diskBytes, cpuWeight + other.cpuWeight);
+    }
+
+    public @Nonnull TaskCostEstimate dividedBy(int parts) {
+        if (parts <= 1)
+            return this;
+        return new TaskCostEstimate(heapBytes / parts, diskBytes / parts,
+                cpuWeight / parts);
+    }
+
+    /**
+     * @return the same estimate with the results written to temporary files
+     *         instead of being kept on the heap
+     */
+    public @Nonnull TaskCostEstimate movedToDisk() {
+        return new TaskCostEstimate(0, diskBytes + heapBytes, cpuWeight);
+    }
+
+    /**
+     * Generic estimate for processing the given input, which may be a raw
+     * data file, a feature table or a file on disk to be imported. The output
+     * of the processing is assumed to be of the same size as the input and to
+     * be kept on the heap.
+     */
+    public static @Nonnull TaskCostEstimate forInput(@Nonnull Object input) {
+
+        if (input instanceof RawDataFile) {
+            final RawDataFile rawDataFile = (RawDataFile) input;
+            return new TaskCostEstimate(
+                    DataSizeUtils.estimateBytes(rawDataFile), 0,
+                    DataSizeUtils.getNumberOfDataPoints(rawDataFile));
+        }
+
+        if (input instanceof FeatureTable) {
+            final FeatureTable table = (FeatureTable) input;
+            final long rows = table.getRows().size();
+            final long samples = Math.max(1, table.getSamples().size());
+            return new TaskCostEstimate(DataSizeUtils.estimateBytes(table), 0,
+                    rows * samples + DataSizeUtils.getNumberOfDataPoints(table));
+        }
+
+        if (input instanceof File) {
+            // Imported data points end up in a temporary file; text formats
+            // such as mzML are larger than the decoded binary data
+            final long fileSize = ((File) input).length();
+            return new TaskCostEstimate(fileSize / 4, fileSize, fileSize);
+        }
+
+        return UNKNOWN;
+    }
+
+    @Override
+    public String toString() {
+        return "heap " + (heapBytes / (1024 * 1024)) + " MB, disk "
+                + (diskBytes / (1024 * 1024)) + " MB, CPU weight "
+                + String.format("%.0f", cpuWeight);
+    }
+
+}
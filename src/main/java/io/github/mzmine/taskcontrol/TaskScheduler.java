@@ -0,0 +1,199 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.main.MemoryGovernor;
+import io.github.mzmine.parameters.parametertypes.PercentParameter;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker.State;
+
+/**
+ * Admission control for tasks. Tasks wait in a queue ordered by their CPU
+ * weight, so that the longest tasks start first, and are passed to the task
+ * executor only while the estimated heap and temporary disk usage of all
+ * running tasks fits into the budgets set in the preferences, and while memory
+ * is not short. The number of running tasks is limited to the number of
+ * threads of the executor. A task that does not fit into the budgets on its
+ * own is started once nothing else is running.
+ */
+public class TaskScheduler {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final double DEFAULT_MEMORY_BUDGET = 0.7;
+    private static final double DEFAULT_DISK_BUDGET = 0.8;
+
+    private final ThreadPoolExecutor executor;
+    private final MemoryGovernor memoryGovernor;
+
+    private final List<ScheduledTask> waitingTasks = new ArrayList<>();
+    private final Map<Task<?>, TaskCostEstimate> runningTasks = new IdentityHashMap<>();
+    private long runningHeapBytes = 0, runningDiskBytes = 0;
+
+    public TaskScheduler(@Nonnull ThreadPoolExecutor executor,
+            @Nonnull MemoryGovernor memoryGovernor) {
+        this.executor = executor;
+        this.memoryGovernor = memoryGovernor;
+    }
+
+    /**
+     * Adds the task to the queue and starts it right away if it fits.
+     */
+    public void submit(@Nonnull Task<?> task,
+            @Nonnull TaskCostEstimate estimate) {
+
+        task.stateProperty().addListener((prop, oldState, newState) -> {
+            if ((newState == State.SUCCEEDED) || (newState == State.FAILED)
+                    || (newState == State.CANCELLED))
+                taskFinished(task);
+        });
+
+        synchronized (this) {
+            // Keep the queue sorted by CPU weight, longest first, and in
+            // submission order for equal weights
+            int index = 0;
+            while ((index < waitingTasks.size()) && (waitingTasks.get(index)
+                    .getEstimate().getCpuWeight() >= estimate.getCpuWeight()))
+                index++;
+            waitingTasks.add(index, new ScheduledTask(task, estimate));
+        }
+
+        logger.debug("Task " + task.getTitle() + " " + task.getMessage()
+                + " estimated at " + estimate);
+        startTasks();
+    }
+
+    /**
+     * Starts the waiting tasks which fit into the budgets.
+     */
+    public synchronized void startTasks() {
+        final long heapBudget = (long) (Runtime.getRuntime().maxMemory()
+                * getBudget(MZminePreferences.memoryBudget,
+                        DEFAULT_MEMORY_BUDGET));
+        final File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+        final long diskBudget = (long) ((tmpDir.getUsableSpace()
+                + runningDiskBytes)
+                * getBudget(MZminePreferences.tmpDiskBudget,
+                        DEFAULT_DISK_BUDGET));
+
+        final Iterator<ScheduledTask> it = waitingTasks.iterator();
+        while (it.hasNext()) {
+            if (runningTasks.size() >= executor.getCorePoolSize())
+                return;
+
+            final ScheduledTask scheduledTask = it.next();
+            final Task<?> task = scheduledTask.getTask();
+            final TaskCostEstimate estimate = scheduledTask.getEstimate();
+
+            // Cancelled while waiting
+            if (task.isDone()) {
+                it.remove();
+                continue;
+            }
+
+            // Always keep at least one task running, otherwise a task that
+            // does not fit into the budgets would never start
+            if (!runningTasks.isEmpty()) {
+                if (memoryGovernor.isUnderPressure())
+                    return;
+                if ((runningHeapBytes + estimate.getHeapBytes() > heapBudget)
+                        || (runningDiskBytes
+                                + estimate.getDiskBytes() > diskBudget))
+                    continue;
+            }
+
+            it.remove();
+            runningTasks.put(task, estimate);
+            runningHeapBytes += estimate.getHeapBytes();
+            runningDiskBytes += estimate.getDiskBytes();
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * @return number of tasks waiting to be started
+     */
+    public synchronized int getNumberOfWaitingTasks() {
+        return waitingTasks.size();
+    }
+
+    /**
+     * @return number of tasks started and not finished yet
+     */
+    public synchronized int getNumberOfRunningTasks() {
+        return runningTasks.size();
+    }
+
+    private void taskFinished(Task<?> task) {
+        synchronized (this) {
+            final TaskCostEstimate estimate = runningTasks.remove(task);
+            if (estimate != null) {
+                runningHeapBytes -= estimate.getHeapBytes();
+                runningDiskBytes -= estimate.getDiskBytes();
+            }
+        }
+        startTasks();
+    }
+
+    private static double getBudget(
+            @Nonnull PercentParameter parameter,
+            double defaultValue) {
+        final MZminePreferences preferences = MZmineCore.getConfiguration()
+                .getPreferences();
+        final Double value = preferences.getParameter(parameter).getValue();
+        if ((value == null) || (value <= 0))
+            return defaultValue;
+        return value;
+    }
+
+    private static class ScheduledTask {
+        private final Task<?> task;
+        private final TaskCostEstimate estimate;
+
+        ScheduledTask(Task<?> task, TaskCostEstimate estimate) {
+            this.task = task;
+            this.estimate = estimate;
+        }
+
+        Task<?> getTask() {
+            return task;
+        }
+
+        TaskCostEstimate getEstimate() {
+            return estimate;
+        }
+    }
+
+}
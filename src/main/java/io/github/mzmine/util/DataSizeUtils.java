@@ -0,0 +1,106 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util;
+
+import javax.annotation.Nonnull;
+
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTable;
+
+/**
+ * Rough size estimates of raw data files and feature tables
+ */
+public class DataSizeUtils {
+
+    /**
+     * Bytes per data point: 8 for the m/z or RT value and 4 for the intensity.
+     */
+    public static final int BYTES_PER_DATA_POINT = 12;
+
+    /**
+     * Bytes per feature table cell, a rough estimate of a boxed value.
+     */
+    public static final int BYTES_PER_TABLE_CELL = 16;
+
+    /**
+     * @return total number of data points of all scans of the file
+     */
+    public static long getNumberOfDataPoints(@Nonnull RawDataFile rawDataFile) {
+        long dataPoints = 0;
+        for (MsScan scan : rawDataFile.getScans()) {
+            Integer scanDataPoints = scan.getNumberOfDataPoints();
+            if (scanDataPoints != null)
+                dataPoints += scanDataPoints;
+        }
+        return dataPoints;
+    }
+
+    /**
+     * @return total number of data points of all chromatograms in the table
+     */
+    public static long getNumberOfDataPoints(@Nonnull FeatureTable table) {
+        long dataPoints = 0;
+        for (FeatureTableColumn<?> column : table.getColumns()) {
+            if (!ColumnName.CHROMATOGRAM.getName().equals(column.getName()))
+                continue;
+            @SuppressWarnings("unchecked")
+            FeatureTableColumn<Object> chromatogramColumn = (FeatureTableColumn<Object>) column;
+            for (FeatureTableRow row : table.getRows()) {
+                Object value = row.getData(chromatogramColumn);
+                if (!(value instanceof Chromatogram))
+                    continue;
+                Integer chromatogramDataPoints = ((Chromatogram) value)
+                        .getNumberOfDataPoints();
+                if (chromatogramDataPoints != null)
+                    dataPoints += chromatogramDataPoints;
+            }
+        }
+        return dataPoints;
+    }
+
+    /**
+     * @return estimated number of bytes needed to hold the data of the file
+     */
+    public static long estimateBytes(@Nonnull RawDataFile rawDataFile) {
+        return getNumberOfDataPoints(rawDataFile) * BYTES_PER_DATA_POINT;
+    }
+
+    /**
+     * @return estimated number of bytes needed to hold the table, including
+     *         the data points of its chromatograms
+     */
+    public static long estimateBytes(@Nonnull FeatureTable table) {
+        final long dataPointBytes = getNumberOfDataPoints(table)
+                * BYTES_PER_DATA_POINT;
+        if (table instanceof ColumnarFeatureTable)
+            return ((ColumnarFeatureTable) table).estimateBytes()
+                    + dataPointBytes;
+        final long cells = (long) table.getRows().size()
+                * table.getColumns().size();
+        return cells * BYTES_PER_TABLE_CELL + dataPointBytes;
+    }
+
+}
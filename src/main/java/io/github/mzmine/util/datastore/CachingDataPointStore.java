@@ -0,0 +1,221 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.datastore;
+
+import java.lang.reflect.Array;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.datastore.DataPointStore;
+
+/**
+ * Data point store that keeps recently loaded arrays of another store in a
+ * shared {@link DecodedArrayCache}, so that scans which are viewed or
+ * processed repeatedly are not read from disk and decoded again each time.
+ * When arrays are loaded in the order they were stored (e.g. when stepping
+ * through the scans of a file), the following arrays are loaded in advance
+ * on a background thread.
+ */
+public class CachingDataPointStore implements DataPointStore {
+
+    /**
+     * Number of arrays to load in advance, i.e. the m/z and intensity arrays
+     * of the next 4 scans
+     */
+    private static final int READ_AHEAD = 8;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final DataPointStore dataStore;
+    private final DecodedArrayCache cache;
+
+    // Type and size of the stored arrays, as the arrays passed to
+    // loadData() may be larger than the data
+    private final Map<Object, StoredArray> storedArrays = new HashMap<>();
+
+    private int lastLoadedId = -1, readAheadUntil = -1;
+
+    public CachingDataPointStore(@Nonnull DataPointStore dataStore,
+            @Nonnull DecodedArrayCache cache) {
+        this.dataStore = dataStore;
+        this.cache = cache;
+    }
+
+    @Override
+    public @Nonnull Object storeData(@Nonnull Object data,
+            @Nonnull Integer size) {
+        final Object id = dataStore.storeData(data, size);
+        synchronized (this) {
+            storedArrays.put(id,
+                    new StoredArray(data.getClass().getComponentType(), size));
+        }
+        return id;
+    }
+
+    @Override
+    public void loadData(@Nonnull Object id, @Nonnull Object array) {
+        final CacheKey key = new CacheKey(this, id);
+        final Object cachedArray = cache.get(key);
+        if (cachedArray != null) {
+            System.arraycopy(cachedArray, 0, array, 0,
+                    Array.getLength(cachedArray));
+        } else {
+            dataStore.loadData(id, array);
+            final StoredArray storedArray = getStoredArray(id);
+            if (storedArray != null)
+                putIfStored(key, id, storedArray,
+                        copyOf(array, storedArray.size));
+        }
+
+        if (id instanceof Integer)
+            checkReadAhead((Integer) id);
+    }
+
+    @Override
+    public void removeData(@Nonnull Object id) {
+        synchronized (this) {
+            storedArrays.remove(id);
+        }
+        cache.remove(new CacheKey(this, id));
+        dataStore.removeData(id);
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            for (Object id : storedArrays.keySet())
+                cache.remove(new CacheKey(this, id));
+            storedArrays.clear();
+        }
+        dataStore.dispose();
+    }
+
+    /**
+     * Starts loading the following arrays when the given array directly
+     * follows the previously loaded one.
+     */
+    private void checkReadAhead(int id) {
+        final int from, to;
+        synchronized (this) {
+            final boolean sequential = (id == lastLoadedId + 1);
+            lastLoadedId = id;
+            if (!sequential || (readAheadUntil >= id + READ_AHEAD / 2))
+                return;
+            from = Math.max(id + 1, readAheadUntil + 1);
+            to = id + READ_AHEAD;
+            readAheadUntil = to;
+        }
+        if (cache.getSizeLimit() == 0)
+            return;
+        cache.readAhead(() -> {
+            for (int nextId = from; nextId <= to; nextId++) {
+                final CacheKey key = new CacheKey(this, nextId);
+                final StoredArray storedArray = getStoredArray(nextId);
+                if ((storedArray == null) || cache.contains(key))
+                    continue;
+                try {
+                    final Object array = Array.newInstance(storedArray.type,
+                            storedArray.size);
+                    dataStore.loadData(nextId, array);
+                    if (putIfStored(key, nextId, storedArray, array))
+                        cache.countReadAhead();
+                } catch (Exception e) {
+                    // The data may have been removed in the meantime
+                    logger.debug("Could not read ahead array " + nextId
+                            + ": " + e);
+                    return;
+                }
+            }
+        });
+    }
+
+    private synchronized StoredArray getStoredArray(Object id) {
+        return storedArrays.get(id);
+    }
+
+    /**
+     * Puts a loaded array into the cache, unless its data have been removed
+     * or the store disposed while it was loaded; such arrays would otherwise
+     * stay in the shared cache until they are evicted.
+     * 
+     * @return whether the array was put into the cache
+     */
+    private synchronized boolean putIfStored(CacheKey key, Object id,
+            StoredArray storedArray, Object array) {
+        if (storedArrays.get(id) != storedArray)
+            return false;
+        cache.put(key, array, storedArray.getBytes());
+        return true;
+    }
+
+    private static Object copyOf(Object array, int size) {
+        final Object copy = Array
+                .newInstance(array.getClass().getComponentType(), size);
+        System.arraycopy(array, 0, copy, 0, size);
+        return copy;
+    }
+
+    private static class StoredArray {
+        private final Class<?> type;
+        private final int size;
+
+        StoredArray(Class<?> type, int size) {
+            this.type = type;
+            this.size = size;
+        }
+
+        long getBytes() {
+            if (type.isPrimitive())
+                return (long) size
+                        * SpillableDataPointStore.getElementSize(type);
+            // Reference plus a small object per element
+            return (long) size * 32;
+        }
+    }
+
+    private static class CacheKey {
+        private final CachingDataPointStore store;
+        private final Object id;
+
+        CacheKey(CachingDataPointStore store, Object id) {
+            this.store = store;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CacheKey))
+                return false;
+            final CacheKey other = (CacheKey) o;
+            return (store == other.store) && id.equals(other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(store) + id.hashCode();
+        }
+    }
+
+}
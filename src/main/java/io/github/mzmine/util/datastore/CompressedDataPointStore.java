@@ -0,0 +1,482 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.datastore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import io.github.msdk.MSDKRuntimeException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+
+/**
+ * Data point store that writes its arrays compressed to a temporary file and
+ * decodes them again one array (i.e. one scan or chromatogram) at a time.
+ * 
+ * Sorted positive double arrays, i.e. the m/z values of a scan, are delta
+ * encoded as variable-length integers. By default the deltas are taken
+ * between the IEEE bit patterns, which is lossless. If an m/z precision is
+ * given, the values are first rounded to a logarithmic grid with that spacing
+ * in ppm, which makes the deltas much smaller and keeps the relative rounding
+ * error below half the spacing. All other primitive arrays, e.g. the
+ * intensities, are byte-shuffled (all first bytes, then all second bytes,
+ * ...) so that the similar exponent bytes end up next to each other. Every
+ * encoded array is finally compressed with the fastest deflate level. Arrays
+ * of other types (e.g. ChromatographyInfo[]) are small and stay on the heap.
+ */
+public class CompressedDataPointStore implements DataPointStore {
+
+    private static final byte SHUFFLED = 0, MZ_DELTA = 1, MZ_QUANTIZED = 2;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final double mzLogStep;
+
+    private final Map<Integer, Object> heapData = new HashMap<>();
+    private final Map<Integer, StoredArray> storedData = new HashMap<>();
+
+    private int lastStorageId = 0;
+    private boolean disposed = false;
+
+    private File tmpFile;
+    private RandomAccessFile tmpRandomAccessFile;
+    private FileChannel tmpChannel;
+    private long fileSize = 0, rawBytes = 0;
+
+    /**
+     * Creates a store that keeps m/z values losslessly.
+     */
+    public CompressedDataPointStore() {
+        this(null);
+    }
+
+    /**
+     * @param mzPrecisionPpm
+     *            spacing of the logarithmic grid m/z values are rounded to,
+     *            or null to store them losslessly
+     */
+    public CompressedDataPointStore(@Nullable Double mzPrecisionPpm) {
+        Preconditions.checkArgument(
+                (mzPrecisionPpm == null) || (mzPrecisionPpm > 0),
+                "m/z precision must be positive");
+        this.mzLogStep = mzPrecisionPpm == null ? 0
+                : Math.log1p(mzPrecisionPpm / 1E6);
+    }
+
+    @Override
+    public @Nonnull Object storeData(@Nonnull Object data,
+            @Nonnull Integer size) {
+        Preconditions.checkNotNull(data);
+        final Class<?> type = data.getClass().getComponentType();
+
+        if (!type.isPrimitive()) {
+            Object copy = Array.newInstance(type, size);
+            System.arraycopy(data, 0, copy, 0, size);
+            synchronized (this) {
+                Preconditions.checkState(!disposed,
+                        "Data store was disposed");
+                final Integer id = ++lastStorageId;
+                heapData.put(id, copy);
+                return id;
+            }
+        }
+
+        // Encode outside of the lock so that several tasks can write to the
+        // same store in parallel
+        byte encoding = SHUFFLED;
+        byte[] raw = null;
+        if (type == double.class) {
+            if (mzLogStep > 0) {
+                raw = encodeQuantizedMz((double[]) data, size);
+                encoding = MZ_QUANTIZED;
+            }
+            if (raw == null) {
+                raw = encodeMzDeltas((double[]) data, size);
+                encoding = MZ_DELTA;
+            }
+        }
+        if (raw == null) {
+            raw = shuffle(data, size);
+            encoding = SHUFFLED;
+        }
+        final byte[] compressed = deflate(raw);
+
+        synchronized (this) {
+            Preconditions.checkState(!disposed, "Data store was disposed");
+            final Integer id = ++lastStorageId;
+            final long offset = writeBytes(compressed);
+            storedData.put(id, new StoredArray(type, encoding, offset,
+                    compressed.length, raw.length, size));
+            rawBytes += (long) size * SpillableDataPointStore
+                    .getElementSize(type);
+            return id;
+        }
+    }
+
+    @Override
+    public void loadData(@Nonnull Object id, @Nonnull Object array) {
+        final StoredArray storedArray;
+        final FileChannel channel;
+        synchronized (this) {
+            Preconditions.checkState(!disposed, "Data store was disposed");
+            final Object heapArray = heapData.get(id);
+            if (heapArray != null) {
+                System.arraycopy(heapArray, 0, array, 0,
+                        Array.getLength(heapArray));
+                return;
+            }
+            storedArray = storedData.get(id);
+            channel = tmpChannel;
+        }
+        if (storedArray == null)
+            throw new IllegalArgumentException("ID " + id + " not found");
+
+        // Positional reads do not change the channel state, so the decoding
+        // runs outside of the lock as well
+        final byte[] raw = inflate(readBytes(channel, storedArray),
+                storedArray.rawLength);
+        switch (storedArray.encoding) {
+        case MZ_DELTA:
+            decodeMzDeltas(raw, (double[]) array, storedArray.size);
+            break;
+        case MZ_QUANTIZED:
+            decodeQuantizedMz(raw, (double[]) array, storedArray.size);
+            break;
+        default:
+            unshuffle(raw, storedArray.type, array, storedArray.size);
+        }
+    }
+
+    @Override
+    public synchronized void removeData(@Nonnull Object id) {
+        heapData.remove(id);
+        // Space in the temporary file is reclaimed when the store is disposed
+        storedData.remove(id);
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (disposed)
+            return;
+        disposed = true;
+        heapData.clear();
+        storedData.clear();
+        if (tmpRandomAccessFile != null) {
+            logger.debug("Disposing " + tmpFile + ", " + rawBytes
+                    + " bytes were compressed to " + fileSize);
+            try {
+                tmpRandomAccessFile.close();
+            } catch (IOException e) {
+                logger.warn("Could not close " + tmpFile + ": " + e);
+            }
+            if (!tmpFile.delete())
+                logger.warn("Could not delete " + tmpFile);
+            tmpRandomAccessFile = null;
+            tmpChannel = null;
+        }
+    }
+
+    /**
+     * @return size of the temporary file in bytes
+     */
+    public synchronized long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return size of all arrays written to the temporary file before
+     *         compression
+     */
+    public synchronized long getRawBytes() {
+        return rawBytes;
+    }
+
+    private long writeBytes(byte[] bytes) {
+        try {
+            if (tmpChannel == null) {
+                tmpFile = File.createTempFile("mzmine", ".tmp");
+                tmpFile.deleteOnExit();
+                tmpRandomAccessFile = new RandomAccessFile(tmpFile, "rw");
+                tmpChannel = tmpRandomAccessFile.getChannel();
+            }
+            final long offset = fileSize;
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long position = offset;
+            while (buffer.hasRemaining())
+                position += tmpChannel.write(buffer, position);
+            fileSize = position;
+            return offset;
+        } catch (IOException e) {
+            throw new MSDKRuntimeException(e);
+        }
+    }
+
+    private byte[] readBytes(FileChannel channel, StoredArray storedArray) {
+        final ByteBuffer buffer = ByteBuffer
+                .allocate(storedArray.compressedLength);
+        try {
+            long position = storedArray.offset;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0)
+                    throw new IOException("Unexpected end of " + tmpFile);
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new MSDKRuntimeException(e);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Encodes the differences between the bit patterns of consecutive values.
+     * For positive doubles the bit patterns are ordered like the values, so
+     * the differences of sorted arrays are small non-negative numbers.
+     * 
+     * @return null if the values are not sorted or not positive
+     */
+    private static @Nullable byte[] encodeMzDeltas(double[] mzValues,
+            int size) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(size * 4);
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            final long bits = Double.doubleToRawLongBits(mzValues[i]);
+            // Negative bit patterns are negative values, including -0.0
+            if ((bits < previous) || Double.isNaN(mzValues[i]))
+                return null;
+            writeVarLong(out, bits - previous);
+            previous = bits;
+        }
+        return out.toByteArray();
+    }
+
+    private static void decodeMzDeltas(byte[] raw, double[] mzValues,
+            int size) {
+        final int position[] = new int[1];
+        long bits = 0;
+        for (int i = 0; i < size; i++) {
+            bits += readVarLong(raw, position);
+            mzValues[i] = Double.longBitsToDouble(bits);
+        }
+    }
+
+    /**
+     * Rounds the logarithms of the values to multiples of the grid step and
+     * encodes the differences between consecutive grid indexes.
+     * 
+     * @return null if the values are not sorted or not positive
+     */
+    private @Nullable byte[] encodeQuantizedMz(double[] mzValues, int size) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(size * 2);
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            final double mz = mzValues[i];
+            if (!(mz > 0) || Double.isInfinite(mz))
+                return null;
+            final long index = Math.round(Math.log(mz) / mzLogStep);
+            if ((i > 0) && (index < previous))
+                return null;
+            // The first index is negative for m/z values below 1
+            writeVarLong(out, i == 0 ? zigZag(index) : index - previous);
+            previous = index;
+        }
+        return out.toByteArray();
+    }
+
+    private void decodeQuantizedMz(byte[] raw, double[] mzValues, int size) {
+        final int position[] = new int[1];
+        long index = 0;
+        for (int i = 0; i < size; i++) {
+            final long delta = readVarLong(raw, position);
+            index = i == 0 ? unZigZag(delta) : index + delta;
+            mzValues[i] = Math.exp(index * mzLogStep);
+        }
+    }
+
+    private static byte[] shuffle(Object array, int size) {
+        final Class<?> type = array.getClass().getComponentType();
+        final int elementSize = SpillableDataPointStore.getElementSize(type);
+        final ByteBuffer buffer = ByteBuffer.allocate(size * elementSize)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        if (type == double.class)
+            buffer.asDoubleBuffer().put((double[]) array, 0, size);
+        else if (type == float.class)
+            buffer.asFloatBuffer().put((float[]) array, 0, size);
+        else if (type == int.class)
+            buffer.asIntBuffer().put((int[]) array, 0, size);
+        else if (type == long.class)
+            buffer.asLongBuffer().put((long[]) array, 0, size);
+        else if (type == short.class)
+            buffer.asShortBuffer().put((short[]) array, 0, size);
+        else if (type == char.class)
+            buffer.asCharBuffer().put((char[]) array, 0, size);
+        else if (type == byte.class)
+            buffer.put((byte[]) array, 0, size);
+        else
+            throw new IllegalArgumentException(
+                    "Unsupported array type " + type);
+
+        final byte[] bytes = buffer.array();
+        if (elementSize == 1)
+            return bytes;
+        final byte[] shuffled = new byte[bytes.length];
+        for (int i = 0; i < size; i++) {
+            for (int b = 0; b < elementSize; b++)
+                shuffled[b * size + i] = bytes[i * elementSize + b];
+        }
+        return shuffled;
+    }
+
+    private static void unshuffle(byte[] shuffled, Class<?> type,
+            Object array, int size) {
+        final int elementSize = SpillableDataPointStore.getElementSize(type);
+        byte[] bytes = shuffled;
+        if (elementSize > 1) {
+            bytes = new byte[shuffled.length];
+            for (int i = 0; i < size; i++) {
+                for (int b = 0; b < elementSize; b++)
+                    bytes[i * elementSize + b] = shuffled[b * size + i];
+            }
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        if (type == double.class)
+            buffer.asDoubleBuffer().get((double[]) array, 0, size);
+        else if (type == float.class)
+            buffer.asFloatBuffer().get((float[]) array, 0, size);
+        else if (type == int.class)
+            buffer.asIntBuffer().get((int[]) array, 0, size);
+        else if (type == long.class)
+            buffer.asLongBuffer().get((long[]) array, 0, size);
+        else if (type == short.class)
+            buffer.asShortBuffer().get((short[]) array, 0, size);
+        else if (type == char.class)
+            buffer.asCharBuffer().get((char[]) array, 0, size);
+        else
+            buffer.get((byte[]) array, 0, size);
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    raw.length / 2 + 64);
+            final byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLength) {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            final byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength) {
+                int inflated = inflater.inflate(raw, length,
+                        rawLength - length);
+                if ((inflated == 0) && (inflater.finished()
+                        || inflater.needsInput()))
+                    throw new MSDKRuntimeException(
+                            "Truncated compressed data");
+                length += inflated;
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new MSDKRuntimeException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] bytes, int position[]) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            final byte b = bytes[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+            shift += 7;
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static class StoredArray {
+        private final Class<?> type;
+        private final byte encoding;
+        private final long offset;
+        private final int compressedLength, rawLength, size;
+
+        StoredArray(Class<?> type, byte encoding, long offset,
+                int compressedLength, int rawLength, int size) {
+            this.type = type;
+            this.encoding = encoding;
+            this.offset = offset;
+            this.compressedLength = compressedLength;
+            this.rawLength = rawLength;
+            this.size = size;
+        }
+    }
+
+}
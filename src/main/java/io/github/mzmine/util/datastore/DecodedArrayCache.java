@@ -0,0 +1,215 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.datastore;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Size-bounded cache of decoded data point arrays, shared by all
+ * {@link CachingDataPointStore}s. The least recently used arrays are evicted
+ * once the total size exceeds the limit. With soft values, the garbage
+ * collector may also drop cached arrays when the heap runs short.
+ */
+public class DecodedArrayCache {
+
+    private final boolean softValues;
+
+    // Access order makes the first entry the least recently used one
+    private final LinkedHashMap<Object, CachedArray> arrays = new LinkedHashMap<>(
+            16, 0.75f, true);
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+    private final AtomicLong hits = new AtomicLong(),
+            misses = new AtomicLong(), readAheads = new AtomicLong();
+
+    private final ExecutorService readAheadThread;
+
+    private long sizeLimit, size = 0;
+
+    /**
+     * @param sizeLimit
+     *            maximum total size of the cached arrays in bytes
+     * @param softValues
+     *            whether the garbage collector may drop cached arrays
+     */
+    public DecodedArrayCache(long sizeLimit, boolean softValues) {
+        this.sizeLimit = sizeLimit;
+        this.softValues = softValues;
+        this.readAheadThread = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Spectrum read-ahead");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the cached array, or null if it is not cached
+     */
+    public synchronized @Nullable Object get(@Nonnull Object key) {
+        purgeCollected();
+        final CachedArray cachedArray = arrays.get(key);
+        final Object array = cachedArray == null ? null : cachedArray.get();
+        if (array == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return array;
+    }
+
+    /**
+     * Same as {@link #get(Object)}, but neither counted as hit or miss nor
+     * changing the eviction order.
+     */
+    public synchronized boolean contains(@Nonnull Object key) {
+        purgeCollected();
+        return arrays.containsKey(key);
+    }
+
+    /**
+     * Adds an array to the cache. The cache keeps a reference to the given
+     * array, so it must not be modified afterwards.
+     */
+    public synchronized void put(@Nonnull Object key, @Nonnull Object array,
+            long bytes) {
+        purgeCollected();
+        if (bytes > sizeLimit)
+            return;
+        final CachedArray previous = arrays.put(key,
+                new CachedArray(key, array, bytes));
+        if (previous != null)
+            size -= previous.bytes;
+        size += bytes;
+        evict(sizeLimit);
+    }
+
+    public synchronized void remove(@Nonnull Object key) {
+        final CachedArray cachedArray = arrays.remove(key);
+        if (cachedArray != null)
+            size -= cachedArray.bytes;
+    }
+
+    public synchronized void clear() {
+        arrays.clear();
+        size = 0;
+    }
+
+    /**
+     * Changes the maximum size and evicts arrays if necessary. A limit of 0
+     * disables the cache.
+     */
+    public synchronized void setSizeLimit(long sizeLimit) {
+        this.sizeLimit = sizeLimit;
+        evict(sizeLimit);
+    }
+
+    public synchronized long getSizeLimit() {
+        return sizeLimit;
+    }
+
+    /**
+     * @return total size of the cached arrays in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of arrays loaded in advance because the arrays before
+     *         them were read sequentially
+     */
+    public long getReadAheads() {
+        return readAheads.get();
+    }
+
+    public @Nonnull String getStatistics() {
+        return "Spectrum cache: " + hits + " hits, " + misses + " misses, "
+                + readAheads + " read ahead, " + (getSize() / (1024 * 1024))
+                + " MB used";
+    }
+
+    /**
+     * Runs the given read-ahead on a background thread with low priority.
+     */
+    void readAhead(@Nonnull Runnable loader) {
+        readAheadThread.execute(loader);
+    }
+
+    void countReadAhead() {
+        readAheads.incrementAndGet();
+    }
+
+    private void evict(long limit) {
+        final Iterator<CachedArray> it = arrays.values().iterator();
+        while ((size > limit) && it.hasNext()) {
+            size -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * Removes the entries whose arrays were dropped by the garbage collector.
+     */
+    private void purgeCollected() {
+        Object ref;
+        while ((ref = collected.poll()) != null) {
+            final CachedArray cachedArray = (CachedArray) ref;
+            // The key may have been cached again in the meantime
+            if (arrays.get(cachedArray.key) == cachedArray) {
+                arrays.remove(cachedArray.key);
+                size -= cachedArray.bytes;
+            }
+        }
+    }
+
+    private class CachedArray extends SoftReference<Object> {
+        private final Object key;
+        private final long bytes;
+
+        // Keeps the array reachable if the values are not soft
+        @SuppressWarnings("unused")
+        private final Object strongValue;
+
+        CachedArray(Object key, Object array, long bytes) {
+            super(array, collected);
+            this.key = key;
+            this.bytes = bytes;
+            this.strongValue = softValues ? null : array;
+        }
+    }
+
+}
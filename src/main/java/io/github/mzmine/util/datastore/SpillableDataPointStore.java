@@ -0,0 +1,290 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.datastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import io.github.msdk.MSDKRuntimeException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+
+/**
+ * Data point store that keeps its arrays on the heap until it is asked to
+ * spill them to a temporary file. Once spilled, arrays of primitive types are
+ * written directly to the file; other arrays (e.g. ChromatographyInfo[]) are
+ * small and stay on the heap.
+ */
+public class SpillableDataPointStore implements DataPointStore {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Map<Integer, Object> heapData = new HashMap<>();
+    private final Map<Integer, SpilledArray> spilledData = new HashMap<>();
+
+    private int lastStorageId = 0;
+    private long heapBytes = 0;
+    private boolean spilled = false, disposed = false;
+
+    private File tmpFile;
+    private RandomAccessFile tmpRandomAccessFile;
+    private FileChannel tmpChannel;
+    private long fileSize = 0;
+
+    @Override
+    public synchronized @Nonnull Object storeData(@Nonnull Object data,
+            @Nonnull Integer size) {
+        Preconditions.checkNotNull(data);
+        Preconditions.checkState(!disposed, "Data store was disposed");
+
+        final Integer id = ++lastStorageId;
+        if (spilled && data.getClass().getComponentType().isPrimitive()) {
+            spilledData.put(id, writeArray(data, size));
+        } else {
+            Object copy = Array.newInstance(
+                    data.getClass().getComponentType(), size);
+            System.arraycopy(data, 0, copy, 0, size);
+            heapData.put(id, copy);
+            heapBytes += estimateBytes(copy);
+        }
+        return id;
+    }
+
+    @Override
+    public synchronized void loadData(@Nonnull Object id,
+            @Nonnull Object array) {
+        Preconditions.checkState(!disposed, "Data store was disposed");
+
+        final Object heapArray = heapData.get(id);
+        if (heapArray != null) {
+            System.arraycopy(heapArray, 0, array, 0,
+                    Array.getLength(heapArray));
+            return;
+        }
+
+        final SpilledArray spilledArray = spilledData.get(id);
+        if (spilledArray == null)
+            throw new IllegalArgumentException("ID " + id + " not found");
+        readArray(spilledArray, array);
+    }
+
+    @Override
+    public synchronized void removeData(@Nonnull Object id) {
+        final Object heapArray = heapData.remove(id);
+        if (heapArray != null)
+            heapBytes -= estimateBytes(heapArray);
+        // Space of spilled arrays is reclaimed when the store is disposed
+        spilledData.remove(id);
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (disposed)
+            return;
+        disposed = true;
+        heapData.clear();
+        spilledData.clear();
+        heapBytes = 0;
+        closeTmpFile();
+    }
+
+    /**
+     * @return estimated number of bytes this store currently keeps on the heap
+     */
+    public synchronized long getHeapBytes() {
+        return heapBytes;
+    }
+
+    public synchronized boolean isSpilled() {
+        return spilled;
+    }
+
+    /**
+     * Moves all arrays of primitive types to a temporary file and writes all
+     * arrays stored later directly to that file.
+     * 
+     * @return number of heap bytes released
+     */
+    public synchronized long spillToDisk() {
+        if (disposed)
+            return 0;
+        spilled = true;
+
+        final long bytesBefore = heapBytes;
+        final List<Integer> movedIds = new ArrayList<>();
+        for (Map.Entry<Integer, Object> entry : heapData.entrySet()) {
+            final Object array = entry.getValue();
+            if (!array.getClass().getComponentType().isPrimitive())
+                continue;
+            spilledData.put(entry.getKey(),
+                    writeArray(array, Array.getLength(array)));
+            heapBytes -= estimateBytes(array);
+            movedIds.add(entry.getKey());
+        }
+        for (Integer id : movedIds)
+            heapData.remove(id);
+
+        return bytesBefore - heapBytes;
+    }
+
+    private SpilledArray writeArray(Object array, int size) {
+        final Class<?> type = array.getClass().getComponentType();
+        final int elementSize = getElementSize(type);
+        final ByteBuffer buffer = ByteBuffer.allocate(size * elementSize)
+                .order(ByteOrder.nativeOrder());
+
+        if (type == double.class)
+            buffer.asDoubleBuffer().put((double[]) array, 0, size);
+        else if (type == float.class)
+            buffer.asFloatBuffer().put((float[]) array, 0, size);
+        else if (type == int.class)
+            buffer.asIntBuffer().put((int[]) array, 0, size);
+        else if (type == long.class)
+            buffer.asLongBuffer().put((long[]) array, 0, size);
+        else if (type == short.class)
+            buffer.asShortBuffer().put((short[]) array, 0, size);
+        else if (type == char.class)
+            buffer.asCharBuffer().put((char[]) array, 0, size);
+        else if (type == byte.class)
+            buffer.put((byte[]) array, 0, size);
+        else
+            throw new IllegalArgumentException(
+                    "Unsupported array type " + type);
+
+        try {
+            if (tmpChannel == null)
+                openTmpFile();
+            final long offset = fileSize;
+            buffer.clear();
+            long position = offset;
+            while (buffer.hasRemaining())
+                position += tmpChannel.write(buffer, position);
+            fileSize = position;
+            return new SpilledArray(type, offset, size);
+        } catch (IOException e) {
+            throw new MSDKRuntimeException(e);
+        }
+    }
+
+    private void readArray(SpilledArray spilledArray, Object array) {
+        final int elementSize = getElementSize(spilledArray.type);
+        final ByteBuffer buffer = ByteBuffer
+                .allocate(spilledArray.size * elementSize)
+                .order(ByteOrder.nativeOrder());
+        try {
+            long position = spilledArray.offset;
+            while (buffer.hasRemaining()) {
+                int read = tmpChannel.read(buffer, position);
+                if (read < 0)
+                    throw new IOException("Unexpected end of " + tmpFile);
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new MSDKRuntimeException(e);
+        }
+        buffer.flip();
+
+        final Class<?> type = spilledArray.type;
+        final int size = spilledArray.size;
+        if (type == double.class)
+            buffer.asDoubleBuffer().get((double[]) array, 0, size);
+        else if (type == float.class)
+            buffer.asFloatBuffer().get((float[]) array, 0, size);
+        else if (type == int.class)
+            buffer.asIntBuffer().get((int[]) array, 0, size);
+        else if (type == long.class)
+            buffer.asLongBuffer().get((long[]) array, 0, size);
+        else if (type == short.class)
+            buffer.asShortBuffer().get((short[]) array, 0, size);
+        else if (type == char.class)
+            buffer.asCharBuffer().get((char[]) array, 0, size);
+        else
+            buffer.get((byte[]) array, 0, size);
+    }
+
+    private void openTmpFile() throws IOException {
+        tmpFile = File.createTempFile("mzmine", ".tmp");
+        tmpFile.deleteOnExit();
+        tmpRandomAccessFile = new RandomAccessFile(tmpFile, "rw");
+        tmpChannel = tmpRandomAccessFile.getChannel();
+        logger.debug("Spilling data point store to " + tmpFile);
+    }
+
+    private void closeTmpFile() {
+        if (tmpRandomAccessFile == null)
+            return;
+        try {
+            tmpRandomAccessFile.close();
+        } catch (IOException e) {
+            logger.warn("Could not close " + tmpFile + ": " + e);
+        }
+        if (!tmpFile.delete())
+            logger.warn("Could not delete " + tmpFile);
+        tmpRandomAccessFile = null;
+        tmpChannel = null;
+    }
+
+    static int getElementSize(Class<?> type) {
+        if ((type == double.class) || (type == long.class))
+            return 8;
+        if ((type == float.class) || (type == int.class))
+            return 4;
+        if ((type == short.class) || (type == char.class))
+            return 2;
+        return 1;
+    }
+
+    private static long estimateBytes(Object array) {
+        final Class<?> type = array.getClass().getComponentType();
+        final int length = Array.getLength(array);
+        if (type.isPrimitive())
+            return (long) length * getElementSize(type);
+        // Reference plus a small object per element
+        return (long) length * 32;
+    }
+
+    private static class SpilledArray {
+        private final Class<?> type;
+        private final long offset;
+        private final int size;
+
+        SpilledArray(Class<?> type, long offset, int size) {
+            this.type = type;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+}
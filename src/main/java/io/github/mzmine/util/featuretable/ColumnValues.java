@@ -0,0 +1,390 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package io.github.mzmine.util.featuretable;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+
+/**
+ * Values of one column of a {@link ColumnarFeatureTable}, indexed by the
+ * index of the row in the table. Integer, Float and Double columns are stored
+ * as primitive arrays, and ChromatographyInfo columns as the retention time
+ * plus the separation type; a bitmap marks the rows which have a value. Values
+ * of other types, and ChromatographyInfo values with a secondary retention
+ * time or ion drift time, are stored as objects.
+ * 
+ * The typed accessors read and write the primitive values without boxing.
+ * Cells of different rows may be set from several threads, as long as the
+ * rows are in different blocks of {@link #BLOCK_SIZE} rows, which share one
+ * word of the bitmap.
+ */
+public final class ColumnValues {
+
+    public static final int BLOCK_SIZE = 64;
+
+    public enum ValueType {
+        INT32, FLOAT32, FLOAT64, RETENTION_TIME, OBJECT;
+    }
+
+    private static final SeparationType separationTypes[] = SeparationType
+            .values();
+
+    private final @Nonnull FeatureTableColumn<?> column;
+    private final @Nonnull ValueType type;
+
+    private long notNull[];
+    private int ints[];
+    private float floats[];
+    private double doubles[];
+    private byte separationTypeOrdinals[];
+    private Object objects[];
+
+    ColumnValues(@Nonnull FeatureTableColumn<?> column, int capacity) {
+        this.column = column;
+        this.type = getValueType(column.getDataTypeClass());
+        notNull = new long[capacity / BLOCK_SIZE];
+        switch (type) {
+        case INT32:
+            ints = new int[capacity];
+            break;
+        case FLOAT32:
+            floats = new float[capacity];
+            break;
+        case FLOAT64:
+            doubles = new double[capacity];
+            break;
+        case RETENTION_TIME:
+            floats = new float[capacity];
+            separationTypeOrdinals = new byte[capacity];
+            break;
+        default:
+            objects = new Object[capacity];
+            break;
+        }
+    }
+
+    private static @Nonnull ValueType getValueType(
+            @Nullable Class<?> dataTypeClass) {
+        if (dataTypeClass == Integer.class)
+            return ValueType.INT32;
+        if (dataTypeClass == Float.class)
+            return ValueType.FLOAT32;
+        if (dataTypeClass == Double.class)
+            return ValueType.FLOAT64;
+        if (dataTypeClass == ChromatographyInfo.class)
+            return ValueType.RETENTION_TIME;
+        return ValueType.OBJECT;
+    }
+
+    /**
+     * @param capacity
+     *            new number of rows, a multiple of {@link #BLOCK_SIZE}
+     */
+    void setCapacity(int capacity) {
+        notNull = Arrays.copyOf(notNull, capacity / BLOCK_SIZE);
+        if (ints != null)
+            ints = Arrays.copyOf(ints, capacity);
+        if (floats != null)
+            floats = Arrays.copyOf(floats, capacity);
+        if (doubles != null)
+            doubles = Arrays.copyOf(doubles, capacity);
+        if (separationTypeOrdinals != null)
+            separationTypeOrdinals = Arrays.copyOf(separationTypeOrdinals,
+                    capacity);
+        if (objects != null)
+            objects = Arrays.copyOf(objects, capacity);
+    }
+
+    public @Nonnull FeatureTableColumn<?> getColumn() {
+        return column;
+    }
+
+    public @Nonnull ValueType getValueType() {
+        return type;
+    }
+
+    /**
+     * @return whether the values can be read with the primitive accessors
+     */
+    public boolean isNumeric() {
+        return type != ValueType.OBJECT;
+    }
+
+    public boolean isNull(int row) {
+        return (notNull[row >> 6] & (1L << (row & 63))) == 0;
+    }
+
+    private void setNotNull(int row) {
+        notNull[row >> 6] |= 1L << (row & 63);
+    }
+
+    public void setNull(int row) {
+        notNull[row >> 6] &= ~(1L << (row & 63));
+        clearObject(row);
+    }
+
+    private void clearObject(int row) {
+        if (objects != null)
+            objects[row] = null;
+    }
+
+    /**
+     * @return the value of an INT32 column; 0 for null
+     */
+    public int getInt(int row) {
+        checkType(ValueType.INT32);
+        return ints[row];
+    }
+
+    /**
+     * @return the value of a FLOAT32 column, or the retention time of a
+     *         RETENTION_TIME column; 0 for null
+     */
+    public float getFloat(int row) {
+        if (type != ValueType.RETENTION_TIME)
+            checkType(ValueType.FLOAT32);
+        return floats[row];
+    }
+
+    /**
+     * @return the value of any numeric column as double; NaN for null
+     */
+    public double getDouble(int row) {
+        if (isNull(row))
+            return Double.NaN;
+        switch (type) {
+        case INT32:
+            return ints[row];
+        case FLOAT32:
+        case RETENTION_TIME:
+            return floats[row];
+        case FLOAT64:
+            return doubles[row];
+        default:
+            throw new IllegalStateException(
+                    "Column " + column.getName() + " is not numeric");
+        }
+    }
+
+    public void setInt(int row, int value) {
+        checkType(ValueType.INT32);
+        ints[row] = value;
+        setNotNull(row);
+    }
+
+    /**
+     * Sets the value of a FLOAT32 column, or the retention time of a
+     * RETENTION_TIME column with unknown separation type
+     */
+    public void setFloat(int row, float value) {
+        if (type == ValueType.RETENTION_TIME) {
+            separationTypeOrdinals[row] = -1;
+            clearObject(row);
+        } else
+            checkType(ValueType.FLOAT32);
+        floats[row] = value;
+        setNotNull(row);
+    }
+
+    public void setDouble(int row, double value) {
+        checkType(ValueType.FLOAT64);
+        doubles[row] = value;
+        setNotNull(row);
+    }
+
+    private void checkType(ValueType expectedType) {
+        if (type != expectedType)
+            throw new IllegalStateException("Column " + column.getName()
+                    + " has " + type + " values, not " + expectedType);
+    }
+
+    /**
+     * @return the value as the object type of the column. Values of
+     *         ChromatographyInfo columns are new objects holding the retention
+     *         time and separation type.
+     */
+    @Nullable
+    Object get(int row) {
+        if (isNull(row))
+            return null;
+        switch (type) {
+        case INT32:
+            return ints[row];
+        case FLOAT32:
+            return floats[row];
+        case FLOAT64:
+            return doubles[row];
+        case RETENTION_TIME:
+            if ((objects != null) && (objects[row] != null))
+                return objects[row];
+            final int ordinal = separationTypeOrdinals[row];
+            return MSDKObjectBuilder.getChromatographyInfo1D(
+                    ordinal < 0 ? SeparationType.UNKNOWN
+                            : separationTypes[ordinal],
+                    floats[row]);
+        default:
+            return objects[row];
+        }
+    }
+
+    /**
+     * Sets the value from an object of the type of the column. Numbers are
+     * converted to the type of a numeric column.
+     * 
+     * @throws IllegalArgumentException
+     *             if the value does not fit the column type
+     */
+    void set(int row, @Nullable Object value) {
+        if (value == null) {
+            setNull(row);
+            return;
+        }
+        switch (type) {
+        case INT32:
+            setInt(row, toNumber(value).intValue());
+            break;
+        case FLOAT32:
+            setFloat(row, toNumber(value).floatValue());
+            break;
+        case FLOAT64:
+            setDouble(row, toNumber(value).doubleValue());
+            break;
+        case RETENTION_TIME:
+            if (!(value instanceof ChromatographyInfo))
+                throw new IllegalArgumentException(
+                        "Expected ChromatographyInfo for column "
+                                + column.getName() + ", got " + value);
+            final ChromatographyInfo info = (ChromatographyInfo) value;
+            final Float rt = info.getRetentionTime();
+            if (rt == null) {
+                setNull(row);
+                return;
+            }
+            floats[row] = rt;
+            separationTypeOrdinals[row] = (byte) (info
+                    .getSeparationType() == null ? -1
+                            : info.getSeparationType().ordinal());
+            if ((info.getSecondaryRetentionTime() != null)
+                    || (info.getIonDriftTime() != null)) {
+                allocateObjects();
+                objects[row] = info;
+            } else {
+                clearObject(row);
+            }
+            setNotNull(row);
+            break;
+        default:
+            objects[row] = value;
+            setNotNull(row);
+            break;
+        }
+    }
+
+    /**
+     * Copies a value from other column values. Values of the same numeric
+     * type are copied without creating objects.
+     * 
+     * @throws IllegalArgumentException
+     *             if the value does not fit the column type
+     */
+    public void copyValue(int row, @Nonnull ColumnValues source,
+            int sourceRow) {
+        if (source.isNull(sourceRow)) {
+            setNull(row);
+            return;
+        }
+        if ((source.type != type) || (type == ValueType.OBJECT)) {
+            set(row, source.get(sourceRow));
+            return;
+        }
+        switch (type) {
+        case INT32:
+            ints[row] = source.ints[sourceRow];
+            break;
+        case FLOAT32:
+            floats[row] = source.floats[sourceRow];
+            break;
+        case FLOAT64:
+            doubles[row] = source.doubles[sourceRow];
+            break;
+        default:
+            floats[row] = source.floats[sourceRow];
+            separationTypeOrdinals[row] = source.separationTypeOrdinals[
+                    sourceRow];
+            final Object info = (source.objects == null) ? null
+                    : source.objects[sourceRow];
+            if (info != null) {
+                allocateObjects();
+                objects[row] = info;
+            } else {
+                clearObject(row);
+            }
+            break;
+        }
+        setNotNull(row);
+    }
+
+    /**
+     * Allocates the objects of a RETENTION_TIME column on first use
+     */
+    private synchronized void allocateObjects() {
+        if (objects == null)
+            objects = new Object[floats.length];
+    }
+
+    private @Nonnull Number toNumber(@Nonnull Object value) {
+        if (!(value instanceof Number))
+            throw new IllegalArgumentException("Expected a number for column "
+                    + column.getName() + ", got " + value);
+        return (Number) value;
+    }
+
+    /**
+     * @return approximate number of bytes used by the values, counting 16
+     *         bytes for each stored object
+     */
+    long estimateBytes() {
+        final long capacity = notNull.length * (long) BLOCK_SIZE;
+        long bytes = notNull.length * 8L;
+        switch (type) {
+        case INT32:
+        case FLOAT32:
+            return bytes + capacity * 4;
+        case FLOAT64:
+            return bytes + capacity * 8;
+        case RETENTION_TIME:
+            return bytes + capacity * 5;
+        default:
+            long objectCount = 0;
+            for (long word : notNull)
+                objectCount += Long.bitCount(word);
+            return bytes + capacity * 8 + objectCount * 16;
+        }
+    }
+
+}
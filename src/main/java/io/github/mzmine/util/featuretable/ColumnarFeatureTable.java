@@ -0,0 +1,304 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package io.github.mzmine.util.featuretable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+
+/**
+ * Feature table which stores the values of each column in a
+ * {@link ColumnValues}, i.e. numeric values in primitive arrays instead of
+ * one boxed object per cell. The table implements the MSDK
+ * {@link FeatureTable} interface, so it can be used by all existing code;
+ * code which reads or writes many cells can use the typed accessors of
+ * {@link #getValues(FeatureTableColumn)} with the index of a row, see
+ * {@link ColumnarFeatureTableRow#getIndex()}.
+ * 
+ * Every row has a fixed index. Rows are created with {@link #createRow(int)}
+ * and become part of the table when added; rows of other feature tables are
+ * copied when added, taking the values of the columns of this table. Removed
+ * rows keep their index, their values are not freed until the table is
+ * disposed. Columns must be added before their values are set. Like the
+ * arrays of a list, the column arrays are replaced when they grow, so rows
+ * must not be created while other threads read the table.
+ */
+public class ColumnarFeatureTable implements FeatureTable {
+
+    private @Nonnull String name;
+    private final @Nonnull DataPointStore dataPointStore;
+
+    private final List<FeatureTableColumn<?>> columns = new ArrayList<>();
+
+    // Replaced when columns are added or removed, so that cells can be read
+    // without locking
+    private volatile Map<FeatureTableColumn<?>, ColumnValues> values = new IdentityHashMap<>();
+    private volatile ColumnValues mzValues, rtValues;
+
+    // Indexes are allocated in blocks, all columns have the same capacity
+    private int capacity = ColumnValues.BLOCK_SIZE;
+    private int numberOfIndexes = 0;
+    private int ids[] = new int[capacity];
+
+    private final List<ColumnarFeatureTableRow> rows = new ArrayList<>();
+    private boolean rowsRemoved = false;
+    private List<FeatureTableRow> rowSnapshot;
+
+    public ColumnarFeatureTable(@Nonnull String name,
+            @Nonnull DataPointStore dataPointStore) {
+        this.name = name;
+        this.dataPointStore = dataPointStore;
+    }
+
+    @Override
+    public @Nonnull String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(@Nonnull String name) {
+        this.name = name;
+    }
+
+    /**
+     * Creates a new row with the next free index. The row is not part of the
+     * table until it is added with {@link #addRow(FeatureTableRow)}.
+     */
+    public synchronized @Nonnull ColumnarFeatureTableRow createRow(int id) {
+        if (numberOfIndexes == capacity)
+            setCapacity(capacity * 2);
+        final int index = numberOfIndexes++;
+        ids[index] = id;
+        return new ColumnarFeatureTableRow(this, index);
+    }
+
+    /**
+     * Reserves space for the given total number of rows, so that the arrays
+     * are not grown repeatedly while rows are created
+     */
+    public synchronized void ensureCapacity(int numberOfRows) {
+        if (numberOfRows > capacity)
+            setCapacity(numberOfRows);
+    }
+
+    private void setCapacity(int newCapacity) {
+        capacity = (newCapacity + ColumnValues.BLOCK_SIZE - 1)
+                / ColumnValues.BLOCK_SIZE * ColumnValues.BLOCK_SIZE;
+        ids = Arrays.copyOf(ids, capacity);
+        for (ColumnValues columnValues : values.values())
+            columnValues.setCapacity(capacity);
+    }
+
+    int getId(int index) {
+        return ids[index];
+    }
+
+    @Override
+    public synchronized @Nonnull List<FeatureTableRow> getRows() {
+        if (rowSnapshot == null) {
+            if (rowsRemoved) {
+                rows.removeIf(ColumnarFeatureTableRow::isRemoved);
+                rowsRemoved = false;
+            }
+            rowSnapshot = Collections.unmodifiableList(new ArrayList<>(rows));
+        }
+        return rowSnapshot;
+    }
+
+    /**
+     * Adds a row created by {@link #createRow(int)}, or a copy of a row of
+     * another feature table. The copy takes the values which the row has for
+     * the columns of this table.
+     */
+    @Override
+    public synchronized void addRow(@Nonnull FeatureTableRow row) {
+        ColumnarFeatureTableRow columnarRow;
+        if ((row instanceof ColumnarFeatureTableRow)
+                && (row.getFeatureTable() == this)) {
+            columnarRow = (ColumnarFeatureTableRow) row;
+            Preconditions.checkArgument(!columnarRow.isAdded(),
+                    "Row " + row.getId() + " was already added");
+        } else {
+            final Integer id = row.getId();
+            columnarRow = createRow(id == null ? numberOfIndexes + 1 : id);
+            for (FeatureTableColumn<?> column : columns)
+                values.get(column).set(columnarRow.getIndex(),
+                        row.getData(column));
+        }
+        columnarRow.setAdded();
+        rows.add(columnarRow);
+        rowSnapshot = null;
+    }
+
+    @Override
+    public synchronized void removeRow(@Nonnull FeatureTableRow row) {
+        if (!(row instanceof ColumnarFeatureTableRow)
+                || (row.getFeatureTable() != this))
+            return;
+        final ColumnarFeatureTableRow columnarRow = (ColumnarFeatureTableRow) row;
+        if (!columnarRow.isAdded() || columnarRow.isRemoved())
+            return;
+        columnarRow.setRemoved();
+        rowsRemoved = true;
+        rowSnapshot = null;
+    }
+
+    @Override
+    public synchronized @Nonnull List<FeatureTableColumn<?>> getColumns() {
+        return Collections.unmodifiableList(new ArrayList<>(columns));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized @Nullable <DataType> FeatureTableColumn<DataType> getColumn(
+            @Nonnull String columnName, @Nullable Sample sample,
+            @Nullable Class<DataType> dtClass) {
+        for (FeatureTableColumn<?> column : columns) {
+            if (column.getName().equals(columnName)
+                    && (column.getSample() == sample)
+                    && ((dtClass == null)
+                            || dtClass.equals(column.getDataTypeClass())))
+                return (FeatureTableColumn<DataType>) column;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized @Nullable <DataType> FeatureTableColumn<DataType> getColumn(
+            @Nonnull ColumnName columnName, @Nullable Sample sample) {
+        for (FeatureTableColumn<?> column : columns) {
+            if (column.getName().equals(columnName.getName())
+                    && (column.getSample() == sample))
+                return (FeatureTableColumn<DataType>) column;
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void addColumn(@Nonnull FeatureTableColumn<?> column) {
+        if (values.containsKey(column))
+            return;
+        columns.add(column);
+        final Map<FeatureTableColumn<?>, ColumnValues> newValues = new IdentityHashMap<>(
+                values);
+        newValues.put(column, new ColumnValues(column, capacity));
+        setValues(newValues);
+    }
+
+    @Override
+    public synchronized void removeColumn(
+            @Nonnull FeatureTableColumn<?> column) {
+        columns.remove(column);
+        final Map<FeatureTableColumn<?>, ColumnValues> newValues = new IdentityHashMap<>(
+                values);
+        newValues.remove(column);
+        setValues(newValues);
+    }
+
+    private void setValues(
+            @Nonnull Map<FeatureTableColumn<?>, ColumnValues> newValues) {
+        values = newValues;
+        final FeatureTableColumn<?> mzColumn = getColumn(ColumnName.MZ, null);
+        final FeatureTableColumn<?> rtColumn = getColumn(ColumnName.RT, null);
+        mzValues = (mzColumn == null) ? null : newValues.get(mzColumn);
+        rtValues = (rtColumn == null) ? null : newValues.get(rtColumn);
+    }
+
+    /**
+     * @return the values of the column, or null if the column is not part of
+     *         this table
+     */
+    public @Nullable ColumnValues getValues(
+            @Nonnull FeatureTableColumn<?> column) {
+        return values.get(column);
+    }
+
+    /**
+     * @return the values of the m/z column of the rows, if there is one
+     */
+    public @Nullable ColumnValues getMzValues() {
+        return mzValues;
+    }
+
+    /**
+     * @return the values of the retention time column of the rows, if there
+     *         is one
+     */
+    public @Nullable ColumnValues getRtValues() {
+        return rtValues;
+    }
+
+    @Override
+    public synchronized @Nonnull List<Sample> getSamples() {
+        final Set<Sample> samples = Collections
+                .newSetFromMap(new IdentityHashMap<>());
+        final List<Sample> result = new ArrayList<>();
+        for (FeatureTableColumn<?> column : columns) {
+            final Sample sample = column.getSample();
+            if ((sample != null) && samples.add(sample))
+                result.add(sample);
+        }
+        return result;
+    }
+
+    @Override
+    public @Nonnull DataPointStore getDataPointStore() {
+        return dataPointStore;
+    }
+
+    /**
+     * @return approximate number of bytes used by the cells of the table, not
+     *         including the data points of the chromatograms
+     */
+    public synchronized long estimateBytes() {
+        long bytes = capacity * 4L;
+        for (ColumnValues columnValues : values.values())
+            bytes += columnValues.estimateBytes();
+        return bytes;
+    }
+
+    @Override
+    public synchronized void dispose() {
+        dataPointStore.dispose();
+        rows.clear();
+        rowSnapshot = null;
+        columns.clear();
+        setValues(new IdentityHashMap<>());
+    }
+
+}
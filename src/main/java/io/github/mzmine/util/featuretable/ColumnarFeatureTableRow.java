@@ -0,0 +1,126 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package io.github.mzmine.util.featuretable;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+
+/**
+ * Row of a {@link ColumnarFeatureTable}. The row holds no values itself, it
+ * refers to the values of its index in the columns of the table.
+ */
+public class ColumnarFeatureTableRow implements FeatureTableRow {
+
+    private final @Nonnull ColumnarFeatureTable featureTable;
+    private final int index;
+    private volatile boolean added = false, removed = false;
+
+    ColumnarFeatureTableRow(@Nonnull ColumnarFeatureTable featureTable,
+            int index) {
+        this.featureTable = featureTable;
+        this.index = index;
+    }
+
+    @Override
+    public @Nonnull FeatureTable getFeatureTable() {
+        return featureTable;
+    }
+
+    /**
+     * @return the index of the row in the {@link ColumnValues} of the table
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public @Nonnull Integer getId() {
+        return featureTable.getId(index);
+    }
+
+    @Override
+    public @Nullable Double getMz() {
+        final ColumnValues values = featureTable.getMzValues();
+        if ((values == null) || values.isNull(index))
+            return null;
+        return values.getDouble(index);
+    }
+
+    @Override
+    public @Nullable ChromatographyInfo getChromatographyInfo() {
+        final ColumnValues values = featureTable.getRtValues();
+        if (values == null)
+            return null;
+        final Object value = values.get(index);
+        return (value instanceof ChromatographyInfo)
+                ? (ChromatographyInfo) value : null;
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             if the column is not part of the table
+     */
+    @Override
+    public <DataType> void setData(
+            @Nonnull FeatureTableColumn<? extends DataType> column,
+            @Nullable DataType data) {
+        final ColumnValues values = featureTable.getValues(column);
+        if (values == null)
+            throw new IllegalArgumentException("Column " + column.getName()
+                    + " is not part of feature table "
+                    + featureTable.getName());
+        values.set(index, data);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public @Nullable <DataType> DataType getData(
+            @Nullable FeatureTableColumn<? extends DataType> column) {
+        if (column == null)
+            return null;
+        final ColumnValues values = featureTable.getValues(column);
+        if (values == null)
+            return null;
+        return (DataType) values.get(index);
+    }
+
+    boolean isAdded() {
+        return added;
+    }
+
+    void setAdded() {
+        added = true;
+    }
+
+    boolean isRemoved() {
+        return removed;
+    }
+
+    void setRemoved() {
+        removed = true;
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.io;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Growable byte buffer which can be reset and reused for formatting many
+ * blocks of text. Unlike ByteArrayOutputStream, it is not synchronized and
+ * gives direct access to its backing array.
+ */
+public class ByteBlock extends OutputStream {
+
+    private byte data[];
+    private int size = 0;
+
+    public ByteBlock() {
+        this(64 * 1024);
+    }
+
+    public ByteBlock(int initialCapacity) {
+        data = new byte[initialCapacity];
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the backing array. Only the first size() bytes are valid.
+     */
+    public byte[] array() {
+        return data;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > data.length)
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        data[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(@Nonnull byte b[], int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, off, data, size, len);
+        size += len;
+    }
+
+    public ByteBlock append(char c) {
+        if (c < 0x80)
+            write(c);
+        else
+            append(String.valueOf(c));
+        return this;
+    }
+
+    public ByteBlock append(@Nonnull byte b[]) {
+        write(b, 0, b.length);
+        return this;
+    }
+
+    /**
+     * Appends the string encoded as UTF-8. Pure ASCII strings are copied
+     * without going through the charset encoder.
+     */
+    public ByteBlock append(@Nonnull String s) {
+        final int len = s.length();
+        ensureCapacity(len);
+        for (int i = 0; i < len; i++) {
+            final char c = s.charAt(i);
+            if (c >= 0x80) {
+                append(s.substring(i).getBytes(StandardCharsets.UTF_8));
+                return this;
+            }
+            data[size++] = (byte) c;
+        }
+        return this;
+    }
+
+    public ByteBlock append(long value) {
+        FastNumberFormat.appendLong(this, value);
+        return this;
+    }
+
+    public ByteBlock append(double value, int maxDecimals) {
+        FastNumberFormat.appendDouble(this, value, maxDecimals);
+        return this;
+    }
+
+}
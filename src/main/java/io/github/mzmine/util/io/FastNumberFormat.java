@@ -0,0 +1,106 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.io;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Locale independent number formatting directly into a ByteBlock. Numbers are
+ * always written with '.' as the decimal separator, no grouping and at most
+ * the given number of decimals, with trailing zeros removed. This avoids the
+ * per-cell cost of NumberFormat and intermediate String objects.
+ */
+public class FastNumberFormat {
+
+    public static final int DOUBLE_DECIMALS = 6;
+    public static final int FLOAT_DECIMALS = 4;
+
+    private static final long POWERS_OF_TEN[] = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private static final ThreadLocal<byte[]> digitBuffer = ThreadLocal
+            .withInitial(() -> new byte[20]);
+
+    public static void appendLong(@Nonnull ByteBlock out, long value) {
+        if (value == Long.MIN_VALUE) {
+            out.append(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        final byte digits[] = digitBuffer.get();
+        int pos = digits.length;
+        do {
+            digits[--pos] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        out.write(digits, pos, digits.length - pos);
+    }
+
+    public static void appendDouble(@Nonnull ByteBlock out, double value,
+            int maxDecimals) {
+
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append(Double.toString(value));
+            return;
+        }
+
+        final double abs = Math.abs(value);
+        final long scale = POWERS_OF_TEN[maxDecimals];
+
+        // Values which do not fit into a long after scaling, or which would be
+        // rounded to zero, keep their scientific notation
+        if (abs * scale >= 1e17 || (abs != 0 && abs * scale < 1)) {
+            out.append(Double.toString(value));
+            return;
+        }
+
+        long scaled = Math.round(abs * scale);
+        if (scaled == 0) {
+            out.write('0');
+            return;
+        }
+        if (value < 0)
+            out.write('-');
+
+        appendLong(out, scaled / scale);
+        long fraction = scaled % scale;
+        if (fraction == 0)
+            return;
+
+        int decimals = maxDecimals;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            decimals--;
+        }
+        out.write('.');
+        for (long p = POWERS_OF_TEN[decimals - 1]; p > fraction; p /= 10)
+            out.write('0');
+        appendLong(out, fraction);
+    }
+
+}
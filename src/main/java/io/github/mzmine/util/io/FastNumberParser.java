@@ -0,0 +1,146 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Locale independent number parsing directly from a byte buffer, the
+ * counterpart of {@link FastNumberFormat}. Plain decimal numbers are parsed
+ * without creating intermediate String objects; anything else (exponents, NaN,
+ * very long mantissas) falls back to the JDK parsers.
+ */
+public class FastNumberParser {
+
+    private static final double POWERS_OF_TEN[] = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    // Mantissas up to 2^53 are represented exactly by a double, so a single
+    // division by an exact power of ten rounds correctly
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Parses the bytes between start (inclusive) and end (exclusive).
+     * 
+     * @throws NumberFormatException
+     *             if the text is not a number
+     */
+    public static double parseDouble(@Nonnull ByteBuffer buffer, int start,
+            int end) {
+
+        while (start < end && buffer.get(start) <= ' ')
+            start++;
+        while (end > start && buffer.get(end - 1) <= ' ')
+            end--;
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0, decimals = 0;
+        boolean decimalPoint = false;
+        for (; i < end; i++) {
+            final byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                if (mantissa >= MAX_EXACT_MANTISSA / 10)
+                    return slowParseDouble(buffer, start, end);
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (decimalPoint)
+                    decimals++;
+            } else if (b == '.' && !decimalPoint) {
+                decimalPoint = true;
+            } else {
+                return slowParseDouble(buffer, start, end);
+            }
+        }
+
+        if (digits == 0 || decimals >= POWERS_OF_TEN.length)
+            return slowParseDouble(buffer, start, end);
+
+        double value = mantissa;
+        if (decimals > 0)
+            value /= POWERS_OF_TEN[decimals];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses the bytes between start (inclusive) and end (exclusive). Integral
+     * values written with decimals, such as "2.0", are accepted.
+     * 
+     * @throws NumberFormatException
+     *             if the text is not an integer
+     */
+    public static int parseInt(@Nonnull ByteBuffer buffer, int start,
+            int end) {
+
+        while (start < end && buffer.get(start) <= ' ')
+            start++;
+        while (end > start && buffer.get(end - 1) <= ' ')
+            end--;
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        if (i == end)
+            throw new NumberFormatException("Empty integer");
+
+        long value = 0;
+        for (; i < end; i++) {
+            final byte b = buffer.get(i);
+            if (b < '0' || b > '9' || value > Integer.MAX_VALUE) {
+                final double d = parseDouble(buffer, start, end);
+                if (d != Math.rint(d) || Math.abs(d) > Integer.MAX_VALUE)
+                    throw new NumberFormatException(
+                            "Not an integer: " + d);
+                return (int) d;
+            }
+            value = value * 10 + (b - '0');
+        }
+        if (value > Integer.MAX_VALUE)
+            throw new NumberFormatException("Integer overflow");
+        return (int) (negative ? -value : value);
+    }
+
+    private static double slowParseDouble(ByteBuffer buffer, int start,
+            int end) {
+        final byte bytes[] = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = buffer.get(start + i);
+        return Double.parseDouble(
+                new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+}
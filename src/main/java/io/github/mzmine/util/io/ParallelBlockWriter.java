@@ -0,0 +1,193 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Writes a large table to a file by formatting blocks of rows in parallel and
+ * streaming the formatted blocks, in order, to a FileChannel. Only a bounded
+ * number of blocks is in flight at any time and their buffers are reused, so
+ * the memory use does not depend on the table size.
+ * 
+ * If compression is enabled, each block is compressed by its worker thread as
+ * a separate gzip member. Concatenated gzip members form a valid gzip file,
+ * which is read transparently by gzip, zcat, R and Python.
+ */
+public class ParallelBlockWriter {
+
+    /**
+     * Formats the rows firstRow (inclusive) to lastRow (exclusive) into the
+     * given block. Implementations are called concurrently from several
+     * threads for different blocks.
+     */
+    public interface BlockFormatter {
+        void formatBlock(int firstRow, int lastRow, @Nonnull ByteBlock out)
+                throws Exception;
+    }
+
+    private static final int DEFAULT_ROWS_PER_BLOCK = 2000;
+
+    private final @Nonnull File file;
+    private final boolean compress;
+    private final int rowsPerBlock;
+    private final int maxBlocksInFlight;
+
+    private final Queue<ByteBlock> bufferPool = new ConcurrentLinkedQueue<>();
+
+    private volatile int writtenRows = 0;
+    private volatile boolean canceled = false;
+
+    public ParallelBlockWriter(@Nonnull File file, boolean compress) {
+        this(file, compress, DEFAULT_ROWS_PER_BLOCK);
+    }
+
+    public ParallelBlockWriter(@Nonnull File file, boolean compress,
+            int rowsPerBlock) {
+        this.file = file;
+        this.compress = compress;
+        this.rowsPerBlock = rowsPerBlock;
+        this.maxBlocksInFlight = 2
+                * ForkJoinPool.commonPool().getParallelism() + 1;
+    }
+
+    /**
+     * Writes the header followed by all rows. Returns false if the writing was
+     * canceled.
+     */
+    public boolean write(@Nonnull ByteBlock header, int numOfRows,
+            @Nonnull BlockFormatter formatter) throws IOException {
+
+        writtenRows = 0;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            writeFully(channel, compress ? compress(header) : header);
+
+            final Queue<CompletableFuture<ByteBlock>> inFlight = new ArrayDeque<>();
+            int nextRow = 0;
+
+            while (nextRow < numOfRows || !inFlight.isEmpty()) {
+
+                if (canceled) {
+                    for (CompletableFuture<ByteBlock> f : inFlight)
+                        f.cancel(false);
+                    return false;
+                }
+
+                // Keep the workers busy
+                while (nextRow < numOfRows
+                        && inFlight.size() < maxBlocksInFlight) {
+                    final int firstRow = nextRow;
+                    final int lastRow = Math.min(numOfRows,
+                            firstRow + rowsPerBlock);
+                    inFlight.add(CompletableFuture.supplyAsync(
+                            () -> formatBlock(formatter, firstRow, lastRow),
+                            ForkJoinPool.commonPool()));
+                    nextRow = lastRow;
+                }
+
+                // Write the oldest block, keeping the row order
+                final ByteBlock block = inFlight.remove().get();
+                writeFully(channel, block);
+                bufferPool.add(block);
+                writtenRows = Math.min(numOfRows,
+                        writtenRows + rowsPerBlock);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException(cause);
+        }
+
+        return true;
+    }
+
+    public int getWrittenRows() {
+        return writtenRows;
+    }
+
+    public void cancel() {
+        canceled = true;
+    }
+
+    private ByteBlock formatBlock(BlockFormatter formatter, int firstRow,
+            int lastRow) {
+        ByteBlock block = acquireBuffer();
+        try {
+            formatter.formatBlock(firstRow, lastRow, block);
+            if (!compress)
+                return block;
+            final ByteBlock compressed = compress(block);
+            bufferPool.add(block);
+            return compressed;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private ByteBlock compress(ByteBlock block) throws IOException {
+        final ByteBlock compressed = acquireBuffer();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed,
+                64 * 1024)) {
+            gzip.write(block.array(), 0, block.size());
+        }
+        return compressed;
+    }
+
+    private ByteBlock acquireBuffer() {
+        ByteBlock block = bufferPool.poll();
+        if (block == null)
+            block = new ByteBlock();
+        block.reset();
+        return block;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBlock block)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(block.array(), 0,
+                block.size());
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.rawdata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.IsolationInfo;
+import io.github.msdk.datamodel.rawdata.MsFunction;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+
+/**
+ * Precursors of the MS/MS (MS level 2 and higher) scans of a raw data file,
+ * sorted by precursor m/z. Each isolation of a scan is one entry, holding the
+ * precursor m/z and charge, the isolation window, the retention time and the
+ * index of the scan in {@link RawDataFile#getScans()}.
+ *
+ * Fragment scans of a precursor m/z range, or whose isolation window contains
+ * a given m/z, are found with a binary search followed by a walk over the
+ * matching entries. The isolation windows are located relative to the
+ * precursor m/z using the widest window offsets of the file, so the walk only
+ * covers entries whose precursor is within that distance.
+ *
+ * Indexes are computed on first use from the scan headers and kept while the
+ * raw data file is in use.
+ */
+@Immutable
+public class PrecursorIndex {
+
+    private static final Map<RawDataFile, PrecursorIndex> indexes = Collections
+            .synchronizedMap(new WeakHashMap<>());
+
+    private final int numberOfScans;
+    private final int scanIndexes[], msLevels[], precursorCharges[];
+    private final float retentionTimes[];
+    private final double precursorMzs[], isolationLows[], isolationHighs[];
+
+    // Widest extent of the isolation windows below and above the precursor
+    private final double maxBelow, maxAbove;
+
+    private PrecursorIndex(int numberOfScans, List<Entry> entries) {
+        entries.sort(Comparator.comparingDouble((Entry e) -> e.precursorMz)
+                .thenComparingInt(e -> e.scanIndex));
+        final int n = entries.size();
+        this.numberOfScans = numberOfScans;
+        this.scanIndexes = new int[n];
+        this.msLevels = new int[n];
+        this.precursorCharges = new int[n];
+        this.retentionTimes = new float[n];
+        this.precursorMzs = new double[n];
+        this.isolationLows = new double[n];
+        this.isolationHighs = new double[n];
+        double below = 0, above = 0;
+        for (int i = 0; i < n; i++) {
+            final Entry entry = entries.get(i);
+            scanIndexes[i] = entry.scanIndex;
+            msLevels[i] = entry.msLevel;
+            precursorCharges[i] = entry.precursorCharge;
+            retentionTimes[i] = entry.retentionTime;
+            precursorMzs[i] = entry.precursorMz;
+            isolationLows[i] = entry.isolationLow;
+            isolationHighs[i] = entry.isolationHigh;
+            below = Math.max(below, entry.precursorMz - entry.isolationLow);
+            above = Math.max(above, entry.isolationHigh - entry.precursorMz);
+        }
+        this.maxBelow = below;
+        this.maxAbove = above;
+    }
+
+    /**
+     * @return the index of the given file, computing it first if necessary.
+     *         Computing reads the headers of all scans, but no data points.
+     */
+    public static @Nonnull PrecursorIndex get(@Nonnull RawDataFile dataFile) {
+        PrecursorIndex index = getIfPresent(dataFile);
+        if (index == null) {
+            index = build(dataFile.getScans());
+            indexes.put(dataFile, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the given file, or null if it was not computed
+     *         yet or the scans of the file changed since
+     */
+    public static @Nullable PrecursorIndex getIfPresent(
+            @Nonnull RawDataFile dataFile) {
+        final PrecursorIndex index = indexes.get(dataFile);
+        if ((index == null)
+                || (index.numberOfScans != dataFile.getScans().size()))
+            return null;
+        return index;
+    }
+
+    private static PrecursorIndex build(List<MsScan> scans) {
+        final List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < scans.size(); i++) {
+            final MsScan scan = scans.get(i);
+            final MsFunction msFunction = scan.getMsFunction();
+            final int msLevel = (msFunction == null)
+                    || (msFunction.getMsLevel() == null) ? 0
+                            : msFunction.getMsLevel();
+            if (msLevel < 2)
+                continue;
+            final List<IsolationInfo> isolations = scan.getIsolations();
+            if (isolations == null)
+                continue;
+
+            final ChromatographyInfo chromatographyInfo = scan
+                    .getChromatographyInfo();
+            final float rt = (chromatographyInfo == null)
+                    || (chromatographyInfo.getRetentionTime() == null)
+                            ? Float.NaN
+                            : chromatographyInfo.getRetentionTime();
+
+            for (IsolationInfo isolation : isolations) {
+                final Range<Double> window = isolation.getIsolationMzRange();
+                Double precursorMz = isolation.getPrecursorMz();
+                if ((precursorMz == null) && (window != null))
+                    precursorMz = (window.lowerEndpoint()
+                            + window.upperEndpoint()) / 2;
+                if (precursorMz == null)
+                    continue;
+                final Integer charge = isolation.getPrecursorCharge();
+                entries.add(new Entry(i, msLevel,
+                        charge == null ? 0 : charge, rt, precursorMz,
+                        window == null ? precursorMz
+                                : Math.min(precursorMz,
+                                        window.lowerEndpoint()),
+                        window == null ? precursorMz
+                                : Math.max(precursorMz,
+                                        window.upperEndpoint())));
+            }
+        }
+        return new PrecursorIndex(scans.size(), entries);
+    }
+
+    public int getNumberOfEntries() {
+        return precursorMzs.length;
+    }
+
+    /**
+     * @return index of the scan of the given entry in
+     *         {@link RawDataFile#getScans()}
+     */
+    public int getScanIndex(int entry) {
+        return scanIndexes[entry];
+    }
+
+    public int getMsLevel(int entry) {
+        return msLevels[entry];
+    }
+
+    /**
+     * @return charge of the precursor, or 0 if unknown
+     */
+    public int getPrecursorCharge(int entry) {
+        return precursorCharges[entry];
+    }
+
+    /**
+     * @return retention time of the scan, or NaN if unknown
+     */
+    public float getRetentionTime(int entry) {
+        return retentionTimes[entry];
+    }
+
+    public double getPrecursorMz(int entry) {
+        return precursorMzs[entry];
+    }
+
+    /**
+     * @return the isolation window, which is only the precursor m/z if the
+     *         window is unknown
+     */
+    public @Nonnull Range<Double> getIsolationMzRange(int entry) {
+        return Range.closed(isolationLows[entry], isolationHighs[entry]);
+    }
+
+    /**
+     * Finds the entries whose precursor m/z is within the given range.
+     *
+     * @param rtRange
+     *            retention time range of the scans, or null for all
+     * @return the matching entries, in the order of their precursor m/z
+     */
+    public @Nonnull int[] findByPrecursorMz(@Nonnull Range<Double> mzRange,
+            @Nullable Range<Float> rtRange) {
+        final int first = lowerBound(mzRange.lowerEndpoint());
+        int matches[] = new int[0];
+        int count = 0;
+        for (int i = first; (i < precursorMzs.length)
+                && (precursorMzs[i] <= mzRange.upperEndpoint()); i++) {
+            if (!mzRange.contains(precursorMzs[i])
+                    || !containsRt(rtRange, i))
+                continue;
+            if (count == matches.length)
+                matches = Arrays.copyOf(matches, Math.max(8, count * 2));
+            matches[count++] = i;
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Finds the entries whose isolation window contains the given m/z, e.g.
+     * the fragment scans that include a given ion.
+     *
+     * @param rtRange
+     *            retention time range of the scans, or null for all
+     * @return the matching entries, in the order of their precursor m/z
+     */
+    public @Nonnull int[] findByIsolatedMz(double mz,
+            @Nullable Range<Float> rtRange) {
+        final int first = lowerBound(mz - maxAbove);
+        final double last = mz + maxBelow;
+        int matches[] = new int[0];
+        int count = 0;
+        for (int i = first; (i < precursorMzs.length)
+                && (precursorMzs[i] <= last); i++) {
+            if ((isolationLows[i] > mz) || (isolationHighs[i] < mz)
+                    || !containsRt(rtRange, i))
+                continue;
+            if (count == matches.length)
+                matches = Arrays.copyOf(matches, Math.max(8, count * 2));
+            matches[count++] = i;
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * @return the scans of the given entries, each scan only once, in the
+     *         order of the scans in the file
+     */
+    public @Nonnull List<MsScan> getScans(@Nonnull RawDataFile dataFile,
+            @Nonnull int entries[]) {
+        final int scanIndexesOfEntries[] = new int[entries.length];
+        for (int i = 0; i < entries.length; i++)
+            scanIndexesOfEntries[i] = scanIndexes[entries[i]];
+        Arrays.sort(scanIndexesOfEntries);
+        final List<MsScan> allScans = dataFile.getScans();
+        final List<MsScan> scans = new ArrayList<>(entries.length);
+        for (int i = 0; i < scanIndexesOfEntries.length; i++) {
+            if ((i > 0)
+                    && (scanIndexesOfEntries[i] == scanIndexesOfEntries[i
+                            - 1]))
+                continue;
+            scans.add(allScans.get(scanIndexesOfEntries[i]));
+        }
+        return scans;
+    }
+
+    private boolean containsRt(@Nullable Range<Float> rtRange, int entry) {
+        return (rtRange == null) || rtRange.contains(retentionTimes[entry]);
+    }
+
+    /**
+     * @return the first entry whose precursor m/z is not below the given
+     *         value
+     */
+    private int lowerBound(double mz) {
+        int low = 0, high = precursorMzs.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (precursorMzs[middle] < mz)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private static class Entry {
+        final int scanIndex, msLevel, precursorCharge;
+        final float retentionTime;
+        final double precursorMz, isolationLow, isolationHigh;
+
+        Entry(int scanIndex, int msLevel, int precursorCharge,
+                float retentionTime, double precursorMz, double isolationLow,
+                double isolationHigh) {
+            this.scanIndex = scanIndex;
+            this.msLevel = msLevel;
+            this.precursorCharge = precursorCharge;
+            this.retentionTime = retentionTime;
+            this.precursorMz = precursorMz;
+            this.isolationLow = isolationLow;
+            this.isolationHigh = isolationHigh;
+        }
+    }
+
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.rawdata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+
+/**
+ * Multi-resolution raster of the intensities of a raw data file over
+ * retention time × m/z. Each cell holds the sum and the maximum of the
+ * intensities of the data points that fall into it.
+ * 
+ * The rows of the finest level are consecutive scans (one scan per row, or
+ * several scans per row in long runs), the columns are m/z bins of equal
+ * width. Each coarser level halves the number of rows and columns, down to a
+ * few dozen. The raster is kept in a memory-mapped temporary file, so it
+ * does not use heap memory.
+ * 
+ * XICs over m/z windows of several bins and overview plots can be read from
+ * the raster without touching the scans. Narrower m/z windows need the exact
+ * data points, see {@link #isSuitableForXic(Range)}.
+ */
+public class RasterIndex {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(RasterIndex.class);
+
+    /**
+     * Minimum width of an XIC window, in m/z bins of the finest level
+     */
+    private static final int MIN_XIC_BINS = 4;
+
+    private static final Map<RawDataFile, Map<Integer, RasterIndex>> indexes = Collections
+            .synchronizedMap(new WeakHashMap<>());
+
+    private final int msLevel;
+    private final Range<Double> mzRange;
+    private final int numberOfLevels;
+    private final int rows[], columns[];
+    private final float rowStartRts[][], rowEndRts[][];
+    private final FloatBuffer sums[], maxima[];
+
+    private File tmpFile;
+
+    RasterIndex(int msLevel, @Nonnull Range<Double> mzRange,
+            int numberOfLevels, int rows[], int columns[],
+            float rowStartRts[][], float rowEndRts[][], File tmpFile)
+            throws IOException {
+        this.msLevel = msLevel;
+        this.mzRange = mzRange;
+        this.numberOfLevels = numberOfLevels;
+        this.rows = rows;
+        this.columns = columns;
+        this.rowStartRts = rowStartRts;
+        this.rowEndRts = rowEndRts;
+        this.tmpFile = tmpFile;
+
+        this.sums = new FloatBuffer[numberOfLevels];
+        this.maxima = new FloatBuffer[numberOfLevels];
+        try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
+            final FileChannel channel = raf.getChannel();
+            long position = 0;
+            for (int level = 0; level < numberOfLevels; level++) {
+                final long planeBytes = (long) rows[level] * columns[level]
+                        * 4;
+                sums[level] = channel
+                        .map(FileChannel.MapMode.READ_WRITE, position,
+                                planeBytes)
+                        .order(ByteOrder.nativeOrder()).asFloatBuffer();
+                position += planeBytes;
+                maxima[level] = channel
+                        .map(FileChannel.MapMode.READ_WRITE, position,
+                                planeBytes)
+                        .order(ByteOrder.nativeOrder()).asFloatBuffer();
+                position += planeBytes;
+            }
+        }
+    }
+
+    /**
+     * @return the raster index of the scans of the given MS level, building
+     *         it first if necessary. Building reads all these scans once.
+     */
+    public static @Nonnull RasterIndex get(@Nonnull RawDataFile dataFile,
+            int msLevel) throws MSDKException {
+        RasterIndex index = getIfPresent(dataFile, msLevel);
+        if (index == null)
+            index = new RasterIndexBuildMethod(dataFile, msLevel).execute();
+        return index;
+    }
+
+    /**
+     * @return the raster index of the scans of the given MS level, or null if
+     *         it was not built yet
+     */
+    public static @Nullable RasterIndex getIfPresent(
+            @Nonnull RawDataFile dataFile, int msLevel) {
+        final Map<Integer, RasterIndex> fileIndexes = indexes.get(dataFile);
+        if (fileIndexes == null)
+            return null;
+        synchronized (fileIndexes) {
+            return fileIndexes.get(msLevel);
+        }
+    }
+
+    static void put(@Nonnull RawDataFile dataFile,
+            @Nonnull RasterIndex index) {
+        final Map<Integer, RasterIndex> fileIndexes;
+        synchronized (indexes) {
+            fileIndexes = indexes.computeIfAbsent(dataFile,
+                    f -> new HashMap<>());
+        }
+        synchronized (fileIndexes) {
+            fileIndexes.put(index.msLevel, index);
+        }
+    }
+
+    public int getMsLevel() {
+        return msLevel;
+    }
+
+    public @Nonnull Range<Double> getMzRange() {
+        return mzRange;
+    }
+
+    public @Nonnull Range<Float> getRtRange() {
+        return Range.closed(rowStartRts[0][0],
+                rowEndRts[0][rows[0] - 1]);
+    }
+
+    /**
+     * @return number of levels; level 0 is the finest
+     */
+    public int getNumberOfLevels() {
+        return numberOfLevels;
+    }
+
+    public int getNumberOfRows(int level) {
+        return rows[level];
+    }
+
+    public int getNumberOfColumns(int level) {
+        return columns[level];
+    }
+
+    /**
+     * @return retention time of the first scan of the given row
+     */
+    public float getRowStartRt(int level, int row) {
+        return rowStartRts[level][row];
+    }
+
+    /**
+     * @return retention time of the last scan of the given row
+     */
+    public float getRowEndRt(int level, int row) {
+        return rowEndRts[level][row];
+    }
+
+    public double getColumnWidth(int level) {
+        return (mzRange.upperEndpoint() - mzRange.lowerEndpoint())
+                / columns[level];
+    }
+
+    /**
+     * @return the column containing the given m/z, clamped to the raster
+     */
+    public int getColumn(int level, double mz) {
+        final int column = (int) ((mz - mzRange.lowerEndpoint())
+                / getColumnWidth(level));
+        return Math.max(0, Math.min(columns[level] - 1, column));
+    }
+
+    public float getSum(int level, int row, int column) {
+        return sums[level].get(row * columns[level] + column);
+    }
+
+    public float getMax(int level, int row, int column) {
+        return maxima[level].get(row * columns[level] + column);
+    }
+
+    /**
+     * @return the coarsest level that still has at least the given number of
+     *         rows and columns, or level 0 if no level has
+     */
+    public int getLevel(int minRows, int minColumns) {
+        for (int level = numberOfLevels - 1; level > 0; level--) {
+            if ((rows[level] >= minRows) && (columns[level] >= minColumns))
+                return level;
+        }
+        return 0;
+    }
+
+    /**
+     * @return true if the finest level has at least one m/z bin per pixel of
+     *         the given width
+     */
+    public boolean resolvesMz(double pixelMzWidth) {
+        return getColumnWidth(0) <= pixelMzWidth;
+    }
+
+    /**
+     * @return the highest intensity of a single data point
+     */
+    public float getMaxIntensity() {
+        final int level = numberOfLevels - 1;
+        float max = 0;
+        for (int i = 0; i < rows[level] * columns[level]; i++)
+            max = Math.max(max, maxima[level].get(i));
+        return max;
+    }
+
+    /**
+     * Samples the maximum intensities of a region into a grid of pixels,
+     * from the coarsest level that still has at least one cell per pixel.
+     * Pixels between the rows or columns of the raster (when the region is
+     * smaller than the cells) take the value of the nearest cell; pixels
+     * outside the raster are 0.
+     * 
+     * @param grid
+     *            array of width × height values; the first row of the grid
+     *            is the lowest m/z
+     */
+    public void getMaxGrid(double rtLow, double rtHigh, double mzLow,
+            double mzHigh, int width, int height, @Nonnull float grid[]) {
+        final double pixelRt = (rtHigh - rtLow) / width;
+        final double pixelMz = (mzHigh - mzLow) / height;
+        final double rtWidth = getRtRange().upperEndpoint()
+                - getRtRange().lowerEndpoint();
+
+        int level = 0;
+        for (int l = numberOfLevels - 1; l > 0; l--) {
+            if ((getColumnWidth(l) <= pixelMz)
+                    && (rtWidth / rows[l] <= pixelRt)) {
+                level = l;
+                break;
+            }
+        }
+
+        // Column ranges of the pixel rows
+        final int firstColumns[] = new int[height],
+                lastColumns[] = new int[height];
+        final double columnWidth = getColumnWidth(level);
+        final double lowestMz = mzRange.lowerEndpoint();
+        for (int y = 0; y < height; y++) {
+            final double low = mzLow + y * pixelMz, high = low + pixelMz;
+            if ((high < lowestMz) || (low > mzRange.upperEndpoint())) {
+                firstColumns[y] = 0;
+                lastColumns[y] = -1;
+                continue;
+            }
+            int first = (int) Math.ceil((low - lowestMz) / columnWidth - 0.5);
+            int last = (int) Math.floor((high - lowestMz) / columnWidth - 0.5);
+            if (last < first)
+                first = last = getColumn(level, (low + high) / 2);
+            firstColumns[y] = Math.max(0, first);
+            lastColumns[y] = Math.min(columns[level] - 1, last);
+        }
+
+        final float starts[] = rowStartRts[level], ends[] = rowEndRts[level];
+        final FloatBuffer plane = maxima[level];
+        for (int x = 0; x < width; x++) {
+            final double low = rtLow + x * pixelRt, high = low + pixelRt;
+            for (int y = 0; y < height; y++)
+                grid[y * width + x] = 0;
+            if ((high < starts[0]) || (low > ends[rows[level] - 1]))
+                continue;
+            int firstRow = firstRowEndingAfter(ends, low);
+            int lastRow = lastRowStartingBefore(starts, high);
+            if (lastRow < firstRow) {
+                // Between two rows, take the nearer one
+                final double center = (low + high) / 2;
+                firstRow = lastRow = (lastRow >= 0)
+                        && (center - ends[lastRow] < starts[firstRow]
+                                - center) ? lastRow : firstRow;
+            }
+            for (int row = firstRow; row <= lastRow; row++) {
+                final int offset = row * columns[level];
+                for (int y = 0; y < height; y++) {
+                    float max = grid[y * width + x];
+                    for (int c = firstColumns[y]; c <= lastColumns[y]; c++)
+                        max = Math.max(max, plane.get(offset + c));
+                    grid[y * width + x] = max;
+                }
+            }
+        }
+    }
+
+    private static int firstRowEndingAfter(float ends[], double rt) {
+        int low = 0, high = ends.length - 1;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (ends[mid] < rt)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private static int lastRowStartingBefore(float starts[], double rt) {
+        int low = -1, high = starts.length - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= rt)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    /**
+     * @return true if the given m/z window is wide enough for an XIC read
+     *         from the raster. The raster includes the bins whose center is
+     *         in the window, so the edges of the window are shifted by up to
+     *         half a bin.
+     */
+    public boolean isSuitableForXic(@Nonnull Range<Double> xicMzRange) {
+        final double width = xicMzRange.upperEndpoint()
+                - xicMzRange.lowerEndpoint();
+        return width >= MIN_XIC_BINS * getColumnWidth(0);
+    }
+
+    /**
+     * Reads an XIC from the finest level of the raster.
+     * 
+     * @param xicMzRange
+     *            m/z window, see {@link #isSuitableForXic(Range)}
+     * @param maximum
+     *            whether to take the highest intensity in the window (base
+     *            peak) instead of the sum
+     * @return intensity of each row of level 0; the retention time of a row
+     *         is between {@link #getRowStartRt(int, int)} and
+     *         {@link #getRowEndRt(int, int)}
+     */
+    public @Nonnull float[] getXic(@Nonnull Range<Double> xicMzRange,
+            boolean maximum) {
+        final double width = getColumnWidth(0);
+        final double lowMz = mzRange.lowerEndpoint();
+        // Columns whose center is within the window
+        final int firstColumn = Math.max(0, (int) Math
+                .ceil((xicMzRange.lowerEndpoint() - lowMz) / width - 0.5));
+        final int lastColumn = Math.min(columns[0] - 1, (int) Math
+                .floor((xicMzRange.upperEndpoint() - lowMz) / width - 0.5));
+
+        final float xic[] = new float[rows[0]];
+        final FloatBuffer plane = maximum ? maxima[0] : sums[0];
+        for (int row = 0; row < rows[0]; row++) {
+            float value = 0;
+            final int offset = row * columns[0];
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                final float cell = plane.get(offset + column);
+                value = maximum ? Math.max(value, cell) : value + cell;
+            }
+            xic[row] = value;
+        }
+        return xic;
+    }
+
+    /**
+     * Writes a row of level 0.
+     */
+    void putRow(int row, @Nonnull float rowSums[], @Nonnull float rowMaxima[]) {
+        final int offset = row * columns[0];
+        for (int column = 0; column < columns[0]; column++) {
+            sums[0].put(offset + column, rowSums[column]);
+            maxima[0].put(offset + column, rowMaxima[column]);
+        }
+    }
+
+    /**
+     * Computes a level from the next finer one, each cell combining up to 2
+     * × 2 cells.
+     */
+    void computeLevel(int level) {
+        final int finerRows = rows[level - 1], finerColumns = columns[level - 1];
+        final FloatBuffer finerSums = sums[level - 1],
+                finerMaxima = maxima[level - 1];
+        for (int row = 0; row < rows[level]; row++) {
+            final int lastFinerRow = Math.min(2 * row + 1, finerRows - 1);
+            for (int column = 0; column < columns[level]; column++) {
+                final int lastFinerColumn = Math.min(2 * column + 1,
+                        finerColumns - 1);
+                float sum = 0, max = 0;
+                for (int r = 2 * row; r <= lastFinerRow; r++) {
+                    for (int c = 2 * column; c <= lastFinerColumn; c++) {
+                        final int i = r * finerColumns + c;
+                        sum += finerSums.get(i);
+                        max = Math.max(max, finerMaxima.get(i));
+                    }
+                }
+                final int i = row * columns[level] + column;
+                sums[level].put(i, sum);
+                maxima[level].put(i, max);
+            }
+        }
+    }
+
+    /**
+     * Deletes the temporary file. The mapped raster remains readable until
+     * this index is garbage collected.
+     */
+    synchronized void deleteTmpFile() {
+        if ((tmpFile != null) && !tmpFile.delete())
+            logger.debug("Could not delete " + tmpFile);
+        tmpFile = null;
+    }
+
+}
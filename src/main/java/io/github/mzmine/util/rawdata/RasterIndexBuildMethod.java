@@ -0,0 +1,231 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.rawdata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+
+/**
+ * Builds the {@link RasterIndex} of the scans of one MS level of a raw data
+ * file in a single pass over these scans, and registers it with the file.
+ */
+public class RasterIndexBuildMethod implements MSDKMethod<RasterIndex> {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Maximum number of rows of the finest level; longer runs combine
+     * several scans per row
+     */
+    private static final int MAX_ROWS = 2048;
+
+    /**
+     * Number of m/z bins of the finest level
+     */
+    private static final int MZ_BINS = 4096;
+
+    /**
+     * The coarsest level has at most this many rows and columns
+     */
+    private static final int MIN_LEVEL_SIZE = 64;
+
+    private final @Nonnull RawDataFile dataFile;
+    private final int msLevel;
+
+    private int processedScans = 0, totalScans = 0;
+    private volatile boolean canceled = false;
+    private RasterIndex result;
+
+    public RasterIndexBuildMethod(@Nonnull RawDataFile dataFile,
+            int msLevel) {
+        this.dataFile = dataFile;
+        this.msLevel = msLevel;
+    }
+
+    @Override
+    public RasterIndex execute() throws MSDKException {
+
+        final ScanSummary summary = ScanSummary.get(dataFile);
+        final List<MsScan> allScans = dataFile.getScans();
+        final List<MsScan> scans = new ArrayList<>();
+        final List<Float> rts = new ArrayList<>();
+        double lowestMz = Double.POSITIVE_INFINITY,
+                highestMz = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < summary.getNumberOfScans(); i++) {
+            if (summary.getMsLevel(i) != msLevel)
+                continue;
+            scans.add(allScans.get(i));
+            rts.add(summary.getRetentionTime(i));
+            if (!Double.isNaN(summary.getLowestMz(i))) {
+                lowestMz = Math.min(lowestMz, summary.getLowestMz(i));
+                highestMz = Math.max(highestMz, summary.getHighestMz(i));
+            }
+        }
+        if (scans.isEmpty())
+            throw new MSDKException("Raw data file " + dataFile.getName()
+                    + " has no scans of MS level " + msLevel);
+        if (lowestMz > highestMz) {
+            lowestMz = 0;
+            highestMz = 1;
+        }
+        // The highest m/z is in the last bin
+        final Range<Double> mzRange = Range.closed(lowestMz,
+                highestMz + (highestMz - lowestMz) / MZ_BINS + 1E-6);
+
+        // Dimensions of the levels
+        totalScans = scans.size();
+        final int scansPerRow = (totalScans + MAX_ROWS - 1) / MAX_ROWS;
+        final List<int[]> dimensions = new ArrayList<>();
+        int levelRows = (totalScans + scansPerRow - 1) / scansPerRow,
+                levelColumns = MZ_BINS;
+        dimensions.add(new int[] { levelRows, levelColumns });
+        while ((levelRows > MIN_LEVEL_SIZE) || (levelColumns > MIN_LEVEL_SIZE)) {
+            levelRows = (levelRows + 1) / 2;
+            levelColumns = (levelColumns + 1) / 2;
+            dimensions.add(new int[] { levelRows, levelColumns });
+        }
+        final int numberOfLevels = dimensions.size();
+        final int rows[] = new int[numberOfLevels],
+                columns[] = new int[numberOfLevels];
+        long fileSize = 0;
+        for (int level = 0; level < numberOfLevels; level++) {
+            rows[level] = dimensions.get(level)[0];
+            columns[level] = dimensions.get(level)[1];
+            fileSize += 2L * rows[level] * columns[level] * 4;
+        }
+
+        // Retention times of the rows
+        final float rowStartRts[][] = new float[numberOfLevels][],
+                rowEndRts[][] = new float[numberOfLevels][];
+        rowStartRts[0] = new float[rows[0]];
+        rowEndRts[0] = new float[rows[0]];
+        for (int row = 0; row < rows[0]; row++) {
+            rowStartRts[0][row] = rts.get(row * scansPerRow);
+            rowEndRts[0][row] = rts
+                    .get(Math.min((row + 1) * scansPerRow, totalScans) - 1);
+        }
+        for (int level = 1; level < numberOfLevels; level++) {
+            rowStartRts[level] = new float[rows[level]];
+            rowEndRts[level] = new float[rows[level]];
+            for (int row = 0; row < rows[level]; row++) {
+                rowStartRts[level][row] = rowStartRts[level - 1][2 * row];
+                rowEndRts[level][row] = rowEndRts[level - 1][Math
+                        .min(2 * row + 1, rows[level - 1] - 1)];
+            }
+        }
+
+        final RasterIndex index;
+        try {
+            final File tmpFile = File.createTempFile("mzmine", ".raster");
+            tmpFile.deleteOnExit();
+            try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
+                raf.setLength(fileSize);
+            }
+            index = new RasterIndex(msLevel, mzRange, numberOfLevels, rows,
+                    columns, rowStartRts, rowEndRts, tmpFile);
+        } catch (IOException e) {
+            throw new MSDKException(e);
+        }
+        // The mapping stays valid on systems that allow deleting mapped files
+        index.deleteTmpFile();
+
+        // Finest level, one pass over the scans
+        final double binWidth = index.getColumnWidth(0);
+        final float rowSums[] = new float[columns[0]],
+                rowMaxima[] = new float[columns[0]];
+        double mzBuffer[] = new double[0];
+        float intensityBuffer[] = new float[0];
+        for (int row = 0; row < rows[0]; row++) {
+            Arrays.fill(rowSums, 0f);
+            Arrays.fill(rowMaxima, 0f);
+            final int lastScan = Math.min((row + 1) * scansPerRow,
+                    totalScans);
+            for (int s = row * scansPerRow; s < lastScan; s++) {
+                if (canceled)
+                    return null;
+                final MsScan scan = scans.get(s);
+                mzBuffer = scan.getMzValues(mzBuffer);
+                intensityBuffer = scan.getIntensityValues(intensityBuffer);
+                final int size = scan.getNumberOfDataPoints();
+                for (int i = 0; i < size; i++) {
+                    final int column = Math.max(0,
+                            Math.min(columns[0] - 1, (int) ((mzBuffer[i]
+                                    - lowestMz) / binWidth)));
+                    rowSums[column] += intensityBuffer[i];
+                    rowMaxima[column] = Math.max(rowMaxima[column],
+                            intensityBuffer[i]);
+                }
+                processedScans++;
+            }
+            index.putRow(row, rowSums, rowMaxima);
+        }
+
+        for (int level = 1; level < numberOfLevels; level++) {
+            if (canceled)
+                return null;
+            index.computeLevel(level);
+        }
+
+        logger.info("Built raster index of " + dataFile.getName()
+                + ", MS level " + msLevel + ": " + rows[0] + " x "
+                + columns[0] + " cells in " + numberOfLevels + " levels");
+
+        RasterIndex.put(dataFile, index);
+        result = index;
+        return result;
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (totalScans == 0)
+            return null;
+        return (float) processedScans / totalScans;
+    }
+
+    @Override
+    @Nullable
+    public RasterIndex getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        this.canceled = true;
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package io.github.mzmine.util.rawdata;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.util.MsScanUtil;
+
+/**
+ * Copies some scans of a raw data file to a new raw data file, e.g. to try a
+ * processing method on a small part of the data. The new file is not added to
+ * the project.
+ */
+public class ScanSubsetMethod implements MSDKMethod<RawDataFile> {
+
+    private final @Nonnull RawDataFile rawDataFile;
+    private final @Nonnull List<MsScan> scans;
+    private final @Nonnull DataPointStore dataStore;
+
+    private int copiedScans = 0;
+    private volatile boolean canceled = false;
+    private RawDataFile result;
+
+    /**
+     * @param scans
+     *            scans of the raw data file to copy
+     * @param dataStore
+     *            store for the data points of the copied scans
+     */
+    public ScanSubsetMethod(@Nonnull RawDataFile rawDataFile,
+            @Nonnull List<MsScan> scans, @Nonnull DataPointStore dataStore) {
+        this.rawDataFile = rawDataFile;
+        this.scans = scans;
+        this.dataStore = dataStore;
+    }
+
+    @Override
+    public RawDataFile execute() throws MSDKException {
+        final RawDataFile subset = MSDKObjectBuilder.getRawDataFile(
+                rawDataFile.getName(), rawDataFile.getOriginalFile(),
+                rawDataFile.getRawDataFileType(), dataStore);
+        for (MsScan scan : scans) {
+            if (canceled) {
+                subset.dispose();
+                return null;
+            }
+            subset.addScan(MsScanUtil.clone(dataStore, scan, true));
+            copiedScans++;
+        }
+        result = subset;
+        return result;
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (scans.isEmpty())
+            return null;
+        return (float) copiedScans / scans.size();
+    }
+
+    @Override
+    @Nullable
+    public RawDataFile getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+    }
+
+}
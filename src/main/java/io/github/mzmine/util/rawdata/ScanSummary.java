@@ -0,0 +1,313 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.rawdata;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.IsolationInfo;
+import io.github.msdk.datamodel.rawdata.MsFunction;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.PolarityType;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+
+/**
+ * Per-scan values of a raw data file in primitive arrays: scan number,
+ * retention time, MS level, polarity, TIC, base peak, m/z range and
+ * precursor. The index of a scan in these arrays is its index in
+ * {@link RawDataFile#getScans()}. TIC and base peak chromatograms, scan
+ * selections and precursor lookups can be answered from the summary without
+ * reading the data points of the scans.
+ * 
+ * Summaries are computed while importing the raw data, or on first use for
+ * raw data files created otherwise (e.g. by centroiding).
+ */
+@Immutable
+public class ScanSummary {
+
+    private static final Map<RawDataFile, ScanSummary> summaries = Collections
+            .synchronizedMap(new WeakHashMap<>());
+
+    private static final PolarityType polarityTypes[] = PolarityType.values();
+
+    private final int numberOfScans;
+    private final int scanNumbers[], msLevels[], precursorCharges[];
+    private final byte polarities[];
+    private final float retentionTimes[], tics[], basePeakIntensities[];
+    private final double basePeakMzs[], lowestMzs[], highestMzs[],
+            precursorMzs[];
+
+    private ScanSummary(Builder builder) {
+        final int n = builder.numberOfScans;
+        this.numberOfScans = n;
+        this.scanNumbers = Arrays.copyOf(builder.scanNumbers, n);
+        this.msLevels = Arrays.copyOf(builder.msLevels, n);
+        this.precursorCharges = Arrays.copyOf(builder.precursorCharges, n);
+        this.polarities = Arrays.copyOf(builder.polarities, n);
+        this.retentionTimes = Arrays.copyOf(builder.retentionTimes, n);
+        this.tics = Arrays.copyOf(builder.tics, n);
+        this.basePeakIntensities = Arrays.copyOf(builder.basePeakIntensities,
+                n);
+        this.basePeakMzs = Arrays.copyOf(builder.basePeakMzs, n);
+        this.lowestMzs = Arrays.copyOf(builder.lowestMzs, n);
+        this.highestMzs = Arrays.copyOf(builder.highestMzs, n);
+        this.precursorMzs = Arrays.copyOf(builder.precursorMzs, n);
+    }
+
+    /**
+     * @return the summary of the given file, computing it first if
+     *         necessary. Computing reads the data points of all scans.
+     */
+    public static @Nonnull ScanSummary get(@Nonnull RawDataFile dataFile) {
+        ScanSummary summary = getIfPresent(dataFile);
+        if (summary == null) {
+            final Builder builder = new Builder();
+            for (MsScan scan : dataFile.getScans())
+                builder.add(scan);
+            summary = builder.build();
+            summaries.put(dataFile, summary);
+        }
+        return summary;
+    }
+
+    /**
+     * @return the summary of the given file, or null if it was not computed
+     *         yet or the scans of the file changed since
+     */
+    public static @Nullable ScanSummary getIfPresent(
+            @Nonnull RawDataFile dataFile) {
+        final ScanSummary summary = summaries.get(dataFile);
+        if ((summary == null)
+                || (summary.numberOfScans != dataFile.getScans().size()))
+            return null;
+        return summary;
+    }
+
+    /**
+     * Registers the summary of a raw data file, e.g. after the summary was
+     * collected during import.
+     */
+    public static void put(@Nonnull RawDataFile dataFile,
+            @Nonnull ScanSummary summary) {
+        summaries.put(dataFile, summary);
+    }
+
+    public int getNumberOfScans() {
+        return numberOfScans;
+    }
+
+    public int getScanNumber(int index) {
+        return scanNumbers[index];
+    }
+
+    /**
+     * @return retention time in seconds, or NaN if unknown
+     */
+    public float getRetentionTime(int index) {
+        return retentionTimes[index];
+    }
+
+    /**
+     * @return MS level, or 0 if unknown
+     */
+    public int getMsLevel(int index) {
+        return msLevels[index];
+    }
+
+    public @Nonnull PolarityType getPolarity(int index) {
+        return polarityTypes[polarities[index]];
+    }
+
+    public float getTIC(int index) {
+        return tics[index];
+    }
+
+    /**
+     * @return m/z of the most intense data point, or NaN if the scan is
+     *         empty
+     */
+    public double getBasePeakMz(int index) {
+        return basePeakMzs[index];
+    }
+
+    public float getBasePeakIntensity(int index) {
+        return basePeakIntensities[index];
+    }
+
+    /**
+     * @return lowest m/z of the scan, or NaN if the scan is empty
+     */
+    public double getLowestMz(int index) {
+        return lowestMzs[index];
+    }
+
+    /**
+     * @return highest m/z of the scan, or NaN if the scan is empty
+     */
+    public double getHighestMz(int index) {
+        return highestMzs[index];
+    }
+
+    /**
+     * @return m/z of the first precursor, or NaN if there is none
+     */
+    public double getPrecursorMz(int index) {
+        return precursorMzs[index];
+    }
+
+    /**
+     * @return charge of the first precursor, or 0 if unknown
+     */
+    public int getPrecursorCharge(int index) {
+        return precursorCharges[index];
+    }
+
+    /**
+     * Collects the summary of scans one by one.
+     */
+    public static class Builder {
+
+        private int numberOfScans = 0;
+        private int scanNumbers[] = new int[0], msLevels[] = new int[0],
+                precursorCharges[] = new int[0];
+        private byte polarities[] = new byte[0];
+        private float retentionTimes[] = new float[0], tics[] = new float[0],
+                basePeakIntensities[] = new float[0];
+        private double basePeakMzs[] = new double[0],
+                lowestMzs[] = new double[0], highestMzs[] = new double[0],
+                precursorMzs[] = new double[0];
+
+        private double mzBuffer[] = new double[0];
+        private float intensityBuffer[] = new float[0];
+
+        /**
+         * Adds a scan, reading its data points to find the base peak.
+         */
+        public void add(@Nonnull MsScan scan) {
+            mzBuffer = scan.getMzValues(mzBuffer);
+            intensityBuffer = scan.getIntensityValues(intensityBuffer);
+            add(scan, mzBuffer, intensityBuffer,
+                    scan.getNumberOfDataPoints());
+        }
+
+        /**
+         * Adds a scan whose data points are at hand, e.g. during import.
+         */
+        public void add(@Nonnull MsScan scan, @Nonnull double mzValues[],
+                @Nonnull float intensityValues[], int size) {
+            int basePeak = -1;
+            double tic = 0;
+            double lowestMz = Double.POSITIVE_INFINITY,
+                    highestMz = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < size; i++) {
+                tic += intensityValues[i];
+                if ((basePeak < 0)
+                        || (intensityValues[i] > intensityValues[basePeak]))
+                    basePeak = i;
+                lowestMz = Math.min(lowestMz, mzValues[i]);
+                highestMz = Math.max(highestMz, mzValues[i]);
+            }
+            final Float scanTic = scan.getTIC();
+            add(scan, scanTic != null ? scanTic : (float) tic,
+                    basePeak < 0 ? Double.NaN : mzValues[basePeak],
+                    basePeak < 0 ? 0f : intensityValues[basePeak],
+                    size == 0 ? null : Range.closed(lowestMz, highestMz));
+        }
+
+        /**
+         * Adds a scan whose TIC and base peak are known from metadata.
+         */
+        public void add(@Nonnull MsScan scan, float tic, double basePeakMz,
+                float basePeakIntensity, @Nullable Range<Double> mzRange) {
+            ensureCapacity(numberOfScans + 1);
+            final int i = numberOfScans++;
+
+            final Integer scanNumber = scan.getScanNumber();
+            scanNumbers[i] = scanNumber == null ? 0 : scanNumber;
+
+            final ChromatographyInfo chromatographyInfo = scan
+                    .getChromatographyInfo();
+            retentionTimes[i] = (chromatographyInfo == null)
+                    || (chromatographyInfo.getRetentionTime() == null)
+                            ? Float.NaN
+                            : chromatographyInfo.getRetentionTime();
+
+            final MsFunction msFunction = scan.getMsFunction();
+            msLevels[i] = (msFunction == null)
+                    || (msFunction.getMsLevel() == null) ? 0
+                            : msFunction.getMsLevel();
+
+            final PolarityType polarity = scan.getPolarity();
+            polarities[i] = (byte) (polarity == null ? PolarityType.UNKNOWN
+                    : polarity).ordinal();
+
+            tics[i] = tic;
+            basePeakMzs[i] = basePeakMz;
+            basePeakIntensities[i] = basePeakIntensity;
+            lowestMzs[i] = mzRange == null ? Double.NaN
+                    : mzRange.lowerEndpoint();
+            highestMzs[i] = mzRange == null ? Double.NaN
+                    : mzRange.upperEndpoint();
+
+            precursorMzs[i] = Double.NaN;
+            precursorCharges[i] = 0;
+            final List<IsolationInfo> isolations = scan.getIsolations();
+            if ((isolations != null) && !isolations.isEmpty()) {
+                final IsolationInfo isolation = isolations.get(0);
+                if (isolation.getPrecursorMz() != null)
+                    precursorMzs[i] = isolation.getPrecursorMz();
+                if (isolation.getPrecursorCharge() != null)
+                    precursorCharges[i] = isolation.getPrecursorCharge();
+            }
+        }
+
+        public @Nonnull ScanSummary build() {
+            return new ScanSummary(this);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= scanNumbers.length)
+                return;
+            final int n = Math.max(capacity, scanNumbers.length * 2);
+            scanNumbers = Arrays.copyOf(scanNumbers, n);
+            msLevels = Arrays.copyOf(msLevels, n);
+            precursorCharges = Arrays.copyOf(precursorCharges, n);
+            polarities = Arrays.copyOf(polarities, n);
+            retentionTimes = Arrays.copyOf(retentionTimes, n);
+            tics = Arrays.copyOf(tics, n);
+            basePeakIntensities = Arrays.copyOf(basePeakIntensities, n);
+            basePeakMzs = Arrays.copyOf(basePeakMzs, n);
+            lowestMzs = Arrays.copyOf(lowestMzs, n);
+            highestMzs = Arrays.copyOf(highestMzs, n);
+            precursorMzs = Arrays.copyOf(precursorMzs, n);
+        }
+    }
+
+}
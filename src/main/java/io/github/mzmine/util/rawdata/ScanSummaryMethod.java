@@ -0,0 +1,95 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.rawdata;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+
+/**
+ * Runs a method that creates a raw data file (e.g. an import) and then
+ * computes the {@link ScanSummary} of that file in the same task, unless the
+ * method already provided one.
+ */
+public class ScanSummaryMethod implements MSDKMethod<RawDataFile> {
+
+    private final @Nonnull MSDKMethod<RawDataFile> method;
+
+    private int summarizedScans = 0, totalScans = 0;
+    private boolean canceled = false;
+    private RawDataFile result;
+
+    public ScanSummaryMethod(@Nonnull MSDKMethod<RawDataFile> method) {
+        this.method = method;
+    }
+
+    @Override
+    public RawDataFile execute() throws MSDKException {
+        final RawDataFile rawDataFile = method.execute();
+        if ((rawDataFile == null) || canceled)
+            return null;
+
+        if (ScanSummary.getIfPresent(rawDataFile) == null) {
+            final List<MsScan> scans = rawDataFile.getScans();
+            totalScans = scans.size();
+            final ScanSummary.Builder builder = new ScanSummary.Builder();
+            for (MsScan scan : scans) {
+                if (canceled) {
+                    rawDataFile.dispose();
+                    return null;
+                }
+                builder.add(scan);
+                summarizedScans++;
+            }
+            ScanSummary.put(rawDataFile, builder.build());
+        }
+
+        result = rawDataFile;
+        return result;
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        final Float methodPercentage = method.getFinishedPercentage();
+        if (totalScans == 0)
+            return methodPercentage == null ? null : methodPercentage * 0.9f;
+        return 0.9f + 0.1f * summarizedScans / totalScans;
+    }
+
+    @Override
+    @Nullable
+    public RawDataFile getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        method.cancel();
+    }
+
+}